@@ -0,0 +1,269 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.common.jms;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends JMS messages over long-lived connections, instead of opening and
+ * closing a connection for every message.
+ *
+ * Each sending thread gets a channel of its own: a connection, one session
+ * on it and a producer for each destination it sends to. Batches are sent
+ * over a second channel, whose session is transacted. Channels are never
+ * shared, because JMS sessions are single threaded and application servers
+ * do not allow more than one session per connection. A channel is replaced
+ * when it fails a health check:
+ * <ul>
+ *   <li>the connection reported an error to its exception listener (where
+ *       the container allows one to be registered),</li>
+ *   <li>the channel has been idle for longer than the idle timeout, after
+ *       which the broker may have dropped it, or</li>
+ *   <li>a send fails. Only if the connection is known to be lost, because
+ *       it reported an error or has been closed, is the message sent once
+ *       more over a new channel; otherwise the error is passed on. The
+ *       broker may have received the message before the connection was
+ *       lost, so delivery is at least once.</li>
+ * </ul>
+ *
+ * @author Naresh Bhatia
+ */
+public class JmsProducerPool {
+    private static final Logger logger =
+        LoggerFactory.getLogger(JmsProducerPool.class);
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    // ----- Constructors -----
+    public JmsProducerPool(ConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public JmsProducerPool(ConnectionFactory connectionFactory, long idleTimeoutMillis) {
+        this.connectionFactory = connectionFactory;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    // ----- Commands -----
+    /**
+     * Sends a text message to the specified destination.
+     */
+    public void sendText(Destination destination, String text) throws JMSException {
+        Channel channel = getChannel(false);
+        try {
+            channel.send(destination, text);
+        }
+        catch (JMSException e) {
+            boolean lost = channel.isLost();
+            discard(channel);
+            if (!lost) {
+                throw e;
+            }
+            logger.warn("Failed to send message to " + destination + ", reconnecting", e);
+            getChannel(false).send(destination, text);
+        }
+    }
+
+    /**
+     * Sends text messages to the specified destination in one local
+     * transaction, so that they are delivered in the order of the list and
+     * either all of them are delivered or none is. If the transaction
+     * fails because the connection was lost, the whole batch is sent once
+     * more over a new channel, which delivers it twice if the connection
+     * was lost after the commit reached the broker.
+     */
+    public void sendTexts(Destination destination, List<String> texts) throws JMSException {
+        Channel channel = getChannel(true);
+        try {
+            channel.sendAll(destination, texts);
+        }
+        catch (JMSException e) {
+            boolean lost = channel.isLost();
+            discard(channel);
+            if (!lost) {
+                throw e;
+            }
+            logger.warn("Failed to send " + texts.size() + " messages to " +
+                    destination + ", reconnecting", e);
+            getChannel(true).sendAll(destination, texts);
+        }
+    }
+
+    /**
+     * Closes all channels. Channels of threads that send after this call
+     * are created anew.
+     */
+    public void close() {
+        for (Channel channel : channels) {
+            discard(channel);
+        }
+    }
+
+    private void discard(Channel channel) {
+        channels.remove(channel);
+        ThreadLocal<Channel> threadChannel = getThreadChannel(channel.transacted);
+        if (threadChannel.get() == channel) {
+            threadChannel.remove();
+        }
+        channel.close();
+    }
+
+    // ----- Queries -----
+    private Channel getChannel(boolean transacted) throws JMSException {
+        ThreadLocal<Channel> threadChannel = getThreadChannel(transacted);
+        Channel channel = threadChannel.get();
+        if (channel != null && !channel.isHealthy()) {
+            discard(channel);
+            channel = null;
+        }
+        if (channel == null) {
+            channel = new Channel(connectionFactory.createConnection(), transacted);
+            threadChannel.set(channel);
+            channels.add(channel);
+        }
+        return channel;
+    }
+
+    private ThreadLocal<Channel> getThreadChannel(boolean transacted) {
+        return transacted ? currentTransactedChannel : currentChannel;
+    }
+
+    // ----- Attributes -----
+    private final ConnectionFactory connectionFactory;
+    private final long idleTimeoutMillis;
+    private final ThreadLocal<Channel> currentChannel = new ThreadLocal<Channel>();
+    private final ThreadLocal<Channel> currentTransactedChannel =
+        new ThreadLocal<Channel>();
+
+    /** All open channels, so that they can be closed */
+    private final Set<Channel> channels =
+        Collections.newSetFromMap(new ConcurrentHashMap<Channel, Boolean>());
+
+    // ----- Nested Types -----
+    /**
+     * A connection with one session and the producers created on it. Used
+     * by one thread only, except for the broken flag and close().
+     */
+    private class Channel implements ExceptionListener {
+        private final Connection connection;
+        private final boolean transacted;
+        private final Session session;
+        private final Map<Destination, MessageProducer> producers =
+            new HashMap<Destination, MessageProducer>();
+        private volatile boolean broken;
+        private long lastUsedMillis = System.currentTimeMillis();
+
+        public Channel(Connection connection, boolean transacted) throws JMSException {
+            this.connection = connection;
+            this.transacted = transacted;
+            try {
+                connection.setExceptionListener(this);
+            }
+            catch (JMSException e) {
+                logger.debug("Exception listener not supported, " +
+                        "connection failures are detected on send");
+            }
+            try {
+                this.session = connection.createSession(transacted,
+                        transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+            }
+            catch (JMSException e) {
+                close();
+                throw e;
+            }
+        }
+
+        public void send(Destination destination, String text) throws JMSException {
+            getProducer(destination).send(session.createTextMessage(text));
+            lastUsedMillis = System.currentTimeMillis();
+        }
+
+        /**
+         * Sends the messages and commits the session. A channel that fails
+         * is discarded, closing the connection rolls back the messages
+         * already sent.
+         */
+        public void sendAll(Destination destination, List<String> texts) throws JMSException {
+            MessageProducer producer = getProducer(destination);
+            for (String text : texts) {
+                producer.send(session.createTextMessage(text));
+            }
+            session.commit();
+            lastUsedMillis = System.currentTimeMillis();
+        }
+
+        private MessageProducer getProducer(Destination destination) throws JMSException {
+            MessageProducer producer = producers.get(destination);
+            if (producer == null) {
+                producer = session.createProducer(destination);
+                producers.put(destination, producer);
+            }
+            return producer;
+        }
+
+        public boolean isHealthy() {
+            return !broken &&
+                System.currentTimeMillis() - lastUsedMillis < idleTimeoutMillis;
+        }
+
+        /**
+         * Returns true if the connection reported an error or has been
+         * closed.
+         */
+        public boolean isLost() {
+            if (broken) {
+                return true;
+            }
+            try {
+                connection.getClientID();
+                return false;
+            }
+            catch (javax.jms.IllegalStateException e) {
+                return true; // thrown by closed connections
+            }
+            catch (JMSException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void onException(JMSException exception) {
+            logger.warn("JMS connection failed", exception);
+            broken = true;
+        }
+
+        public void close() {
+            broken = true;
+            try {connection.close();} catch (Exception e) {}
+        }
+    }
+}
\ No newline at end of file
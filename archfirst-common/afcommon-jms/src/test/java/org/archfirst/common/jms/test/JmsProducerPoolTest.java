@@ -0,0 +1,307 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.common.jms.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.archfirst.common.jms.JmsProducerPool;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * JmsProducerPoolTest
+ *
+ * @author Naresh Bhatia
+ */
+public class JmsProducerPoolTest {
+
+    private static final Destination DESTINATION = new TestQueue();
+
+    private TestConnectionFactory connectionFactory;
+    private JmsProducerPool pool;
+
+    @BeforeMethod
+    public void setUp() {
+        connectionFactory = new TestConnectionFactory();
+        pool = new JmsProducerPool(connectionFactory.getConnectionFactory());
+    }
+
+    @Test
+    public void testChannelReused() throws JMSException {
+        pool.sendText(DESTINATION, "1");
+        pool.sendText(DESTINATION, "2");
+
+        Assert.assertEquals(connectionFactory.connections.size(), 1);
+        Assert.assertEquals(getConnection(0).delivered, Arrays.asList("1", "2"));
+    }
+
+    @Test
+    public void testResendWhenConnectionReportsError() throws JMSException {
+        pool.sendText(DESTINATION, "1");
+        getConnection(0).failNextSend(true);
+        pool.sendText(DESTINATION, "2");
+
+        Assert.assertEquals(connectionFactory.connections.size(), 2);
+        Assert.assertTrue(getConnection(0).closed);
+        Assert.assertEquals(getConnection(0).delivered, Arrays.asList("1"));
+        Assert.assertEquals(getConnection(1).delivered, Arrays.asList("2"));
+    }
+
+    @Test
+    public void testResendWhenConnectionClosed() throws JMSException {
+        pool.sendText(DESTINATION, "1");
+        getConnection(0).closed = true;
+        pool.sendText(DESTINATION, "2");
+
+        Assert.assertEquals(connectionFactory.connections.size(), 2);
+        Assert.assertEquals(getConnection(0).delivered, Arrays.asList("1"));
+        Assert.assertEquals(getConnection(1).delivered, Arrays.asList("2"));
+    }
+
+    @Test
+    public void testNoResendWhenConnectionHealthy() throws JMSException {
+        pool.sendText(DESTINATION, "1");
+        getConnection(0).failNextSend(false);
+        try {
+            pool.sendText(DESTINATION, "2");
+            Assert.fail("Send failure not passed on");
+        }
+        catch (JMSException e) {
+        }
+        Assert.assertEquals(connectionFactory.connections.size(), 1);
+        Assert.assertEquals(getConnection(0).delivered, Arrays.asList("1"));
+
+        // The failed channel is replaced by the next send
+        Assert.assertTrue(getConnection(0).closed);
+        pool.sendText(DESTINATION, "3");
+        Assert.assertEquals(connectionFactory.connections.size(), 2);
+        Assert.assertEquals(getConnection(1).delivered, Arrays.asList("3"));
+    }
+
+    @Test
+    public void testIdleChannelReplaced() throws Exception {
+        pool = new JmsProducerPool(connectionFactory.getConnectionFactory(), 10);
+        pool.sendText(DESTINATION, "1");
+        Thread.sleep(50);
+        pool.sendText(DESTINATION, "2");
+
+        Assert.assertEquals(connectionFactory.connections.size(), 2);
+        Assert.assertTrue(getConnection(0).closed);
+        Assert.assertEquals(getConnection(0).delivered, Arrays.asList("1"));
+        Assert.assertEquals(getConnection(1).delivered, Arrays.asList("2"));
+    }
+
+    @Test
+    public void testBatchResendWhenConnectionReportsError() throws JMSException {
+        pool.sendTexts(DESTINATION, Arrays.asList("1", "2"));
+        getConnection(0).failNextSend(true);
+        pool.sendTexts(DESTINATION, Arrays.asList("3", "4"));
+
+        Assert.assertEquals(connectionFactory.connections.size(), 2);
+        Assert.assertEquals(getConnection(0).delivered, Arrays.asList("1", "2"));
+        Assert.assertEquals(getConnection(1).delivered, Arrays.asList("3", "4"));
+    }
+
+    @Test
+    public void testNoBatchResendWhenConnectionHealthy() throws JMSException {
+        pool.sendTexts(DESTINATION, Arrays.asList("1", "2"));
+        getConnection(0).failNextSend(false);
+        try {
+            pool.sendTexts(DESTINATION, Arrays.asList("3", "4"));
+            Assert.fail("Commit failure not passed on");
+        }
+        catch (JMSException e) {
+        }
+        Assert.assertEquals(connectionFactory.connections.size(), 1);
+        Assert.assertEquals(getConnection(0).delivered, Arrays.asList("1", "2"));
+    }
+
+    private TestConnection getConnection(int index) {
+        return connectionFactory.connections.get(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+        return (T)Proxy.newProxyInstance(
+                JmsProducerPoolTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    /**
+     * A connection factory that keeps the connections it creates.
+     */
+    private static class TestConnectionFactory {
+        private final List<TestConnection> connections = new ArrayList<TestConnection>();
+
+        public ConnectionFactory getConnectionFactory() {
+            return createProxy(ConnectionFactory.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    TestConnection connection = new TestConnection();
+                    connections.add(connection);
+                    return connection.getConnection();
+                }
+            });
+        }
+    }
+
+    /**
+     * A connection that records the messages delivered over it, that is
+     * sent outside a transaction or committed. Can be made to fail the next
+     * send or commit.
+     */
+    private static class TestConnection {
+        private final List<String> delivered = new ArrayList<String>();
+        private final List<String> uncommitted = new ArrayList<String>();
+        private ExceptionListener exceptionListener;
+        private boolean closed;
+        private boolean failNextSend;
+        private boolean reportFailure;
+
+        /**
+         * Has the next send or commit fail, reporting the failure to the
+         * exception listener if specified.
+         */
+        public void failNextSend(boolean reportFailure) {
+            this.failNextSend = true;
+            this.reportFailure = reportFailure;
+        }
+
+        public Connection getConnection() {
+            return createProxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws JMSException {
+                    if (method.getName().equals("close")) {
+                        closed = true;
+                        uncommitted.clear();
+                        return null;
+                    }
+                    checkOpen();
+                    if (method.getName().equals("setExceptionListener")) {
+                        exceptionListener = (ExceptionListener)args[0];
+                    }
+                    else if (method.getName().equals("createSession")) {
+                        return createSession((Boolean)args[0]);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private Session createSession(final boolean transacted) {
+            return createProxy(Session.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws JMSException {
+                    checkOpen();
+                    if (method.getName().equals("createProducer")) {
+                        return createProducer(transacted);
+                    }
+                    if (method.getName().equals("createTextMessage")) {
+                        return createTextMessage((String)args[0]);
+                    }
+                    if (method.getName().equals("commit")) {
+                        checkSend();
+                        delivered.addAll(uncommitted);
+                        uncommitted.clear();
+                    }
+                    else if (method.getName().equals("rollback")) {
+                        uncommitted.clear();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private MessageProducer createProducer(final boolean transacted) {
+            return createProxy(MessageProducer.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws JMSException {
+                    checkOpen();
+                    if (method.getName().equals("send")) {
+                        String text = ((TextMessage)args[0]).getText();
+                        if (transacted) {
+                            uncommitted.add(text);
+                        }
+                        else {
+                            checkSend();
+                            delivered.add(text);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private TextMessage createTextMessage(final String text) {
+            return createProxy(TextMessage.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().equals("getText") ? text : null;
+                }
+            });
+        }
+
+        private void checkOpen() throws JMSException {
+            if (closed) {
+                throw new javax.jms.IllegalStateException("Connection is closed");
+            }
+        }
+
+        private void checkSend() throws JMSException {
+            if (failNextSend) {
+                failNextSend = false;
+                JMSException e = new JMSException("Send failed");
+                if (reportFailure) {
+                    exceptionListener.onException(e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A queue that is only compared by identity.
+     */
+    private static class TestQueue implements Queue {
+        @Override
+        public String getQueueName() {
+            return "TestQueue";
+        }
+
+        @Override
+        public String toString() {
+            return getQueueName();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.common.datetime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds that can be recorded to from many
+ * threads without locking. Recording a value is one atomic increment, plus
+ * a compare-and-set when the value is a new maximum.
+ *
+ * Values are counted in buckets of exponentially increasing width: values
+ * below 32 have a bucket each, larger values share a bucket with values that
+ * have the same 5 most significant bits. Percentiles are therefore accurate
+ * to within about 6%. Values of 2^42 nanoseconds (about 73 minutes) and
+ * more are counted in the last bucket; the maximum is kept exactly.
+ *
+ * Reading the histogram while values are being recorded gives approximate
+ * results, which is good enough for monitoring.
+ *
+ * @author Naresh Bhatia
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final long HIGHEST_TRACKABLE_VALUE = (1L << 42) - 1;
+    private static final int BUCKET_COUNT = getIndex(HIGHEST_TRACKABLE_VALUE) + 1;
+
+    // ----- Commands -----
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(getIndex(Math.min(value, HIGHEST_TRACKABLE_VALUE)));
+
+        long currentMax;
+        while (value > (currentMax = maxNanos.get())) {
+            if (maxNanos.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Clears the histogram. Values recorded while the histogram is being
+     * cleared may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        maxNanos.set(0);
+    }
+
+    // ----- Queries -----
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the value below or at which the specified percentage of the
+     * recorded values fall, 0 if nothing has been recorded. The value
+     * returned is the highest value of the bucket that holds the percentile,
+     * but never more than the maximum.
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * count));
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulativeCount += snapshot[i];
+            if (cumulativeCount >= rank) {
+                return Math.min(getHighestValue(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Values below SUB_BUCKET_COUNT are their own index. Larger values are
+     * shifted right until only their SUB_BUCKET_BITS most significant bits
+     * are left; the number of shifts selects a group of HALF_SUB_BUCKET_COUNT
+     * buckets and the remaining bits the bucket within the group.
+     */
+    private static int getIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (int)(HALF_SUB_BUCKET_COUNT * shift + (value >>> shift));
+    }
+
+    private static long getHighestValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = index - HALF_SUB_BUCKET_COUNT * shift;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    // ----- Attributes -----
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong maxNanos = new AtomicLong();
+}
\ No newline at end of file
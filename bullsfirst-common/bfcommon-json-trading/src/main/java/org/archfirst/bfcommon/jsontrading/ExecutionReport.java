@@ -36,6 +36,7 @@ public class ExecutionReport extends JsonMessage {
     private int cumQty;
     private Money lastPrice;
     private Money weightedAvgPrice;
+    private Money limitPrice;
 
     // ----- Constructors -----
     public ExecutionReport() {
@@ -152,4 +153,15 @@ public class ExecutionReport extends JsonMessage {
     public void setWeightedAvgPrice(Money weightedAvgPrice) {
         this.weightedAvgPrice = weightedAvgPrice;
     }
+
+    /**
+     * Returns the limit price of the order, null for orders without one.
+     * Reports the new limit price of a replaced order.
+     */
+    public Money getLimitPrice() {
+        return limitPrice;
+    }
+    public void setLimitPrice(Money limitPrice) {
+        this.limitPrice = limitPrice;
+    }
 }
\ No newline at end of file
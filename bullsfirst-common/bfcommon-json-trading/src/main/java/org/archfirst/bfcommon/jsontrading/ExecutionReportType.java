@@ -25,5 +25,6 @@ public enum ExecutionReportType {
     DoneForDay,
     New,
     PendingCancel,
+    Replaced,
     Trade;
 }
\ No newline at end of file
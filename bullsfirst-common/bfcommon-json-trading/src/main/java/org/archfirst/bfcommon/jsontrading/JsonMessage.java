@@ -31,6 +31,7 @@ import org.codehaus.jackson.annotate.JsonTypeInfo.Id;
     @Type(value = NewOrderSingle.class, name = "NewOrderSingle"),
     @Type(value = ExecutionReport.class, name = "ExecutionReport"),
     @Type(value = OrderCancelReject.class, name = "OrderCancelReject"),
-    @Type(value = OrderCancelRequest.class, name = "OrderCancelRequest")})
+    @Type(value = OrderCancelRequest.class, name = "OrderCancelRequest"),
+    @Type(value = OrderCancelReplaceRequest.class, name = "OrderCancelReplaceRequest")})
 public abstract class JsonMessage {
 }
\ No newline at end of file
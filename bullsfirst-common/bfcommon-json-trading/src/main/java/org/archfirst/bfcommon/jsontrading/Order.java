@@ -29,6 +29,7 @@ public class Order {
     private int quantity;
     private OrderType type;
     private Money limitPrice;
+    private Money stopPrice;
     private OrderTerm term;
     private boolean allOrNone;
     private OrderStatus status;
@@ -48,6 +49,22 @@ public class Order {
             OrderTerm term,
             boolean allOrNone,
             OrderStatus status) {
+        this(creationTime, clientOrderId, side, symbol, quantity, type,
+                limitPrice, null, term, allOrNone, status);
+    }
+
+    public Order(
+            String creationTime,
+            String clientOrderId,
+            OrderSide side,
+            String symbol,
+            int quantity,
+            OrderType type,
+            Money limitPrice,
+            Money stopPrice,
+            OrderTerm term,
+            boolean allOrNone,
+            OrderStatus status) {
         this.creationTime = creationTime;
         this.clientOrderId = clientOrderId;
         this.side = side;
@@ -55,6 +72,7 @@ public class Order {
         this.quantity = quantity;
         this.type = type;
         this.limitPrice = limitPrice;
+        this.stopPrice = stopPrice;
         this.term = term;
         this.allOrNone = allOrNone;
         this.status = status;
@@ -110,6 +128,13 @@ public class Order {
         this.limitPrice = limitPrice;
     }
 
+    public Money getStopPrice() {
+        return stopPrice;
+    }
+    private void setStopPrice(Money stopPrice) {
+        this.stopPrice = stopPrice;
+    }
+
     public OrderTerm getTerm() {
         return term;
     }
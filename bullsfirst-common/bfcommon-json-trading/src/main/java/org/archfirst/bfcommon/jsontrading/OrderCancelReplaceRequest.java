@@ -0,0 +1,85 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfcommon.jsontrading;
+import org.codehaus.jackson.annotate.JsonTypeName;
+
+/**
+ * OrderCancelReplaceRequest. Replaces the quantity and, if specified, the
+ * limit price of an order, which keeps its clientOrderId.
+ *
+ * @author Naresh Bhatia
+ */
+@JsonTypeName("OrderCancelReplaceRequest")
+public class OrderCancelReplaceRequest extends JsonMessage {
+    
+    private String clientOrderId;
+    private String symbol;
+    private String transactTime;
+    private int quantity;
+    private Money limitPrice;
+
+    // ----- Constructors -----
+    public OrderCancelReplaceRequest() {
+    }
+
+    public OrderCancelReplaceRequest(
+            String clientOrderId,
+            String symbol,
+            String transactTime,
+            int quantity,
+            Money limitPrice) {
+        this.clientOrderId = clientOrderId;
+        this.symbol = symbol;
+        this.transactTime = transactTime;
+        this.quantity = quantity;
+        this.limitPrice = limitPrice;
+    }
+    
+    // ----- Getters and Setters -----
+    public String getClientOrderId() {
+        return clientOrderId;
+    }
+    public void setClientOrderId(String clientOrderId) {
+        this.clientOrderId = clientOrderId;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getTransactTime() {
+        return transactTime;
+    }
+    public void setTransactTime(String transactTime) {
+        this.transactTime = transactTime;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public Money getLimitPrice() {
+        return limitPrice;
+    }
+    public void setLimitPrice(Money limitPrice) {
+        this.limitPrice = limitPrice;
+    }
+}
\ No newline at end of file
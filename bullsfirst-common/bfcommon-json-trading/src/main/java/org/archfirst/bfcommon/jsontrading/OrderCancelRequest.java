@@ -26,13 +26,15 @@ import org.codehaus.jackson.annotate.JsonTypeName;
 public class OrderCancelRequest extends JsonMessage {
     
     private String clientOrderId;
+    private String symbol;
 
     // ----- Constructors -----
     public OrderCancelRequest() {
     }
 
-    public OrderCancelRequest(String clientOrderId) {
+    public OrderCancelRequest(String clientOrderId, String symbol) {
         this.clientOrderId = clientOrderId;
+        this.symbol = symbol;
     }
     
     // ----- Getters and Setters -----
@@ -42,4 +44,10 @@ public class OrderCancelRequest extends JsonMessage {
     public void setClientOrderId(String clientOrderId) {
         this.clientOrderId = clientOrderId;
     }
+    public String getSymbol() {
+        return symbol;
+    }
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
 }
\ No newline at end of file
@@ -22,5 +22,7 @@ package org.archfirst.bfcommon.jsontrading;
  */
 public enum OrderTerm {
     GoodForTheDay,
-    GoodTilCanceled;
+    GoodTilCanceled,
+    ImmediateOrCancel,
+    FillOrKill;
 }
\ No newline at end of file
@@ -22,5 +22,7 @@ package org.archfirst.bfcommon.jsontrading;
  */
 public enum OrderType {
     Market,
-    Limit;
+    Limit,
+    Stop,
+    StopLimit;
 }
\ No newline at end of file
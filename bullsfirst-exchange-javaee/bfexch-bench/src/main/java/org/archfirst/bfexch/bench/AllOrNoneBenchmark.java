@@ -0,0 +1,85 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a crossing pair of orders in a book whose sell side holds many
+ * AllOrNone orders. The AllOrNone orders cross the incoming buy order on
+ * price but are too large for it to fill, which is the case that used to
+ * make matching scan the whole side of the book.
+ *
+ * @author Naresh Bhatia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AllOrNoneBenchmark {
+
+    private static final int PRICE_LEVELS = 100;
+
+    @Param({"0", "1000", "100000"})
+    private int allOrNoneDepth;
+
+    private ExchangeFixture fixture;
+    private DecimalQuantity quantity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new ExchangeFixture();
+        quantity = new DecimalQuantity(100);
+
+        // Sell orders from 99.00 to 99.99, below the market price
+        Money[] prices = ExchangeFixture.createPrices(PRICE_LEVELS, "-0.01");
+        DecimalQuantity allOrNoneQuantity = new DecimalQuantity(1000);
+        for (int i = 0; i < allOrNoneDepth; i++) {
+            fixture.placeOrder(fixture.createLimitOrder(
+                    OrderSide.Sell, allOrNoneQuantity,
+                    prices[i % PRICE_LEVELS], true));
+        }
+    }
+
+    @Benchmark
+    public Order crossing() {
+        fixture.placeOrder(fixture.createLimitOrder(
+                OrderSide.Buy, quantity, ExchangeFixture.MARKET_PRICE, false));
+        Order sellOrder = fixture.createLimitOrder(
+                OrderSide.Sell, quantity, ExchangeFixture.MARKET_PRICE, false);
+        fixture.placeOrder(sellOrder);
+        return sellOrder;
+    }
+}
\ No newline at end of file
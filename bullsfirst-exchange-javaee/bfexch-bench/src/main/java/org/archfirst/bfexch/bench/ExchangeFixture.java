@@ -0,0 +1,156 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench;
+
+import java.lang.reflect.Field;
+
+import org.archfirst.bfexch.bench.mocks.CountingMarketDataEventPublisher;
+import org.archfirst.bfexch.bench.mocks.CountingOrderEventPublisher;
+import org.archfirst.bfexch.bench.mocks.InMemoryMarketDataRepository;
+import org.archfirst.bfexch.bench.mocks.InMemoryOrderRepository;
+import org.archfirst.bfexch.domain.marketdata.BarService;
+import org.archfirst.bfexch.domain.marketdata.MarketPrice;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceStore;
+import org.archfirst.bfexch.domain.marketdata.TimeAndSalesService;
+import org.archfirst.bfexch.domain.trading.MatchingEngine;
+import org.archfirst.bfexch.domain.trading.OrderBook;
+import org.archfirst.bfexch.domain.trading.OrderBookRegistry;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+
+/**
+ * A MatchingEngine wired by hand to in-memory stand-ins for its
+ * repositories and event publishers, trading a single symbol. The engine
+ * is called directly on the benchmark thread, the way a matching thread
+ * calls it.
+ *
+ * @author Naresh Bhatia
+ */
+public class ExchangeFixture {
+
+    public static final String SYMBOL = "AAPL";
+    public static final Money MARKET_PRICE = new Money("100.00");
+
+    public ExchangeFixture() {
+        InMemoryOrderRepository orderRepository = new InMemoryOrderRepository();
+        InMemoryMarketDataRepository marketDataRepository =
+            new InMemoryMarketDataRepository();
+        marketDataRepository.add(
+                new MarketPrice(SYMBOL, MARKET_PRICE, new DateTime()));
+
+        orderBookRegistry = new OrderBookRegistry();
+        inject(orderBookRegistry, "orderRepository", orderRepository);
+
+        matchingEngine = new MatchingEngine();
+        inject(matchingEngine, "orderBookRegistry", orderBookRegistry);
+        inject(matchingEngine, "orderRepository", orderRepository);
+        inject(matchingEngine, "orderEventPublisher", orderEventPublisher);
+        MarketPriceStore marketPriceStore = new MarketPriceStore();
+        inject(marketPriceStore, "marketDataRepository", marketDataRepository);
+        inject(matchingEngine, "marketPriceStore", marketPriceStore);
+        inject(matchingEngine, "timeAndSalesService", new TimeAndSalesService());
+        inject(matchingEngine, "marketDataEventPublisher", marketDataEventPublisher);
+        BarService barService = new BarService();
+        inject(barService, "marketDataEventPublisher", marketDataEventPublisher);
+        inject(matchingEngine, "barService", barService);
+    }
+
+    // ----- Commands -----
+    public void placeOrder(Order order) {
+        matchingEngine.placeOrder(order);
+    }
+
+    /**
+     * Takes a resting order out of the book, to keep the book the same size
+     * from one benchmark invocation to the next.
+     */
+    public void removeOrder(Order order) {
+        orderBookRegistry.remove(order);
+    }
+
+    // ----- Factory Methods -----
+    /**
+     * Creates a good-til-canceled limit order with a client order id of its
+     * own. Orders are created one millisecond apart, so that they arrive in
+     * the order of their creation.
+     */
+    public Order createLimitOrder(
+            OrderSide side, DecimalQuantity quantity, Money limitPrice,
+            boolean allOrNone) {
+        return new Order(
+                new DateTime(creationTime++),
+                "BENCH-" + (++lastOrderNumber),
+                side,
+                SYMBOL,
+                quantity,
+                OrderType.Limit,
+                limitPrice,
+                OrderTerm.GoodTilCanceled,
+                allOrNone);
+    }
+
+    /**
+     * Returns the prices from MARKET_PRICE plus (or minus, if the step is
+     * negative) the first step, outwards by one step at a time.
+     */
+    public static Money[] createPrices(int count, String step) {
+        Money[] prices = new Money[count];
+        Money stepAmount = new Money(step);
+        Money price = MARKET_PRICE;
+        for (int i = 0; i < count; i++) {
+            price = price.plus(stepAmount);
+            prices[i] = price;
+        }
+        return prices;
+    }
+
+    public static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(
+                    "Could not inject " + fieldName + " into " + target, e);
+        }
+    }
+
+    // ----- Queries -----
+    public OrderBook getOrderBook() {
+        return orderBookRegistry.getOrderBook(SYMBOL);
+    }
+
+    // ----- Attributes -----
+    private final MatchingEngine matchingEngine;
+    private final OrderBookRegistry orderBookRegistry;
+    private final CountingOrderEventPublisher orderEventPublisher =
+        new CountingOrderEventPublisher();
+    private final CountingMarketDataEventPublisher marketDataEventPublisher =
+        new CountingMarketDataEventPublisher();
+    private long creationTime = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    private long lastOrderNumber;
+
+    // ----- Getters -----
+    public CountingOrderEventPublisher getOrderEventPublisher() {
+        return orderEventPublisher;
+    }
+}
\ No newline at end of file
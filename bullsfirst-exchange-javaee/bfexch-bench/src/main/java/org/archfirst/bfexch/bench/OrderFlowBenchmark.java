@@ -0,0 +1,93 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a pair of orders that cross with a pair that does not. Both
+ * start from, and leave behind, an empty book.
+ *
+ * @author Naresh Bhatia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrderFlowBenchmark {
+
+    private ExchangeFixture fixture;
+    private DecimalQuantity quantity;
+    private Money bidPrice;
+    private Money askPrice;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new ExchangeFixture();
+        quantity = new DecimalQuantity(100);
+        bidPrice = new Money("99.50");
+        askPrice = new Money("100.50");
+    }
+
+    /**
+     * A buy order rests in the book and is then filled by a sell order at
+     * the same price.
+     */
+    @Benchmark
+    public Order crossing() {
+        fixture.placeOrder(fixture.createLimitOrder(
+                OrderSide.Buy, quantity, ExchangeFixture.MARKET_PRICE, false));
+        Order sellOrder = fixture.createLimitOrder(
+                OrderSide.Sell, quantity, ExchangeFixture.MARKET_PRICE, false);
+        fixture.placeOrder(sellOrder);
+        return sellOrder;
+    }
+
+    /**
+     * A buy order and a sell order that do not cross both rest in the book
+     * and are then taken out again.
+     */
+    @Benchmark
+    public Order nonCrossing() {
+        Order buyOrder = fixture.createLimitOrder(
+                OrderSide.Buy, quantity, bidPrice, false);
+        Order sellOrder = fixture.createLimitOrder(
+                OrderSide.Sell, quantity, askPrice, false);
+        fixture.placeOrder(buyOrder);
+        fixture.placeOrder(sellOrder);
+        fixture.removeOrder(buyOrder);
+        fixture.removeOrder(sellOrder);
+        return sellOrder;
+    }
+}
\ No newline at end of file
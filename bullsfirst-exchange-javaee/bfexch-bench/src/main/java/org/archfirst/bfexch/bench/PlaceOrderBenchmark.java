@@ -0,0 +1,89 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of placing an order that does not cross as a function
+ * of the number of orders resting in the book. The resting orders are spread
+ * over 100 price levels on each side, from 99.99 down to 99.00 for buys and
+ * from 100.01 up to 101.00 for sells. Each invocation places a buy order at
+ * 99.50, which rests among the buy levels (once the book is deep enough to
+ * reach them) without crossing, and takes it out again, so the book keeps
+ * its size.
+ *
+ * @author Naresh Bhatia
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PlaceOrderBenchmark {
+
+    private static final int PRICE_LEVELS = 100;
+
+    @Param({"10", "1000", "100000"})
+    private int bookDepth;
+
+    private ExchangeFixture fixture;
+    private DecimalQuantity quantity;
+    private Money limitPrice;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new ExchangeFixture();
+        quantity = new DecimalQuantity(100);
+        limitPrice = new Money("99.50");
+
+        Money[] buyPrices = ExchangeFixture.createPrices(PRICE_LEVELS, "-0.01");
+        Money[] sellPrices = ExchangeFixture.createPrices(PRICE_LEVELS, "0.01");
+        for (int i = 0; i < bookDepth; i++) {
+            Money[] prices = (i % 2 == 0) ? buyPrices : sellPrices;
+            OrderSide side = (i % 2 == 0) ? OrderSide.Buy : OrderSide.Sell;
+            fixture.placeOrder(fixture.createLimitOrder(
+                    side, quantity, prices[(i / 2) % PRICE_LEVELS], false));
+        }
+    }
+
+    @Benchmark
+    public Order placeOrder() {
+        Order order = fixture.createLimitOrder(
+                OrderSide.Buy, quantity, limitPrice, false);
+        fixture.placeOrder(order);
+        fixture.removeOrder(order);
+        return order;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.archfirst.bfexch.bench.mocks.CountingMarketDataEventPublisher;
+import org.archfirst.bfexch.bench.mocks.DirectTransactionRunner;
+import org.archfirst.bfexch.bench.mocks.InMemoryMarketDataRepository;
+import org.archfirst.bfexch.bench.mocks.InMemoryOrderRepository;
+import org.archfirst.bfexch.domain.marketdata.MarketDataService;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthService;
+import org.archfirst.bfexch.domain.marketdata.MarketPrice;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceStore;
+import org.archfirst.bfexch.domain.trading.MatchingDispatcher;
+import org.archfirst.bfexch.domain.trading.OrderBookRegistry;
+import org.archfirst.bfexch.domain.trading.journal.OrderJournal;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.trading.order.OrderWriter;
+import org.archfirst.bfexch.domain.trading.snapshot.SnapshotService;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures restoring the order books from a snapshot on restart. The
+ * snapshot holds the specified number of resting good-til-canceled limit
+ * orders, spread evenly over SYMBOLS symbols and none of them crossing.
+ * The rest of the restart - refreshing the orders executed since the
+ * snapshot from the database and replaying the tail of the journal -
+ * depends on the database and on the traffic before the restart, and is
+ * not included. The snapshot file is read from the page cache.
+ *
+ * @author Naresh Bhatia
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class SnapshotRestoreBenchmark {
+
+    private static final int SYMBOLS = 1000;
+    private static final int PRICE_LEVELS = 50;
+
+    @Param({"1000000"})
+    private int restingOrders;
+
+    private File directory;
+    private MatchingDispatcher matchingDispatcher;
+    private SnapshotService snapshotService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = File.createTempFile("snapshot", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        final String directoryName = directory.getPath();
+        ConfigurationService configurationService = new ConfigurationService() {
+            @Override
+            public String getString(String key) {
+                return ConfigConstants.PROP_SNAPSHOT_DIRECTORY.equals(key) ?
+                        directoryName : null;
+            }
+        };
+
+        InMemoryOrderRepository orderRepository = new InMemoryOrderRepository();
+        OrderBookRegistry orderBookRegistry = new OrderBookRegistry();
+        ExchangeFixture.inject(orderBookRegistry, "orderRepository", orderRepository);
+
+        InMemoryMarketDataRepository marketDataRepository =
+            new InMemoryMarketDataRepository();
+        for (int i = 0; i < SYMBOLS; i++) {
+            marketDataRepository.add(new MarketPrice(getSymbol(i),
+                    ExchangeFixture.MARKET_PRICE, new DateTime()));
+        }
+        MarketPriceStore marketPriceStore = new MarketPriceStore();
+        ExchangeFixture.inject(marketPriceStore, "marketDataRepository", marketDataRepository);
+        MarketDataService marketDataService = new MarketDataService();
+        ExchangeFixture.inject(marketDataService, "marketPriceStore", marketPriceStore);
+
+        MarketDepthService marketDepthService = new MarketDepthService();
+        ExchangeFixture.inject(marketDepthService, "marketDataEventPublisher",
+                new CountingMarketDataEventPublisher());
+        matchingDispatcher = new MatchingDispatcher();
+        ExchangeFixture.inject(matchingDispatcher, "transactionRunner", new DirectTransactionRunner());
+        ExchangeFixture.inject(matchingDispatcher, "orderBookRegistry", orderBookRegistry);
+        ExchangeFixture.inject(matchingDispatcher, "marketDepthService", marketDepthService);
+
+        // Buy orders below the market price, sell orders above it
+        Money[] buyPrices = ExchangeFixture.createPrices(PRICE_LEVELS, "-0.01");
+        Money[] sellPrices = ExchangeFixture.createPrices(PRICE_LEVELS, "0.01");
+        DecimalQuantity quantity = new DecimalQuantity(100);
+        long creationTime = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+        for (int i = 0; i < restingOrders; i++) {
+            boolean buy = (i % 2 == 0);
+            int level = (i / 2) % PRICE_LEVELS;
+            Order order = new Order(
+                    new DateTime(creationTime++),
+                    "SNAP-" + i,
+                    buy ? OrderSide.Buy : OrderSide.Sell,
+                    getSymbol(i / 2 / PRICE_LEVELS % SYMBOLS),
+                    quantity,
+                    OrderType.Limit,
+                    buy ? buyPrices[level] : sellPrices[level],
+                    OrderTerm.GoodTilCanceled,
+                    false);
+            order.accept(orderRepository);
+            orderBookRegistry.add(order);
+        }
+
+        // Journal and write-behind are left disabled
+        snapshotService = new SnapshotService();
+        ExchangeFixture.inject(snapshotService, "configurationService", configurationService);
+        ExchangeFixture.inject(snapshotService, "orderBookRegistry", orderBookRegistry);
+        ExchangeFixture.inject(snapshotService, "matchingDispatcher", matchingDispatcher);
+        ExchangeFixture.inject(snapshotService, "orderJournal", new OrderJournal());
+        ExchangeFixture.inject(snapshotService, "marketDataService", marketDataService);
+        ExchangeFixture.inject(snapshotService, "orderWriter", new OrderWriter());
+        snapshotService.open();
+        snapshotService.takeSnapshot();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        matchingDispatcher.shutdown();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public SnapshotService.SnapshotHeader restore() {
+        return snapshotService.restoreLatest();
+    }
+
+    private static String getSymbol(int i) {
+        return String.format("S%04d", i);
+    }
+}
\ No newline at end of file
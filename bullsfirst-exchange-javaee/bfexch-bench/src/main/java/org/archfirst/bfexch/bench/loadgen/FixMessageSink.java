@@ -0,0 +1,86 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import java.util.Date;
+
+import org.archfirst.bfexch.domain.broker.BrokerMessageProcessor;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.infra.fixtrading.converters.InstrumentConverter;
+import org.archfirst.bfexch.infra.fixtrading.converters.MoneyConverter;
+import org.archfirst.bfexch.infra.fixtrading.converters.OrderQuantityConverter;
+import org.archfirst.bfexch.infra.fixtrading.converters.OrderSideConverter;
+import org.archfirst.bfexch.infra.fixtrading.converters.OrderTermConverter;
+import org.archfirst.bfexch.infra.fixtrading.converters.OrderTypeConverter;
+
+import quickfix.Message;
+import quickfix.field.ClOrdID;
+import quickfix.field.ExecInst;
+import quickfix.field.OrigClOrdID;
+import quickfix.field.TransactTime;
+import quickfix.fix44.NewOrderSingle;
+import quickfix.fix44.OrderCancelRequest;
+
+/**
+ * Formats requests as FIX 4.4 messages, the way the OMS does, and passes
+ * the text to a BrokerMessageProcessor. The time taken to format a message
+ * is included in the measured latency.
+ *
+ * @author Naresh Bhatia
+ */
+public class FixMessageSink implements OrderFlowSink {
+
+    public FixMessageSink(BrokerMessageProcessor brokerMessageProcessor) {
+        this.brokerMessageProcessor = brokerMessageProcessor;
+    }
+
+    @Override
+    public void send(OrderFlowEvent event) {
+        Order order = event.getOrder();
+        Message message;
+        if (event.getType() == OrderFlowEvent.Type.NewOrderSingle) {
+            NewOrderSingle newOrderSingle = new NewOrderSingle(
+                    new ClOrdID(order.getClientOrderId()),
+                    OrderSideConverter.toFix(order.getSide()),
+                    new TransactTime(order.getCreationTime().toDate()),
+                    OrderTypeConverter.toFix(order.getType()));
+            newOrderSingle.set(InstrumentConverter.toFix(order.getSymbol()));
+            newOrderSingle.set(OrderQuantityConverter.toFix(order.getQuantity()));
+            if (order.getLimitPrice() != null) {
+                newOrderSingle.set(MoneyConverter.toFixPrice(order.getLimitPrice()));
+                newOrderSingle.set(MoneyConverter.toFixCurrency(order.getLimitPrice()));
+            }
+            newOrderSingle.set(OrderTermConverter.toFix(order.getTerm()));
+            if (order.isAllOrNone()) {
+                newOrderSingle.set(new ExecInst(Character.toString(ExecInst.ALL_OR_NONE)));
+            }
+            message = newOrderSingle;
+        }
+        else {
+            OrderCancelRequest orderCancelRequest = new OrderCancelRequest(
+                    new OrigClOrdID(order.getClientOrderId()),
+                    new ClOrdID(order.getClientOrderId()),
+                    OrderSideConverter.toFix(order.getSide()),
+                    new TransactTime(new Date()));
+            orderCancelRequest.set(InstrumentConverter.toFix(order.getSymbol()));
+            orderCancelRequest.set(OrderQuantityConverter.toFix(order.getQuantity()));
+            message = orderCancelRequest;
+        }
+        brokerMessageProcessor.processMessage(message.toString());
+    }
+
+    private final BrokerMessageProcessor brokerMessageProcessor;
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.archfirst.bfexch.domain.marketdata.MarketPrice;
+import org.archfirst.common.money.Money;
+import org.joda.time.DateTime;
+
+/**
+ * Reads the instruments and their market prices from the insert statements
+ * in bfexch-ddl (import-instruments.sql and import-prices.sql), so that the
+ * load generator trades the same symbols as a freshly loaded exchange.
+ *
+ * @author Naresh Bhatia
+ */
+public class InstrumentLoader {
+
+    private static final Pattern INSTRUMENT_PATTERN = Pattern.compile(
+            "^insert into Instrument .* values \\('([^']+)'");
+    private static final Pattern PRICE_PATTERN = Pattern.compile(
+            "^insert into MarketPrice .* values \\('([^']+)',\\s*'[^']*',\\s*([0-9.]+),\\s*'([A-Z]{3})'");
+
+    // ----- Queries -----
+    /**
+     * Returns the symbols in the instruments file, in the order of the file.
+     */
+    public static List<String> loadSymbols(File instrumentsFile) {
+        List<String> symbols = new ArrayList<String>();
+        for (String line : readLines(instrumentsFile)) {
+            Matcher matcher = INSTRUMENT_PATTERN.matcher(line);
+            if (matcher.find()) {
+                symbols.add(matcher.group(1));
+            }
+        }
+        return symbols;
+    }
+
+    public static List<MarketPrice> loadMarketPrices(File pricesFile) {
+        List<MarketPrice> marketPrices = new ArrayList<MarketPrice>();
+        DateTime effective = new DateTime();
+        for (String line : readLines(pricesFile)) {
+            Matcher matcher = PRICE_PATTERN.matcher(line);
+            if (matcher.find()) {
+                marketPrices.add(new MarketPrice(
+                        matcher.group(1),
+                        new Money(matcher.group(2),
+                                java.util.Currency.getInstance(matcher.group(3))),
+                        effective));
+            }
+        }
+        return marketPrices;
+    }
+
+    private static List<String> readLines(File file) {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not read " + file, e);
+        }
+        finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                }
+                catch (IOException e) {
+                    // nothing more to do
+                }
+            }
+        }
+        return lines;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import org.archfirst.bfcommon.jsontrading.JsonMessage;
+import org.archfirst.bfcommon.jsontrading.JsonMessageMapper;
+import org.archfirst.bfcommon.jsontrading.NewOrderSingle;
+import org.archfirst.bfcommon.jsontrading.OrderCancelRequest;
+import org.archfirst.bfcommon.jsontrading.OrderSide;
+import org.archfirst.bfcommon.jsontrading.OrderStatus;
+import org.archfirst.bfcommon.jsontrading.OrderTerm;
+import org.archfirst.bfcommon.jsontrading.OrderType;
+import org.archfirst.bfexch.domain.broker.BrokerMessageProcessor;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.infra.jsontrading.converters.MoneyConverter;
+import org.archfirst.bfexch.infra.jsontrading.converters.QuantityConverter;
+import org.archfirst.common.datetime.DateTimeUtil;
+
+/**
+ * Formats requests as JSON trading messages, the way the OMS does, and
+ * passes the text to a BrokerMessageProcessor. The time taken to format a
+ * message is included in the measured latency.
+ *
+ * @author Naresh Bhatia
+ */
+public class JsonMessageSink implements OrderFlowSink {
+
+    public JsonMessageSink(BrokerMessageProcessor brokerMessageProcessor) {
+        this.brokerMessageProcessor = brokerMessageProcessor;
+    }
+
+    @Override
+    public void send(OrderFlowEvent event) {
+        Order order = event.getOrder();
+        JsonMessage message;
+        if (event.getType() == OrderFlowEvent.Type.NewOrderSingle) {
+            message = new NewOrderSingle(
+                    new org.archfirst.bfcommon.jsontrading.Order(
+                            DateTimeUtil.toStringISODateTime(order.getCreationTime()),
+                            order.getClientOrderId(),
+                            OrderSide.valueOf(order.getSide().toString()),
+                            order.getSymbol(),
+                            QuantityConverter.toJson(order.getQuantity()),
+                            OrderType.valueOf(order.getType().toString()),
+                            MoneyConverter.toJson(order.getLimitPrice()),
+                            MoneyConverter.toJson(order.getStopPrice()),
+                            OrderTerm.valueOf(order.getTerm().toString()),
+                            order.isAllOrNone(),
+                            OrderStatus.PendingNew));
+        }
+        else {
+            message = new OrderCancelRequest(
+                    order.getClientOrderId(), order.getSymbol());
+        }
+        brokerMessageProcessor.processMessage(JsonMessageMapper.toString(message));
+    }
+
+    private final BrokerMessageProcessor brokerMessageProcessor;
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archfirst.bfexch.domain.trading.order.OrderAccepted;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelRejected;
+import org.archfirst.bfexch.domain.trading.order.OrderCanceled;
+import org.archfirst.bfexch.domain.trading.order.OrderDoneForDay;
+import org.archfirst.bfexch.domain.trading.order.OrderEventPublisher;
+import org.archfirst.bfexch.domain.trading.order.OrderExecuted;
+import org.archfirst.bfexch.domain.trading.order.OrderReplaced;
+
+/**
+ * An OrderEventPublisher that measures how long the exchange takes to answer
+ * each request. A new order is answered by OrderAccepted, a cancel request
+ * by OrderCanceled or OrderCancelRejected.
+ *
+ * Latency is measured from the time the request was due to be sent
+ * according to the target rate, not from the time it was actually sent.
+ * Otherwise a stall of the exchange, which also holds up the sender, would
+ * only show up in the latency of the one request that was in progress.
+ *
+ * Only requests registered through one of the expect methods are measured.
+ *
+ * @author Naresh Bhatia
+ */
+public class LatencyRecorder implements OrderEventPublisher {
+
+    public LatencyRecorder(int capacity) {
+        latencies = new long[capacity];
+    }
+
+    // ----- Commands -----
+    public void expectNewOrderSingle(String clOrdID, long dueNanos) {
+        pendingNewOrders.put(clOrdID, dueNanos);
+    }
+
+    public void expectOrderCancelRequest(String clOrdID, long dueNanos) {
+        pendingCancelRequests.put(clOrdID, dueNanos);
+    }
+
+    private void answered(ConcurrentMap<String, Long> pending, String clOrdID) {
+        Long dueNanos = pending.remove(clOrdID);
+        if (dueNanos == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        int index = answeredCount.getAndIncrement();
+        if (index < latencies.length) {
+            latencies[index] = now - dueNanos;
+        }
+        lastAnsweredNanos = now;
+    }
+
+    @Override
+    public void publish(OrderAccepted event) {
+        answered(pendingNewOrders, event.getOrder().getClientOrderId());
+    }
+
+    @Override
+    public void publish(OrderExecuted event) {
+    }
+
+    @Override
+    public void publish(OrderCanceled event) {
+        answered(pendingCancelRequests, event.getOrder().getClientOrderId());
+    }
+
+    @Override
+    public void publish(OrderCancelRejected event) {
+        answered(pendingCancelRequests, event.getClientOrderId());
+    }
+
+    @Override
+    public void publish(OrderReplaced event) {
+    }
+
+    @Override
+    public void publish(OrderDoneForDay event) {
+    }
+
+    // ----- Queries -----
+    public int getAnsweredCount() {
+        return Math.min(answeredCount.get(), latencies.length);
+    }
+
+    public long getLastAnsweredNanos() {
+        return lastAnsweredNanos;
+    }
+
+    /**
+     * Returns the latencies recorded so far in nanoseconds, sorted.
+     */
+    public long[] getSortedLatencies() {
+        long[] sorted = Arrays.copyOf(latencies, getAnsweredCount());
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // ----- Attributes -----
+    private final ConcurrentMap<String, Long> pendingNewOrders =
+        new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> pendingCancelRequests =
+        new ConcurrentHashMap<String, Long>();
+    private final long[] latencies;
+    private final AtomicInteger answeredCount = new AtomicInteger();
+    private volatile long lastAnsweredNanos;
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Settings for the load generator. Each setting is read from a properties
+ * file, can be overridden by a system property of the same name and
+ * otherwise takes the default shown below.
+ *
+ * <pre>
+ * instrumentsFile    bfexch-ddl/import-instruments.sql
+ * pricesFile         bfexch-ddl/import-prices.sql
+ * symbolSkew         1.0     Zipf exponent over the instruments, 0 = uniform
+ * marketOrderRatio   0.1     fraction of new orders that are market orders
+ * allOrNoneRatio     0.0     fraction of new orders that are AllOrNone
+ * cancelRatio        0.3     fraction of requests that are cancels
+ * priceSpread        0.005   standard deviation of limit prices around the
+ *                            market price, as a fraction of that price
+ * maxLots            10      orders are for 1 to maxLots lots of 100 shares
+ * rate               10000   target requests per second
+ * warmupCount        100000  requests sent before measuring starts
+ * count              1000000 requests measured
+ * target             service service (TradingService), json or fix
+ * seed               42
+ * </pre>
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderFlowConfig {
+
+    public OrderFlowConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    // ----- Queries -----
+    private String getString(String name, String defaultValue) {
+        return System.getProperty(name, properties.getProperty(name, defaultValue));
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        return Double.parseDouble(getString(name, Double.toString(defaultValue)).trim());
+    }
+
+    private int getInt(String name, int defaultValue) {
+        return Integer.parseInt(getString(name, Integer.toString(defaultValue)).trim());
+    }
+
+    // ----- Attributes -----
+    private final Properties properties;
+
+    // ----- Getters -----
+    public File getInstrumentsFile() {
+        return new File(getString("instrumentsFile", "bfexch-ddl/import-instruments.sql"));
+    }
+
+    public File getPricesFile() {
+        return new File(getString("pricesFile", "bfexch-ddl/import-prices.sql"));
+    }
+
+    public double getSymbolSkew() {
+        return getDouble("symbolSkew", 1.0);
+    }
+
+    public double getMarketOrderRatio() {
+        return getDouble("marketOrderRatio", 0.1);
+    }
+
+    public double getAllOrNoneRatio() {
+        return getDouble("allOrNoneRatio", 0.0);
+    }
+
+    public double getCancelRatio() {
+        return getDouble("cancelRatio", 0.3);
+    }
+
+    public double getPriceSpread() {
+        return getDouble("priceSpread", 0.005);
+    }
+
+    public int getMaxLots() {
+        return getInt("maxLots", 10);
+    }
+
+    public int getRate() {
+        return getInt("rate", 10000);
+    }
+
+    public int getWarmupCount() {
+        return getInt("warmupCount", 100000);
+    }
+
+    public int getCount() {
+        return getInt("count", 1000000);
+    }
+
+    public String getTarget() {
+        return getString("target", "service");
+    }
+
+    public long getSeed() {
+        return getInt("seed", 42);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+
+/**
+ * A request generated by the {@link OrderFlowGenerator}: either a new order
+ * or a request to cancel an order sent earlier.
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderFlowEvent {
+
+    public OrderFlowEvent(Type type, Order order) {
+        this.type = type;
+        this.order = order;
+    }
+
+    // ----- Attributes -----
+    private final Type type;
+    private final Order order;
+
+    // ----- Getters -----
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the new order, or the order to be canceled.
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    // ----- Nested Types -----
+    public static enum Type {
+        NewOrderSingle,
+        OrderCancelRequest
+    }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.archfirst.bfexch.domain.marketdata.MarketDataRepository;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+
+/**
+ * Generates a stream of new orders and cancel requests. Symbols are drawn
+ * from a Zipf distribution over the instruments, so that a few symbols see
+ * most of the activity. Which symbols are the busy ones is decided by
+ * shuffling the instruments with the configured seed. Limit prices are
+ * normally distributed around the current market price of the symbol, so
+ * that roughly half of the limit orders cross. Cancels target a random order
+ * sent earlier, which may since have been filled.
+ *
+ * The generator is not thread safe.
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderFlowGenerator {
+
+    private static final String BROKER_ID = "LGEN";
+    private static final BigDecimal MINIMUM_PRICE = new BigDecimal("0.01");
+
+    public OrderFlowGenerator(
+            OrderFlowConfig config,
+            List<String> symbols,
+            MarketDataRepository marketDataRepository) {
+        this.config = config;
+        this.marketDataRepository = marketDataRepository;
+        this.random = new Random(config.getSeed());
+        this.symbols = new ArrayList<String>(symbols);
+        Collections.shuffle(this.symbols, random);
+        this.symbolDistribution =
+            new ZipfDistribution(symbols.size(), config.getSymbolSkew());
+    }
+
+    // ----- Commands -----
+    public OrderFlowEvent next() {
+        if (!sentOrders.isEmpty() && random.nextDouble() < config.getCancelRatio()) {
+            // Pick a random order and remove it, so it is canceled only once
+            int index = random.nextInt(sentOrders.size());
+            int lastIndex = sentOrders.size() - 1;
+            Order order = sentOrders.get(index);
+            sentOrders.set(index, sentOrders.get(lastIndex));
+            sentOrders.remove(lastIndex);
+            return new OrderFlowEvent(
+                    OrderFlowEvent.Type.OrderCancelRequest, order);
+        }
+
+        Order order = createOrder();
+        sentOrders.add(order);
+        return new OrderFlowEvent(OrderFlowEvent.Type.NewOrderSingle, order);
+    }
+
+    private Order createOrder() {
+        String symbol = symbols.get(symbolDistribution.next(random));
+        OrderSide side = random.nextBoolean() ? OrderSide.Buy : OrderSide.Sell;
+        DecimalQuantity quantity =
+            new DecimalQuantity(100L * (1 + random.nextInt(config.getMaxLots())));
+
+        OrderType type = OrderType.Limit;
+        Money limitPrice = null;
+        if (random.nextDouble() < config.getMarketOrderRatio()) {
+            type = OrderType.Market;
+        }
+        else {
+            limitPrice = createLimitPrice(symbol);
+        }
+
+        return new Order(
+                new DateTime(),
+                BROKER_ID + "-" + (++lastOrderNumber),
+                side,
+                symbol,
+                quantity,
+                type,
+                limitPrice,
+                OrderTerm.GoodForTheDay,
+                random.nextDouble() < config.getAllOrNoneRatio());
+    }
+
+    private Money createLimitPrice(String symbol) {
+        Money marketPrice =
+            marketDataRepository.findMarketPrice(symbol).getPrice();
+        double factor = 1.0 + random.nextGaussian() * config.getPriceSpread();
+        Money limitPrice = marketPrice.times(factor).scaleToCurrency();
+        if (limitPrice.getAmount().compareTo(MINIMUM_PRICE) < 0) {
+            limitPrice = new Money(MINIMUM_PRICE, marketPrice.getCurrency());
+        }
+        return limitPrice;
+    }
+
+    // ----- Attributes -----
+    private final OrderFlowConfig config;
+    private final MarketDataRepository marketDataRepository;
+    private final Random random;
+    private final List<String> symbols;
+    private final ZipfDistribution symbolDistribution;
+
+    /** Orders that can still be picked for a cancel request */
+    private final List<Order> sentOrders = new ArrayList<Order>();
+    private long lastOrderNumber;
+}
\ No newline at end of file
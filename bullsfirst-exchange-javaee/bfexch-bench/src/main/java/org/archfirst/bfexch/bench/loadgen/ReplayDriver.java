@@ -0,0 +1,264 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import static org.archfirst.bfexch.bench.ExchangeFixture.inject;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.archfirst.bfexch.bench.mocks.CountingMarketDataEventPublisher;
+import org.archfirst.bfexch.bench.mocks.DirectTransactionRunner;
+import org.archfirst.bfexch.bench.mocks.InMemoryMarketDataRepository;
+import org.archfirst.bfexch.bench.mocks.IndexedOrderRepository;
+import org.archfirst.bfexch.domain.broker.BrokerMessageProcessor;
+import org.archfirst.bfexch.domain.latency.LatencyMonitor;
+import org.archfirst.bfexch.domain.marketdata.MarketPrice;
+import org.archfirst.bfexch.domain.marketdata.BarService;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthService;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceStore;
+import org.archfirst.bfexch.domain.marketdata.TimeAndSalesService;
+import org.archfirst.bfexch.domain.trading.MatchingDispatcher;
+import org.archfirst.bfexch.domain.trading.MatchingEngine;
+import org.archfirst.bfexch.domain.trading.OrderBookRegistry;
+import org.archfirst.bfexch.domain.trading.TradingService;
+import org.archfirst.bfexch.domain.trading.journal.OrderJournal;
+import org.archfirst.bfexch.domain.trading.order.OrderWriter;
+import org.archfirst.bfexch.infra.fixtrading.FixBrokerMessageProcessor;
+import org.archfirst.bfexch.infra.jsontrading.JsonBrokerMessageProcessor;
+
+/**
+ * Replays synthetic order flow (see {@link OrderFlowGenerator}) through an
+ * in-process exchange at a target rate and reports the sustained throughput
+ * and the latency percentiles. Requests are sent either to the
+ * TradingService directly or as JSON or FIX text to the corresponding
+ * BrokerMessageProcessor.
+ *
+ * The exchange runs its real TradingService, MatchingDispatcher and
+ * MatchingEngine, with repositories kept in memory and with the journal and
+ * write-behind disabled, so the results show the cost of matching and
+ * dispatching without any I/O.
+ *
+ * Usage: ReplayDriver [config.properties], see {@link OrderFlowConfig} for
+ * the settings. Relative file names are resolved against the working
+ * directory, which is expected to be bullsfirst-exchange-javaee.
+ *
+ * @author Naresh Bhatia
+ */
+public class ReplayDriver {
+
+    private static final long ANSWER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100};
+
+    public static void main(String[] args) throws IOException {
+        Properties properties = new Properties();
+        if (args.length > 0) {
+            InputStream in = new FileInputStream(args[0]);
+            try {
+                properties.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+        new ReplayDriver(new OrderFlowConfig(properties)).run();
+    }
+
+    public ReplayDriver(OrderFlowConfig config) {
+        this.config = config;
+        this.latencyRecorder = new LatencyRecorder(config.getCount());
+    }
+
+    // ----- Commands -----
+    public void run() {
+        List<String> symbols = createExchange();
+        OrderFlowGenerator generator =
+            new OrderFlowGenerator(config, symbols, marketDataRepository);
+        OrderFlowSink sink = createSink();
+
+        int warmupCount = config.getWarmupCount();
+        int totalCount = warmupCount + config.getCount();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRate();
+        System.out.printf("Sending %d requests (%d warmup) over %d symbols to %s at %d/s...%n",
+                totalCount, warmupCount, symbols.size(), config.getTarget(),
+                config.getRate());
+
+        long startNanos = System.nanoTime();
+        long measureStartNanos = startNanos + warmupCount * intervalNanos;
+        for (int i = 0; i < totalCount; i++) {
+            OrderFlowEvent event = generator.next();
+            long dueNanos = startNanos + i * intervalNanos;
+            waitUntil(dueNanos);
+            if (i >= warmupCount) {
+                String clOrdID = event.getOrder().getClientOrderId();
+                if (event.getType() == OrderFlowEvent.Type.NewOrderSingle) {
+                    latencyRecorder.expectNewOrderSingle(clOrdID, dueNanos);
+                }
+                else {
+                    latencyRecorder.expectOrderCancelRequest(clOrdID, dueNanos);
+                }
+            }
+            sink.send(event);
+        }
+        long sendEndNanos = System.nanoTime();
+
+        awaitAnswers();
+        matchingDispatcher.shutdown();
+        report(measureStartNanos, sendEndNanos);
+    }
+
+    private static void waitUntil(long dueNanos) {
+        long remainingNanos;
+        while ((remainingNanos = dueNanos - System.nanoTime()) > 0) {
+            if (remainingNanos > 100000) {
+                LockSupport.parkNanos(remainingNanos - 50000);
+            }
+        }
+    }
+
+    /**
+     * Waits until every measured request has been answered, or until no
+     * answer has arrived for a while. Cancel requests that overtake the
+     * order they cancel are never answered.
+     */
+    private void awaitAnswers() {
+        int answeredCount = latencyRecorder.getAnsweredCount();
+        long lastProgressNanos = System.nanoTime();
+        while (answeredCount < config.getCount() &&
+               System.nanoTime() - lastProgressNanos < ANSWER_TIMEOUT_NANOS) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            int newAnsweredCount = latencyRecorder.getAnsweredCount();
+            if (newAnsweredCount > answeredCount) {
+                answeredCount = newAnsweredCount;
+                lastProgressNanos = System.nanoTime();
+            }
+        }
+    }
+
+    private void report(long measureStartNanos, long sendEndNanos) {
+        long[] latencies = latencyRecorder.getSortedLatencies();
+        double sendSeconds = (sendEndNanos - measureStartNanos) / 1e9;
+        double answerSeconds =
+            (latencyRecorder.getLastAnsweredNanos() - measureStartNanos) / 1e9;
+
+        System.out.printf("Requests measured:  %d%n", config.getCount());
+        System.out.printf("Requests answered:  %d%n", latencies.length);
+        System.out.printf("Send rate:          %.0f/s%n", config.getCount() / sendSeconds);
+        System.out.printf("Throughput:         %.0f/s%n", latencies.length / answerSeconds);
+        if (latencies.length == 0) {
+            return;
+        }
+        System.out.println("Latency (microseconds):");
+        for (double percentile : PERCENTILES) {
+            int index = (int)Math.ceil(percentile / 100 * latencies.length) - 1;
+            System.out.printf("  %7s%%  %12.1f%n", percentile,
+                    latencies[Math.max(index, 0)] / 1e3);
+        }
+    }
+
+    // ----- Factory Methods -----
+    /**
+     * Wires the exchange and returns the symbols it trades: those in the
+     * instruments file that have a market price.
+     */
+    private List<String> createExchange() {
+        List<String> symbols = new ArrayList<String>();
+        for (MarketPrice marketPrice :
+            InstrumentLoader.loadMarketPrices(config.getPricesFile())) {
+            marketDataRepository.add(marketPrice);
+        }
+        for (String symbol :
+            InstrumentLoader.loadSymbols(config.getInstrumentsFile())) {
+            if (marketDataRepository.findMarketPrice(symbol) != null) {
+                symbols.add(symbol);
+            }
+        }
+        if (symbols.isEmpty()) {
+            throw new IllegalStateException("No instruments with a market price found in " +
+                    config.getInstrumentsFile() + " and " + config.getPricesFile());
+        }
+
+        IndexedOrderRepository orderRepository = new IndexedOrderRepository();
+        OrderBookRegistry orderBookRegistry = new OrderBookRegistry();
+        inject(orderBookRegistry, "orderRepository", orderRepository);
+
+        MatchingEngine matchingEngine = new MatchingEngine();
+        inject(matchingEngine, "orderBookRegistry", orderBookRegistry);
+        inject(matchingEngine, "orderRepository", orderRepository);
+        inject(matchingEngine, "orderEventPublisher", latencyRecorder);
+        MarketPriceStore marketPriceStore = new MarketPriceStore();
+        inject(marketPriceStore, "marketDataRepository", marketDataRepository);
+        inject(matchingEngine, "marketPriceStore", marketPriceStore);
+        inject(matchingEngine, "timeAndSalesService", new TimeAndSalesService());
+        CountingMarketDataEventPublisher marketDataEventPublisher =
+            new CountingMarketDataEventPublisher();
+        inject(matchingEngine, "marketDataEventPublisher", marketDataEventPublisher);
+        BarService barService = new BarService();
+        inject(barService, "marketDataEventPublisher", marketDataEventPublisher);
+        inject(matchingEngine, "barService", barService);
+
+        MarketDepthService marketDepthService = new MarketDepthService();
+        inject(marketDepthService, "marketDataEventPublisher", marketDataEventPublisher);
+
+        inject(matchingDispatcher, "transactionRunner", new DirectTransactionRunner());
+        inject(matchingDispatcher, "orderBookRegistry", orderBookRegistry);
+        inject(matchingDispatcher, "marketDepthService", marketDepthService);
+
+        // The journal and the order writer are left unopened, i.e. disabled
+        inject(tradingService, "orderRepository", orderRepository);
+        inject(tradingService, "orderBookRegistry", orderBookRegistry);
+        inject(tradingService, "matchingDispatcher", matchingDispatcher);
+        inject(tradingService, "orderJournal", new OrderJournal());
+        inject(tradingService, "orderWriter", new OrderWriter());
+        inject(tradingService, "matchingEngine", matchingEngine);
+        inject(tradingService, "latencyMonitor", new LatencyMonitor());
+        return symbols;
+    }
+
+    private OrderFlowSink createSink() {
+        String target = config.getTarget();
+        if ("service".equals(target)) {
+            return new TradingServiceSink(tradingService);
+        }
+
+        BrokerMessageProcessor brokerMessageProcessor;
+        if ("json".equals(target)) {
+            brokerMessageProcessor = new JsonBrokerMessageProcessor();
+            inject(brokerMessageProcessor, "tradingService", tradingService);
+            return new JsonMessageSink(brokerMessageProcessor);
+        }
+        else if ("fix".equals(target)) {
+            brokerMessageProcessor = new FixBrokerMessageProcessor();
+            inject(brokerMessageProcessor, "tradingService", tradingService);
+            return new FixMessageSink(brokerMessageProcessor);
+        }
+        throw new IllegalArgumentException("Unknown target: " + target);
+    }
+
+    // ----- Attributes -----
+    private final OrderFlowConfig config;
+    private final LatencyRecorder latencyRecorder;
+    private final InMemoryMarketDataRepository marketDataRepository =
+        new InMemoryMarketDataRepository();
+    private final MatchingDispatcher matchingDispatcher = new MatchingDispatcher();
+    private final TradingService tradingService = new TradingService();
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import org.archfirst.bfexch.domain.trading.TradingService;
+
+/**
+ * Calls the TradingService directly, leaving out message parsing.
+ *
+ * @author Naresh Bhatia
+ */
+public class TradingServiceSink implements OrderFlowSink {
+
+    public TradingServiceSink(TradingService tradingService) {
+        this.tradingService = tradingService;
+    }
+
+    @Override
+    public void send(OrderFlowEvent event) {
+        if (event.getType() == OrderFlowEvent.Type.NewOrderSingle) {
+            tradingService.processNewOrderSingle(event.getOrder());
+        }
+        else {
+            tradingService.processOrderCancelRequest(
+                    event.getOrder().getClientOrderId(),
+                    event.getOrder().getSymbol());
+        }
+    }
+
+    private final TradingService tradingService;
+}
\ No newline at end of file
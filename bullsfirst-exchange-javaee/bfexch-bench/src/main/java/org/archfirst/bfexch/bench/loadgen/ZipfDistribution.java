@@ -0,0 +1,59 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ranks from 0 to n - 1 following a
+ * <a href="http://en.wikipedia.org/wiki/Zipf's_law">Zipf distribution</a>:
+ * rank k is drawn with a probability proportional to 1 / (k + 1)^s. An
+ * exponent of 0 gives a uniform distribution, larger exponents concentrate
+ * the draws on the lowest ranks.
+ *
+ * @author Naresh Bhatia
+ */
+public class ZipfDistribution {
+
+    public ZipfDistribution(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        cumulativeProbabilities = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulativeProbabilities[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulativeProbabilities[k] /= sum;
+        }
+    }
+
+    // ----- Queries -----
+    public int next(Random random) {
+        int index = Arrays.binarySearch(
+                cumulativeProbabilities, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, cumulativeProbabilities.length - 1);
+    }
+
+    // ----- Attributes -----
+    private final double[] cumulativeProbabilities;
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.mocks;
+
+import org.archfirst.bfexch.domain.marketdata.BarCompleted;
+import org.archfirst.bfexch.domain.marketdata.MarketDataEventPublisher;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthChanged;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
+
+/**
+ * A MarketDataEventPublisher that only counts events.
+ *
+ * @author Naresh Bhatia
+ */
+public class CountingMarketDataEventPublisher implements MarketDataEventPublisher {
+
+    private long eventCount;
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    @Override
+    public void publish(MarketPriceChanged event) {
+        eventCount++;
+    }
+
+    @Override
+    public void publish(MarketDepthChanged event) {
+        eventCount++;
+    }
+
+    @Override
+    public void publish(BarCompleted event) {
+        eventCount++;
+    }
+}
\ No newline at end of file
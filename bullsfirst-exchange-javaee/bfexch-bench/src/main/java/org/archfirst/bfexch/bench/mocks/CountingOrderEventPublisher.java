@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.mocks;
+
+import org.archfirst.bfexch.domain.trading.order.OrderAccepted;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelRejected;
+import org.archfirst.bfexch.domain.trading.order.OrderCanceled;
+import org.archfirst.bfexch.domain.trading.order.OrderDoneForDay;
+import org.archfirst.bfexch.domain.trading.order.OrderEventPublisher;
+import org.archfirst.bfexch.domain.trading.order.OrderExecuted;
+import org.archfirst.bfexch.domain.trading.order.OrderReplaced;
+
+/**
+ * An OrderEventPublisher that only counts events, so that they are not
+ * optimized away.
+ *
+ * @author Naresh Bhatia
+ */
+public class CountingOrderEventPublisher implements OrderEventPublisher {
+
+    private long eventCount;
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    @Override
+    public void publish(OrderAccepted event) {
+        eventCount++;
+    }
+
+    @Override
+    public void publish(OrderExecuted event) {
+        eventCount++;
+    }
+
+    @Override
+    public void publish(OrderCanceled event) {
+        eventCount++;
+    }
+
+    @Override
+    public void publish(OrderCancelRejected event) {
+        eventCount++;
+    }
+
+    @Override
+    public void publish(OrderReplaced event) {
+        eventCount++;
+    }
+
+    @Override
+    public void publish(OrderDoneForDay event) {
+        eventCount++;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.mocks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.archfirst.bfexch.domain.marketdata.MarketDataRepository;
+import org.archfirst.bfexch.domain.marketdata.MarketPrice;
+
+/**
+ * A MarketDataRepository that keeps market prices in a map.
+ *
+ * @author Naresh Bhatia
+ */
+public class InMemoryMarketDataRepository extends MarketDataRepository {
+
+    private final Map<String, MarketPrice> marketPrices =
+        new HashMap<String, MarketPrice>();
+
+    public void add(MarketPrice marketPrice) {
+        marketPrices.put(marketPrice.getSymbol(), marketPrice);
+    }
+
+    @Override
+    public List<MarketPrice> findAllMarketPrices() {
+        return new ArrayList<MarketPrice>(marketPrices.values());
+    }
+
+    @Override
+    public MarketPrice findMarketPrice(String symbol) {
+        return marketPrices.get(symbol);
+    }
+
+    @Override
+    public void updateMarketPrice(MarketPrice marketPrice) {
+        // the store already holds the current price
+    }
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.mocks;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archfirst.bfexch.domain.trading.order.Execution;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderRepository;
+import org.archfirst.common.domain.DomainEntity;
+
+/**
+ * An OrderRepository that never touches a database. New orders and
+ * executions are only given an id; nothing is kept.
+ *
+ * @author Naresh Bhatia
+ */
+public class InMemoryOrderRepository extends OrderRepository {
+
+    private static final Field idField = getIdField();
+
+    private final AtomicLong lastId = new AtomicLong();
+
+    @Override
+    public void persistOrder(Order order) {
+        assignId(order);
+    }
+
+    @Override
+    public void persistExecution(Execution execution) {
+        assignId(execution);
+    }
+
+    @Override
+    public void update(Order order) {
+    }
+
+    @Override
+    public void attach(Order order) {
+    }
+
+    @Override
+    public List<Order> findActiveOrders() {
+        return Collections.emptyList();
+    }
+
+    private void assignId(DomainEntity entity) {
+        try {
+            idField.set(entity, Long.valueOf(lastId.incrementAndGet()));
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field getIdField() {
+        try {
+            Field field = DomainEntity.class.getDeclaredField("id");
+            field.setAccessible(true);
+            return field;
+        }
+        catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.bench.mocks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+
+/**
+ * An InMemoryOrderRepository that also keeps every order it is given,
+ * indexed by clOrdID, so that orders can be canceled.
+ *
+ * @author Naresh Bhatia
+ */
+public class IndexedOrderRepository extends InMemoryOrderRepository {
+
+    private final ConcurrentMap<String, Order> ordersByClientOrderId =
+        new ConcurrentHashMap<String, Order>();
+
+    @Override
+    public void persistOrder(Order order) {
+        super.persistOrder(order);
+        ordersByClientOrderId.put(order.getClientOrderId(), order);
+    }
+
+    @Override
+    public Order findOrderByClientOrderId(String clientOrderId) {
+        return ordersByClientOrderId.get(clientOrderId);
+    }
+}
\ No newline at end of file
@@ -27,5 +27,16 @@ public interface BrokerMessageGenerator {
 
     String generateExecutionReport(ExecutionReport executionReport);
 
-    String generateOrderCancelReject(Order order);
+    /**
+     * Generates the rejection of an OrderCancelRequest or, if replaceRequest
+     * is true, of an OrderCancelReplaceRequest.
+     */
+    String generateOrderCancelReject(Order order, boolean replaceRequest);
+
+    /**
+     * Generates the rejection of a request for an order that the exchange
+     * does not know. The order is reported as PendingNew, i.e. not accepted
+     * by the exchange.
+     */
+    String generateUnknownOrderCancelReject(String clOrdID, boolean replaceRequest);
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.latency;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Singleton;
+
+import org.archfirst.common.datetime.LatencyHistogram;
+
+/**
+ * Records the latency of order handling at the stages listed in
+ * {@link LatencyStage}, in lock-free histograms (see
+ * {@link LatencyHistogram}) kept per stage and per stage and symbol.
+ *
+ * The time an order was received is noted by the message listener on its
+ * own thread, picked up by TradingService on the same thread and from then
+ * on carried by the order itself (see Order.getReceivedNanos()). Orders that
+ * did not arrive through the listener, e.g. replayed orders, are timed from
+ * the moment TradingService sees them.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class LatencyMonitor {
+
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    // ----- Commands -----
+    /**
+     * Notes that a message was received on the current thread and records
+     * how long it waited to be received. sentMillis is the time the message
+     * was sent, 0 if not known.
+     */
+    public void messageReceived(long sentMillis) {
+        receivedNanos.set(System.nanoTime());
+        if (sentMillis > 0) {
+            record(LatencyStage.MessageReceived, null,
+                    (System.currentTimeMillis() - sentMillis) * 1000000);
+        }
+    }
+
+    /**
+     * Notes that the message received on the current thread has been
+     * processed.
+     */
+    public void messageProcessed() {
+        receivedNanos.remove();
+    }
+
+    /**
+     * Records the time elapsed since an order was received. Does nothing if
+     * the time it was received is not known.
+     */
+    public void recordSince(LatencyStage stage, String symbol, long receivedNanos) {
+        if (receivedNanos != 0) {
+            record(stage, symbol, System.nanoTime() - receivedNanos);
+        }
+    }
+
+    private void record(LatencyStage stage, String symbol, long nanos) {
+        stageHistograms.get(stage).record(nanos);
+        if (symbol != null) {
+            getSymbolHistograms(symbol).get(stage).record(nanos);
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : stageHistograms.values()) {
+            histogram.reset();
+        }
+        symbolHistograms.clear();
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns the time the message being processed on the current thread
+     * was received, or the current time if there is none.
+     */
+    public long getReceivedNanos() {
+        Long nanos = receivedNanos.get();
+        return (nanos == null) ? System.nanoTime() : nanos;
+    }
+
+    /**
+     * Returns the latencies of each stage over all symbols.
+     */
+    public List<LatencyStats> getStats() {
+        return getStats(null, stageHistograms);
+    }
+
+    /**
+     * Returns the latencies of each stage for the specified symbol.
+     * MessageReceived is recorded before the symbol is known, so it only
+     * appears in the stats over all symbols. Returns an empty list if
+     * nothing has been recorded for the symbol.
+     */
+    public List<LatencyStats> getStats(String symbol) {
+        Map<LatencyStage, LatencyHistogram> histograms = symbolHistograms.get(symbol);
+        if (histograms == null) {
+            return new ArrayList<LatencyStats>();
+        }
+        return getStats(symbol, histograms);
+    }
+
+    private List<LatencyStats> getStats(
+            String symbol, Map<LatencyStage, LatencyHistogram> histograms) {
+        List<LatencyStats> stats = new ArrayList<LatencyStats>();
+        for (Map.Entry<LatencyStage, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            stats.add(new LatencyStats(
+                    entry.getKey(),
+                    symbol,
+                    histogram.getCount(),
+                    histogram.getPercentileNanos(50) / NANOS_PER_MICRO,
+                    histogram.getPercentileNanos(99) / NANOS_PER_MICRO,
+                    histogram.getPercentileNanos(99.9) / NANOS_PER_MICRO,
+                    histogram.getMaxNanos() / NANOS_PER_MICRO));
+        }
+        return stats;
+    }
+
+    private Map<LatencyStage, LatencyHistogram> getSymbolHistograms(String symbol) {
+        Map<LatencyStage, LatencyHistogram> histograms = symbolHistograms.get(symbol);
+        if (histograms == null) {
+            Map<LatencyStage, LatencyHistogram> newHistograms = createHistograms();
+            histograms = symbolHistograms.putIfAbsent(symbol, newHistograms);
+            if (histograms == null) {
+                histograms = newHistograms;
+            }
+        }
+        return histograms;
+    }
+
+    private static Map<LatencyStage, LatencyHistogram> createHistograms() {
+        Map<LatencyStage, LatencyHistogram> histograms =
+            new EnumMap<LatencyStage, LatencyHistogram>(LatencyStage.class);
+        for (LatencyStage stage : LatencyStage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        return histograms;
+    }
+
+    // ----- Attributes -----
+    private final Map<LatencyStage, LatencyHistogram> stageHistograms =
+        createHistograms();
+    private final ConcurrentMap<String, Map<LatencyStage, LatencyHistogram>> symbolHistograms =
+        new ConcurrentHashMap<String, Map<LatencyStage, LatencyHistogram>>();
+    private final ThreadLocal<Long> receivedNanos = new ThreadLocal<Long>();
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.latency;
+
+/**
+ * The points in the handling of an order at which latency is recorded.
+ * Except for MessageReceived, each stage is measured from the time the
+ * request was received.
+ *
+ * @author Naresh Bhatia
+ */
+public enum LatencyStage {
+    /** Time the message spent in the JMS queue before it was received */
+    MessageReceived,
+
+    /** Until the matching engine has finished with the order, cancel or replace request */
+    OrderProcessed,
+
+    /** Until the execution report acknowledging the order has been sent */
+    ExecutionReportSent
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.latency;
+
+/**
+ * Percentiles of the latencies recorded for one stage, either over all
+ * symbols (symbol is null) or for one symbol. Latencies are in
+ * microseconds.
+ *
+ * @author Naresh Bhatia
+ */
+public class LatencyStats {
+
+    // ----- Constructors -----
+    public LatencyStats(
+            LatencyStage stage,
+            String symbol,
+            long count,
+            double p50Micros,
+            double p99Micros,
+            double p999Micros,
+            double maxMicros) {
+        this.stage = stage;
+        this.symbol = symbol;
+        this.count = count;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    // ----- Attributes -----
+    private final LatencyStage stage;
+    private final String symbol;
+    private final long count;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    // ----- Getters -----
+    public LatencyStage getStage() {
+        return stage;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public long getCount() {
+        return count;
+    }
+    public double getP50Micros() {
+        return p50Micros;
+    }
+    public double getP99Micros() {
+        return p99Micros;
+    }
+    public double getP999Micros() {
+        return p999Micros;
+    }
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+}
\ No newline at end of file
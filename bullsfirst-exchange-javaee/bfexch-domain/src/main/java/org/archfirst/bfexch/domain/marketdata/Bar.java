@@ -0,0 +1,144 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import org.archfirst.common.datetime.DateTimeUtil;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+
+/**
+ * A completed open/high/low/close/volume bar of an instrument, with the
+ * volume weighted average price and the number of trades. A bar covers the
+ * time from its start up to, but not including, the start of the next bar
+ * of its interval.
+ *
+ * @author Naresh Bhatia
+ */
+public class Bar {
+
+    // ----- Constructors -----
+    public Bar(
+            String symbol,
+            BarInterval interval,
+            DateTime start,
+            Money open,
+            Money high,
+            Money low,
+            Money close,
+            DecimalQuantity volume,
+            Money vwap,
+            int tradeCount) {
+        this.symbol = symbol;
+        this.interval = interval;
+        this.start = start;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.vwap = vwap;
+        this.tradeCount = tradeCount;
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns the bar as a set of properties. For example:
+     * <code>
+     *     symbol=AAPL
+     *     interval=OneMinute
+     *     start=2009-01-02T09:00:00.000-04:00
+     *     currency=USD
+     *     open=100.25
+     *     high=100.50
+     *     low=100.00
+     *     close=100.50
+     *     volume=1200
+     *     vwap=100.3125
+     *     trades=7
+     * </code>
+     */
+    public String toProperties() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("symbol=").append(symbol).append("\n");
+        builder.append("interval=").append(interval).append("\n");
+        builder.append("start=").append(start.toString()).append("\n");
+        builder.append("currency=").append(close.getCurrency()).append("\n");
+        builder.append("open=").append(open.getAmount()).append("\n");
+        builder.append("high=").append(high.getAmount()).append("\n");
+        builder.append("low=").append(low.getAmount()).append("\n");
+        builder.append("close=").append(close.getAmount()).append("\n");
+        builder.append("volume=").append(volume.getValue()).append("\n");
+        builder.append("vwap=").append(vwap.getAmount()).append("\n");
+        builder.append("trades=").append(tradeCount).append("\n");
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("[").append(DateTimeUtil.toStringTimestamp(start)).append("] ");
+        builder.append(symbol).append(" ").append(interval).append(": ");
+        builder.append(open).append(" ").append(high).append(" ");
+        builder.append(low).append(" ").append(close).append(" ");
+        builder.append(volume);
+        return builder.toString();
+    }
+
+    // ----- Attributes -----
+    private final String symbol;
+    private final BarInterval interval;
+    private final DateTime start;
+    private final Money open;
+    private final Money high;
+    private final Money low;
+    private final Money close;
+    private final DecimalQuantity volume;
+    private final Money vwap;
+    private final int tradeCount;
+
+    // ----- Getters -----
+    public String getSymbol() {
+        return symbol;
+    }
+    public BarInterval getInterval() {
+        return interval;
+    }
+    public DateTime getStart() {
+        return start;
+    }
+    public Money getOpen() {
+        return open;
+    }
+    public Money getHigh() {
+        return high;
+    }
+    public Money getLow() {
+        return low;
+    }
+    public Money getClose() {
+        return close;
+    }
+    public DecimalQuantity getVolume() {
+        return volume;
+    }
+    public Money getVwap() {
+        return vwap;
+    }
+    public int getTradeCount() {
+        return tradeCount;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import org.joda.time.DateTime;
+
+/**
+ * The intervals of the OHLCV bars kept for each instrument. Second and
+ * minute bars start on whole seconds and minutes, day bars start at
+ * midnight in the time zone of the exchange.
+ *
+ * @author Naresh Bhatia
+ */
+public enum BarInterval {
+    OneSecond(1000),
+    OneMinute(60 * 1000),
+    OneDay(0);
+
+    private final long millis;
+
+    private BarInterval(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Returns the start of the bar that contains the specified time.
+     */
+    public DateTime getStart(DateTime time) {
+        if (this == OneDay) {
+            return time.withMillisOfDay(0);
+        }
+        long timeMillis = time.getMillis();
+        return new DateTime(timeMillis - timeMillis % millis);
+    }
+
+    /**
+     * Returns the end of the bar that starts at the specified time.
+     */
+    public DateTime getEnd(DateTime start) {
+        return (this == OneDay) ?
+            start.plusDays(1) : new DateTime(start.getMillis() + millis);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,315 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.trading.MatchingDispatcher;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.bfexch.domain.util.Constants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains open/high/low/close/volume bars of each instrument for every
+ * {@link BarInterval}, updated by the matching engine as orders are
+ * executed. Each execution updates the open bars of its symbol in constant
+ * time. A bar is completed by the first execution after its interval has
+ * ended, or, if closeIntervalMillis is configured, by a closer thread that
+ * checks for ended bars at that interval. Completed bars are published as
+ * {@link BarCompleted} events and the last historySize bars of each symbol
+ * and interval are kept for readers on other threads.
+ *
+ * The open bars of a symbol are only used by its matching thread, the
+ * closer thread has them completed on that thread (see
+ * {@link MatchingDispatcher}). Intervals without executions have no bar.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class BarService {
+    private static final Logger logger =
+        LoggerFactory.getLogger(BarService.class);
+
+    private static final int DEFAULT_HISTORY_SIZE = 1000;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String size = configurationService.getString(
+                ConfigConstants.PROP_BARS_HISTORY_SIZE);
+        if (size != null) {
+            historySize = Integer.parseInt(size.trim());
+        }
+
+        String interval = configurationService.getString(
+                ConfigConstants.PROP_BARS_CLOSE_INTERVAL_MILLIS);
+        if (interval == null) {
+            logger.info("Bars are completed by the next execution only");
+            return;
+        }
+        closeIntervalMillis = Long.parseLong(interval.trim());
+        closer = new Thread(new Closer(), "bar-closer");
+        closer.setDaemon(true);
+        closer.start();
+        logger.info("Completing ended bars every {} ms", closeIntervalMillis);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (closer != null) {
+            closer.interrupt();
+        }
+    }
+
+    // ----- Commands -----
+    /**
+     * Adds an execution to the open bars of the symbol, completing the bars
+     * whose interval has ended first. Must be called on the matching thread
+     * of the symbol.
+     */
+    public void recordTrade(
+            String symbol, DateTime time, Money price, DecimalQuantity quantity) {
+        SymbolBars bars = symbolBars.get(symbol);
+        if (bars == null) {
+            bars = new SymbolBars(historySize);
+            symbolBars.put(symbol, bars);
+        }
+
+        long timeMillis = time.getMillis();
+        for (BarInterval interval : BarInterval.values()) {
+            int i = interval.ordinal();
+            if (bars.openBars[i] != null && timeMillis >= bars.openBars[i].endMillis) {
+                complete(symbol, bars, interval);
+            }
+            if (bars.openBars[i] == null) {
+                bars.openBars[i] = new OpenBar(interval, time, price);
+            }
+            bars.openBars[i].add(price, quantity);
+        }
+        bars.updateNextCloseMillis();
+    }
+
+    /**
+     * Completes the open bars of the symbol whose interval has ended at the
+     * specified time. Must be called on the matching thread of the symbol.
+     */
+    public void closeBars(String symbol, long timeMillis) {
+        SymbolBars bars = symbolBars.get(symbol);
+        if (bars == null) {
+            return;
+        }
+        for (BarInterval interval : BarInterval.values()) {
+            OpenBar openBar = bars.openBars[interval.ordinal()];
+            if (openBar != null && timeMillis >= openBar.endMillis) {
+                complete(symbol, bars, interval);
+            }
+        }
+        bars.updateNextCloseMillis();
+    }
+
+    private void complete(String symbol, SymbolBars bars, BarInterval interval) {
+        int i = interval.ordinal();
+        Bar bar = bars.openBars[i].toBar(symbol);
+        bars.openBars[i] = null;
+        bars.histories[i].add(bar);
+        logger.debug("Bar completed: {}", bar);
+        marketDataEventPublisher.publish(new BarCompleted(bar));
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns up to count of the most recent completed bars of the symbol
+     * for the specified interval, oldest first.
+     */
+    public List<Bar> getBars(String symbol, BarInterval interval, int count) {
+        SymbolBars bars = symbolBars.get(symbol);
+        return (bars == null) ?
+            Collections.<Bar>emptyList() :
+            bars.histories[interval.ordinal()].getLast(count);
+    }
+
+    // ----- Attributes -----
+    @Inject private MatchingDispatcher matchingDispatcher;
+    @Inject private MarketDataEventPublisher marketDataEventPublisher;
+    @Inject private ConfigurationService configurationService;
+
+    /** The number of completed bars kept for each symbol and interval */
+    private int historySize = DEFAULT_HISTORY_SIZE;
+
+    private long closeIntervalMillis;
+    private Thread closer;
+
+    /** Map from symbol to its bars, each written by its matching thread */
+    private final ConcurrentMap<String, SymbolBars> symbolBars =
+        new ConcurrentHashMap<String, SymbolBars>();
+
+    // ----- Nested Types -----
+    /**
+     * The bars of one symbol, indexed by the ordinal of their interval.
+     */
+    private static class SymbolBars {
+        private final OpenBar[] openBars =
+            new OpenBar[BarInterval.values().length];
+        private final BarHistory[] histories =
+            new BarHistory[BarInterval.values().length];
+
+        /** The earliest end of the open bars, read by the closer thread */
+        private volatile long nextCloseMillis = Long.MAX_VALUE;
+
+        /** Set while the closer has a task queued for the symbol */
+        private final AtomicBoolean closePending = new AtomicBoolean();
+
+        public SymbolBars(int historySize) {
+            for (int i = 0; i < histories.length; i++) {
+                histories[i] = new BarHistory(historySize);
+            }
+        }
+
+        public void updateNextCloseMillis() {
+            long closeMillis = Long.MAX_VALUE;
+            for (OpenBar openBar : openBars) {
+                if (openBar != null && openBar.endMillis < closeMillis) {
+                    closeMillis = openBar.endMillis;
+                }
+            }
+            nextCloseMillis = closeMillis;
+        }
+    }
+
+    /**
+     * A bar that is still being built from executions.
+     */
+    private static class OpenBar {
+        private final BarInterval interval;
+        private final DateTime start;
+        private final long endMillis;
+        private final Money open;
+        private Money high;
+        private Money low;
+        private Money close;
+        private DecimalQuantity volume = DecimalQuantity.ZERO;
+        private Money notional;
+        private int tradeCount;
+
+        public OpenBar(BarInterval interval, DateTime time, Money price) {
+            this.interval = interval;
+            this.start = interval.getStart(time);
+            this.endMillis = interval.getEnd(start).getMillis();
+            this.open = price;
+            this.high = price;
+            this.low = price;
+            this.notional = new Money("0", price.getCurrency());
+        }
+
+        public void add(Money price, DecimalQuantity quantity) {
+            if (price.gt(high)) {
+                high = price;
+            }
+            if (price.lt(low)) {
+                low = price;
+            }
+            close = price;
+            volume = volume.plus(quantity);
+            notional = notional.plus(price.times(quantity));
+            tradeCount++;
+        }
+
+        public Bar toBar(String symbol) {
+            Money vwap = volume.isZero() ?
+                close : notional.div(volume, Constants.PRICE_SCALE);
+            return new Bar(symbol, interval, start,
+                    open, high, low, close, volume, vwap, tradeCount);
+        }
+    }
+
+    /**
+     * The most recent completed bars of one symbol and interval, in a ring
+     * buffer of fixed capacity.
+     */
+    private static class BarHistory {
+        private final Bar[] bars;
+        private long count;
+
+        public BarHistory(int capacity) {
+            bars = new Bar[capacity];
+        }
+
+        public synchronized void add(Bar bar) {
+            bars[(int)(count % bars.length)] = bar;
+            count++;
+        }
+
+        public synchronized List<Bar> getLast(int n) {
+            long first = Math.max(count - Math.min(n, bars.length), 0);
+            List<Bar> lastBars = new ArrayList<Bar>((int)(count - first));
+            for (long i = first; i < count; i++) {
+                lastBars.add(bars[(int)(i % bars.length)]);
+            }
+            return lastBars;
+        }
+    }
+
+    /**
+     * Has the open bars whose interval has ended completed on the matching
+     * thread of their symbol.
+     */
+    private class Closer implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(closeIntervalMillis);
+                    final long now = System.currentTimeMillis();
+                    for (Map.Entry<String, SymbolBars> entry : symbolBars.entrySet()) {
+                        final String symbol = entry.getKey();
+                        final SymbolBars bars = entry.getValue();
+                        if (bars.nextCloseMillis > now ||
+                            !bars.closePending.compareAndSet(false, true)) {
+                            continue;
+                        }
+                        matchingDispatcher.dispatch(symbol, new Runnable() {
+                            @Override
+                            public void run() {
+                                bars.closePending.set(false);
+                                closeBars(symbol, now);
+                            }
+                        });
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // stop
+            }
+            logger.info("{} stopped", Thread.currentThread().getName());
+        }
+    }
+}
\ No newline at end of file
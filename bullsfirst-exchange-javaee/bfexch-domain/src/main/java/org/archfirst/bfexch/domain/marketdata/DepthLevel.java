@@ -0,0 +1,51 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+
+/**
+ * The orders resting at one price on one side of an order book, in
+ * aggregate: their total leaves quantity and their number.
+ *
+ * @author Naresh Bhatia
+ */
+public class DepthLevel {
+
+    // ----- Constructors -----
+    public DepthLevel(Money price, DecimalQuantity quantity, int orderCount) {
+        this.price = price;
+        this.quantity = quantity;
+        this.orderCount = orderCount;
+    }
+
+    // ----- Attributes -----
+    private final Money price;
+    private final DecimalQuantity quantity;
+    private final int orderCount;
+
+    // ----- Getters -----
+    public Money getPrice() {
+        return price;
+    }
+    public DecimalQuantity getQuantity() {
+        return quantity;
+    }
+    public int getOrderCount() {
+        return orderCount;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+
+/**
+ * A change to one price level within the published depth of a book. The
+ * level carries the new totals of the price level, not the differences, so
+ * applying an update twice does no harm. The level of a Delete has a
+ * quantity and order count of zero.
+ *
+ * @author Naresh Bhatia
+ */
+public class DepthUpdate {
+
+    // ----- Constructors -----
+    public DepthUpdate(OrderSide side, DepthUpdateAction action, DepthLevel level) {
+        this.side = side;
+        this.action = action;
+        this.level = level;
+    }
+
+    // ----- Attributes -----
+    private final OrderSide side;
+    private final DepthUpdateAction action;
+    private final DepthLevel level;
+
+    // ----- Getters -----
+    public OrderSide getSide() {
+        return side;
+    }
+    public DepthUpdateAction getAction() {
+        return action;
+    }
+    public DepthLevel getLevel() {
+        return level;
+    }
+}
\ No newline at end of file
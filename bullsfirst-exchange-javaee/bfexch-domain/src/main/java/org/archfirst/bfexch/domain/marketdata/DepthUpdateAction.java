@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+/**
+ * What happened to a price level within the published depth of a book.
+ *
+ * @author Naresh Bhatia
+ */
+public enum DepthUpdateAction {
+    /** The level has entered the published depth */
+    New,
+
+    /** The quantity or the number of orders of the level has changed */
+    Change,
+
+    /** The level is empty or has dropped out of the published depth */
+    Delete
+}
\ No newline at end of file
@@ -22,4 +22,6 @@ package org.archfirst.bfexch.domain.marketdata;
  */
 public interface MarketDataEventPublisher {
     void publish(MarketPriceChanged event);
+    void publish(MarketDepthChanged event);
+    void publish(BarCompleted event);
 }
\ No newline at end of file
@@ -47,4 +47,12 @@ public class MarketDataRepository extends BaseRepository {
             .setParameter("symbol", symbol)
             .getSingleResult();
     }
+
+    /**
+     * Writes a market price that is not managed by the persistence context,
+     * e.g. one kept by the {@link MarketPriceStore}.
+     */
+    public void updateMarketPrice(MarketPrice marketPrice) {
+        this.entityManager.merge(marketPrice);
+    }
 }
\ No newline at end of file
@@ -16,39 +16,117 @@
 package org.archfirst.bfexch.domain.marketdata;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javax.inject.Inject;
 
+import org.archfirst.bfexch.domain.trading.MatchingDispatcher;
+import org.archfirst.bfexch.domain.trading.OrderBookRegistry;
 import org.archfirst.common.money.Money;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * MarketDataService
+ * MarketDataService. Market prices are read from and changed through the
+ * {@link MarketPriceStore}, the database is only written to.
  *
  * @author Naresh Bhatia
  */
 public class MarketDataService {
-    
+    private static final Logger logger =
+        LoggerFactory.getLogger(MarketDataService.class);
+
     // ----- Commands -----
     public void createMarketPrice(String symbol, Money price) {
-        marketDataRepository.persist(
-                new MarketPrice(symbol, price, new DateTime()));
+        MarketPrice marketPrice = new MarketPrice(symbol, price, new DateTime());
+        marketDataRepository.persist(marketPrice);
+        marketPriceStore.add(marketPrice);
     }
 
+    /**
+     * Changes the market price of a symbol. Must not be called while the
+     * symbol is being matched.
+     */
     public void changeMarketPrice(String symbol, Money price) {
-        MarketPrice marketPrice = marketDataRepository.findMarketPrice(symbol);
+        MarketPrice marketPrice = marketPriceStore.findMarketPrice(symbol);
         marketPrice.change(price);
+        marketPriceStore.update(marketPrice);
+    }
+
+    /**
+     * Restores a market price saved earlier, e.g. in a snapshot. Must not be
+     * called while the symbol is being matched. A symbol that no longer has
+     * a market price is skipped.
+     */
+    public void restoreMarketPrice(String symbol, Money price, DateTime effective) {
+        MarketPrice marketPrice = marketPriceStore.findMarketPrice(symbol);
+        if (marketPrice == null) {
+            logger.warn("No market price for {}, saved price {} not restored",
+                    symbol, price);
+            return;
+        }
+        marketPrice.restore(price, effective);
+        marketPriceStore.update(marketPrice);
     }
 
     // ----- Queries -----
+    /**
+     * Returns the market prices of all symbols. The list is shared and must
+     * not be modified.
+     */
     public List<MarketPrice> getMarketPrices() {
-        return marketDataRepository.findAllMarketPrices();
+        return marketPriceStore.getMarketPrices();
     }
 
     public MarketPrice getMarketPrice(String symbol) {
-        return marketDataRepository.findMarketPrice(symbol);
+        return marketPriceStore.getMarketPrice(symbol);
+    }
+
+    /**
+     * Returns the latest snapshot of the market depth of a symbol, null if
+     * the symbol has no order book. If no depth has been published for the
+     * symbol yet, the snapshot is taken on its matching thread, so this
+     * must not be called on a matching thread.
+     */
+    public MarketDepth getMarketDepth(final String symbol) {
+        MarketDepth marketDepth = marketDepthService.getMarketDepth(symbol);
+        if (marketDepth != null) {
+            return marketDepth;
+        }
+        if (!orderBookRegistry.getSymbols().contains(symbol)) {
+            return null;
+        }
+
+        FutureTask<MarketDepth> task = new FutureTask<MarketDepth>(
+            new Callable<MarketDepth>() {
+                @Override
+                public MarketDepth call() {
+                    return marketDepthService.takeMarketDepth(
+                            symbol, orderBookRegistry.getOrderBook(symbol));
+                }
+            });
+        matchingDispatcher.dispatch(symbol, task);
+        try {
+            return task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(
+                    "Interrupted while taking market depth of " + symbol, e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(
+                    "Failed to take market depth of " + symbol, e.getCause());
+        }
     }
     
     // ----- Attributes -----
     @Inject private MarketDataRepository marketDataRepository;
+    @Inject private MarketPriceStore marketPriceStore;
+    @Inject private MarketDepthService marketDepthService;
+    @Inject private OrderBookRegistry orderBookRegistry;
+    @Inject private MatchingDispatcher matchingDispatcher;
 }
\ No newline at end of file
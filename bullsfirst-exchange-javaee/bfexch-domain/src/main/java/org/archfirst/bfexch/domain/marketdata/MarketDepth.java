@@ -0,0 +1,101 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import java.util.List;
+
+/**
+ * The best price levels on both sides of the book of one instrument, bids
+ * from the highest price down and asks from the lowest price up. The
+ * sequence number is that of the last {@link MarketDepthChanged} event
+ * included, so a client that starts from this snapshot applies the updates
+ * with higher sequence numbers.
+ *
+ * @author Naresh Bhatia
+ */
+public class MarketDepth {
+
+    // ----- Constructors -----
+    public MarketDepth(
+            String symbol,
+            long sequence,
+            List<DepthLevel> bids,
+            List<DepthLevel> asks) {
+        this.symbol = symbol;
+        this.sequence = sequence;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns the market depth as a set of properties. The levels of each
+     * side are numbered from 0. For example:
+     * <code>
+     *     type=snapshot
+     *     symbol=AAPL
+     *     sequence=42
+     *     bids=2
+     *     bid.price.0=100.25
+     *     bid.currency.0=USD
+     *     bid.quantity.0=300
+     *     bid.orders.0=2
+     *     bid.price.1=...
+     *     asks=...
+     * </code>
+     */
+    public String toProperties() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("type=snapshot\n");
+        builder.append("symbol=").append(symbol).append("\n");
+        builder.append("sequence=").append(sequence).append("\n");
+        appendLevels(builder, "bid", bids);
+        appendLevels(builder, "ask", asks);
+        return builder.toString();
+    }
+
+    private static void appendLevels(
+            StringBuilder builder, String prefix, List<DepthLevel> levels) {
+        builder.append(prefix).append("s=").append(levels.size()).append("\n");
+        for (int i = 0; i < levels.size(); i++) {
+            DepthLevel level = levels.get(i);
+            builder.append(prefix).append(".price.").append(i).append("=").append(level.getPrice().getAmount()).append("\n");
+            builder.append(prefix).append(".currency.").append(i).append("=").append(level.getPrice().getCurrency()).append("\n");
+            builder.append(prefix).append(".quantity.").append(i).append("=").append(level.getQuantity().getValue()).append("\n");
+            builder.append(prefix).append(".orders.").append(i).append("=").append(level.getOrderCount()).append("\n");
+        }
+    }
+
+    // ----- Attributes -----
+    private final String symbol;
+    private final long sequence;
+    private final List<DepthLevel> bids;
+    private final List<DepthLevel> asks;
+
+    // ----- Getters -----
+    public String getSymbol() {
+        return symbol;
+    }
+    public long getSequence() {
+        return sequence;
+    }
+    public List<DepthLevel> getBids() {
+        return bids;
+    }
+    public List<DepthLevel> getAsks() {
+        return asks;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import java.util.List;
+
+import org.archfirst.common.domain.DomainEvent;
+
+/**
+ * The changes to the published depth of one book made by one matching
+ * task. Sequence numbers are per symbol and have no gaps, so a client that
+ * misses one takes a new snapshot (see {@link MarketDepth}). The snapshot
+ * as of this event is included.
+ *
+ * @author Naresh Bhatia
+ */
+public class MarketDepthChanged implements DomainEvent {
+
+    private final List<DepthUpdate> updates;
+    private final MarketDepth marketDepth;
+
+    public MarketDepthChanged(List<DepthUpdate> updates, MarketDepth marketDepth) {
+        this.updates = updates;
+        this.marketDepth = marketDepth;
+    }
+
+    /**
+     * Returns the updates as a set of properties. The updates are numbered
+     * from 0. For example:
+     * <code>
+     *     type=update
+     *     symbol=AAPL
+     *     sequence=43
+     *     count=2
+     *     side.0=Buy
+     *     action.0=Change
+     *     price.0=100.25
+     *     currency.0=USD
+     *     quantity.0=200
+     *     orders.0=1
+     *     side.1=...
+     * </code>
+     */
+    public String toProperties() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("type=update\n");
+        builder.append("symbol=").append(getSymbol()).append("\n");
+        builder.append("sequence=").append(getSequence()).append("\n");
+        builder.append("count=").append(updates.size()).append("\n");
+        for (int i = 0; i < updates.size(); i++) {
+            DepthUpdate update = updates.get(i);
+            DepthLevel level = update.getLevel();
+            builder.append("side.").append(i).append("=").append(update.getSide()).append("\n");
+            builder.append("action.").append(i).append("=").append(update.getAction()).append("\n");
+            builder.append("price.").append(i).append("=").append(level.getPrice().getAmount()).append("\n");
+            builder.append("currency.").append(i).append("=").append(level.getPrice().getCurrency()).append("\n");
+            builder.append("quantity.").append(i).append("=").append(level.getQuantity().getValue()).append("\n");
+            builder.append("orders.").append(i).append("=").append(level.getOrderCount()).append("\n");
+        }
+        return builder.toString();
+    }
+
+    public String getSymbol() {
+        return marketDepth.getSymbol();
+    }
+
+    public long getSequence() {
+        return marketDepth.getSequence();
+    }
+
+    public List<DepthUpdate> getUpdates() {
+        return updates;
+    }
+
+    public MarketDepth getMarketDepth() {
+        return marketDepth;
+    }
+}
\ No newline at end of file
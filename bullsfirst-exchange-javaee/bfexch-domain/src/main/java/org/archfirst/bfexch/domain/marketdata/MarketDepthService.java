@@ -0,0 +1,125 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.trading.OrderBook;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the depth of the order books: the best price levels on each
+ * side with their total quantity and number of orders. After each matching
+ * task, the matching dispatcher has the changes made to the levels of the
+ * book published as one {@link MarketDepthChanged} event with the next
+ * sequence number of the symbol. The changes are recorded by the book as
+ * its levels change (see
+ * {@link org.archfirst.bfexch.domain.trading.OrderBookSide}), so the book
+ * is never rescanned.
+ *
+ * The latest snapshot of each symbol is kept for readers on other threads.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class MarketDepthService {
+    private static final Logger logger =
+        LoggerFactory.getLogger(MarketDepthService.class);
+
+    private static final int DEFAULT_LEVELS = 10;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String levelsProperty = configurationService.getString(
+                ConfigConstants.PROP_MARKET_DEPTH_LEVELS);
+        if (levelsProperty != null) {
+            levels = Integer.parseInt(levelsProperty.trim());
+        }
+        logger.info("Publishing {} price levels of market depth", levels);
+    }
+
+    // ----- Commands -----
+    /**
+     * Publishes the changes to the depth of the book since the last call, if
+     * any. Must be called on the matching thread of the symbol.
+     */
+    public void publishChanges(String symbol, OrderBook orderBook) {
+        List<DepthUpdate> updates = orderBook.takeDepthUpdates(levels);
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        MarketDepth previousDepth = marketDepths.get(symbol);
+        long sequence =
+            (previousDepth == null) ? 1 : previousDepth.getSequence() + 1;
+        MarketDepth marketDepth = new MarketDepth(
+                symbol,
+                sequence,
+                orderBook.getBuySide().getPublishedDepth(),
+                orderBook.getSellSide().getPublishedDepth());
+        marketDepths.put(symbol, marketDepth);
+        marketDataEventPublisher.publish(
+                new MarketDepthChanged(updates, marketDepth));
+    }
+
+    /**
+     * Publishes the pending changes to the depth of the book, if any, and
+     * returns the resulting snapshot. Must be called on the matching thread
+     * of the symbol.
+     */
+    public MarketDepth takeMarketDepth(String symbol, OrderBook orderBook) {
+        publishChanges(symbol, orderBook);
+        MarketDepth marketDepth = marketDepths.get(symbol);
+        if (marketDepth == null) {
+            marketDepth = new MarketDepth(symbol, 0,
+                    Collections.<DepthLevel>emptyList(),
+                    Collections.<DepthLevel>emptyList());
+            marketDepths.put(symbol, marketDepth);
+        }
+        return marketDepth;
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns the latest snapshot of the depth of the specified symbol, null
+     * if none has been taken yet.
+     */
+    public MarketDepth getMarketDepth(String symbol) {
+        return marketDepths.get(symbol);
+    }
+
+    // ----- Attributes -----
+    @Inject private MarketDataEventPublisher marketDataEventPublisher;
+    @Inject private ConfigurationService configurationService;
+
+    /** The number of price levels published on each side */
+    private int levels = DEFAULT_LEVELS;
+
+    /** The latest snapshot of each symbol, written by its matching thread */
+    private final ConcurrentMap<String, MarketDepth> marketDepths =
+        new ConcurrentHashMap<String, MarketDepth>();
+}
\ No newline at end of file
@@ -15,6 +15,8 @@
  */
 package org.archfirst.bfexch.domain.marketdata;
 
+import java.util.List;
+
 import javax.persistence.AttributeOverride;
 import javax.persistence.AttributeOverrides;
 import javax.persistence.Column;
@@ -67,6 +69,16 @@ public class MarketPrice {
         this.effective = new DateTime();
     }
 
+    /**
+     * Restores a market price saved earlier, unless this price is more recent.
+     */
+    public void restore(Money price, DateTime effective) {
+        if (effective.isAfter(this.effective)) {
+            this.price = price;
+            this.effective = effective;
+        }
+    }
+
     // ----- Queries -----
     /**
      * Returns this object as a set of properties. For example:
@@ -88,6 +100,34 @@ public class MarketPrice {
         return builder.toString();
     }
 
+    /**
+     * Returns several market prices as one set of properties. The number of
+     * prices is given by count, the properties of each price are numbered
+     * from 0. For example:
+     * <code>
+     *     count=2
+     *     symbol.0=AAPL
+     *     price.0=1.0645
+     *     currency.0=USD
+     *     effective.0=2009-01-02T09:00:00.000-04:00
+     *     symbol.1=...
+     * </code>
+     * 
+     * @return the market prices as a set of properties
+     */
+    public static String toProperties(List<MarketPrice> marketPrices) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("count=").append(marketPrices.size()).append("\n");
+        for (int i = 0; i < marketPrices.size(); i++) {
+            MarketPrice marketPrice = marketPrices.get(i);
+            builder.append("symbol.").append(i).append("=").append(marketPrice.symbol).append("\n");
+            builder.append("price.").append(i).append("=").append(marketPrice.price.getAmount()).append("\n");
+            builder.append("currency.").append(i).append("=").append(marketPrice.price.getCurrency()).append("\n");
+            builder.append("effective.").append(i).append("=").append(marketPrice.effective.toString()).append("\n");
+        }
+        return builder.toString();
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.trading.TransactionRunner;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.bfexch.domain.util.ConflatingWriter;
+import org.archfirst.common.config.ConfigurationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the market prices of all instruments in memory for the life of the
+ * exchange. The prices are loaded once from the database and are then
+ * maintained by the matching engine, so matching never reads them back.
+ *
+ * Each symbol has a working price, which is only used by the matching
+ * thread of the symbol (see {@link #findMarketPrice(String)}). After a
+ * change, a copy of the working price is published with
+ * {@link #update(MarketPrice)} for readers on other threads. The list of
+ * all prices is a snapshot that is shared by readers until a price changes,
+ * and is then rebuilt when it is next read.
+ *
+ * When write-behind is enabled, changed prices are written to the database
+ * by a {@link ConflatingWriter} every flushIntervalMillis. Changes to the
+ * same price in the meantime are written only once. Otherwise prices are
+ * written as they change, in the transaction of the change.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class MarketPriceStore {
+    private static final Logger logger =
+        LoggerFactory.getLogger(MarketPriceStore.class);
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        if (!"true".equalsIgnoreCase(configurationService.getString(
+                ConfigConstants.PROP_WRITE_BEHIND_ENABLED))) {
+            logger.info("Write-behind is disabled, market prices are written as they change");
+            return;
+        }
+        String interval = configurationService.getString(
+                ConfigConstants.PROP_WRITE_BEHIND_FLUSH_INTERVAL_MILLIS);
+        long flushIntervalMillis = (interval == null) ?
+                DEFAULT_FLUSH_INTERVAL_MILLIS : Long.parseLong(interval.trim());
+
+        writer = new Writer(flushIntervalMillis);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread and writes the prices that are still pending.
+     */
+    @PreDestroy
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.stop();
+        writer.flush();
+    }
+
+    // ----- Commands -----
+    /**
+     * Adds a new market price, which must have been persisted already.
+     */
+    public void add(MarketPrice marketPrice) {
+        getWorkingPrices().put(marketPrice.getSymbol(), copyOf(marketPrice));
+        publish(marketPrice);
+    }
+
+    /**
+     * Publishes the current state of a working price and writes it to the
+     * database. Must be called on the thread that changed the price.
+     */
+    public void update(MarketPrice marketPrice) {
+        MarketPrice copy = publish(marketPrice);
+        if (writer == null) {
+            marketDataRepository.updateMarketPrice(copy);
+        }
+        else {
+            writer.put(copy.getSymbol(), copy);
+        }
+    }
+
+    private MarketPrice publish(MarketPrice marketPrice) {
+        MarketPrice copy = copyOf(marketPrice);
+        getPublishedPrices().put(copy.getSymbol(), copy);
+        generation.incrementAndGet();
+        return copy;
+    }
+
+    private void write(final List<MarketPrice> marketPrices) {
+        logger.debug("Writing {} market prices", marketPrices.size());
+        transactionRunner.run(new Runnable() {
+            @Override
+            public void run() {
+                for (MarketPrice marketPrice : marketPrices) {
+                    marketDataRepository.updateMarketPrice(marketPrice);
+                }
+            }
+        });
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns the working price of the symbol, null if the symbol has no
+     * market price. The working price may only be used, and changed, on the
+     * matching thread of the symbol.
+     */
+    public MarketPrice findMarketPrice(String symbol) {
+        return getWorkingPrices().get(symbol);
+    }
+
+    /**
+     * Returns the latest published price of the symbol, null if the symbol
+     * has no market price. Safe to call from any thread.
+     */
+    public MarketPrice getMarketPrice(String symbol) {
+        return getPublishedPrices().get(symbol);
+    }
+
+    /**
+     * Returns the latest published prices of all symbols. The list is
+     * shared by all callers until the next change and must not be modified.
+     */
+    public List<MarketPrice> getMarketPrices() {
+        long currentGeneration = generation.get();
+        Snapshot currentSnapshot = snapshot;
+        if (currentSnapshot == null ||
+            currentSnapshot.generation != currentGeneration) {
+            currentSnapshot = new Snapshot(currentGeneration,
+                    Collections.unmodifiableList(new ArrayList<MarketPrice>(
+                            getPublishedPrices().values())));
+            snapshot = currentSnapshot;
+        }
+        return currentSnapshot.marketPrices;
+    }
+
+    private static MarketPrice copyOf(MarketPrice marketPrice) {
+        return new MarketPrice(
+                marketPrice.getSymbol(),
+                marketPrice.getPrice(),
+                marketPrice.getEffective());
+    }
+
+    // ----- Attributes -----
+    @Inject private MarketDataRepository marketDataRepository;
+    @Inject private ConfigurationService configurationService;
+    @Inject private TransactionRunner transactionRunner;
+
+    /**
+     * Working and published prices by symbol. They are lazily loaded using
+     * <a href="http://en.wikipedia.org/wiki/Double-checked_locking">
+     * double-checked locking</a>.
+     */
+    private volatile ConcurrentMap<String, MarketPrice> workingPrices;
+    private volatile ConcurrentMap<String, MarketPrice> publishedPrices;
+
+    /** Incremented whenever a price is published */
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    /** Write-behind, null if disabled */
+    private Writer writer;
+
+    // ----- Getters -----
+    private ConcurrentMap<String, MarketPrice> getWorkingPrices() {
+        ConcurrentMap<String, MarketPrice> prices = workingPrices;
+        if (prices == null) {
+            load();
+            prices = workingPrices;
+        }
+        return prices;
+    }
+
+    private ConcurrentMap<String, MarketPrice> getPublishedPrices() {
+        ConcurrentMap<String, MarketPrice> prices = publishedPrices;
+        if (prices == null) {
+            load();
+            prices = publishedPrices;
+        }
+        return prices;
+    }
+
+    private synchronized void load() {
+        if (workingPrices != null) {
+            return;
+        }
+        ConcurrentMap<String, MarketPrice> working =
+            new ConcurrentHashMap<String, MarketPrice>();
+        ConcurrentMap<String, MarketPrice> published =
+            new ConcurrentHashMap<String, MarketPrice>();
+        for (MarketPrice marketPrice : marketDataRepository.findAllMarketPrices()) {
+            working.put(marketPrice.getSymbol(), copyOf(marketPrice));
+            published.put(marketPrice.getSymbol(), copyOf(marketPrice));
+        }
+        publishedPrices = published;
+        workingPrices = working;
+        logger.info("Loaded {} market prices", working.size());
+    }
+
+    // ----- Nested Types -----
+    /**
+     * The published prices as of a generation. A snapshot built while a
+     * price is being published may already contain the new price, in which
+     * case it is merely rebuilt once more than necessary.
+     */
+    private static class Snapshot {
+        private final long generation;
+        private final List<MarketPrice> marketPrices;
+
+        public Snapshot(long generation, List<MarketPrice> marketPrices) {
+            this.generation = generation;
+            this.marketPrices = marketPrices;
+        }
+    }
+
+    private class Writer extends ConflatingWriter<String, MarketPrice> {
+        public Writer(long flushIntervalMillis) {
+            super("market-price-writer", flushIntervalMillis);
+        }
+
+        @Override
+        protected void write(List<MarketPrice> marketPrices) {
+            MarketPriceStore.this.write(marketPrices);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+
+/**
+ * Keeps the time-and-sales tape of each instrument in memory (see
+ * {@link TradeTape}), so that recent trades can be read without querying
+ * the executions in the database. The tapes are filled by the matching
+ * engine as orders are executed and hold the last tapeCapacity trades of
+ * each symbol. They are not persisted, so they start empty when the
+ * exchange starts.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class TimeAndSalesService {
+
+    private static final int DEFAULT_TAPE_CAPACITY = 10000;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String capacity = configurationService.getString(
+                ConfigConstants.PROP_TIME_AND_SALES_CAPACITY);
+        if (capacity != null) {
+            tapeCapacity = Integer.parseInt(capacity.trim());
+        }
+    }
+
+    // ----- Commands -----
+    /**
+     * Appends a trade to the tape of the symbol. Must be called on the
+     * matching thread of the symbol.
+     */
+    public void recordTrade(
+            String symbol, DateTime time, Money price, DecimalQuantity quantity) {
+        TradeTape tape = tapes.get(symbol);
+        if (tape == null) {
+            tape = new TradeTape(symbol, tapeCapacity);
+            tapes.put(symbol, tape);
+        }
+        tape.append(time, price, quantity);
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns up to count of the most recent trades of the symbol, oldest
+     * first.
+     */
+    public List<Trade> getLastTrades(String symbol, int count) {
+        TradeTape tape = tapes.get(symbol);
+        return (tape == null) ?
+            Collections.<Trade>emptyList() : tape.getLastTrades(count);
+    }
+
+    /**
+     * Returns the trades of the symbol with a sequence number greater than
+     * the specified one that are still on the tape, oldest first.
+     */
+    public List<Trade> getTradesSince(String symbol, long sequence) {
+        TradeTape tape = tapes.get(symbol);
+        return (tape == null) ?
+            Collections.<Trade>emptyList() : tape.getTradesSince(sequence);
+    }
+
+    // ----- Attributes -----
+    @Inject private ConfigurationService configurationService;
+
+    /** The number of trades kept for each symbol */
+    private int tapeCapacity = DEFAULT_TAPE_CAPACITY;
+
+    /** Map from symbol to tape, each tape is written by its matching thread */
+    private final ConcurrentMap<String, TradeTape> tapes =
+        new ConcurrentHashMap<String, TradeTape>();
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+
+/**
+ * A trade on the time-and-sales tape of an instrument. Sequence numbers are
+ * per symbol, start at 1 and have no gaps.
+ *
+ * @author Naresh Bhatia
+ */
+public class Trade {
+
+    // ----- Constructors -----
+    public Trade(
+            long sequence,
+            String symbol,
+            DateTime time,
+            Money price,
+            DecimalQuantity quantity) {
+        this.sequence = sequence;
+        this.symbol = symbol;
+        this.time = time;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    // ----- Attributes -----
+    private final long sequence;
+    private final String symbol;
+    private final DateTime time;
+    private final Money price;
+    private final DecimalQuantity quantity;
+
+    // ----- Getters -----
+    public long getSequence() {
+        return sequence;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public DateTime getTime() {
+        return time;
+    }
+    public Money getPrice() {
+        return price;
+    }
+    public DecimalQuantity getQuantity() {
+        return quantity;
+    }
+}
\ No newline at end of file
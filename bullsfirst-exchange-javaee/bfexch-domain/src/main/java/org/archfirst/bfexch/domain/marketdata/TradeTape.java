@@ -0,0 +1,114 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+
+/**
+ * The most recent trades in one instrument, in a ring buffer of fixed
+ * capacity. The slots are preallocated arrays holding references to the
+ * immutable time, price and quantity of each execution, so appending a
+ * trade allocates nothing. Once the tape is full, each trade overwrites the
+ * oldest one.
+ *
+ * Trades are appended by the matching thread of the symbol and read by any
+ * thread. Both hold the lock of the tape, which is uncontended while no
+ * one is reading, and readers only copy the slots while holding it.
+ *
+ * @author Naresh Bhatia
+ */
+public class TradeTape {
+
+    public TradeTape(String symbol, int capacity) {
+        this.symbol = symbol;
+        this.capacity = capacity;
+        this.times = new DateTime[capacity];
+        this.prices = new Money[capacity];
+        this.quantities = new DecimalQuantity[capacity];
+    }
+
+    // ----- Commands -----
+    public synchronized void append(
+            DateTime time, Money price, DecimalQuantity quantity) {
+        int index = (int)(lastSequence % capacity);
+        times[index] = time;
+        prices[index] = price;
+        quantities[index] = quantity;
+        lastSequence++;
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns up to count of the most recent trades, oldest first.
+     */
+    public List<Trade> getLastTrades(int count) {
+        synchronized(this) {
+            return copyTrades(Math.max(lastSequence - count, 0));
+        }
+    }
+
+    /**
+     * Returns the trades with a sequence number greater than the specified
+     * one, oldest first. Trades that have already been overwritten are
+     * missing, so the first trade returned may not directly follow the
+     * specified sequence number.
+     */
+    public List<Trade> getTradesSince(long sequence) {
+        synchronized(this) {
+            return copyTrades(Math.max(sequence, 0));
+        }
+    }
+
+    /**
+     * Copies the trades with a sequence number greater than the specified
+     * one that are still on the tape. Must be called while holding the lock.
+     */
+    private List<Trade> copyTrades(long afterSequence) {
+        long firstSequence = Math.max(afterSequence, lastSequence - capacity) + 1;
+        List<Trade> trades = new ArrayList<Trade>(
+                (int)Math.max(lastSequence - firstSequence + 1, 0));
+        for (long sequence = firstSequence; sequence <= lastSequence; sequence++) {
+            int index = (int)((sequence - 1) % capacity);
+            trades.add(new Trade(sequence, symbol,
+                    times[index], prices[index], quantities[index]));
+        }
+        return trades;
+    }
+
+    // ----- Attributes -----
+    private final String symbol;
+    private final int capacity;
+    private final DateTime[] times;
+    private final Money[] prices;
+    private final DecimalQuantity[] quantities;
+
+    /** The sequence number of the last trade appended, 0 if none */
+    private long lastSequence;
+
+    // ----- Getters -----
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+}
\ No newline at end of file
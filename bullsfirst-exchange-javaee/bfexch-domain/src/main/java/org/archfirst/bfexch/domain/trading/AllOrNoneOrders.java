@@ -0,0 +1,157 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+
+/**
+ * The AllOrNone orders on one side of an order book. An AllOrNone order can
+ * only be matched with a single order that is large enough to fill it, so it
+ * is always filled in one execution and its leaves quantity stays equal to
+ * its quantity while it rests in the book. The orders are therefore indexed
+ * by quantity (in units, see {@link FixedPoint}), and within a quantity kept
+ * in the order of their priority.
+ *
+ * Keeping these orders out of the price levels means that an incoming order
+ * never has to step over AllOrNone orders it is too small to fill. Only the
+ * quantities up to the leaves quantity of the incoming order are consulted,
+ * and within each of them only the order with the highest priority.
+ *
+ * @author Naresh Bhatia
+ */
+public class AllOrNoneOrders {
+
+    public AllOrNoneOrders(OrderSide side) {
+        this.side = side;
+    }
+
+    // ----- Commands -----
+    public void add(Order order) {
+        Long quantityUnits = getQuantityUnits(order);
+        NavigableSet<Order> orders = ordersByQuantity.get(quantityUnits);
+        if (orders == null) {
+            orders = new TreeSet<Order>(priorityComparator);
+            ordersByQuantity.put(quantityUnits, orders);
+        }
+        orders.add(order);
+    }
+
+    public void remove(Order order) {
+        Long quantityUnits = getQuantityUnits(order);
+        NavigableSet<Order> orders = ordersByQuantity.get(quantityUnits);
+        if (orders != null && orders.remove(order) && orders.isEmpty()) {
+            ordersByQuantity.remove(quantityUnits);
+        }
+    }
+
+    // ----- Queries -----
+    public boolean isEmpty() {
+        return ordersByQuantity.isEmpty();
+    }
+
+    /**
+     * Returns the order with the highest priority that can be filled by the
+     * incoming order: its quantity must not exceed the leaves quantity of the
+     * incoming order (and must equal it if the incoming order is AllOrNone
+     * itself) and its price must cross the price of the incoming order.
+     * Returns null if there is no such order.
+     */
+    public Order getFirstMatchable(Order incomingOrder) {
+        if (ordersByQuantity.isEmpty()) {
+            return null;
+        }
+        long leavesQtyUnits = incomingOrder.getLeavesQtyUnits();
+        NavigableMap<Long, NavigableSet<Order>> candidates =
+            incomingOrder.isAllOrNone() ?
+                ordersByQuantity.subMap(leavesQtyUnits, true, leavesQtyUnits, true) :
+                ordersByQuantity.headMap(leavesQtyUnits, true);
+
+        Order firstOrder = null;
+        for (NavigableSet<Order> orders : candidates.values()) {
+            // Orders of a quantity are sorted by price, so if the first one
+            // does not cross, none of them do
+            Order candidate = orders.first();
+            if (crosses(candidate, incomingOrder) &&
+                (firstOrder == null ||
+                 priorityComparator.compare(candidate, firstOrder) < 0)) {
+                firstOrder = candidate;
+            }
+        }
+        return firstOrder;
+    }
+
+    /**
+     * Returns all orders in the order of their priority.
+     */
+    public List<Order> getOrders() {
+        List<Order> allOrders = new ArrayList<Order>();
+        for (NavigableSet<Order> orders : ordersByQuantity.values()) {
+            allOrders.addAll(orders);
+        }
+        Collections.sort(allOrders, priorityComparator);
+        return allOrders;
+    }
+
+    private boolean crosses(Order restingOrder, Order incomingOrder) {
+        if (restingOrder.getType() == OrderType.Market ||
+            incomingOrder.getType() == OrderType.Market) {
+            return true;
+        }
+        return (side == OrderSide.Buy) ?
+            restingOrder.getLimitPriceTicks() >= incomingOrder.getLimitPriceTicks() :
+            restingOrder.getLimitPriceTicks() <= incomingOrder.getLimitPriceTicks();
+    }
+
+    private static Long getQuantityUnits(Order order) {
+        return FixedPoint.toQuantityUnits(order.getQuantity());
+    }
+
+    // ----- Attributes -----
+    /**
+     * Orders by priority (see {@link Order#compareTo(Order)}). Orders of the
+     * same priority are told apart by id, so that neither is lost.
+     */
+    private static final Comparator<Order> priorityComparator =
+        new Comparator<Order>() {
+            @Override
+            public int compare(Order order1, Order order2) {
+                int result = order1.compareTo(order2);
+                return (result != 0) ? result :
+                    order1.getId().compareTo(order2.getId());
+            }
+        };
+
+    private final OrderSide side;
+    private final NavigableMap<Long, NavigableSet<Order>> ordersByQuantity =
+        new TreeMap<Long, NavigableSet<Order>>();
+
+    // ----- Getters -----
+    public OrderSide getSide() {
+        return side;
+    }
+}
\ No newline at end of file
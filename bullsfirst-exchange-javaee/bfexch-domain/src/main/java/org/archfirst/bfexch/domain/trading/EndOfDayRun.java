@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+
+/**
+ * The progress of one end of day event. Each symbol is processed in chunks
+ * on its matching thread, so symbols owned by different threads are
+ * processed in parallel. The run is complete once all symbols are done.
+ *
+ * @author Naresh Bhatia
+ */
+public class EndOfDayRun {
+
+    public EndOfDayRun(long sequence, Collection<String> symbols, boolean replay) {
+        this.sequence = sequence;
+        this.replay = replay;
+        this.symbolCount = symbols.size();
+        this.remainingSymbols.addAll(symbols);
+    }
+
+    // ----- Commands -----
+    /**
+     * Adds to the number of orders marked as DoneForDay.
+     * 
+     * @return the number of orders marked so far, across all symbols
+     */
+    public long addOrdersMarked(int count) {
+        return ordersMarked.addAndGet(count);
+    }
+
+    /**
+     * Records that all orders of the symbol have been processed.
+     * 
+     * @return true if this was the last symbol of the run
+     */
+    public boolean completeSymbol(String symbol) {
+        return remainingSymbols.remove(symbol) && remainingSymbols.isEmpty();
+    }
+
+    // ----- Queries -----
+    public int getRemainingSymbolCount() {
+        return remainingSymbols.size();
+    }
+
+    public long getOrdersMarked() {
+        return ordersMarked.get();
+    }
+
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - startTime.getMillis();
+    }
+
+    // ----- Attributes -----
+    private final long sequence;
+    private final boolean replay;
+    private final int symbolCount;
+    private final DateTime startTime = new DateTime();
+    private final Set<String> remainingSymbols =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong ordersMarked = new AtomicLong();
+
+    // ----- Getters -----
+    /**
+     * Returns the sequence number of the event in the order journal.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns true if the event is being replayed from the order journal.
+     */
+    public boolean isReplay() {
+        return replay;
+    }
+
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    public DateTime getStartTime() {
+        return startTime;
+    }
+}
\ No newline at end of file
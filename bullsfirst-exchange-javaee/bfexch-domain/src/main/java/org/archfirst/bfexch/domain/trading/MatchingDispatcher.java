@@ -0,0 +1,232 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.marketdata.MarketDepthService;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Partitions symbols among a fixed set of matching threads. Each symbol is
+ * owned by exactly one thread, which is the only writer of its order book,
+ * so no locks are needed while matching. Work for a symbol is handed to its
+ * thread through a bounded queue. When the queue is full, the caller blocks
+ * until there is room, which pushes back on the message listeners feeding
+ * the exchange.
+ *
+ * Each task runs in a transaction of its own. After each task, the changes
+ * it made to the depth of the symbol's book are published (see
+ * {@link MarketDepthService}).
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class MatchingDispatcher {
+    private static final Logger logger =
+        LoggerFactory.getLogger(MatchingDispatcher.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String threads = configurationService.getString(
+                ConfigConstants.PROP_MATCHING_THREADS);
+        if (threads != null) {
+            numberOfThreads = Integer.parseInt(threads.trim());
+        }
+        String capacity = configurationService.getString(
+                ConfigConstants.PROP_MATCHING_QUEUE_CAPACITY);
+        if (capacity != null) {
+            queueCapacity = Integer.parseInt(capacity.trim());
+        }
+    }
+
+    // ----- Commands -----
+    /**
+     * Queues the task on the thread that owns the specified symbol. Blocks if
+     * that thread's queue is full.
+     */
+    public void dispatch(String symbol, Runnable task) {
+        try {
+            getPartition(symbol).queue.put(new MatchingTask(symbol, task));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(
+                    "Interrupted while dispatching task for " + symbol, e);
+        }
+    }
+
+    /**
+     * Blocks until every task queued before this call has run. A barrier is
+     * queued on each matching thread and the call returns once all of them
+     * have been reached.
+     */
+    public void awaitQueuedTasks() {
+        Partition[] currentPartitions = getPartitions();
+        CountDownLatch barrier = new CountDownLatch(currentPartitions.length);
+        try {
+            for (Partition partition : currentPartitions) {
+                partition.queue.put(new MatchingTask(barrier));
+            }
+            barrier.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(
+                    "Interrupted while waiting for queued tasks", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (partitions != null) {
+            for (Partition partition : partitions) {
+                partition.thread.interrupt();
+            }
+            partitions = null;
+        }
+    }
+
+    // ----- Queries -----
+    private Partition getPartition(String symbol) {
+        Partition[] currentPartitions = getPartitions();
+        int index =
+            (symbol.hashCode() & Integer.MAX_VALUE) % currentPartitions.length;
+        return currentPartitions[index];
+    }
+
+    // ----- Attributes -----
+    @Inject private TransactionRunner transactionRunner;
+    @Inject private OrderBookRegistry orderBookRegistry;
+    @Inject private MarketDepthService marketDepthService;
+    @Inject private ConfigurationService configurationService;
+
+    /** The number of matching threads, by default one per processor */
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+    /** The number of tasks each matching thread can have queued */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Matching threads are started on first use, using
+     * <a href="http://en.wikipedia.org/wiki/Double-checked_locking">
+     * double-checked locking</a>.
+     */
+    private volatile Partition[] partitions;
+
+    // ----- Getters -----
+    private Partition[] getPartitions() {
+        Partition[] currentPartitions = partitions;
+        if (currentPartitions == null) {
+            synchronized(this) {
+                currentPartitions = partitions;
+                if (currentPartitions == null) {
+                    currentPartitions = startPartitions();
+                    partitions = currentPartitions;
+                }
+            }
+        }
+        return currentPartitions;
+    }
+
+    private Partition[] startPartitions() {
+        logger.info("Starting {} matching threads...", numberOfThreads);
+        Partition[] newPartitions = new Partition[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            newPartitions[i] = new Partition("matching-" + i);
+            newPartitions[i].thread.start();
+        }
+        return newPartitions;
+    }
+
+    // ----- Nested Types -----
+    private static class MatchingTask {
+        private final String symbol;
+        private final Runnable task;
+        private final CountDownLatch barrier;
+
+        public MatchingTask(String symbol, Runnable task) {
+            this.symbol = symbol;
+            this.task = task;
+            this.barrier = null;
+        }
+
+        /** Creates a barrier, which counts down the latch when reached */
+        public MatchingTask(CountDownLatch barrier) {
+            this.symbol = null;
+            this.task = null;
+            this.barrier = barrier;
+        }
+    }
+
+    private class Partition implements Runnable {
+        private final BlockingQueue<MatchingTask> queue =
+            new ArrayBlockingQueue<MatchingTask>(queueCapacity);
+        private final Thread thread;
+
+        public Partition(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                MatchingTask matchingTask;
+                try {
+                    matchingTask = queue.take();
+                }
+                catch (InterruptedException e) {
+                    break;
+                }
+
+                if (matchingTask.barrier != null) {
+                    matchingTask.barrier.countDown();
+                    continue;
+                }
+
+                try {
+                    transactionRunner.run(matchingTask.task);
+                }
+                catch (RuntimeException e) {
+                    logger.error("Matching task failed", e);
+                }
+
+                try {
+                    marketDepthService.publishChanges(matchingTask.symbol,
+                            orderBookRegistry.getOrderBook(matchingTask.symbol));
+                }
+                catch (RuntimeException e) {
+                    logger.error("Failed to publish market depth", e);
+                }
+            }
+            logger.info("{} stopped", thread.getName());
+        }
+    }
+}
@@ -15,23 +15,33 @@
  */
 package org.archfirst.bfexch.domain.trading;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.inject.Inject;
 
+import org.archfirst.bfexch.domain.marketdata.BarService;
 import org.archfirst.bfexch.domain.marketdata.MarketDataEventPublisher;
-import org.archfirst.bfexch.domain.marketdata.MarketDataRepository;
 import org.archfirst.bfexch.domain.marketdata.MarketPrice;
 import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceStore;
+import org.archfirst.bfexch.domain.marketdata.TimeAndSalesService;
 import org.archfirst.bfexch.domain.trading.order.Execution;
 import org.archfirst.bfexch.domain.trading.order.Order;
 import org.archfirst.bfexch.domain.trading.order.OrderAccepted;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelRejected;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest;
+import org.archfirst.bfexch.domain.trading.order.OrderCanceled;
+import org.archfirst.bfexch.domain.trading.order.OrderDoneForDay;
 import org.archfirst.bfexch.domain.trading.order.OrderEventPublisher;
 import org.archfirst.bfexch.domain.trading.order.OrderExecuted;
+import org.archfirst.bfexch.domain.trading.order.OrderReplaced;
 import org.archfirst.bfexch.domain.trading.order.OrderRepository;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
 import org.archfirst.bfexch.domain.trading.order.OrderStatus;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
 import org.archfirst.bfexch.domain.trading.order.OrderType;
-import org.archfirst.bfexch.domain.util.Constants;
+import org.archfirst.bfexch.domain.util.FixedPoint;
 import org.archfirst.common.money.Money;
 import org.archfirst.common.quantity.DecimalQuantity;
 import org.joda.time.DateTime;
@@ -48,64 +58,371 @@ public class MatchingEngine {
         LoggerFactory.getLogger(MatchingEngine.class);
     
     // ----- Commands -----
+    /**
+     * Accepts the order and matches it against the book. A Stop or StopLimit
+     * order is held in the trigger book until the market price reaches its
+     * stop price, unless it has already done so. Any stops triggered by the
+     * resulting change in the market price are then matched in their turn.
+     * Only orders that remain active after matching enter the book.
+     */
     public void placeOrder(Order order) {
+        OrderBook orderBook = getOrderBook(order.getSymbol());
         this.acceptOrder(order);
-        this.performMatching(order.getSymbol());
+        if (order.isPendingStop()) {
+            MarketPrice marketPrice =
+                marketPriceStore.findMarketPrice(order.getSymbol());
+            if (!isTriggered(order, marketPrice.getPrice())) {
+                orderBookRegistry.add(order);
+                return;
+            }
+            order.trigger(orderRepository);
+        }
+        if (this.matchIncomingOrder(order, orderBook)) {
+            orderBookRegistry.add(order);
+        }
+        this.matchTriggeredStops(orderBook, order.getSymbol());
     }
-    
-    private void performMatching(String symbol) {
-        logger.debug("Pricing engine triggered for symbol {}", symbol);
-        MarketPrice marketPrice =
-            marketDataRepository.findMarketPrice(symbol);
-        Money preMatchingPrice = marketPrice.getPrice();
-        OrderBook orderBook = getOrderBook(symbol);
-
-        // Iterate through buy orders
-        for (Order buyOrder : orderBook.getBuyStack()) {
-            logger.debug("Trying to match buy order:\n{}", buyOrder);
-            MatchResult matchResult =
-                new MatchResult(false, NoMatchReason.priceMismatch);
-            
-            // Iterate through sell orders to match the current buy order
-            for (Order sellOrder : orderBook.getSellStack()) {
-
-                // Skip sell order if it has been filled in a previous iteration
-                if (!sellOrder.isActive()) {
-                    continue;
+
+    /**
+     * Replaces the quantity and/or limit price of an order in the book. An
+     * order whose limit price is unchanged and whose quantity does not
+     * increase is modified in place and keeps its position in its queue. An
+     * AllOrNone order modified in place may now be filled by orders that
+     * were too small for it, so it is matched again with its priority
+     * unchanged. Otherwise it takes the time at which the exchange received the request
+     * as its priority time - not the TransactTime set by the client - and,
+     * as its new price may cross the opposite side, is matched again.
+     * Invalid requests are rejected.
+     */
+    public void replaceOrder(Order order, OrderCancelReplaceRequest request) {
+        orderRepository.attach(order);
+        DecimalQuantity quantity = request.getQuantity();
+        Money limitPrice = request.getLimitPrice();
+        if (!order.canReplace(quantity, limitPrice)) {
+            orderEventPublisher.publish(new OrderCancelRejected(order, true));
+            return;
+        }
+
+        OrderBook orderBook = getOrderBook(order.getSymbol());
+        if (order.keepsPriority(quantity, limitPrice)) {
+            orderBook.reduceQuantity(order, quantity);
+            orderRepository.update(order);
+            orderEventPublisher.publish(new OrderReplaced(order));
+            if (order.isAllOrNone() && !order.isPendingStop()) {
+                orderBookRegistry.remove(order);
+                if (this.matchIncomingOrder(order, orderBook)) {
+                    orderBookRegistry.add(order);
                 }
+                this.matchTriggeredStops(orderBook, order.getSymbol());
+            }
+            return;
+        }
+
+        orderBookRegistry.remove(order);
+        order.replace(quantity, limitPrice, request.getReceivedTime());
+        orderRepository.update(order);
+        orderEventPublisher.publish(new OrderReplaced(order));
+        if (order.isPendingStop()) {
+            orderBookRegistry.add(order);
+            return;
+        }
+        if (this.matchIncomingOrder(order, orderBook)) {
+            orderBookRegistry.add(order);
+        }
+        this.matchTriggeredStops(orderBook, order.getSymbol());
+    }
+
+    /**
+     * Cancels an order in the book, including a stop that has not been
+     * triggered yet. An order whose status does not allow it to be canceled
+     * is rejected.
+     */
+    public void cancelOrder(Order order) {
+        orderRepository.attach(order);
+        order.cancel();
+        if (order.getStatus() == OrderStatus.Canceled) {
+            orderRepository.update(order);
+            orderBookRegistry.remove(order);
+            orderEventPublisher.publish(new OrderCanceled(order));
+        }
+        else {
+            orderEventPublisher.publish(new OrderCancelRejected(order));
+        }
+    }
+
+    /**
+     * Rejects an OrderCancelRequest or, if replaceRequest is true, an
+     * OrderCancelReplaceRequest for an order that the exchange does not know.
+     */
+    public void rejectUnknownOrder(String clOrdID, boolean replaceRequest) {
+        logger.warn("Rejecting request for unknown order {}", clOrdID);
+        orderEventPublisher.publish(
+                new OrderCancelRejected(clOrdID, replaceRequest));
+    }
+
+    /**
+     * Takes orders that have been marked DoneForDay in the database out of
+     * the book. The orders are copies loaded from the database, so each one
+     * is resolved to the instance resting in the book, which is marked
+     * DoneForDay and removed. A copy whose order is no longer in the book is
+     * reported as it is.
+     */
+    public void markDoneForDay(List<Order> orders) {
+        for (Order order : orders) {
+            Order restingOrder =
+                orderBookRegistry.findOrder(order.getClientOrderId());
+            if (restingOrder != null) {
+                orderBookRegistry.remove(restingOrder);
+                restingOrder.doneForDay();
+                order = restingOrder;
+            }
+            orderEventPublisher.publish(new OrderDoneForDay(order));
+        }
+    }
 
-                matchResult = matchOrder(buyOrder, sellOrder, marketPrice);
+    /**
+     * Matches an order that is about to enter the book. A FillOrKill order
+     * is only matched if the opposite side can fill it completely. What
+     * remains of an ImmediateOrCancel or FillOrKill order after matching is
+     * canceled, so such orders never rest in the book.
+     *
+     * @return true if the order remains active and must be added to the book
+     */
+    private boolean matchIncomingOrder(Order order, OrderBook orderBook) {
+        if (order.getTerm() == OrderTerm.FillOrKill &&
+            !canFill(order, orderBook.getOppositeSide(order.getSide()))) {
+            logger.debug("FillOrKill order cannot be filled, killing it");
+        }
+        else {
+            this.performMatching(order, orderBook);
+        }
+        if (order.isActive() && order.getTerm().isImmediate()) {
+            this.cancelRemainder(order);
+        }
+        return order.isActive();
+    }
 
-                // Analyze match result and break out of inner loop if appropriate
-                if (matchResult.isMatch()) {
-                    if (buyOrder.getStatus() == OrderStatus.Filled) {
-                        logger.debug("Buy order filled, stop matching with sell orders");
-                        break;
-                    }
+    /**
+     * Matches the stops triggered by the market price, in the order defined
+     * by {@link OrderBook#takeTriggeredStops(Money)}. Since their executions
+     * may move the market price further, this is repeated until no more
+     * stops are triggered. Each round removes the triggered stops from the
+     * trigger book, so it always ends.
+     */
+    private void matchTriggeredStops(OrderBook orderBook, String symbol) {
+        while (true) {
+            MarketPrice marketPrice = marketPriceStore.findMarketPrice(symbol);
+            List<Order> triggeredOrders =
+                orderBook.takeTriggeredStops(marketPrice.getPrice());
+            if (triggeredOrders.isEmpty()) {
+                return;
+            }
+            for (Order order : triggeredOrders) {
+                logger.debug("Stop triggered:\n{}", order);
+                orderRepository.attach(order);
+                order.trigger(orderRepository);
+                if (this.matchIncomingOrder(order, orderBook)) {
+                    orderBookRegistry.add(order);
                 }
-                else { // no match
-                    if (matchResult.noMatchReason == NoMatchReason.priceMismatch) {
-                        logger.debug("Buy order did not match due to price mismatch, stop matching with sell orders");
-                        break;
-                    }
+                else {
+                    orderBookRegistry.remove(order);
                 }
             }
+        }
+    }
+    
+    /**
+     * Matches the incoming order against the opposite side of the book until
+     * it is filled or stops crossing. Resting orders were already matched
+     * with each other when they arrived, so there is no need to rescan the
+     * rest of the book. The cost of matching is therefore proportional to
+     * the number of fills, not to the size of the book.
+     * 
+     * Resting AllOrNone orders are kept apart (see {@link AllOrNoneOrders})
+     * and are only consulted for orders that are large enough to fill them.
+     * Those are matched in their turn of priority among the other orders.
+     * The next one is looked up once and then kept until it is matched or
+     * no longer fits (see {@link AllOrNoneCandidate}), so the cost remains
+     * proportional to the number of fills.
+     */
+    private void performMatching(Order order, OrderBook orderBook) {
+        String symbol = order.getSymbol();
+        logger.debug("Pricing engine triggered for symbol {}", symbol);
+        MarketPrice marketPrice = marketPriceStore.findMarketPrice(symbol);
+        Money preMatchingPrice = marketPrice.getPrice();
+        List<Order> filledOrders = new ArrayList<Order>();
 
-            // If buy order did not match due to price mismatch, then break.
-            // (No other buy orders will match.)
-            if (matchResult.isMatch()==false &&
-                matchResult.getNoMatchReason()==NoMatchReason.priceMismatch) {
-                logger.debug("Buy order did not match due to price mismatch, stop matching other buy orders");
-                break;
+        // Try market orders first, then limit orders from the best price
+        // to the worst
+        OrderBookSide oppositeSide = orderBook.getOppositeSide(order.getSide());
+        AllOrNoneCandidate allOrNoneCandidate =
+            new AllOrNoneCandidate(oppositeSide.getAllOrNoneOrders(), order);
+        if (matchLevel(order, oppositeSide, oppositeSide.getMarketOrders(),
+                allOrNoneCandidate, marketPrice, filledOrders)) {
+            for (PriceLevel level : oppositeSide.getLimitLevels()) {
+                if (!crosses(order, level.getPriceTicks())) {
+                    logger.debug("Order does not cross price level {}, stop matching", level.getPrice());
+                    break;
+                }
+                if (!matchLevel(order, oppositeSide, level, allOrNoneCandidate,
+                        marketPrice, filledOrders)) {
+                    break;
+                }
             }
         }
+
+        // AllOrNone orders behind all other crossing orders
+        if (order.isActive()) {
+            matchAllOrNoneOrders(order, allOrNoneCandidate, null,
+                    marketPrice, filledOrders);
+        }
+
+        // Filled orders leave the book only now, so that the levels are not
+        // modified while being iterated
+        for (Order filledOrder : filledOrders) {
+            orderBookRegistry.remove(filledOrder);
+        }
         
         // If market price has changed are a result of this run, publish the new price
         if (!marketPrice.getPrice().eq(preMatchingPrice)) {
+            marketPriceStore.update(marketPrice);
             marketDataEventPublisher.publish(new MarketPriceChanged(marketPrice));
         }
     }
+
+    /**
+     * Matches the incoming order against the resting orders of a price level
+     * in the order of their priority. Resting AllOrNone orders with a higher
+     * priority than the next order in the level are matched first. If the
+     * incoming order is restricted by its AllOrNone condition, the resting
+     * order is skipped and matching continues with the next order.
+     * Executions of resting orders are recorded in their side of the book,
+     * which keeps the quantity of the level up to date.
+     * 
+     * @return true if matching should continue with the next price level
+     */
+    private boolean matchLevel(
+            Order order, OrderBookSide side, PriceLevel level,
+            AllOrNoneCandidate allOrNoneCandidate,
+            MarketPrice marketPrice, List<Order> filledOrders) {
+
+        for (Order restingOrder : level.getOrders()) {
+            if (!matchAllOrNoneOrders(order, allOrNoneCandidate, restingOrder,
+                    marketPrice, filledOrders)) {
+                return false;
+            }
+
+            logger.debug("Trying to match order:\n{}", order);
+            long restingLeavesQtyUnits = restingOrder.getLeavesQtyUnits();
+            MatchResult matchResult = (order.getSide() == OrderSide.Buy) ?
+                matchOrder(order, restingOrder, marketPrice) :
+                matchOrder(restingOrder, order, marketPrice);
+
+            // Analyze match result and stop matching if appropriate
+            if (matchResult.isMatch()) {
+                side.executed(level,
+                        restingLeavesQtyUnits - restingOrder.getLeavesQtyUnits());
+                if (!restingOrder.isActive()) {
+                    filledOrders.add(restingOrder);
+                }
+                if (order.getStatus() == OrderStatus.Filled) {
+                    logger.debug("Order filled, stop matching");
+                    return false;
+                }
+            }
+            else if (matchResult.getNoMatchReason() == NoMatchReason.priceMismatch) {
+                logger.debug("Order did not match due to price mismatch, stop matching");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches the incoming order against the resting AllOrNone orders it can
+     * fill, in the order of their priority, up to the specified resting order
+     * (or all of them if null). Each match fills the AllOrNone order, which
+     * then leaves the AllOrNone orders right away and is added to the
+     * filled orders.
+     * 
+     * @return false if the incoming order has been filled
+     */
+    private boolean matchAllOrNoneOrders(
+            Order order, AllOrNoneCandidate allOrNoneCandidate, Order nextOrder,
+            MarketPrice marketPrice, List<Order> filledOrders) {
+
+        while (true) {
+            Order restingOrder = allOrNoneCandidate.get();
+            if (restingOrder == null ||
+                (nextOrder != null && restingOrder.compareTo(nextOrder) > 0)) {
+                break;
+            }
+
+            logger.debug("Trying to match order with AllOrNone order:\n{}", order);
+            MatchResult matchResult = (order.getSide() == OrderSide.Buy) ?
+                matchOrder(order, restingOrder, marketPrice) :
+                matchOrder(restingOrder, order, marketPrice);
+            if (!matchResult.isMatch()) {
+                // Cannot happen for a matchable order, but never loop on it
+                break;
+            }
+            allOrNoneCandidate.remove(restingOrder);
+            filledOrders.add(restingOrder);
+            if (order.getStatus() == OrderStatus.Filled) {
+                logger.debug("Order filled, stop matching");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Can the specified order be filled completely by the market and limit
+     * orders on the opposite side that it crosses. This is decided from the
+     * quantities of the price levels, before any execution is made, visiting
+     * only the crossing levels. Resting AllOrNone orders are not counted.
+     */
+    private boolean canFill(Order order, OrderBookSide oppositeSide) {
+        long unfilledUnits = order.getLeavesQtyUnits() -
+            oppositeSide.getMarketOrders().getQuantityUnits();
+        for (PriceLevel level : oppositeSide.getLimitLevels()) {
+            if (unfilledUnits <= 0 || !crosses(order, level.getPriceTicks())) {
+                break;
+            }
+            unfilledUnits -= level.getQuantityUnits();
+        }
+        return unfilledUnits <= 0;
+    }
+
+    /**
+     * Has the specified market price reached the stop price of the order: a
+     * buy stop triggers at or above its stop price, a sell stop at or below.
+     */
+    private boolean isTriggered(Order order, Money marketPrice) {
+        long marketPriceTicks = FixedPoint.toPriceTicks(marketPrice);
+        return (order.getSide() == OrderSide.Buy) ?
+            marketPriceTicks >= order.getStopPriceTicks() :
+            marketPriceTicks <= order.getStopPriceTicks();
+    }
+
+    /**
+     * Can the specified order trade at the specified limit price on the
+     * opposite side of the book.
+     */
+    private boolean crosses(Order order, long priceTicks) {
+        if (order.getType() == OrderType.Market) {
+            return true;
+        }
+        return (order.getSide() == OrderSide.Buy) ?
+            order.getLimitPriceTicks() >= priceTicks :
+            order.getLimitPriceTicks() <= priceTicks;
+    }
     
+    /**
+     * Matches a buy order with a sell order. Prices and quantities are
+     * compared in their fixed-point form (see {@link FixedPoint}); Money and
+     * DecimalQuantity objects are only created when the orders are executed.
+     */
     private MatchResult matchOrder(
             Order buyOrder, Order sellOrder, MarketPrice marketPrice) {
 
@@ -113,11 +430,10 @@ public class MatchingEngine {
         
         if (isAllOrNoneRestricted(buyOrder, sellOrder)) {
             logger.debug("No match: AllOrNone restriction");
-            return new MatchResult(false, NoMatchReason.allOrNone);
+            return MatchResult.ALL_OR_NONE;
         }
 
-        MatchResult matchResult =
-            new MatchResult(false, NoMatchReason.priceMismatch);
+        MatchResult matchResult = MatchResult.PRICE_MISMATCH;
 
         if (buyOrder.getType() == OrderType.Market) {
             if (sellOrder.getType() == OrderType.Market) {
@@ -127,23 +443,24 @@ public class MatchingEngine {
                 executeOrders(buyOrder, sellOrder, sellOrder.getLimitPrice());
                 marketPrice.change(sellOrder.getLimitPrice());
             }
-            matchResult = new MatchResult(true, null);
+            matchResult = MatchResult.MATCH;
         }
         else {  // buy order is a limit order
             if (sellOrder.getType() == OrderType.Market) {
                 executeOrders(buyOrder, sellOrder, buyOrder.getLimitPrice());
                 marketPrice.change(buyOrder.getLimitPrice());
-                matchResult = new MatchResult(true, null);
+                matchResult = MatchResult.MATCH;
             }
             else {  // sell order is limit order
-                Money buyPrice = buyOrder.getLimitPrice();
-                Money sellPrice = sellOrder.getLimitPrice();
-                if (buyPrice.compareTo(sellPrice) >= 0) {
-                    Money executionPrice =
-                        buyPrice.plus(sellPrice).div(2, Constants.PRICE_SCALE);
+                long buyPrice = buyOrder.getLimitPriceTicks();
+                long sellPrice = sellOrder.getLimitPriceTicks();
+                if (buyPrice >= sellPrice) {
+                    Money executionPrice = FixedPoint.toMoney(
+                            FixedPoint.midpoint(buyPrice, sellPrice),
+                            buyOrder.getLimitPrice().getCurrency());
                     executeOrders(buyOrder, sellOrder, executionPrice);
                     marketPrice.change(executionPrice);
-                    matchResult = new MatchResult(true, null);
+                    matchResult = MatchResult.MATCH;
                 }
             }
         }
@@ -166,14 +483,14 @@ public class MatchingEngine {
         
         // Check for buy side restriction
         if (buyOrder.isAllOrNone()) {
-            if (buyOrder.getLeavesQty().compareTo(sellOrder.getLeavesQty()) > 0) {
+            if (buyOrder.getLeavesQtyUnits() > sellOrder.getLeavesQtyUnits()) {
                 restricted = true;
             }
         }
         
         // Check for sell side restriction
         if (restricted == false && sellOrder.isAllOrNone()) {
-            if (sellOrder.getLeavesQty().compareTo(buyOrder.getLeavesQty()) > 0) {
+            if (sellOrder.getLeavesQtyUnits() > buyOrder.getLeavesQtyUnits()) {
                 restricted = true;
             }
         }
@@ -188,13 +505,26 @@ public class MatchingEngine {
         order.accept(orderRepository);
         orderEventPublisher.publish(new OrderAccepted(order));
     }
+
+    /**
+     * Cancels what remains of an order that may not rest in the book.
+     */
+    private void cancelRemainder(Order order) {
+        order.cancel();
+        orderRepository.update(order);
+        orderEventPublisher.publish(new OrderCanceled(order));
+    }
     
     private void executeOrders(Order buyOrder, Order sellOrder, Money price) {
-        DecimalQuantity quantity =
-            buyOrder.getLeavesQty().min(sellOrder.getLeavesQty());
+        DecimalQuantity quantity = FixedPoint.toDecimalQuantity(Math.min(
+                buyOrder.getLeavesQtyUnits(), sellOrder.getLeavesQtyUnits()));
         DateTime executionTime = new DateTime();
         this.executeOrder(buyOrder, executionTime, quantity, price);
         this.executeOrder(sellOrder, executionTime, quantity, price);
+        timeAndSalesService.recordTrade(
+                buyOrder.getSymbol(), executionTime, price, quantity);
+        barService.recordTrade(
+                buyOrder.getSymbol(), executionTime, price, quantity);
     }
     
     /**
@@ -205,6 +535,7 @@ public class MatchingEngine {
             DateTime executionTime,
             DecimalQuantity executionQty,
             Money price) {
+        orderRepository.attach(order);
         Execution execution =
             order.execute(orderRepository, executionTime, executionQty, price);
         orderEventPublisher.publish(new OrderExecuted(execution));
@@ -212,19 +543,17 @@ public class MatchingEngine {
 
     // ----- Queries -----
     public OrderBook getOrderBook(String symbol) {
-        OrderBook orderBook = new OrderBook();
-        List<Order> orders = orderRepository.findActiveOrdersForInstrument(symbol);
-        for (Order order : orders) {
-            orderBook.add(order);
-        }
-        return orderBook;
+        return orderBookRegistry.getOrderBook(symbol);
     }
 
     // ----- Attributes -----
+    @Inject private OrderBookRegistry orderBookRegistry;
     @Inject private OrderRepository orderRepository;
     @Inject private OrderEventPublisher orderEventPublisher;
-    @Inject private MarketDataRepository marketDataRepository;
+    @Inject private MarketPriceStore marketPriceStore;
     @Inject private MarketDataEventPublisher marketDataEventPublisher;
+    @Inject private TimeAndSalesService timeAndSalesService;
+    @Inject private BarService barService;
 
     // ----- Nested Types -----
     private enum NoMatchReason {
@@ -232,7 +561,60 @@ public class MatchingEngine {
         priceMismatch
     }
     
-    private class MatchResult {
+    /**
+     * The resting AllOrNone order with the highest priority that an incoming
+     * order can fill (see {@link AllOrNoneOrders#getFirstMatchable(Order)}).
+     * Looking it up visits every quantity up to the leaves quantity of the
+     * incoming order, so it is only looked up again once it has been matched
+     * or no longer fits what remains of the incoming order. As the leaves
+     * quantity only decreases during matching, an order that still fits is
+     * still the first matchable one, and if there is none there never will
+     * be.
+     */
+    private static class AllOrNoneCandidate {
+        private final AllOrNoneOrders allOrNoneOrders;
+        private final Order incomingOrder;
+        private Order candidate;
+        private boolean lookedUp;
+
+        public AllOrNoneCandidate(
+                AllOrNoneOrders allOrNoneOrders, Order incomingOrder) {
+            this.allOrNoneOrders = allOrNoneOrders;
+            this.incomingOrder = incomingOrder;
+        }
+
+        public Order get() {
+            if (!lookedUp || (candidate != null && !fits(candidate))) {
+                candidate = allOrNoneOrders.getFirstMatchable(incomingOrder);
+                lookedUp = true;
+            }
+            return candidate;
+        }
+
+        /**
+         * Removes a matched order from the AllOrNone orders.
+         */
+        public void remove(Order order) {
+            allOrNoneOrders.remove(order);
+            lookedUp = false;
+        }
+
+        private boolean fits(Order order) {
+            long leavesQtyUnits = incomingOrder.getLeavesQtyUnits();
+            return incomingOrder.isAllOrNone() ?
+                order.getLeavesQtyUnits() == leavesQtyUnits :
+                order.getLeavesQtyUnits() <= leavesQtyUnits;
+        }
+    }
+
+    private static class MatchResult {
+        private static final MatchResult MATCH =
+            new MatchResult(true, null);
+        private static final MatchResult ALL_OR_NONE =
+            new MatchResult(false, NoMatchReason.allOrNone);
+        private static final MatchResult PRICE_MISMATCH =
+            new MatchResult(false, NoMatchReason.priceMismatch);
+
         private final boolean match;
         private final NoMatchReason noMatchReason;
         
@@ -15,15 +15,27 @@
  */
 package org.archfirst.bfexch.domain.trading;
 
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import org.archfirst.bfexch.domain.marketdata.DepthUpdate;
 import org.archfirst.bfexch.domain.trading.order.Order;
 import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
 
 /**
- * Contains active orders for an instrument organized as sorted buy and
- * sell stacks.
+ * Contains active orders for an instrument organized as buy and sell sides.
+ * Each side keeps its orders in FIFO queues by price level (see
+ * {@link OrderBookSide}). An order book is not thread safe, it is only
+ * accessed by the matching thread that owns its symbol (see
+ * {@link MatchingDispatcher}).
+ *
+ * Stop orders that have not been triggered yet are kept apart from the
+ * sides, in a trigger book per side (see {@link StopOrders}), and do not
+ * take part in matching until they are triggered.
  *
  * @author Naresh Bhatia
  */
@@ -31,24 +43,129 @@ public class OrderBook {
     
     // ----- Commands -----
     public void add(Order order) {
-        if (order.getSide() == OrderSide.Buy) {
-            buyStack.add(order);
+        if (order.isPendingStop()) {
+            getStopOrders(order.getSide()).add(order);
+        }
+        else {
+            getSide(order.getSide()).add(order);
+        }
+    }
+
+    public void remove(Order order) {
+        if (order.isPendingStop()) {
+            getStopOrders(order.getSide()).remove(order);
         }
         else {
-            sellStack.add(order);
+            getSide(order.getSide()).remove(order);
         }
     }
 
+    /**
+     * Reduces the quantity of an order in the book without changing its
+     * position in its queue.
+     */
+    public void reduceQuantity(Order order, DecimalQuantity quantity) {
+        if (order.isPendingStop()) {
+            // Re-added at its position, as its creation time is unchanged
+            StopOrders stopOrders = getStopOrders(order.getSide());
+            stopOrders.remove(order);
+            order.replace(quantity, null, null);
+            stopOrders.add(order);
+        }
+        else {
+            getSide(order.getSide()).reduceQuantity(order, quantity);
+        }
+    }
+
+    /**
+     * Removes the stop orders triggered by the specified market price and
+     * returns them in the order in which they are to be matched: buy stops
+     * from the lowest stop price to the highest, then sell stops from the
+     * highest stop price to the lowest, in the order of their creation time
+     * at each stop price.
+     */
+    public List<Order> takeTriggeredStops(Money marketPrice) {
+        if (buyStops.isEmpty() && sellStops.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long marketPriceTicks = FixedPoint.toPriceTicks(marketPrice);
+        List<Order> orders =
+            new ArrayList<Order>(buyStops.takeTriggered(marketPriceTicks));
+        orders.addAll(sellStops.takeTriggered(marketPriceTicks));
+        return orders;
+    }
+
+    /**
+     * Returns the changes to the best maxLevels limit price levels of both
+     * sides since the last call, buy side first (see
+     * {@link OrderBookSide#takeDepthUpdates(int, List)}).
+     */
+    public List<DepthUpdate> takeDepthUpdates(int maxLevels) {
+        List<DepthUpdate> updates = new ArrayList<DepthUpdate>();
+        buySide.takeDepthUpdates(maxLevels, updates);
+        sellSide.takeDepthUpdates(maxLevels, updates);
+        return updates;
+    }
+
+    // ----- Queries -----
+    public OrderBookSide getSide(OrderSide side) {
+        return (side == OrderSide.Buy) ? buySide : sellSide;
+    }
+
+    public OrderBookSide getOppositeSide(OrderSide side) {
+        return (side == OrderSide.Buy) ? sellSide : buySide;
+    }
+
+    public StopOrders getStopOrders(OrderSide side) {
+        return (side == OrderSide.Buy) ? buyStops : sellStops;
+    }
+
+    /**
+     * Returns the highest limit price on the buy side, null if none.
+     */
+    public Money getBestBid() {
+        return buySide.getBestPrice();
+    }
+
+    /**
+     * Returns the lowest limit price on the sell side, null if none.
+     */
+    public Money getBestAsk() {
+        return sellSide.getBestPrice();
+    }
+
+    /**
+     * Returns the buy orders in the order of their priority, followed by the
+     * pending buy stops in the order in which they trigger.
+     */
+    public List<Order> getBuyStack() {
+        List<Order> orders = buySide.getOrders();
+        orders.addAll(buyStops.getOrders());
+        return orders;
+    }
+
+    /**
+     * Returns the sell orders in the order of their priority, followed by the
+     * pending sell stops in the order in which they trigger.
+     */
+    public List<Order> getSellStack() {
+        List<Order> orders = sellSide.getOrders();
+        orders.addAll(sellStops.getOrders());
+        return orders;
+    }
+
     // ----- Attributes -----
-    private final SortedSet<Order> buyStack = new TreeSet<Order>();
-    private final SortedSet<Order> sellStack = new TreeSet<Order>();
+    private final OrderBookSide buySide = new OrderBookSide(OrderSide.Buy);
+    private final OrderBookSide sellSide = new OrderBookSide(OrderSide.Sell);
+    private final StopOrders buyStops = new StopOrders(OrderSide.Buy);
+    private final StopOrders sellStops = new StopOrders(OrderSide.Sell);
 
     // ----- Getters -----
-    public SortedSet<Order> getBuyStack() {
-        return buyStack;
+    public OrderBookSide getBuySide() {
+        return buySide;
     }
 
-    public SortedSet<Order> getSellStack() {
-        return sellStack;
+    public OrderBookSide getSellSide() {
+        return sellSide;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the order books for all instruments in memory for the life of the
+ * exchange. The books are built once from the active orders in the database
+ * and are then maintained by the matching engine as orders are accepted,
+ * executed, canceled and marked done for the day. The database is only
+ * written to, never read back, while the exchange is running.
+ *
+ * The orders in the books are also indexed by their clOrdID, so that
+ * requests referring to an order can find it without reading the database.
+ * Orders must therefore be added to and removed from the books through the
+ * registry.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class OrderBookRegistry {
+    private static final Logger logger =
+        LoggerFactory.getLogger(OrderBookRegistry.class);
+
+    // ----- Commands -----
+    public void add(Order order) {
+        getOrderBook(order.getSymbol()).add(order);
+        ordersByClientOrderId.put(order.getClientOrderId(), order);
+    }
+
+    public void remove(Order order) {
+        getOrderBook(order.getSymbol()).remove(order);
+        ordersByClientOrderId.remove(order.getClientOrderId());
+    }
+
+    /**
+     * Replaces all books with the specified ones, e.g. books restored from a
+     * snapshot. Must be called before any matching takes place.
+     */
+    public synchronized void restore(Map<String, OrderBook> books) {
+        ordersByClientOrderId.clear();
+        for (OrderBook orderBook : books.values()) {
+            index(orderBook.getBuyStack());
+            index(orderBook.getSellStack());
+        }
+        orderBooks = new ConcurrentHashMap<String, OrderBook>(books);
+    }
+
+    /**
+     * Discards all books. They will be rebuilt from the database on the
+     * next access.
+     */
+    public synchronized void reset() {
+        orderBooks = null;
+        ordersByClientOrderId.clear();
+    }
+
+    private void index(List<Order> orders) {
+        for (Order order : orders) {
+            ordersByClientOrderId.put(order.getClientOrderId(), order);
+        }
+    }
+
+    // ----- Queries -----
+    /**
+     * Returns the order with the specified clOrdID if it is in one of the
+     * books, null otherwise. Safe to call from any thread, but the state of
+     * the order may only be read or changed on the matching thread of its
+     * symbol.
+     */
+    public Order findOrder(String clientOrderId) {
+        getOrderBooks();
+        return ordersByClientOrderId.get(clientOrderId);
+    }
+
+    /**
+     * Returns the symbols that have an order book.
+     */
+    public Set<String> getSymbols() {
+        return getOrderBooks().keySet();
+    }
+
+    /**
+     * Returns the order book for the specified symbol. An empty book is
+     * created if the symbol has no active orders.
+     */
+    public OrderBook getOrderBook(String symbol) {
+        ConcurrentMap<String, OrderBook> books = getOrderBooks();
+        OrderBook orderBook = books.get(symbol);
+        if (orderBook == null) {
+            OrderBook newOrderBook = new OrderBook();
+            orderBook = books.putIfAbsent(symbol, newOrderBook);
+            if (orderBook == null) {
+                orderBook = newOrderBook;
+            }
+        }
+        return orderBook;
+    }
+
+    // ----- Attributes -----
+    @Inject private OrderRepository orderRepository;
+
+    /**
+     * Map from symbol to OrderBook. Symbols are added as orders arrive, so
+     * the map itself is concurrent. It is lazily initialized using
+     * <a href="http://en.wikipedia.org/wiki/Double-checked_locking">
+     * double-checked locking</a>.
+     */
+    private volatile ConcurrentMap<String, OrderBook> orderBooks;
+
+    /** Map from clOrdID to the order in the books */
+    private final ConcurrentMap<String, Order> ordersByClientOrderId =
+        new ConcurrentHashMap<String, Order>();
+
+    // ----- Getters -----
+    private ConcurrentMap<String, OrderBook> getOrderBooks() {
+        ConcurrentMap<String, OrderBook> books = orderBooks;
+        if (books == null) {
+            synchronized(this) {
+                books = orderBooks;
+                if (books == null) {
+                    books = loadOrderBooks();
+                    orderBooks = books;
+                }
+            }
+        }
+        return books;
+    }
+
+    private ConcurrentMap<String, OrderBook> loadOrderBooks() {
+        logger.info("Loading order books...");
+        ConcurrentMap<String, OrderBook> books =
+            new ConcurrentHashMap<String, OrderBook>();
+        List<Order> orders = orderRepository.findActiveOrders();
+        for (Order order : orders) {
+            OrderBook orderBook = books.get(order.getSymbol());
+            if (orderBook == null) {
+                orderBook = new OrderBook();
+                books.put(order.getSymbol(), orderBook);
+            }
+            orderBook.add(order);
+        }
+        index(orders);
+        logger.info("Loaded {} orders into {} order books",
+                orders.size(), books.size());
+        return books;
+    }
+}
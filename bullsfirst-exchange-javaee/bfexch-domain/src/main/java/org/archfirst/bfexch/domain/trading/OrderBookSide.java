@@ -0,0 +1,287 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.archfirst.bfexch.domain.marketdata.DepthLevel;
+import org.archfirst.bfexch.domain.marketdata.DepthUpdate;
+import org.archfirst.bfexch.domain.marketdata.DepthUpdateAction;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+
+/**
+ * One side of an order book. Market orders are kept in a queue of their own
+ * and always have priority over limit orders. Limit orders are kept in price
+ * levels keyed by their price in ticks (see
+ * {@link org.archfirst.bfexch.domain.util.FixedPoint}), sorted from the best
+ * price to the worst - descending for buy orders and ascending for sell
+ * orders. The best price level is cached, so it can be
+ * read in constant time. Adding or removing an order takes O(log n) time in
+ * the number of price levels.
+ *
+ * AllOrNone orders are kept apart from both (see {@link AllOrNoneOrders}) and
+ * are not included in the best price.
+ *
+ * The side also keeps the depth it last published, i.e. its best limit
+ * price levels, and the prices of the levels that have changed since. The
+ * depth updates are derived from these as the levels change, without
+ * visiting the rest of the side (see {@link #takeDepthUpdates(int, List)}).
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderBookSide {
+
+    public OrderBookSide(OrderSide side) {
+        this.side = side;
+        this.limitLevels = (side == OrderSide.Buy) ?
+            new TreeMap<Long, PriceLevel>(Collections.<Long>reverseOrder()) :
+            new TreeMap<Long, PriceLevel>();
+        this.allOrNoneOrders = new AllOrNoneOrders(side);
+    }
+
+    // ----- Commands -----
+    public void add(Order order) {
+        if (order.isAllOrNone()) {
+            allOrNoneOrders.add(order);
+            return;
+        }
+        if (order.getType() == OrderType.Market) {
+            marketOrders.add(order);
+            return;
+        }
+
+        Long limitPriceTicks = order.getLimitPriceTicks();
+        PriceLevel level = limitLevels.get(limitPriceTicks);
+        if (level == null) {
+            level = new PriceLevel(order.getLimitPrice());
+            limitLevels.put(limitPriceTicks, level);
+            bestLevel = limitLevels.firstEntry().getValue();
+        }
+        level.add(order);
+        changedLevels.add(limitPriceTicks);
+    }
+
+    public void remove(Order order) {
+        if (order.isAllOrNone()) {
+            allOrNoneOrders.remove(order);
+            return;
+        }
+        if (order.getType() == OrderType.Market) {
+            marketOrders.remove(order);
+            return;
+        }
+
+        PriceLevel level = limitLevels.get(order.getLimitPriceTicks());
+        if (level == null || !level.remove(order)) {
+            return;
+        }
+        changedLevels.add(level.getPriceTicks());
+        if (level.isEmpty()) {
+            limitLevels.remove(level.getPriceTicks());
+            if (level == bestLevel) {
+                bestLevel = limitLevels.isEmpty() ?
+                    null : limitLevels.firstEntry().getValue();
+            }
+        }
+    }
+
+    /**
+     * Reduces the quantity of an order on this side in place, so that it
+     * keeps its position in its price level. A smaller AllOrNone order may
+     * now cross orders that it was held back from, so the caller must match
+     * it again.
+     */
+    public void reduceQuantity(Order order, DecimalQuantity quantity) {
+        if (order.isAllOrNone()) {
+            // Indexed by quantity, re-added in the order of its priority
+            allOrNoneOrders.remove(order);
+            order.replace(quantity, null, null);
+            allOrNoneOrders.add(order);
+            return;
+        }
+
+        PriceLevel level = (order.getType() == OrderType.Market) ?
+            marketOrders : limitLevels.get(order.getLimitPriceTicks());
+        long leavesQtyUnits = order.getLeavesQtyUnits();
+        order.replace(quantity, null, null);
+        executed(level, leavesQtyUnits - order.getLeavesQtyUnits());
+    }
+
+    /**
+     * Records that a resting order in the specified level has been executed
+     * (or its quantity reduced) by the specified number of quantity units.
+     */
+    public void executed(PriceLevel level, long units) {
+        level.reduceQuantity(units);
+        if (level != marketOrders) {
+            changedLevels.add(level.getPriceTicks());
+        }
+    }
+
+    /**
+     * Appends the changes to the best maxLevels limit price levels since the
+     * last call to the specified updates: a Delete for each level that has
+     * left them, followed by a New or Change for each level that has entered
+     * or changed, from the best price to the worst. The levels are then
+     * published (see {@link #getPublishedDepth()}).
+     */
+    public void takeDepthUpdates(int maxLevels, List<DepthUpdate> updates) {
+        if (changedLevels.isEmpty()) {
+            return;
+        }
+
+        Map<Long, DepthLevel> depth = new LinkedHashMap<Long, DepthLevel>();
+        List<DepthUpdate> levelUpdates = new ArrayList<DepthUpdate>();
+        for (PriceLevel level : limitLevels.values()) {
+            if (depth.size() == maxLevels) {
+                break;
+            }
+            Long priceTicks = level.getPriceTicks();
+            DepthLevel publishedLevel = publishedDepth.get(priceTicks);
+            if (publishedLevel == null) {
+                DepthLevel depthLevel = toDepthLevel(level);
+                depth.put(priceTicks, depthLevel);
+                levelUpdates.add(new DepthUpdate(
+                        side, DepthUpdateAction.New, depthLevel));
+            }
+            else if (changedLevels.contains(priceTicks) &&
+                    (publishedLevel.getOrderCount() != level.size() ||
+                     FixedPoint.toQuantityUnits(publishedLevel.getQuantity()) != level.getQuantityUnits())) {
+                DepthLevel depthLevel = toDepthLevel(level);
+                depth.put(priceTicks, depthLevel);
+                levelUpdates.add(new DepthUpdate(
+                        side, DepthUpdateAction.Change, depthLevel));
+            }
+            else {
+                depth.put(priceTicks, publishedLevel);
+            }
+        }
+
+        for (Map.Entry<Long, DepthLevel> entry : publishedDepth.entrySet()) {
+            if (!depth.containsKey(entry.getKey())) {
+                updates.add(new DepthUpdate(side, DepthUpdateAction.Delete,
+                        new DepthLevel(entry.getValue().getPrice(),
+                                DecimalQuantity.ZERO, 0)));
+            }
+        }
+        updates.addAll(levelUpdates);
+
+        publishedDepth = depth;
+        changedLevels.clear();
+    }
+
+    private DepthLevel toDepthLevel(PriceLevel level) {
+        return new DepthLevel(
+                level.getPrice(),
+                FixedPoint.toDecimalQuantity(level.getQuantityUnits()),
+                level.size());
+    }
+
+    // ----- Queries -----
+    public boolean isEmpty() {
+        return marketOrders.isEmpty() && limitLevels.isEmpty() &&
+            allOrNoneOrders.isEmpty();
+    }
+
+    /**
+     * Returns the limit price level with the best price, null if there are
+     * no limit orders on this side.
+     */
+    public PriceLevel getBestLevel() {
+        return bestLevel;
+    }
+
+    /**
+     * Returns the best limit price on this side, null if there are no limit
+     * orders on this side.
+     */
+    public Money getBestPrice() {
+        return (bestLevel == null) ? null : bestLevel.getPrice();
+    }
+
+    /**
+     * Returns the limit price levels from the best price to the worst.
+     */
+    public Collection<PriceLevel> getLimitLevels() {
+        return Collections.unmodifiableCollection(limitLevels.values());
+    }
+
+    /**
+     * Returns all orders on this side in the order of their priority:
+     * market orders first, followed by limit orders from the best price to
+     * the worst. AllOrNone orders are merged in by priority.
+     */
+    public List<Order> getOrders() {
+        List<Order> orders = new ArrayList<Order>(marketOrders.getOrders());
+        for (PriceLevel level : limitLevels.values()) {
+            orders.addAll(level.getOrders());
+        }
+        if (!allOrNoneOrders.isEmpty()) {
+            orders.addAll(allOrNoneOrders.getOrders());
+            Collections.sort(orders); // stable, so FIFO order is kept
+        }
+        return orders;
+    }
+
+    /**
+     * Returns the levels published by the last call to
+     * {@link #takeDepthUpdates(int, List)}, from the best price to the worst.
+     */
+    public List<DepthLevel> getPublishedDepth() {
+        return new ArrayList<DepthLevel>(publishedDepth.values());
+    }
+
+    // ----- Attributes -----
+    private final OrderSide side;
+    private final PriceLevel marketOrders = new PriceLevel(null);
+    private final NavigableMap<Long, PriceLevel> limitLevels;
+    private PriceLevel bestLevel;
+    private final AllOrNoneOrders allOrNoneOrders;
+
+    /** Prices in ticks of the limit levels changed since the last publication */
+    private final Set<Long> changedLevels = new HashSet<Long>();
+
+    /** The published limit levels by their price in ticks, best price first */
+    private Map<Long, DepthLevel> publishedDepth =
+        new LinkedHashMap<Long, DepthLevel>();
+
+    // ----- Getters -----
+    public OrderSide getSide() {
+        return side;
+    }
+
+    public PriceLevel getMarketOrders() {
+        return marketOrders;
+    }
+
+    public AllOrNoneOrders getAllOrNoneOrders() {
+        return allOrNoneOrders;
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.money.Money;
+
+/**
+ * A FIFO queue of the orders resting at one price on one side of an order
+ * book. Orders are queued in the order of their creation time. Since orders
+ * normally arrive in that order, adding an order is simply an append; an
+ * order that arrives out of sequence causes the queue to be reordered.
+ * Orders can be removed from anywhere in the queue in constant time.
+ *
+ * The total leaves quantity of the orders in the level is maintained as
+ * orders are added, executed and removed, so the depth of the book can be
+ * read without visiting the orders. An order is removed by its id, which
+ * means that a copy of it may be passed in (e.g. one loaded from the
+ * database), but the total is always reduced by the leaves quantity of the
+ * order in the queue.
+ *
+ * The market orders on a side of the book are kept in a price level of
+ * their own, with a null price.
+ *
+ * @author Naresh Bhatia
+ */
+public class PriceLevel {
+
+    public PriceLevel(Money price) {
+        this.price = price;
+        this.priceTicks = (price == null) ? 0 : FixedPoint.toPriceTicks(price);
+    }
+
+    // ----- Commands -----
+    public void add(Order order) {
+        if (lastOrder != null &&
+            order.getCreationTime().isBefore(lastOrder.getCreationTime())) {
+            List<Order> sortedOrders = new ArrayList<Order>(orders.values());
+            sortedOrders.add(order);
+            Collections.sort(sortedOrders, creationTimeComparator);
+            orders.clear();
+            for (Order sortedOrder : sortedOrders) {
+                orders.put(sortedOrder, sortedOrder);
+            }
+        }
+        else {
+            orders.put(order, order);
+            lastOrder = order;
+        }
+        quantityUnits += order.getLeavesQtyUnits();
+    }
+
+    /**
+     * Removes the order with the id of the specified order from the queue.
+     *
+     * @return false if there is no such order in the queue
+     */
+    public boolean remove(Order order) {
+        Order queuedOrder = orders.remove(order);
+        if (queuedOrder == null) {
+            return false;
+        }
+        quantityUnits -= queuedOrder.getLeavesQtyUnits();
+        return true;
+    }
+
+    /**
+     * Records that an order in this level has been executed for the
+     * specified number of quantity units.
+     */
+    public void reduceQuantity(long units) {
+        quantityUnits -= units;
+    }
+
+    // ----- Queries -----
+    public boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    public int size() {
+        return orders.size();
+    }
+
+    /**
+     * Returns the order at the front of the queue, null if the queue is
+     * empty.
+     */
+    public Order getFirst() {
+        return orders.isEmpty() ? null : orders.values().iterator().next();
+    }
+
+    // ----- Attributes -----
+    private static final Comparator<Order> creationTimeComparator =
+        new Comparator<Order>() {
+            @Override
+            public int compare(Order order1, Order order2) {
+                return order1.getCreationTime().compareTo(
+                        order2.getCreationTime());
+            }
+        };
+
+    private final Money price;
+    private final long priceTicks;
+
+    /** The queued orders, each mapped to itself so that it can be found by id */
+    private final Map<Order, Order> orders = new LinkedHashMap<Order, Order>();
+
+    /** The total leaves quantity of the orders (see {@link FixedPoint}) */
+    private long quantityUnits;
+
+    /** The most recently appended order, used to detect late arrivals */
+    private Order lastOrder;
+
+    // ----- Getters -----
+    public Money getPrice() {
+        return price;
+    }
+
+    /**
+     * Returns the price as a number of ticks (see {@link FixedPoint}).
+     */
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    /**
+     * Returns the total leaves quantity of the orders in this level as a
+     * number of quantity units (see {@link FixedPoint}).
+     */
+    public long getQuantityUnits() {
+        return quantityUnits;
+    }
+
+    /**
+     * Returns the orders in this level in the order of their priority.
+     */
+    public Collection<Order> getOrders() {
+        return Collections.unmodifiableCollection(orders.values());
+    }
+}
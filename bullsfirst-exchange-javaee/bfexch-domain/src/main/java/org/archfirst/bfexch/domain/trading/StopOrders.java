@@ -0,0 +1,104 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+
+/**
+ * The Stop and StopLimit orders on one side of an order book that have not
+ * been triggered yet. They are kept in FIFO queues by stop price (see
+ * {@link PriceLevel}), keyed by the stop price in ticks and sorted in the
+ * order in which they trigger - ascending for buy stops, which trigger when
+ * the market price rises to their stop price, and descending for sell stops,
+ * which trigger when it falls to their stop price.
+ *
+ * The stops triggered by a market price are therefore always at the head of
+ * the map and are found with a range scan, whose cost depends on the number
+ * of triggered stops, not on the number of pending ones.
+ *
+ * @author Naresh Bhatia
+ */
+public class StopOrders {
+
+    public StopOrders(OrderSide side) {
+        this.stopLevels = (side == OrderSide.Buy) ?
+            new TreeMap<Long, PriceLevel>() :
+            new TreeMap<Long, PriceLevel>(Collections.<Long>reverseOrder());
+    }
+
+    // ----- Commands -----
+    public void add(Order order) {
+        Long stopPriceTicks = order.getStopPriceTicks();
+        PriceLevel level = stopLevels.get(stopPriceTicks);
+        if (level == null) {
+            level = new PriceLevel(order.getStopPrice());
+            stopLevels.put(stopPriceTicks, level);
+        }
+        level.add(order);
+    }
+
+    public void remove(Order order) {
+        PriceLevel level = stopLevels.get(order.getStopPriceTicks());
+        if (level != null && level.remove(order) && level.isEmpty()) {
+            stopLevels.remove(level.getPriceTicks());
+        }
+    }
+
+    /**
+     * Removes the stops triggered by the specified market price in ticks and
+     * returns them in the order in which they trigger: by stop price, then by
+     * creation time.
+     */
+    public List<Order> takeTriggered(long marketPriceTicks) {
+        NavigableMap<Long, PriceLevel> triggeredLevels =
+            stopLevels.headMap(marketPriceTicks, true);
+        if (triggeredLevels.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Order> orders = new ArrayList<Order>();
+        for (PriceLevel level : triggeredLevels.values()) {
+            orders.addAll(level.getOrders());
+        }
+        triggeredLevels.clear();
+        return orders;
+    }
+
+    // ----- Queries -----
+    public boolean isEmpty() {
+        return stopLevels.isEmpty();
+    }
+
+    /**
+     * Returns the orders in the order in which they trigger.
+     */
+    public List<Order> getOrders() {
+        List<Order> orders = new ArrayList<Order>();
+        for (PriceLevel level : stopLevels.values()) {
+            orders.addAll(level.getOrders());
+        }
+        return orders;
+    }
+
+    // ----- Attributes -----
+    private final NavigableMap<Long, PriceLevel> stopLevels;
+}
\ No newline at end of file
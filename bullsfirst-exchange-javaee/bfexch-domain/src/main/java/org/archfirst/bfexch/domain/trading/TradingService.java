@@ -15,22 +15,33 @@
  */
 package org.archfirst.bfexch.domain.trading;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 
+import org.archfirst.bfexch.domain.latency.LatencyMonitor;
+import org.archfirst.bfexch.domain.latency.LatencyStage;
+import org.archfirst.bfexch.domain.trading.journal.JournalListener;
+import org.archfirst.bfexch.domain.trading.journal.OrderJournal;
 import org.archfirst.bfexch.domain.trading.order.Order;
-import org.archfirst.bfexch.domain.trading.order.OrderCancelRejected;
-import org.archfirst.bfexch.domain.trading.order.OrderCanceled;
-import org.archfirst.bfexch.domain.trading.order.OrderDoneForDay;
-import org.archfirst.bfexch.domain.trading.order.OrderEventPublisher;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest;
 import org.archfirst.bfexch.domain.trading.order.OrderRepository;
-import org.archfirst.bfexch.domain.trading.order.OrderStatus;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderWriter;
+import org.archfirst.bfexch.domain.trading.snapshot.SnapshotService;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * TradingService
+ * TradingService. Requests are recorded in the {@link OrderJournal} and then
+ * handed to the matching thread that owns the symbol of the order (see
+ * {@link MatchingDispatcher}) to be processed there.
  *
  * @author Naresh Bhatia
  */
@@ -38,45 +49,366 @@ public class TradingService {
     private static final Logger logger =
         LoggerFactory.getLogger(TradingService.class);
 
+    private static final int DEFAULT_END_OF_DAY_CHUNK_SIZE = 1000;
+
     // ----- Commands -----
     public void processNewOrderSingle(Order order) {
-        matchingEngine.placeOrder(order);
+        order.setReceivedNanos(latencyMonitor.getReceivedNanos());
+        long sequence = orderJournal.appendNewOrderSingle(order);
+        dispatchNewOrderSingle(order, sequence);
+    }
+
+    private void dispatchNewOrderSingle(final Order order, final long sequence) {
+        matchingDispatcher.dispatch(order.getSymbol(), new Runnable() {
+            @Override
+            public void run() {
+                matchingEngine.placeOrder(order);
+                latencyMonitor.recordSince(LatencyStage.OrderProcessed,
+                        order.getSymbol(), order.getReceivedNanos());
+                markProcessed(sequence);
+            }
+        });
     }
     
     /**
      * Process OrderCancelRequest. Cancels the order if the status change is valid.
+     * The request is routed by its symbol to the matching thread of the
+     * order and the order is looked up there, so a NewOrderSingle that is
+     * still queued ahead of the request is placed first. Orders resting in a
+     * book are found in memory (see {@link OrderBookRegistry#findOrder(String)}),
+     * only requests for other orders, which are rejected, read the database.
+     * A request for an unknown order is rejected as well.
      */
-    public void processOrderCancelRequest(String clOrdID) {
-        Order order = orderRepository.findOrderByClientOrderId(clOrdID);
-        if (order == null) {
-            logger.error("OrderCancelRequest: clOrdID {} not found", clOrdID);
+    public void processOrderCancelRequest(String clOrdID, String symbol) {
+        long receivedNanos = latencyMonitor.getReceivedNanos();
+        long sequence = orderJournal.appendOrderCancelRequest(clOrdID, symbol);
+        dispatchOrderCancelRequest(symbol, clOrdID, sequence, receivedNanos);
+    }
+
+    private void dispatchOrderCancelRequest(final String symbol,
+            final String clOrdID, final long sequence, final long receivedNanos) {
+        matchingDispatcher.dispatch(symbol, new Runnable() {
+            @Override
+            public void run() {
+                Order order = findOrder(clOrdID, symbol);
+                if (order == null) {
+                    matchingEngine.rejectUnknownOrder(clOrdID, false);
+                }
+                else {
+                    matchingEngine.cancelOrder(order);
+                }
+                latencyMonitor.recordSince(LatencyStage.OrderProcessed,
+                        symbol, receivedNanos);
+                markProcessed(sequence);
+            }
+        });
+    }
+
+    /**
+     * Process OrderCancelReplaceRequest. The request is routed and the order
+     * is found like for an OrderCancelRequest, and the order is replaced by
+     * the matching engine (see
+     * {@link MatchingEngine#replaceOrder(Order, OrderCancelReplaceRequest)}).
+     * The request is stamped with the time at which it is received before it
+     * is journaled, so that a replayed replace gives the order the same
+     * priority.
+     */
+    public void processOrderCancelReplaceRequest(OrderCancelReplaceRequest request) {
+        long receivedNanos = latencyMonitor.getReceivedNanos();
+        request.setReceivedTime(new DateTime());
+        long sequence = orderJournal.appendOrderCancelReplaceRequest(request);
+        dispatchOrderCancelReplaceRequest(request, sequence, receivedNanos);
+    }
+
+    private void dispatchOrderCancelReplaceRequest(
+            final OrderCancelReplaceRequest request, final long sequence,
+            final long receivedNanos) {
+        final String symbol = request.getSymbol();
+        matchingDispatcher.dispatch(symbol, new Runnable() {
+            @Override
+            public void run() {
+                String clOrdID = request.getClientOrderId();
+                Order order = findOrder(clOrdID, symbol);
+                if (order == null) {
+                    matchingEngine.rejectUnknownOrder(clOrdID, true);
+                }
+                else {
+                    matchingEngine.replaceOrder(order, request);
+                }
+                latencyMonitor.recordSince(LatencyStage.OrderProcessed,
+                        symbol, receivedNanos);
+                markProcessed(sequence);
+            }
+        });
+    }
+
+    /**
+     * Processes the end of day event. The symbols are processed in parallel
+     * on their matching threads, and the active GFD orders of each symbol
+     * are marked as DoneForDay in chunks, each in a transaction of its own.
+     * The event is marked as processed in the journal only once all symbols
+     * are done. If the exchange stops before that, the event is replayed on
+     * recovery and carries on with the orders that are still active.
+     */
+    public void handleEndOfDay() {
+        logger.info("Processing end of day event...");
+        long sequence = orderJournal.appendEndOfDay();
+        dispatchEndOfDay(sequence, false);
+        logger.info("Dispatched end of day processing for all symbols");
+    }
+
+    private void dispatchEndOfDay(long sequence, boolean replay) {
+        List<String> symbols = new ArrayList<String>(orderBookRegistry.getSymbols());
+        if (symbols.isEmpty()) {
+            orderJournal.markProcessed(sequence);
             return;
         }
 
-        order.cancel();
-        if (order.getStatus() == OrderStatus.Canceled) {
-            orderEventPublisher.publish(new OrderCanceled(order));
+        final EndOfDayRun run = new EndOfDayRun(sequence, symbols, replay);
+        final int chunkSize = getEndOfDayChunkSize();
+        for (final String symbol : symbols) {
+            matchingDispatcher.dispatch(symbol, new Runnable() {
+                @Override
+                public void run() {
+                    processEndOfDay(run, symbol, chunkSize);
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks the active GFD orders of the symbol as DoneForDay, one chunk at a
+     * time. Runs on the matching thread of the symbol, so no orders can be
+     * placed for the symbol in the meantime.
+     */
+    private void processEndOfDay(EndOfDayRun run, String symbol, int chunkSize) {
+        long symbolOrdersMarked = 0;
+        int chunkOrdersMarked;
+        do {
+            chunkOrdersMarked = markOrdersDoneForDay(symbol, chunkSize);
+            symbolOrdersMarked += chunkOrdersMarked;
+            long ordersMarked = run.addOrdersMarked(chunkOrdersMarked);
+            if (chunkOrdersMarked > 0) {
+                logger.info("Marked {} {} orders as DoneForDay, {} orders in total",
+                        new Object[] {symbolOrdersMarked, symbol, ordersMarked});
+            }
+        } while (chunkOrdersMarked == chunkSize);
+
+        if (run.isReplay()) {
+            removeGfdOrders(symbol);
+        }
+        if (run.completeSymbol(symbol)) {
+            completeEndOfDay(run);
         }
         else {
-            orderEventPublisher.publish(new OrderCancelRejected(order));
+            logger.info("Completed end of day processing for {}, {} of {} symbols remaining",
+                    new Object[] {symbol, run.getRemainingSymbolCount(), run.getSymbolCount()});
         }
     }
-    
-    public void handleEndOfDay() {
-        logger.info("Processing end of day event...");
-        List<Order> orders = orderRepository.findActiveGfdOrders();
-        logger.info("Marking {} orders as DoneForDay...", orders.size());
+
+    /**
+     * Marks the next chunk of active GFD orders of the symbol as DoneForDay,
+     * in a transaction of its own. The orders are updated with a single bulk
+     * update, then taken out of the book by the matching engine, and their
+     * reports are sent when the transaction commits.
+     * 
+     * @return the number of orders marked
+     */
+    private int markOrdersDoneForDay(final String symbol, final int chunkSize) {
+        final int[] ordersMarked = new int[1];
+        transactionRunner.run(new Runnable() {
+            @Override
+            public void run() {
+                List<Order> orders =
+                    orderRepository.findActiveGfdOrdersForInstrument(symbol, chunkSize);
+                if (orders.isEmpty()) {
+                    return;
+                }
+                orderRepository.markDoneForDay(orders);
+                matchingEngine.markDoneForDay(orders);
+                ordersMarked[0] = orders.size();
+            }
+        });
+        return ordersMarked[0];
+    }
+
+    private void completeEndOfDay(final EndOfDayRun run) {
+        logger.info("Completed end of day processing, marked {} orders as DoneForDay in {} symbols in {} ms",
+                new Object[] {run.getOrdersMarked(), run.getSymbolCount(), run.getElapsedMillis()});
+        markProcessed(run.getSequence());
+    }
+
+    private int getEndOfDayChunkSize() {
+        String value = configurationService.getString(
+                ConfigConstants.PROP_END_OF_DAY_CHUNK_SIZE);
+        return (value == null) ?
+            DEFAULT_END_OF_DAY_CHUNK_SIZE : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Removes the GFD orders left in a book restored from a snapshot that
+     * was taken before the end of day event, but which the database already
+     * shows as DoneForDay.
+     */
+    private void removeGfdOrders(String symbol) {
+        OrderBook orderBook = orderBookRegistry.getOrderBook(symbol);
+        List<Order> orders = new ArrayList<Order>(orderBook.getBuyStack());
+        orders.addAll(orderBook.getSellStack());
         for (Order order : orders) {
-            order.doneForDay();
-            orderEventPublisher.publish(new OrderDoneForDay(order));
+            if (order.getTerm() == OrderTerm.GoodForTheDay) {
+                orderBookRegistry.remove(order);
+            }
+        }
+    }
+
+    /**
+     * Replaces the copy of an order in its book with the current state of
+     * the order in the database. Runs on the matching thread of the symbol,
+     * after any work already queued for it. The book is indexed by the state
+     * of the order it holds (e.g. its price, or its creation time for an
+     * AllOrNone order), so that is the instance which is removed.
+     */
+    private void dispatchRefreshOrder(String symbol, final String clOrdID, final long sequence) {
+        matchingDispatcher.dispatch(symbol, new Runnable() {
+            @Override
+            public void run() {
+                Order order = orderRepository.findOrderByClientOrderId(clOrdID);
+                Order restingOrder = orderBookRegistry.findOrder(clOrdID);
+                if (restingOrder != null) {
+                    orderBookRegistry.remove(restingOrder);
+                }
+                if (order.isActive()) {
+                    orderBookRegistry.add(order);
+                }
+                markProcessed(sequence);
+            }
+        });
+    }
+
+    /**
+     * Marks a journaled request as processed once the changes it made have
+     * been written to the database (see {@link OrderWriter}).
+     */
+    private void markProcessed(final long sequence) {
+        orderWriter.afterWrite(new Runnable() {
+            @Override
+            public void run() {
+                orderJournal.markProcessed(sequence);
+            }
+        });
+    }
+
+    /**
+     * Recovers the state of the exchange after a restart. The order books
+     * are restored from the latest snapshot (see {@link SnapshotService}) if
+     * there is one, otherwise they are loaded from the database on first
+     * use. The orders executed since the snapshot was taken are then
+     * refreshed from the database and the journal is replayed from the point
+     * where the snapshot was taken: requests whose effects are already in
+     * the database are only applied to the books, the rest are dispatched
+     * again in their original order.
+     */
+    public void recover() {
+        SnapshotService.SnapshotHeader snapshot = snapshotService.restoreLatest();
+        long fromSequence = 0;
+        if (snapshot != null) {
+            fromSequence = snapshot.getReplayFromSequence();
+            for (Order order :
+                orderRepository.findOrdersExecutedSince(snapshot.getCreationTime())) {
+                dispatchRefreshOrder(order.getSymbol(), order.getClientOrderId(), 0);
+            }
         }
-        logger.info("Marked {} orders as DoneForDay", orders.size());
+        replayJournal(fromSequence);
+    }
+
+    private void replayJournal(long fromSequence) {
+        final Set<String> replayedOrders = new HashSet<String>();
+        orderJournal.replay(fromSequence, new JournalListener() {
+            @Override
+            public void onNewOrderSingle(long sequence, Order order) {
+                String clOrdID = order.getClientOrderId();
+                if (orderRepository.findOrderByClientOrderId(clOrdID) == null) {
+                    logger.info("Replaying NewOrderSingle {}", clOrdID);
+                    replayedOrders.add(clOrdID);
+                    dispatchNewOrderSingle(order, sequence);
+                }
+                else {
+                    dispatchRefreshOrder(order.getSymbol(), clOrdID, sequence);
+                }
+            }
+
+            /**
+             * A request for an order that is no longer active has either been
+             * applied already or would be rejected, so only the book is
+             * refreshed. Any other request is dispatched again, which rejects
+             * a request for an unknown order again.
+             */
+            @Override
+            public void onOrderCancelRequest(
+                    long sequence, String clOrdID, String symbol) {
+                Order order = replayedOrders.contains(clOrdID) ?
+                    null : orderRepository.findOrderByClientOrderId(clOrdID);
+                if (order != null && !order.isActive()) {
+                    dispatchRefreshOrder(order.getSymbol(), clOrdID, sequence);
+                }
+                else {
+                    logger.info("Replaying OrderCancelRequest {}", clOrdID);
+                    dispatchOrderCancelRequest(symbol, clOrdID, sequence, 0);
+                }
+            }
+
+            /**
+             * Handled like an OrderCancelRequest. A replace sets the quantity
+             * and limit price to absolute values, so applying it again to an
+             * order that it has already been applied to leaves the order
+             * unchanged.
+             */
+            @Override
+            public void onOrderCancelReplaceRequest(
+                    long sequence, OrderCancelReplaceRequest request) {
+                String clOrdID = request.getClientOrderId();
+                Order order = replayedOrders.contains(clOrdID) ?
+                    null : orderRepository.findOrderByClientOrderId(clOrdID);
+                if (order != null && !order.isActive()) {
+                    dispatchRefreshOrder(order.getSymbol(), clOrdID, sequence);
+                }
+                else {
+                    logger.info("Replaying OrderCancelReplaceRequest {}", clOrdID);
+                    dispatchOrderCancelReplaceRequest(request, sequence, 0);
+                }
+            }
+
+            @Override
+            public void onEndOfDay(long sequence) {
+                logger.info("Replaying end of day event");
+                dispatchEndOfDay(sequence, true);
+            }
+        });
     }
 
     // ----- Queries -----
+    /**
+     * Returns the order of a cancel or replace request, null if there is no
+     * order with the clOrdID in the symbol of the request.
+     */
+    private Order findOrder(String clOrdID, String symbol) {
+        Order order = orderBookRegistry.findOrder(clOrdID);
+        if (order == null) {
+            order = orderRepository.findOrderByClientOrderId(clOrdID);
+        }
+        return (order != null && order.getSymbol().equals(symbol)) ?
+            order : null;
+    }
 
     // ----- Attributes -----
     @Inject private OrderRepository orderRepository;
-    @Inject private OrderEventPublisher orderEventPublisher;
+    @Inject private OrderBookRegistry orderBookRegistry;
+    @Inject private MatchingDispatcher matchingDispatcher;
+    @Inject private OrderJournal orderJournal;
+    @Inject private SnapshotService snapshotService;
+    @Inject private OrderWriter orderWriter;
+    @Inject private LatencyMonitor latencyMonitor;
+    @Inject private TransactionRunner transactionRunner;
+    @Inject private ConfigurationService configurationService;
     @Inject MatchingEngine matchingEngine;
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.journal;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest;
+
+/**
+ * Receives the records of the order journal, in the order in which they
+ * were appended, when the journal is replayed.
+ *
+ * @author Naresh Bhatia
+ */
+public interface JournalListener {
+    void onNewOrderSingle(long sequence, Order order);
+    void onOrderCancelRequest(long sequence, String clOrdID, String symbol);
+    void onOrderCancelReplaceRequest(long sequence, OrderCancelReplaceRequest request);
+    void onEndOfDay(long sequence);
+}
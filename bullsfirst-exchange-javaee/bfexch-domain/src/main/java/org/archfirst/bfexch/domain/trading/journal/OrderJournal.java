@@ -0,0 +1,566 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.journal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of the requests received by the exchange. Every
+ * NewOrderSingle, OrderCancelRequest, OrderCancelReplaceRequest and end of
+ * day event is appended to the journal before it is handed to the matching
+ * threads, so that requests that were accepted but not yet processed when
+ * the exchange went down can be replayed on restart.
+ *
+ * The journal is a sequence of memory-mapped segment files named after the
+ * sequence number of their first record, each segmentSize bytes long. A
+ * record is laid out as follows:
+ * <pre>
+ *   int    length of the rest of the record
+ *   long   sequence number
+ *   byte   record type
+ *   ...    body
+ * </pre>
+ * The length is written last, so a record that was only partially written
+ * reads as the end of the journal.
+ *
+ * The journal also keeps track of the records that have been appended but
+ * not yet processed by the matching threads. Order book snapshots use this
+ * to find the point in the journal from which to replay.
+ *
+ * Writes to the mapped segment are forced to disk in batches: when
+ * fsyncBatchSize records are waiting, or every fsyncIntervalMillis
+ * milliseconds, whichever comes first. The journal is disabled if no
+ * directory is configured.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class OrderJournal {
+    private static final Logger logger =
+        LoggerFactory.getLogger(OrderJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int MAX_BODY_SIZE = 4096;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_FSYNC_BATCH_SIZE = 64;
+    private static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 5;
+
+    private static final byte NEW_ORDER_SINGLE = 1;
+    private static final byte ORDER_CANCEL_REQUEST = 2;
+    private static final byte END_OF_DAY = 3;
+    private static final byte ORDER_CANCEL_REPLACE_REQUEST = 4;
+
+    // Flags for the prices present in a NewOrderSingle
+    private static final int LIMIT_PRICE = 1;
+    private static final int STOP_PRICE = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public synchronized void open() {
+        String directoryName = configurationService.getString(
+                ConfigConstants.PROP_JOURNAL_DIRECTORY);
+        if (directoryName == null) {
+            logger.warn("No journal directory configured, order journal is disabled");
+            return;
+        }
+
+        directory = new File(directoryName);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException(
+                    "Could not create journal directory " + directory);
+        }
+        segmentSize = (int)getLong(
+                ConfigConstants.PROP_JOURNAL_SEGMENT_SIZE,
+                DEFAULT_SEGMENT_SIZE);
+        fsyncBatchSize = (int)getLong(
+                ConfigConstants.PROP_JOURNAL_FSYNC_BATCH_SIZE,
+                DEFAULT_FSYNC_BATCH_SIZE);
+        fsyncIntervalMillis = getLong(
+                ConfigConstants.PROP_JOURNAL_FSYNC_INTERVAL_MILLIS,
+                DEFAULT_FSYNC_INTERVAL_MILLIS);
+
+        // Find where the journal left off and continue in a new segment
+        lastSequence = readSegments(null);
+        openSegment(lastSequence + 1);
+        logger.info("Opened order journal in {}, last sequence number is {}",
+                directory, lastSequence);
+
+        flusher = new Thread(new Flusher(), "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (segment == null) {
+            return;
+        }
+        flusher.interrupt();
+        force();
+        closeSegment();
+        logger.info("Closed order journal, last sequence number is {}", lastSequence);
+    }
+
+    // ----- Commands -----
+    /**
+     * Appends a NewOrderSingle to the journal.
+     * 
+     * @return the sequence number of the record, to be passed to
+     * {@link #markProcessed(long)} once the order has been processed; 0 if
+     * the journal is disabled
+     */
+    public synchronized long appendNewOrderSingle(Order order) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        body.clear();
+        body.putLong(order.getCreationTime().getMillis());
+        putString(body, order.getClientOrderId());
+        putString(body, order.getSide().name());
+        putString(body, order.getSymbol());
+        body.putLong(FixedPoint.toQuantityUnits(order.getQuantity()));
+        putString(body, order.getType().name());
+        body.put((byte)(((order.getLimitPrice() != null) ? LIMIT_PRICE : 0) |
+                ((order.getStopPrice() != null) ? STOP_PRICE : 0)));
+        if (order.getLimitPrice() != null) {
+            body.putLong(order.getLimitPriceTicks());
+            putString(body, order.getLimitPrice().getCurrency().getCurrencyCode());
+        }
+        if (order.getStopPrice() != null) {
+            body.putLong(order.getStopPriceTicks());
+            putString(body, order.getStopPrice().getCurrency().getCurrencyCode());
+        }
+        putString(body, order.getTerm().name());
+        body.put(order.isAllOrNone() ? (byte)1 : (byte)0);
+        return append(NEW_ORDER_SINGLE);
+    }
+
+    /**
+     * Appends an OrderCancelRequest to the journal.
+     * 
+     * @see #appendNewOrderSingle(Order)
+     */
+    public synchronized long appendOrderCancelRequest(String clOrdID, String symbol) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        body.clear();
+        putString(body, clOrdID);
+        putString(body, symbol);
+        return append(ORDER_CANCEL_REQUEST);
+    }
+
+    /**
+     * Appends an OrderCancelReplaceRequest to the journal.
+     * 
+     * @see #appendNewOrderSingle(Order)
+     */
+    public synchronized long appendOrderCancelReplaceRequest(
+            OrderCancelReplaceRequest request) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        body.clear();
+        putString(body, request.getClientOrderId());
+        putString(body, request.getSymbol());
+        body.putLong(request.getTransactTime().getMillis());
+        body.putLong(request.getReceivedTime().getMillis());
+        body.putLong(FixedPoint.toQuantityUnits(request.getQuantity()));
+        Money limitPrice = request.getLimitPrice();
+        body.put((byte)((limitPrice != null) ? LIMIT_PRICE : 0));
+        if (limitPrice != null) {
+            body.putLong(FixedPoint.toPriceTicks(limitPrice));
+            putString(body, limitPrice.getCurrency().getCurrencyCode());
+        }
+        return append(ORDER_CANCEL_REPLACE_REQUEST);
+    }
+
+    /**
+     * Appends an end of day event to the journal.
+     * 
+     * @see #appendNewOrderSingle(Order)
+     */
+    public synchronized long appendEndOfDay() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        body.clear();
+        return append(END_OF_DAY);
+    }
+
+    /**
+     * Records that the request with the specified sequence number has been
+     * processed.
+     */
+    public void markProcessed(long sequence) {
+        unprocessedSequences.remove(sequence);
+    }
+
+    /**
+     * Passes the records starting at the specified sequence number to the
+     * listener, in sequence. Replayed records are considered unprocessed
+     * until they are marked as processed.
+     */
+    public synchronized void replay(long fromSequence, JournalListener listener) {
+        if (!isEnabled()) {
+            return;
+        }
+        logger.info("Replaying order journal from sequence number {}...", fromSequence);
+        this.replayFromSequence = fromSequence;
+        long replayedSequence = readSegments(listener);
+        logger.info("Replayed order journal up to sequence number {}", replayedSequence);
+    }
+
+    /**
+     * Deletes the segments that only contain records before the specified
+     * sequence number. The current segment is never deleted.
+     */
+    public synchronized void deleteSegmentsBefore(long sequence) {
+        if (!isEnabled()) {
+            return;
+        }
+        File[] files = getSegmentFiles();
+        for (int i = 0; i < files.length - 1; i++) {
+            if (getFirstSequence(files[i + 1]) > sequence) {
+                break;
+            }
+            if (files[i].delete()) {
+                logger.info("Deleted journal segment {}", files[i].getName());
+            }
+        }
+    }
+
+    private long append(byte type) {
+        body.flip();
+        int length = 8 + 1 + body.remaining();
+        if (segment.remaining() < 4 + length + 4) {
+            force();
+            closeSegment();
+            openSegment(lastSequence + 1);
+        }
+
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putLong(++lastSequence);
+        segment.put(type);
+        segment.put(body);
+        segment.putInt(start, length);
+        unprocessedSequences.add(lastSequence);
+
+        if (++unsyncedRecords >= fsyncBatchSize) {
+            force();
+        }
+        return lastSequence;
+    }
+
+    private void force() {
+        if (unsyncedRecords > 0) {
+            segment.force();
+            unsyncedRecords = 0;
+        }
+    }
+
+    private void openSegment(long firstSequence) {
+        File file = new File(directory, String.format(
+                "%s%019d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        try {
+            segmentFile = new RandomAccessFile(file, "rw");
+            segmentFile.setLength(segmentSize);
+            segment = segmentFile.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to open journal segment " + file, e);
+        }
+    }
+
+    private void closeSegment() {
+        try {
+            segmentFile.close();
+        }
+        catch (IOException e) {
+            logger.error("Failed to close journal segment", e);
+        }
+        segment = null;
+        segmentFile = null;
+    }
+
+    // ----- Queries -----
+    public boolean isEnabled() {
+        return segment != null;
+    }
+
+    /**
+     * Returns the sequence number from which the journal has to be replayed
+     * to recover the requests that have not been processed so far: the
+     * oldest unprocessed record or, if all records have been processed, the
+     * next record to be appended.
+     */
+    public synchronized long getReplayStartSequence() {
+        return unprocessedSequences.isEmpty() ?
+            lastSequence + 1 : unprocessedSequences.first();
+    }
+
+    /**
+     * Reads all segments in sequence, passing the records to the listener
+     * if one is specified.
+     * 
+     * @return the sequence number of the last record
+     */
+    private long readSegments(JournalListener listener) {
+        long sequence = 0;
+        for (File file : getSegmentFiles()) {
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    MappedByteBuffer buffer = raf.getChannel().map(
+                            FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                    sequence = readSegment(buffer, listener, sequence);
+                }
+                finally {
+                    raf.close();
+                }
+            }
+            catch (IOException e) {
+                throw new RuntimeException("Failed to read journal segment " + file, e);
+            }
+        }
+        return sequence;
+    }
+
+    private long readSegment(
+            ByteBuffer buffer, JournalListener listener, long sequence) {
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length == 0) {
+                break;
+            }
+            sequence = buffer.getLong();
+            byte type = buffer.get();
+            boolean replay = (listener != null && sequence >= replayFromSequence);
+            if (replay) {
+                unprocessedSequences.add(sequence);
+            }
+            switch (type) {
+                case NEW_ORDER_SINGLE:
+                    Order order = readOrder(buffer);
+                    if (replay) {
+                        listener.onNewOrderSingle(sequence, order);
+                    }
+                    break;
+                case ORDER_CANCEL_REQUEST:
+                    String clOrdID = getString(buffer);
+                    String symbol = getString(buffer);
+                    if (replay) {
+                        listener.onOrderCancelRequest(sequence, clOrdID, symbol);
+                    }
+                    break;
+                case ORDER_CANCEL_REPLACE_REQUEST:
+                    OrderCancelReplaceRequest request =
+                        readOrderCancelReplaceRequest(buffer);
+                    if (replay) {
+                        listener.onOrderCancelReplaceRequest(sequence, request);
+                    }
+                    break;
+                case END_OF_DAY:
+                    if (replay) {
+                        listener.onEndOfDay(sequence);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException(
+                            "Unknown journal record type " + type +
+                            " at sequence number " + sequence);
+            }
+        }
+        return sequence;
+    }
+
+    private Order readOrder(ByteBuffer buffer) {
+        DateTime creationTime = new DateTime(buffer.getLong());
+        String clOrdID = getString(buffer);
+        OrderSide side = OrderSide.valueOf(getString(buffer));
+        String symbol = getString(buffer);
+        long quantity = buffer.getLong();
+        OrderType type = OrderType.valueOf(getString(buffer));
+        byte prices = buffer.get();
+        Money limitPrice = null;
+        if ((prices & LIMIT_PRICE) != 0) {
+            long limitPriceTicks = buffer.getLong();
+            limitPrice = FixedPoint.toMoney(
+                    limitPriceTicks, Currency.getInstance(getString(buffer)));
+        }
+        Money stopPrice = null;
+        if ((prices & STOP_PRICE) != 0) {
+            long stopPriceTicks = buffer.getLong();
+            stopPrice = FixedPoint.toMoney(
+                    stopPriceTicks, Currency.getInstance(getString(buffer)));
+        }
+        OrderTerm term = OrderTerm.valueOf(getString(buffer));
+        boolean allOrNone = (buffer.get() == 1);
+
+        return new Order(
+                creationTime,
+                clOrdID,
+                side,
+                symbol,
+                FixedPoint.toDecimalQuantity(quantity),
+                type,
+                limitPrice,
+                stopPrice,
+                term,
+                allOrNone);
+    }
+
+    private OrderCancelReplaceRequest readOrderCancelReplaceRequest(
+            ByteBuffer buffer) {
+        String clOrdID = getString(buffer);
+        String symbol = getString(buffer);
+        DateTime transactTime = new DateTime(buffer.getLong());
+        DateTime receivedTime = new DateTime(buffer.getLong());
+        long quantity = buffer.getLong();
+        Money limitPrice = null;
+        if ((buffer.get() & LIMIT_PRICE) != 0) {
+            long limitPriceTicks = buffer.getLong();
+            limitPrice = FixedPoint.toMoney(
+                    limitPriceTicks, Currency.getInstance(getString(buffer)));
+        }
+        OrderCancelReplaceRequest request = new OrderCancelReplaceRequest(
+                clOrdID,
+                symbol,
+                transactTime,
+                FixedPoint.toDecimalQuantity(quantity),
+                limitPrice);
+        request.setReceivedTime(receivedTime);
+        return request;
+    }
+
+    private File[] getSegmentFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) &&
+                    name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        // Sequence numbers are zero padded, so names sort in sequence
+        Arrays.sort(files);
+        return files;
+    }
+
+    private long getFirstSequence(File segmentFile) {
+        String name = segmentFile.getName();
+        return Long.parseLong(name.substring(
+                SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = configurationService.getString(key);
+        return (value == null) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        buffer.putShort((short)bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    // ----- Attributes -----
+    @Inject private ConfigurationService configurationService;
+
+    private File directory;
+    private int segmentSize;
+    private int fsyncBatchSize;
+    private long fsyncIntervalMillis;
+    private Thread flusher;
+
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private final ByteBuffer body = ByteBuffer.allocate(MAX_BODY_SIZE);
+    private long lastSequence;
+    private int unsyncedRecords;
+    private long replayFromSequence;
+    private final SortedSet<Long> unprocessedSequences =
+        new ConcurrentSkipListSet<Long>();
+
+    // ----- Getters -----
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // ----- Nested Types -----
+    /**
+     * Forces records that have been waiting for longer than the fsync
+     * interval to disk.
+     */
+    private class Flusher implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(fsyncIntervalMillis);
+                }
+                catch (InterruptedException e) {
+                    break;
+                }
+                synchronized(OrderJournal.this) {
+                    if (segment != null) {
+                        force();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -64,6 +64,12 @@ public class Execution extends DomainEntity {
         this.price = price;
     }
     
+    // ----- Commands -----
+    // Allow access only from OrderWriter
+    void assignId(long id) {
+        this.id = id;
+    }
+    
     // ----- Attributes -----
     @XmlElement(name = "CreationTime", required = true)
     @XmlJavaTypeAdapter(DateTimeAdapter.class)
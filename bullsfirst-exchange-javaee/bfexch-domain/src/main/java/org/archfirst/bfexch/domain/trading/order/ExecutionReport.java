@@ -51,6 +51,7 @@ public class ExecutionReport {
         this.cumQty = order.getCumQty();
         this.lastPrice = (execution == null) ? null : execution.getPrice();
         this.weightedAvgPrice = order.getWeightedAveragePriceOfExecutions();
+        this.limitPrice = order.getLimitPrice();
     }
     
     // ----- Factory Methods -----
@@ -75,6 +76,13 @@ public class ExecutionReport {
                 null);
     }
 
+    public static ExecutionReport createReplacedType(Order order) {
+        return new ExecutionReport(
+                ExecutionReportType.Replaced,
+                order,
+                null);
+    }
+
     public static ExecutionReport createDoneForDayType(Order order) {
         return new ExecutionReport(
                 ExecutionReportType.DoneForDay,
@@ -95,6 +103,7 @@ public class ExecutionReport {
     private final DecimalQuantity cumQty;
     private final Money lastPrice;
     private final Money weightedAvgPrice;
+    private final Money limitPrice;
 
     // ----- Getters -----
     public ExecutionReportType getType() {
@@ -133,4 +142,7 @@ public class ExecutionReport {
     public Money getWeightedAvgPrice() {
         return weightedAvgPrice;
     }
+    public Money getLimitPrice() {
+        return limitPrice;
+    }
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ public enum ExecutionReportType {
     DoneForDay("DFD", "Done For Day"),
     New("NEW", "New"),
     PendingCancel("PENDCNCL", "Pending Cancel"),
+    Replaced("RPLCD", "Replaced"),
     Trade("TRADE", "Trade");
 
     private final String identifier;
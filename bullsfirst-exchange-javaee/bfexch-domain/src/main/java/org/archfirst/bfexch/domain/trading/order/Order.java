@@ -15,6 +15,11 @@
  */
 package org.archfirst.bfexch.domain.trading.order;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Currency;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -32,10 +37,12 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlSchemaType;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlType;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
 import org.archfirst.bfexch.domain.util.Constants;
+import org.archfirst.bfexch.domain.util.FixedPoint;
 import org.archfirst.common.datetime.DateTimeAdapter;
 import org.archfirst.common.datetime.DateTimeUtil;
 import org.archfirst.common.domain.DomainEntity;
@@ -73,6 +80,25 @@ public class Order extends DomainEntity implements Comparable<Order> {
             Money limitPrice,
             OrderTerm term,
             boolean allOrNone) {
+        this(creationTime, clientOrderId, side, symbol, quantity,
+                type, limitPrice, null, term, allOrNone);
+    }
+
+    /**
+     * Creates an order with a stop price, which is required for Stop and
+     * StopLimit orders and ignored otherwise.
+     */
+    public Order(
+            DateTime creationTime,
+            String clientOrderId,
+            OrderSide side,
+            String symbol,
+            DecimalQuantity quantity,
+            OrderType type,
+            Money limitPrice,
+            Money stopPrice,
+            OrderTerm term,
+            boolean allOrNone) {
         this.creationTime = creationTime;
         this.clientOrderId = clientOrderId;
         this.side = side;
@@ -80,9 +106,49 @@ public class Order extends DomainEntity implements Comparable<Order> {
         this.quantity = quantity;
         this.type = type;
         this.limitPrice = limitPrice;
+        this.stopPrice = stopPrice;
         this.term = term;
         this.allOrNone = allOrNone;
     }
+
+    // ----- Factory Methods -----
+    /**
+     * Reads an order written by {@link #writeSnapshot(DataOutput)}. The order
+     * is detached; {@link OrderRepository#attach(Order)} reassociates it with
+     * a persistence context.
+     */
+    public static Order readSnapshot(DataInput in) throws IOException {
+        Order order = new Order();
+        order.id = in.readLong();
+        order.version = in.readInt();
+        order.creationTime = new DateTime(in.readLong());
+        order.clientOrderId = in.readUTF();
+        order.side = OrderSide.valueOf(in.readUTF());
+        order.symbol = in.readUTF();
+        order.quantity = FixedPoint.toDecimalQuantity(in.readLong());
+        order.type = OrderType.valueOf(in.readUTF());
+        byte prices = in.readByte();
+        if ((prices & LIMIT_PRICE) != 0) {
+            long limitPriceTicks = in.readLong();
+            order.limitPrice = FixedPoint.toMoney(
+                    limitPriceTicks, Currency.getInstance(in.readUTF()));
+        }
+        if ((prices & STOP_PRICE) != 0) {
+            long stopPriceTicks = in.readLong();
+            order.stopPrice = FixedPoint.toMoney(
+                    stopPriceTicks, Currency.getInstance(in.readUTF()));
+        }
+        order.term = OrderTerm.valueOf(in.readUTF());
+        order.allOrNone = in.readBoolean();
+        order.status = OrderStatus.valueOf(in.readUTF());
+        order.cumQty = FixedPoint.toDecimalQuantity(in.readLong());
+        if (order.cumQty.isPlus()) {
+            Currency currency = Currency.getInstance(in.readUTF());
+            order.notional = new Money(new BigDecimal(in.readUTF()), currency);
+            order.weightedAvgPrice = FixedPoint.toMoney(in.readLong(), currency);
+        }
+        return order;
+    }
     
     // ----- Commands -----
     /**
@@ -91,25 +157,65 @@ public class Order extends DomainEntity implements Comparable<Order> {
      */
     public void accept(OrderRepository orderRepository) {
         this.status = OrderStatus.New;
-        orderRepository.persist(this);
-        orderRepository.flush();
+        orderRepository.persistOrder(this);
     }
     
     /**
-     * Executes the order and adds an execution to it.
+     * Executes the order and adds an execution to it. The cumulative
+     * quantity, notional and weighted average price of the order are updated
+     * as it is executed, so they never have to be computed from the
+     * executions.
      */
     public Execution execute(
             OrderRepository orderRepository,
             DateTime executionTime,
             DecimalQuantity executionQty,
             Money price) {
+        long leavesQtyUnits = getLeavesQtyUnits() -
+            FixedPoint.toQuantityUnits(executionQty);
         Execution execution = new Execution(executionTime, executionQty, price);
         this.addExecution(execution, orderRepository);
-        this.status = quantity.eq(getCumQty()) ?
+        this.cumQty = cumQty.plus(executionQty);
+        this.notional = notional.plus(price.times(executionQty));
+        this.weightedAvgPrice =
+            notional.scaleToCurrency().div(cumQty, Constants.PRICE_SCALE);
+        this.leavesQtyUnits = leavesQtyUnits;
+        this.status = (leavesQtyUnits == 0) ?
                 OrderStatus.Filled : OrderStatus.PartiallyFilled;
+        orderRepository.update(this);
         return execution;
     }
 
+    /**
+     * Turns a Stop order into a Market order and a StopLimit order into a
+     * Limit order once its stop price has been reached. The stop price is
+     * kept.
+     */
+    public void trigger(OrderRepository orderRepository) {
+        this.type = (type == OrderType.Stop) ? OrderType.Market : OrderType.Limit;
+        orderRepository.update(this);
+    }
+
+    /**
+     * Replaces the quantity of the order and, if not null, its limit price.
+     * If a priority time is specified, the order takes that time as its
+     * creation time, i.e. it is queued behind the orders that arrived before
+     * that time. Callers must make sure that the replacement is
+     * valid (see {@link #canReplace(DecimalQuantity, Money)}).
+     */
+    public void replace(
+            DecimalQuantity quantity, Money limitPrice, DateTime priorityTime) {
+        this.quantity = quantity;
+        this.leavesQtyUnits = NOT_COMPUTED;
+        if (limitPrice != null) {
+            this.limitPrice = limitPrice;
+            this.limitPriceTicks = NOT_COMPUTED;
+        }
+        if (priorityTime != null) {
+            this.creationTime = priorityTime;
+        }
+    }
+
     /**
      * Cancels the order if the status change is valid
      */
@@ -125,10 +231,19 @@ public class Order extends DomainEntity implements Comparable<Order> {
 
     private void addExecution(Execution execution, OrderRepository orderRepository) {
         execution.setOrder(this);
-        orderRepository.persist(execution);
-        orderRepository.flush(); // get execution id before adding to set
+        orderRepository.persistExecution(execution); // get execution id before adding to set
         executions.add(execution);
     }
+
+    // Allow access only from OrderWriter
+    void assignId(long id) {
+        this.id = id;
+    }
+
+    // Allow access only from OrderWriter
+    void incrementVersion() {
+        this.version++;
+    }
     
     // ----- Queries -----
     @Transient
@@ -136,33 +251,77 @@ public class Order extends DomainEntity implements Comparable<Order> {
         return quantity.minus(getCumQty());
     }
     
+    /**
+     * Returns the limit price as a number of ticks (see {@link FixedPoint}).
+     * Must only be called on limit orders.
+     */
     @Transient
-    public DecimalQuantity getCumQty() {
-        DecimalQuantity cumQty = new DecimalQuantity();
-        for (Execution execution : executions) {
-            cumQty = cumQty.plus(execution.getQuantity());
+    public long getLimitPriceTicks() {
+        if (limitPriceTicks == NOT_COMPUTED) {
+            limitPriceTicks = FixedPoint.toPriceTicks(limitPrice);
         }
-        return cumQty; 
+        return limitPriceTicks;
     }
-    
+
+    /**
+     * Returns the stop price as a number of ticks (see {@link FixedPoint}).
+     * Must only be called on orders with a stop price.
+     */
     @Transient
-    public Money getWeightedAveragePriceOfExecutions() {
-        if (executions.size() == 0) {
-            return new Money("0.00");
+    public long getStopPriceTicks() {
+        if (stopPriceTicks == NOT_COMPUTED) {
+            stopPriceTicks = FixedPoint.toPriceTicks(stopPrice);
         }
+        return stopPriceTicks;
+    }
 
-        // Calculate weighted average
-        Money totalPrice = new Money("0.00");
-        DecimalQuantity totalQuantity = new DecimalQuantity();
-        for (Execution execution : executions) {
-            totalPrice = totalPrice.plus(
-                    execution.getPrice().times(execution.getQuantity()));
-            totalQuantity = totalQuantity.plus(execution.getQuantity());
+    /**
+     * Returns true if this is a Stop or StopLimit order that has not been
+     * triggered yet.
+     */
+    @Transient
+    public boolean isPendingStop() {
+        return type == OrderType.Stop || type == OrderType.StopLimit;
+    }
+
+    /**
+     * Returns the leaves quantity as a long (see {@link FixedPoint}).
+     */
+    @Transient
+    public long getLeavesQtyUnits() {
+        if (leavesQtyUnits == NOT_COMPUTED) {
+            leavesQtyUnits = FixedPoint.toQuantityUnits(getLeavesQty());
         }
-        totalPrice = totalPrice.scaleToCurrency();
-        return totalPrice.div(totalQuantity, Constants.PRICE_SCALE);
+        return leavesQtyUnits;
     }
-    
+
+    /**
+     * Returns true if the order can be replaced with the specified quantity
+     * and limit price: the order must be active, the new quantity must
+     * exceed the quantity already executed, and a limit price can only be
+     * specified for Limit and StopLimit orders.
+     */
+    public boolean canReplace(DecimalQuantity quantity, Money limitPrice) {
+        if (!isActive() ||
+            FixedPoint.toQuantityUnits(quantity) <= FixedPoint.toQuantityUnits(cumQty)) {
+            return false;
+        }
+        return limitPrice == null ||
+            type == OrderType.Limit || type == OrderType.StopLimit;
+    }
+
+    /**
+     * Returns true if replacing the order with the specified quantity and
+     * limit price keeps its priority: the limit price must not change and
+     * the quantity must not increase.
+     */
+    public boolean keepsPriority(DecimalQuantity quantity, Money limitPrice) {
+        return
+            (limitPrice == null ||
+             FixedPoint.toPriceTicks(limitPrice) == getLimitPriceTicks()) &&
+            FixedPoint.toQuantityUnits(quantity) <= FixedPoint.toQuantityUnits(this.quantity);
+    }
+
     /** Returns true if this order is filled */
     @Transient
     public boolean isFilled() {
@@ -204,12 +363,12 @@ public class Order extends DomainEntity implements Comparable<Order> {
         // For limit orders, higher price takes priority for buy orders
         // and lower price takes priority for sell orders
         if (this.type == OrderType.Limit &&
-            !this.getLimitPrice().eq(that.getLimitPrice())) {
+            this.getLimitPriceTicks() != that.getLimitPriceTicks()) {
             if (this.side == OrderSide.Buy) {
-                return that.getLimitPrice().compareTo(this.getLimitPrice());
+                return (that.getLimitPriceTicks() < this.getLimitPriceTicks()) ? -1 : 1;
             }
             else {
-                return this.getLimitPrice().compareTo(that.getLimitPrice());
+                return (this.getLimitPriceTicks() < that.getLimitPriceTicks()) ? -1 : 1;
             }
         }
         
@@ -249,6 +408,40 @@ public class Order extends DomainEntity implements Comparable<Order> {
         return result;
     }
     
+    /**
+     * Writes the state of this order in a compact binary form for order book
+     * snapshots. Executions are not included.
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeLong(id);
+        out.writeInt(version);
+        out.writeLong(creationTime.getMillis());
+        out.writeUTF(clientOrderId);
+        out.writeUTF(side.name());
+        out.writeUTF(symbol);
+        out.writeLong(FixedPoint.toQuantityUnits(quantity));
+        out.writeUTF(type.name());
+        out.writeByte(((limitPrice != null) ? LIMIT_PRICE : 0) |
+                ((stopPrice != null) ? STOP_PRICE : 0));
+        if (limitPrice != null) {
+            out.writeLong(getLimitPriceTicks());
+            out.writeUTF(limitPrice.getCurrency().getCurrencyCode());
+        }
+        if (stopPrice != null) {
+            out.writeLong(getStopPriceTicks());
+            out.writeUTF(stopPrice.getCurrency().getCurrencyCode());
+        }
+        out.writeUTF(term.name());
+        out.writeBoolean(allOrNone);
+        out.writeUTF(status.name());
+        out.writeLong(FixedPoint.toQuantityUnits(cumQty));
+        if (cumQty.isPlus()) {
+            out.writeUTF(notional.getCurrency().getCurrencyCode());
+            out.writeUTF(notional.getAmount().toPlainString());
+            out.writeLong(FixedPoint.toPriceTicks(weightedAvgPrice));
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -260,6 +453,9 @@ public class Order extends DomainEntity implements Comparable<Order> {
         builder.append(", cumQy=").append(this.getCumQty());
         builder.append(", orderType=").append(type);
         builder.append(", limitPrice=").append(limitPrice);
+        if (stopPrice != null) {
+            builder.append(", stopPrice=").append(stopPrice);
+        }
         builder.append(", term=").append(term);
         builder.append(", allOrNone=").append(allOrNone);
         builder.append(", status=").append(status);
@@ -290,6 +486,9 @@ public class Order extends DomainEntity implements Comparable<Order> {
     @XmlElement(name = "LimitPrice", required = true)
     private Money limitPrice;
 
+    @XmlElement(name = "StopPrice")
+    private Money stopPrice;
+
     @XmlElement(name = "Term", required = true)
     private OrderTerm term;
 
@@ -302,6 +501,36 @@ public class Order extends DomainEntity implements Comparable<Order> {
     @XmlElement(name = "Execution", required = true)
     private Set<Execution> executions = new HashSet<Execution>();
 
+    // Running totals of the executions
+    @XmlTransient
+    private DecimalQuantity cumQty = new DecimalQuantity();
+
+    @XmlTransient
+    private Money notional = new Money("0.00");
+
+    @XmlTransient
+    private Money weightedAvgPrice = new Money("0.00");
+
+    // Fixed-point values for the matching engine, computed on first use
+    private static final long NOT_COMPUTED = Long.MIN_VALUE;
+
+    @XmlTransient
+    private long limitPriceTicks = NOT_COMPUTED;
+
+    @XmlTransient
+    private long stopPriceTicks = NOT_COMPUTED;
+
+    // Flags for the prices present in a snapshot
+    private static final int LIMIT_PRICE = 1;
+    private static final int STOP_PRICE = 2;
+
+    @XmlTransient
+    private long leavesQtyUnits = NOT_COMPUTED;
+
+    /** System.nanoTime() when the order was received, 0 if not known */
+    @XmlTransient
+    private long receivedNanos;
+
     // ----- Getters and Setters -----
     @Type(type = "org.joda.time.contrib.hibernate.PersistentDateTime")
     @Column(nullable = false)
@@ -399,6 +628,25 @@ public class Order extends DomainEntity implements Comparable<Order> {
         this.limitPrice = limitPrice;
     }
 
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name="amount",
+            column = @Column(
+                    name="stop_price_amount",
+                    precision=Constants.PRICE_PRECISION,
+                    scale=Constants.PRICE_SCALE)),
+        @AttributeOverride(name="currency",
+            column = @Column(
+                    name="stop_price_currency",
+                    length=Money.CURRENCY_LENGTH))
+     })
+    public Money getStopPrice() {
+        return stopPrice;
+    }
+    private void setStopPrice(Money stopPrice) {
+        this.stopPrice = stopPrice;
+    }
+
     @NotNull
     @Type(
         type = "org.archfirst.common.hibernate.GenericEnumUserType",
@@ -440,6 +688,62 @@ public class Order extends DomainEntity implements Comparable<Order> {
         this.status = status;
     }
     
+    @NotNull
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name="value",
+            column = @Column(
+                    name="cum_qty",
+                    precision=Constants.QUANTITY_PRECISION,
+                    scale=Constants.QUANTITY_SCALE))})
+    public DecimalQuantity getCumQty() {
+        return cumQty;
+    }
+    private void setCumQty(DecimalQuantity cumQty) {
+        this.cumQty = cumQty;
+    }
+
+    /** Sum of price times quantity of all executions, not rounded */
+    @NotNull
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name="amount",
+            column = @Column(
+                    name="notional_amount",
+                    precision=Constants.PRICE_PRECISION,
+                    scale=Constants.PRICE_SCALE)),
+        @AttributeOverride(name="currency",
+            column = @Column(
+                    name="notional_currency",
+                    length=Money.CURRENCY_LENGTH))
+     })
+    public Money getNotional() {
+        return notional;
+    }
+    private void setNotional(Money notional) {
+        this.notional = notional;
+    }
+
+    @NotNull
+    @Embedded
+    @AttributeOverrides({
+        @AttributeOverride(name="amount",
+            column = @Column(
+                    name="weighted_avg_price_amount",
+                    precision=Constants.PRICE_PRECISION,
+                    scale=Constants.PRICE_SCALE)),
+        @AttributeOverride(name="currency",
+            column = @Column(
+                    name="weighted_avg_price_currency",
+                    length=Money.CURRENCY_LENGTH))
+     })
+    public Money getWeightedAveragePriceOfExecutions() {
+        return weightedAvgPrice;
+    }
+    private void setWeightedAveragePriceOfExecutions(Money weightedAvgPrice) {
+        this.weightedAvgPrice = weightedAvgPrice;
+    }
+
     @OneToMany(mappedBy="order",  cascade=CascadeType.ALL)
     @OptimisticLock(excluded = true)
     public Set<Execution> getExecutions() {
@@ -448,4 +752,12 @@ public class Order extends DomainEntity implements Comparable<Order> {
     private void setExecutions(Set<Execution> executions) {
         this.executions = executions;
     }
+
+    @Transient
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
 }
\ No newline at end of file
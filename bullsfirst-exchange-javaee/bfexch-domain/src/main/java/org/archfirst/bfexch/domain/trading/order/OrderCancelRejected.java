@@ -18,19 +18,55 @@ package org.archfirst.bfexch.domain.trading.order;
 import org.archfirst.common.domain.DomainEvent;
 
 /**
- * OrderCanceled
+ * OrderCancelRejected. Sent in response to an OrderCancelRequest or an
+ * OrderCancelReplaceRequest. A request for an order that the exchange does
+ * not know is rejected without an order.
  *
  * @author Naresh Bhatia
  */
 public class OrderCancelRejected implements DomainEvent {
     
+    private final String clientOrderId;
     private final Order order;
+    private final boolean replaceRequest;
 
     public OrderCancelRejected(Order order) {
+        this(order, false);
+    }
+
+    public OrderCancelRejected(Order order, boolean replaceRequest) {
+        this(order.getClientOrderId(), order, replaceRequest);
+    }
+
+    /**
+     * Creates the rejection of a request for an unknown order.
+     */
+    public OrderCancelRejected(String clientOrderId, boolean replaceRequest) {
+        this(clientOrderId, null, replaceRequest);
+    }
+
+    private OrderCancelRejected(
+            String clientOrderId, Order order, boolean replaceRequest) {
+        this.clientOrderId = clientOrderId;
         this.order = order;
+        this.replaceRequest = replaceRequest;
+    }
+
+    public String getClientOrderId() {
+        return clientOrderId;
     }
 
+    /**
+     * Returns the order, null if the order is unknown.
+     */
     public Order getOrder() {
         return order;
     }
+
+    /**
+     * Returns true if the rejected request was an OrderCancelReplaceRequest.
+     */
+    public boolean isReplaceRequest() {
+        return replaceRequest;
+    }
 }
\ No newline at end of file
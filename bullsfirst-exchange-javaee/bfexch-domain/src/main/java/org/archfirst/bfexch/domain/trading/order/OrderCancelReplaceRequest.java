@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.order;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+
+/**
+ * A request to change the quantity and/or the limit price of an active
+ * order. The order keeps its clOrdID. A null limit price leaves the limit
+ * price of the order unchanged. The symbol of the order decides which
+ * matching thread processes the request.
+ *
+ * The TransactTime of the request is set by the client. The exchange stamps
+ * the request with the time at which it received it, which is the priority
+ * time of an order that loses its position in the book.
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderCancelReplaceRequest {
+
+    // ----- Constructors -----
+    public OrderCancelReplaceRequest(
+            String clientOrderId,
+            String symbol,
+            DateTime transactTime,
+            DecimalQuantity quantity,
+            Money limitPrice) {
+        this.clientOrderId = clientOrderId;
+        this.symbol = symbol;
+        this.transactTime = transactTime;
+        this.quantity = quantity;
+        this.limitPrice = limitPrice;
+    }
+
+    // ----- Queries -----
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(clientOrderId);
+        builder.append(": quantity=").append(quantity);
+        builder.append(", limitPrice=").append(limitPrice);
+        return builder.toString();
+    }
+
+    // ----- Attributes -----
+    private final String clientOrderId;
+    private final String symbol;
+    private final DateTime transactTime;
+    private final DecimalQuantity quantity;
+    private final Money limitPrice;
+
+    /** Time at which the exchange received the request */
+    private DateTime receivedTime;
+
+    // ----- Getters -----
+    public String getClientOrderId() {
+        return clientOrderId;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public DateTime getTransactTime() {
+        return transactTime;
+    }
+    public DecimalQuantity getQuantity() {
+        return quantity;
+    }
+    public Money getLimitPrice() {
+        return limitPrice;
+    }
+    public DateTime getReceivedTime() {
+        return receivedTime;
+    }
+    public void setReceivedTime(DateTime receivedTime) {
+        this.receivedTime = receivedTime;
+    }
+}
\ No newline at end of file
@@ -25,5 +25,6 @@ public interface OrderEventPublisher {
     void publish(OrderExecuted event);
     void publish(OrderCanceled event);
     void publish(OrderCancelRejected event);
+    void publish(OrderReplaced event);
     void publish(OrderDoneForDay event);
 }
\ No newline at end of file
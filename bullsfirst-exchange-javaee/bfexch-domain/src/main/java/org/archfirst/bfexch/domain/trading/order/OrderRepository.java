@@ -15,27 +15,74 @@
  */
 package org.archfirst.bfexch.domain.trading.order;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.inject.Inject;
+
 import org.archfirst.common.domain.BaseRepository;
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
+import org.hibernate.collection.PersistentCollection;
+import org.joda.time.DateTime;
 
 /**
- * OrderRepository
+ * OrderRepository. When write-behind is enabled (see {@link OrderWriter}),
+ * new orders, executions and order changes are queued for the writer
+ * instead of being written through JPA, and queries first wait for the
+ * queued changes to be written so that they see them.
  *
  * @author Naresh Bhatia
  */
 public class OrderRepository extends BaseRepository {
 
+    public void persistOrder(Order order) {
+        if (orderWriter.isEnabled()) {
+            orderWriter.insertOrder(order);
+        }
+        else {
+            persist(order);
+            flush();
+        }
+    }
+
+    public void persistExecution(Execution execution) {
+        if (orderWriter.isEnabled()) {
+            orderWriter.insertExecution(execution);
+        }
+        else {
+            persist(execution);
+            flush();
+        }
+    }
+
+    /**
+     * Records that the status or execution totals of an order have changed.
+     * Without write-behind there is nothing to do, as the changes to an
+     * attached order are written when the persistence context is flushed.
+     */
+    public void update(Order order) {
+        if (orderWriter.isEnabled()) {
+            orderWriter.updateOrder(order);
+        }
+    }
+
+    /**
+     * Returns the order with the specified clOrdID, null if there is none.
+     */
     public Order findOrderByClientOrderId(String clientOrderId) {
-        Order order = (Order)entityManager.createQuery(
+        orderWriter.awaitWritten();
+        @SuppressWarnings("unchecked")
+        List<Order> orders = entityManager.createQuery(
                 "select o from Order o " +
                 "where o.clientOrderId = :clientOrderId")
             .setParameter("clientOrderId", clientOrderId)
-            .getSingleResult();
-        return order;
+            .getResultList();
+        return orders.isEmpty() ? null : orders.get(0);
     }
 
     public List<Order> findActiveGfdOrders() {
+        orderWriter.awaitWritten();
         @SuppressWarnings("unchecked")
         List<Order> orders = entityManager.createQuery(
                 "select ord from Order ord " +
@@ -45,7 +92,80 @@ public class OrderRepository extends BaseRepository {
         return orders;
     }
 
+    /**
+     * Returns up to maxResults active GFD orders for the instrument, in the
+     * order of their ids. The orders are loaded read-only, so changes made to
+     * them are not written to the database (see {@link #markDoneForDay(List)}).
+     */
+    public List<Order> findActiveGfdOrdersForInstrument(String symbol, int maxResults) {
+        orderWriter.awaitWritten();
+        @SuppressWarnings("unchecked")
+        List<Order> orders = entityManager.createQuery(
+                "select ord from Order ord " +
+                "where ord.symbol = :symbol " +
+                "and ord.status in ('NEW', 'PARTFILD') " +
+                "and ord.term = 'GFD' " +
+                "order by ord.id")
+            .setParameter("symbol", symbol)
+            .setHint("org.hibernate.readOnly", true)
+            .setMaxResults(maxResults)
+            .getResultList();
+        return orders;
+    }
+
+    /**
+     * Marks the orders as DoneForDay, in the database with a single bulk
+     * update and in memory.
+     */
+    public void markDoneForDay(List<Order> orders) {
+        List<Long> ids = new ArrayList<Long>(orders.size());
+        for (Order order : orders) {
+            ids.add(order.getId());
+        }
+        entityManager.createQuery(
+                "update Order ord " +
+                "set ord.status = 'DFD', ord.version = ord.version + 1 " +
+                "where ord.id in (:ids)")
+            .setParameter("ids", ids)
+            .executeUpdate();
+        for (Order order : orders) {
+            order.doneForDay();
+        }
+    }
+
+    /**
+     * Returns the active orders in the order of their creation.
+     */
+    public List<Order> findActiveOrders() {
+        orderWriter.awaitWritten();
+        @SuppressWarnings("unchecked")
+        List<Order> orders = entityManager.createQuery(
+                "select ord from Order ord " +
+                "where ord.status in ('NEW', 'PARTFILD') " +
+                "order by ord.creationTime")
+            .getResultList();
+        return orders;
+    }
+
+    /**
+     * Returns the orders that have been executed at or after the specified
+     * time.
+     */
+    public List<Order> findOrdersExecutedSince(DateTime time) {
+        orderWriter.awaitWritten();
+        @SuppressWarnings("unchecked")
+        List<Order> orders = entityManager.createQuery(
+                "select ord from Order ord " +
+                "where ord in (" +
+                "    select exe.order from Execution exe " +
+                "    where exe.creationTime >= :time)")
+            .setParameter("time", time)
+            .getResultList();
+        return orders;
+    }
+
     public List<Order> findActiveOrdersForInstrument(String symbol) {
+        orderWriter.awaitWritten();
         @SuppressWarnings("unchecked")
         List<Order> orders = entityManager.createQuery(
                 "select ord from Order ord " +
@@ -55,4 +175,31 @@ public class OrderRepository extends BaseRepository {
             .getResultList();
         return orders;
     }
+
+    /**
+     * Reassociates an order that outlives the transaction in which it was
+     * loaded (e.g. an order resting in an in-memory order book) with the
+     * current persistence context. Changes made to the order after this call
+     * are written when the persistence context is flushed. With write-behind,
+     * orders are never attached, their changes are written by the
+     * {@link OrderWriter} instead.
+     * 
+     * Orders restored from a snapshot have never been associated with a
+     * persistence context and their executions are a plain collection, which
+     * Hibernate does not allow to be locked. Such orders are reassociated
+     * using an update instead.
+     */
+    public void attach(Order order) {
+        if (!orderWriter.isEnabled() && !entityManager.contains(order)) {
+            Session session = (Session)entityManager.getDelegate();
+            if (order.getExecutions() instanceof PersistentCollection) {
+                session.buildLockRequest(LockOptions.NONE).lock(order);
+            }
+            else {
+                session.update(order);
+            }
+        }
+    }
+
+    @Inject private OrderWriter orderWriter;
 }
\ No newline at end of file
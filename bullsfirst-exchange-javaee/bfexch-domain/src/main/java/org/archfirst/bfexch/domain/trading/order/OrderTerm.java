@@ -34,7 +34,11 @@ public enum OrderTerm {
     @XmlEnumValue("GoodForTheDay")
     GoodForTheDay("GFD", "Good For The Day"),
     @XmlEnumValue("GoodTilCanceled")
-    GoodTilCanceled("GTC", "Good 'til Canceled");
+    GoodTilCanceled("GTC", "Good 'til Canceled"),
+    @XmlEnumValue("ImmediateOrCancel")
+    ImmediateOrCancel("IOC", "Immediate or Cancel"),
+    @XmlEnumValue("FillOrKill")
+    FillOrKill("FOK", "Fill or Kill");
     
     private final String identifier;
     private final String displayString;
@@ -61,6 +65,14 @@ public enum OrderTerm {
         return identifiers.get(identifier);
     }
 
+    /**
+     * Returns true if orders with this term never rest in the book: what
+     * cannot be executed on arrival is canceled.
+     */
+    public boolean isImmediate() {
+        return this == ImmediateOrCancel || this == FillOrKill;
+    }
+
     public String getDisplayString() {
         return displayString;
     }
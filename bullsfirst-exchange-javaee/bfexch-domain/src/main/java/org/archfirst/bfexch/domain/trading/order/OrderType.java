@@ -34,7 +34,11 @@ public enum OrderType {
     @XmlEnumValue("Market")
     Market("MARKET", "Market"),
     @XmlEnumValue("Limit")
-    Limit("LIMIT", "Limit");
+    Limit("LIMIT", "Limit"),
+    @XmlEnumValue("Stop")
+    Stop("STOP", "Stop"),
+    @XmlEnumValue("StopLimit")
+    StopLimit("STOPLMT", "Stop Limit");
     
     private final String identifier;
     private final String displayString;
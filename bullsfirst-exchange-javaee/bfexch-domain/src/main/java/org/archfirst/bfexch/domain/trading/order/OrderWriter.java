@@ -0,0 +1,625 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.order;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.archfirst.bfexch.domain.trading.TransactionRunner;
+import org.archfirst.bfexch.domain.util.Backoff;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes new orders, executions and order changes to the database behind the
+ * matching threads. Changes are queued by the matching threads and written
+ * by a single writer thread as JDBC batches, either when batchSize changes
+ * are waiting or when the oldest waiting change is flushIntervalMillis old,
+ * whichever comes first. Each batch is written in a transaction of its own.
+ *
+ * The queue holds at most bufferSize changes. When it is full, matching
+ * threads block until there is room, so the matching engine can never run
+ * further ahead of the database than that. Changes are written in the order
+ * in which they were queued, which keeps the changes to each order in
+ * sequence.
+ *
+ * A batch that fails is retried a few times, waiting retryDelayMillis at
+ * first and twice as long after each further failure. If
+ * it still fails while the database is available, one of its changes must
+ * be at fault. The batch is then split in halves, which are written in
+ * turn the same way, until the change at fault is found. That change is
+ * logged and dropped, so that it cannot hold up the exchange, and the
+ * writer reports itself unhealthy (see {@link #getStatus()}). While the
+ * database is not available, the writer waits for it.
+ *
+ * Once the insertion of an order has been dropped, the executions and
+ * updates of the order can never be written, so they are dropped as soon as
+ * they come up rather than tried. An update that matches no row, because
+ * the order in the database does not have the version the update expects,
+ * is lost too and counted as a dropped change.
+ *
+ * Since orders are no longer inserted by JPA, order and execution ids are
+ * assigned here, continuing from the highest ids in the database. The values
+ * of each change are captured when it is queued, as the matching thread may
+ * change the order again before it is written.
+ *
+ * Write-behind is disabled unless configured, in which case
+ * {@link OrderRepository} writes through JPA as the changes are made.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class OrderWriter {
+    private static final Logger logger =
+        LoggerFactory.getLogger(OrderWriter.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+    private static final int DEFAULT_BUFFER_SIZE = 50000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+    private static final String INSERT_ORDER_SQL =
+        "insert into Orders (id, version, creationTime, clientOrderId, side, " +
+        "symbol, quantity, type, limit_price_amount, limit_price_currency, " +
+        "stop_price_amount, stop_price_currency, " +
+        "term, allOrNone, status, cum_qty, notional_amount, notional_currency, " +
+        "weighted_avg_price_amount, weighted_avg_price_currency) " +
+        "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EXECUTION_SQL =
+        "insert into Execution (id, version, creationTime, quantity, " +
+        "price_amount, price_currency, order_id) " +
+        "values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_ORDER_SQL =
+        "update Orders set version = ?, creationTime = ?, quantity = ?, type = ?, " +
+        "limit_price_amount = ?, limit_price_currency = ?, status = ?, cum_qty = ?, " +
+        "notional_amount = ?, notional_currency = ?, " +
+        "weighted_avg_price_amount = ?, weighted_avg_price_currency = ? " +
+        "where id = ? and version = ?";
+
+    // Statements are executed in this order within a batch, so that rows
+    // are inserted before they are referenced or updated
+    private static final String[] STATEMENTS =
+        {INSERT_ORDER_SQL, INSERT_EXECUTION_SQL, UPDATE_ORDER_SQL};
+    private static final int INSERT_ORDER = 0;
+    private static final int INSERT_EXECUTION = 1;
+    private static final int UPDATE_ORDER = 2;
+    private static final int NO_STATEMENT = -1;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        if (!"true".equalsIgnoreCase(configurationService.getString(
+                ConfigConstants.PROP_WRITE_BEHIND_ENABLED))) {
+            logger.info("Write-behind is disabled, orders are written as they change");
+            return;
+        }
+        batchSize = (int)getLong(
+                ConfigConstants.PROP_WRITE_BEHIND_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        flushIntervalMillis = getLong(
+                ConfigConstants.PROP_WRITE_BEHIND_FLUSH_INTERVAL_MILLIS,
+                DEFAULT_FLUSH_INTERVAL_MILLIS);
+        retryDelayMillis = getLong(
+                ConfigConstants.PROP_WRITE_BEHIND_RETRY_DELAY_MILLIS,
+                DEFAULT_RETRY_DELAY_MILLIS);
+        queue = new ArrayBlockingQueue<Write>((int)getLong(
+                ConfigConstants.PROP_WRITE_BEHIND_BUFFER_SIZE, DEFAULT_BUFFER_SIZE));
+
+        lastOrderId.set(findMaxId("Order"));
+        lastExecutionId.set(findMaxId("Execution"));
+
+        writer = new Thread(new Writer(), "order-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Write-behind enabled, batch size is {}, flush interval is {} ms",
+                batchSize, flushIntervalMillis);
+    }
+
+    /**
+     * Writes the changes that are still queued and stops the writer thread.
+     */
+    @PreDestroy
+    public void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        awaitWritten();
+        writer.interrupt();
+    }
+
+    // ----- Commands -----
+    /**
+     * Assigns an id to a new order and queues its insertion.
+     */
+    public void insertOrder(Order order) {
+        order.assignId(lastOrderId.incrementAndGet());
+        Money limitPrice = order.getLimitPrice();
+        Money stopPrice = order.getStopPrice();
+        enqueue(new Write(INSERT_ORDER, new Object[] {
+                order.getId(),
+                order.getVersion(),
+                new Timestamp(order.getCreationTime().getMillis()),
+                order.getClientOrderId(),
+                order.getSide().toIdentifier(),
+                order.getSymbol(),
+                order.getQuantity().getValue(),
+                order.getType().toIdentifier(),
+                (limitPrice == null) ? null : limitPrice.getAmount(),
+                (limitPrice == null) ? null : limitPrice.getCurrency().getCurrencyCode(),
+                (stopPrice == null) ? null : stopPrice.getAmount(),
+                (stopPrice == null) ? null : stopPrice.getCurrency().getCurrencyCode(),
+                order.getTerm().toIdentifier(),
+                order.isAllOrNone(),
+                order.getStatus().toIdentifier(),
+                order.getCumQty().getValue(),
+                order.getNotional().getAmount(),
+                order.getNotional().getCurrency().getCurrencyCode(),
+                order.getWeightedAveragePriceOfExecutions().getAmount(),
+                order.getWeightedAveragePriceOfExecutions().getCurrency().getCurrencyCode()},
+                null));
+    }
+
+    /**
+     * Assigns an id to a new execution and queues its insertion.
+     */
+    public void insertExecution(Execution execution) {
+        execution.assignId(lastExecutionId.incrementAndGet());
+        enqueue(new Write(INSERT_EXECUTION, new Object[] {
+                execution.getId(),
+                execution.getVersion(),
+                new Timestamp(execution.getCreationTime().getMillis()),
+                execution.getQuantity().getValue(),
+                execution.getPrice().getAmount(),
+                execution.getPrice().getCurrency().getCurrencyCode(),
+                execution.getOrder().getId()},
+                null));
+    }
+
+    /**
+     * Queues an update of the type, status and execution totals of an order
+     * and increments its version. The type changes when a stop order is
+     * triggered; the creation time, quantity and limit price when the order
+     * is replaced.
+     */
+    public void updateOrder(Order order) {
+        int version = order.getVersion();
+        order.incrementVersion();
+        Money limitPrice = order.getLimitPrice();
+        enqueue(new Write(UPDATE_ORDER, new Object[] {
+                order.getVersion(),
+                new Timestamp(order.getCreationTime().getMillis()),
+                order.getQuantity().getValue(),
+                order.getType().toIdentifier(),
+                (limitPrice == null) ? null : limitPrice.getAmount(),
+                (limitPrice == null) ? null : limitPrice.getCurrency().getCurrencyCode(),
+                order.getStatus().toIdentifier(),
+                order.getCumQty().getValue(),
+                order.getNotional().getAmount(),
+                order.getNotional().getCurrency().getCurrencyCode(),
+                order.getWeightedAveragePriceOfExecutions().getAmount(),
+                order.getWeightedAveragePriceOfExecutions().getCurrency().getCurrencyCode(),
+                order.getId(),
+                version},
+                null));
+    }
+
+    /**
+     * Runs the callback once all changes queued so far have been written,
+     * on the writer thread. If write-behind is disabled, the callback is run
+     * right away.
+     */
+    public void afterWrite(Runnable callback) {
+        if (!isEnabled()) {
+            callback.run();
+            return;
+        }
+        enqueue(new Write(NO_STATEMENT, null, callback));
+    }
+
+    /**
+     * Waits until all changes queued so far have been written.
+     */
+    public void awaitWritten() {
+        if (!isEnabled()) {
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        afterWrite(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for writes", e);
+        }
+    }
+
+    private void enqueue(Write write) {
+        try {
+            queue.put(write);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing write", e);
+        }
+    }
+
+    /**
+     * Writes the batch in a transaction of its own.
+     *
+     * @return the updates that matched no row
+     */
+    private List<Write> writeBatch(final List<Write> batch) {
+        final List<Write> staleUpdates = new ArrayList<Write>();
+        transactionRunner.run(new Runnable() {
+            @Override
+            public void run() {
+                Session session = (Session)entityManager.getDelegate();
+                session.doWork(new Work() {
+                    @Override
+                    public void execute(Connection connection) throws SQLException {
+                        for (int i = 0; i < STATEMENTS.length; i++) {
+                            executeBatch(connection, i, batch, staleUpdates);
+                        }
+                    }
+                });
+            }
+        });
+        return staleUpdates;
+    }
+
+    private void executeBatch(Connection connection, int statement,
+            List<Write> batch, List<Write> staleUpdates) throws SQLException {
+
+        PreparedStatement preparedStatement = null;
+        List<Write> writes = new ArrayList<Write>();
+        try {
+            for (Write write : batch) {
+                if (write.statement != statement) {
+                    continue;
+                }
+                if (preparedStatement == null) {
+                    preparedStatement = connection.prepareStatement(STATEMENTS[statement]);
+                }
+                writes.add(write);
+                for (int i = 0; i < write.parameters.length; i++) {
+                    Object parameter = write.parameters[i];
+                    if (parameter == null) {
+                        preparedStatement.setNull(i + 1, Types.NULL);
+                    }
+                    else {
+                        preparedStatement.setObject(i + 1, parameter);
+                    }
+                }
+                preparedStatement.addBatch();
+            }
+            if (preparedStatement != null) {
+                int[] counts = preparedStatement.executeBatch();
+                if (statement == UPDATE_ORDER) {
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            staleUpdates.add(writes.get(i));
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            if (preparedStatement != null) {
+                preparedStatement.close();
+            }
+        }
+    }
+
+    /**
+     * Is the database available, i.e. can it be queried.
+     */
+    private boolean isDatabaseAvailable() {
+        try {
+            transactionRunner.run(new Runnable() {
+                @Override
+                public void run() {
+                    findMaxId("Order");
+                }
+            });
+            return true;
+        }
+        catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // ----- Queries -----
+    public boolean isEnabled() {
+        return queue != null;
+    }
+
+    /**
+     * Returns the current status of the writer, to be monitored. The writer
+     * is unhealthy as soon as it has dropped a change, or while it is
+     * waiting for the database.
+     */
+    public OrderWriterStatus getStatus() {
+        return new OrderWriterStatus(
+                isEnabled(),
+                waitingForDatabase,
+                droppedWriteCount.get(),
+                staleUpdateCount.get(),
+                isEnabled() ? queue.size() : 0);
+    }
+
+    /**
+     * Returns the id of the order that a change refers to, null if it is
+     * not a change to an existing order.
+     */
+    private static Long getOrderId(Write write) {
+        switch (write.statement) {
+            case INSERT_EXECUTION:
+                return (Long)write.parameters[6];
+            case UPDATE_ORDER:
+                return (Long)write.parameters[12];
+            default:
+                return null;
+        }
+    }
+
+    private long findMaxId(String entityName) {
+        Long maxId = entityManager.createQuery(
+                "select max(e.id) from " + entityName + " e", Long.class)
+            .getSingleResult();
+        return (maxId == null) ? 0 : maxId;
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = configurationService.getString(key);
+        return (value == null) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    // ----- Attributes -----
+    @Inject private ConfigurationService configurationService;
+    @Inject private TransactionRunner transactionRunner;
+    @PersistenceContext private EntityManager entityManager;
+
+    private int batchSize;
+    private long flushIntervalMillis;
+    private long retryDelayMillis;
+    private BlockingQueue<Write> queue;
+    private Thread writer;
+    private final AtomicLong lastOrderId = new AtomicLong();
+    private final AtomicLong lastExecutionId = new AtomicLong();
+    private final AtomicLong droppedWriteCount = new AtomicLong();
+    private final AtomicLong staleUpdateCount = new AtomicLong();
+    private volatile boolean waitingForDatabase;
+
+    // ----- Nested Types -----
+    /**
+     * A change to be written: a statement with its parameters, or a callback
+     * to run once the changes before it have been written.
+     */
+    private static class Write {
+        private final int statement;
+        private final Object[] parameters;
+        private final Runnable callback;
+
+        public Write(int statement, Object[] parameters, Runnable callback) {
+            this.statement = statement;
+            this.parameters = parameters;
+            this.callback = callback;
+        }
+    }
+
+    private class Writer implements Runnable {
+
+        /** The orders whose insertion has been dropped */
+        private final Set<Long> droppedOrderIds = new HashSet<Long>();
+
+        @Override
+        public void run() {
+            List<Write> batch = new ArrayList<Write>(batchSize);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    collectBatch(batch);
+                    writeWithRetry(batch);
+                }
+                catch (InterruptedException e) {
+                    if (!batch.isEmpty()) {
+                        logger.warn("Writer stopped, {} changes were not written", batch.size());
+                    }
+                    break;
+                }
+                for (Write write : batch) {
+                    if (write.callback != null) {
+                        runCallback(write.callback);
+                    }
+                }
+                batch.clear();
+            }
+            logger.info("{} stopped", Thread.currentThread().getName());
+        }
+
+        /**
+         * Waits for the first change, then collects more until the batch is
+         * full or the flush interval has passed.
+         */
+        private void collectBatch(List<Write> batch) throws InterruptedException {
+            batch.add(queue.take());
+            long deadline = System.nanoTime() +
+                TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+            while (batch.size() < batchSize) {
+                queue.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0) {
+                    break;
+                }
+                Write write = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (write == null) {
+                    break;
+                }
+                batch.add(write);
+            }
+        }
+
+        /**
+         * Writes the batch, waiting for the database while it is not
+         * available. If the batch fails although the database is available,
+         * the change at fault is isolated and dropped.
+         */
+        private void writeWithRetry(List<Write> batch) throws InterruptedException {
+            batch = dropChangesToDroppedOrders(batch);
+            if (batch.isEmpty()) {
+                return;
+            }
+            while (!tryWrite(batch)) {
+                if (isDatabaseAvailable()) {
+                    waitingForDatabase = false;
+                    isolateFailure(batch);
+                    return;
+                }
+                waitingForDatabase = true;
+                logger.error("Database is not available, waiting to write {} changes",
+                        batch.size());
+                Thread.sleep(MAX_RETRY_DELAY_MILLIS);
+            }
+            waitingForDatabase = false;
+        }
+
+        /**
+         * Tries to write the batch, up to MAX_ATTEMPTS times.
+         *
+         * @return true if the batch has been written
+         */
+        private boolean tryWrite(List<Write> batch) throws InterruptedException {
+            Backoff backoff = new Backoff(
+                    retryDelayMillis, MAX_RETRY_DELAY_MILLIS, MAX_ATTEMPTS);
+            while (true) {
+                try {
+                    for (Write write : writeBatch(batch)) {
+                        dropStaleUpdate(write);
+                    }
+                    return true;
+                }
+                catch (RuntimeException e) {
+                    if (!backoff.backOff()) {
+                        logger.error("Could not write batch of " + batch.size() +
+                                " changes in " + MAX_ATTEMPTS + " attempts", e);
+                        return false;
+                    }
+                    logger.warn("Could not write batch of {} changes, retrying: {}",
+                            batch.size(), e.toString());
+                }
+            }
+        }
+
+        /**
+         * Writes the halves of a batch that failed in turn, which keeps the
+         * changes in sequence, until the change at fault is left on its own.
+         */
+        private void isolateFailure(List<Write> batch) throws InterruptedException {
+            if (batch.size() == 1) {
+                drop(batch.get(0));
+                return;
+            }
+            int middle = batch.size() / 2;
+            writeWithRetry(batch.subList(0, middle));
+            writeWithRetry(batch.subList(middle, batch.size()));
+        }
+
+        private void drop(Write write) {
+            long count = droppedWriteCount.incrementAndGet();
+            logger.error("Dropped a change that cannot be written ({} so far): {} {}",
+                    new Object[] {count, STATEMENTS[write.statement],
+                    Arrays.toString(write.parameters)});
+            if (write.statement == INSERT_ORDER) {
+                droppedOrderIds.add((Long)write.parameters[0]);
+            }
+        }
+
+        /**
+         * Drops the changes to orders whose insertion has been dropped.
+         *
+         * @return the changes that remain to be written
+         */
+        private List<Write> dropChangesToDroppedOrders(List<Write> batch) {
+            if (droppedOrderIds.isEmpty()) {
+                return batch;
+            }
+            List<Write> writes = new ArrayList<Write>(batch.size());
+            for (Write write : batch) {
+                Long orderId = getOrderId(write);
+                if (orderId != null && droppedOrderIds.contains(orderId)) {
+                    long count = droppedWriteCount.incrementAndGet();
+                    logger.error("Dropped a change to order {}, whose insertion was dropped ({} so far): {} {}",
+                            new Object[] {orderId, count, STATEMENTS[write.statement],
+                            Arrays.toString(write.parameters)});
+                }
+                else {
+                    writes.add(write);
+                }
+            }
+            return writes;
+        }
+
+        private void dropStaleUpdate(Write write) {
+            long count = droppedWriteCount.incrementAndGet();
+            staleUpdateCount.incrementAndGet();
+            logger.error("Dropped an update of order {} that did not match version {} ({} so far): {}",
+                    new Object[] {write.parameters[12], write.parameters[13], count,
+                    Arrays.toString(write.parameters)});
+        }
+
+        private void runCallback(Runnable callback) {
+            try {
+                callback.run();
+            }
+            catch (RuntimeException e) {
+                logger.error("Write callback failed", e);
+            }
+        }
+    }
+}
\ No newline at end of file
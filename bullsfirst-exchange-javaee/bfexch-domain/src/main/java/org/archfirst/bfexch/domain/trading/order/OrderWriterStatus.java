@@ -0,0 +1,73 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.order;
+
+/**
+ * The status of the {@link OrderWriter} at a point in time.
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderWriterStatus {
+
+    // ----- Constructors -----
+    public OrderWriterStatus(
+            boolean enabled,
+            boolean waitingForDatabase,
+            long droppedWriteCount,
+            long staleUpdateCount,
+            int queuedWriteCount) {
+        this.enabled = enabled;
+        this.waitingForDatabase = waitingForDatabase;
+        this.droppedWriteCount = droppedWriteCount;
+        this.staleUpdateCount = staleUpdateCount;
+        this.queuedWriteCount = queuedWriteCount;
+    }
+
+    // ----- Queries -----
+    /**
+     * Is the writer healthy: it has never dropped a change and is not
+     * waiting for the database.
+     */
+    public boolean isHealthy() {
+        return !waitingForDatabase && droppedWriteCount == 0;
+    }
+
+    // ----- Attributes -----
+    private final boolean enabled;
+    private final boolean waitingForDatabase;
+    private final long droppedWriteCount;
+
+    /** The dropped updates that did not match the version of their order */
+    private final long staleUpdateCount;
+    private final int queuedWriteCount;
+
+    // ----- Getters -----
+    public boolean isEnabled() {
+        return enabled;
+    }
+    public boolean isWaitingForDatabase() {
+        return waitingForDatabase;
+    }
+    public long getDroppedWriteCount() {
+        return droppedWriteCount;
+    }
+    public long getStaleUpdateCount() {
+        return staleUpdateCount;
+    }
+    public int getQueuedWriteCount() {
+        return queuedWriteCount;
+    }
+}
\ No newline at end of file
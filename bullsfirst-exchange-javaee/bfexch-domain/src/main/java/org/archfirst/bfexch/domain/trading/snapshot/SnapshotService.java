@@ -0,0 +1,378 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.archfirst.bfexch.domain.marketdata.MarketDataService;
+import org.archfirst.bfexch.domain.marketdata.MarketPrice;
+import org.archfirst.bfexch.domain.trading.MatchingDispatcher;
+import org.archfirst.bfexch.domain.trading.OrderBook;
+import org.archfirst.bfexch.domain.trading.OrderBookRegistry;
+import org.archfirst.bfexch.domain.trading.journal.OrderJournal;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderWriter;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.config.ConfigurationService;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically saves the order books and market prices to a compact binary
+ * file, so that a restart only has to load the latest snapshot and replay
+ * the tail of the {@link OrderJournal} instead of rebuilding the books from
+ * the database and replaying the whole journal. A snapshot is laid out as
+ * follows:
+ * <pre>
+ *   int    magic number
+ *   int    format version
+ *   long   journal sequence number to replay from
+ *   long   creation time
+ *   int    number of order books, each followed by
+ *            UTF    symbol
+ *            int    number of orders
+ *            ...    orders in priority order (see Order.writeSnapshot)
+ *   int    number of market prices, each followed by
+ *            UTF    symbol
+ *            long   price in ticks
+ *            UTF    currency
+ *            long   effective time
+ * </pre>
+ * Each book is serialized by the matching thread that owns it, so books are
+ * captured at slightly different points in time. Recovery makes up for this
+ * by reconciling the books with the database (see
+ * {@link org.archfirst.bfexch.domain.trading.TradingService#recover()}).
+ *
+ * A snapshot is written to a temporary file which is renamed once it is
+ * complete. Older snapshots and the journal segments they no longer need are
+ * then deleted. Snapshots are disabled if no directory is configured.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class SnapshotService {
+    private static final Logger logger =
+        LoggerFactory.getLogger(SnapshotService.class);
+
+    private static final int MAGIC = 0x42465853; // "BFXS"
+    private static final int FORMAT_VERSION = 2;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String directoryName = configurationService.getString(
+                ConfigConstants.PROP_SNAPSHOT_DIRECTORY);
+        if (directoryName == null) {
+            logger.warn("No snapshot directory configured, snapshots are disabled");
+            return;
+        }
+
+        directory = new File(directoryName);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException(
+                    "Could not create snapshot directory " + directory);
+        }
+    }
+
+    // ----- Commands -----
+    /**
+     * Takes a snapshot of all order books and market prices.
+     */
+    public synchronized void takeSnapshot() {
+        if (!isEnabled()) {
+            return;
+        }
+        logger.info("Taking snapshot...");
+        long startTime = System.currentTimeMillis();
+
+        // Everything before this sequence number is reflected in the books
+        // once the tasks queued below have run
+        long replayFromSequence = orderJournal.getReplayStartSequence();
+        DateTime creationTime = new DateTime(startTime);
+
+        List<String> symbols = new ArrayList<String>(orderBookRegistry.getSymbols());
+        final Map<String, byte[]> books = new ConcurrentHashMap<String, byte[]>();
+        final CountDownLatch latch = new CountDownLatch(symbols.size());
+        for (final String symbol : symbols) {
+            matchingDispatcher.dispatch(symbol, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        books.put(symbol,
+                                writeOrderBook(orderBookRegistry.getOrderBook(symbol)));
+                    }
+                    finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while taking snapshot");
+            return;
+        }
+        if (books.size() != symbols.size()) {
+            logger.error("Snapshot abandoned, not all order books could be saved");
+            return;
+        }
+
+        // The books may contain changes that are still being written, the
+        // snapshot must not get ahead of the database
+        orderWriter.awaitWritten();
+
+        File file = new File(directory,
+                String.format("%s%019d%s", SNAPSHOT_PREFIX, replayFromSequence, SNAPSHOT_SUFFIX));
+        try {
+            writeSnapshot(file, replayFromSequence, creationTime, books);
+        }
+        catch (IOException e) {
+            logger.error("Could not write snapshot " + file, e);
+            return;
+        }
+
+        for (File oldFile : getSnapshotFiles()) {
+            if (!oldFile.equals(file) && oldFile.delete()) {
+                logger.info("Deleted snapshot {}", oldFile.getName());
+            }
+        }
+        orderJournal.deleteSegmentsBefore(replayFromSequence);
+
+        logger.info("Took snapshot of {} order books in {} ms", books.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Restores the order books and market prices from the latest snapshot.
+     * 
+     * @return the header of the snapshot that was restored, null if there
+     * was no snapshot or it could not be read
+     */
+    public SnapshotHeader restoreLatest() {
+        if (!isEnabled()) {
+            return null;
+        }
+        File[] files = getSnapshotFiles();
+        if (files.length == 0) {
+            logger.info("No snapshot found");
+            return null;
+        }
+
+        File file = files[files.length - 1];
+        logger.info("Restoring snapshot {}...", file.getName());
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                logger.error("Snapshot {} has an unknown format", file.getName());
+                return null;
+            }
+            SnapshotHeader header =
+                new SnapshotHeader(in.readLong(), new DateTime(in.readLong()));
+
+            int numberOfOrders = 0;
+            int numberOfBooks = in.readInt();
+            Map<String, OrderBook> books = new HashMap<String, OrderBook>();
+            for (int i = 0; i < numberOfBooks; i++) {
+                String symbol = in.readUTF();
+                OrderBook orderBook = new OrderBook();
+                int numberOfBookOrders = in.readInt();
+                for (int j = 0; j < numberOfBookOrders; j++) {
+                    orderBook.add(Order.readSnapshot(in));
+                }
+                books.put(symbol, orderBook);
+                numberOfOrders += numberOfBookOrders;
+            }
+
+            int numberOfPrices = in.readInt();
+            for (int i = 0; i < numberOfPrices; i++) {
+                String symbol = in.readUTF();
+                long priceTicks = in.readLong();
+                Currency currency = Currency.getInstance(in.readUTF());
+                marketDataService.restoreMarketPrice(symbol,
+                        FixedPoint.toMoney(priceTicks, currency),
+                        new DateTime(in.readLong()));
+            }
+
+            orderBookRegistry.restore(books);
+            logger.info("Restored {} orders into {} order books, replaying from sequence number {}",
+                    new Object[] {numberOfOrders, books.size(), header.getReplayFromSequence()});
+            return header;
+        }
+        catch (IOException e) {
+            logger.error("Could not read snapshot " + file, e);
+            return null;
+        }
+        finally {
+            closeQuietly(in);
+        }
+    }
+
+    private byte[] writeOrderBook(OrderBook orderBook) {
+        List<Order> orders = new ArrayList<Order>(orderBook.getBuyStack());
+        orders.addAll(orderBook.getSellStack());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(orders.size());
+            for (Order order : orders) {
+                order.writeSnapshot(out);
+            }
+        }
+        catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeSnapshot(
+            File file,
+            long replayFromSequence,
+            DateTime creationTime,
+            Map<String, byte[]> books) throws IOException {
+
+        File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+        FileOutputStream fileOut = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(replayFromSequence);
+            out.writeLong(creationTime.getMillis());
+
+            out.writeInt(books.size());
+            for (Map.Entry<String, byte[]> entry : books.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.write(entry.getValue());
+            }
+
+            List<MarketPrice> marketPrices = marketDataService.getMarketPrices();
+            out.writeInt(marketPrices.size());
+            for (MarketPrice marketPrice : marketPrices) {
+                out.writeUTF(marketPrice.getSymbol());
+                out.writeLong(FixedPoint.toPriceTicks(marketPrice.getPrice()));
+                out.writeUTF(marketPrice.getPrice().getCurrency().getCurrencyCode());
+                out.writeLong(marketPrice.getEffective().getMillis());
+            }
+
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        finally {
+            closeQuietly(fileOut);
+        }
+
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not rename " + tempFile + " to " + file);
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            }
+            catch (IOException e) {
+                logger.warn("Could not close snapshot file", e);
+            }
+        }
+    }
+
+    // ----- Queries -----
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    private File[] getSnapshotFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // Sequence numbers are zero padded, so names sort in sequence
+        Arrays.sort(files);
+        return files;
+    }
+
+    // ----- Attributes -----
+    @Inject private ConfigurationService configurationService;
+    @Inject private OrderBookRegistry orderBookRegistry;
+    @Inject private MatchingDispatcher matchingDispatcher;
+    @Inject private OrderJournal orderJournal;
+    @Inject private MarketDataService marketDataService;
+    @Inject private OrderWriter orderWriter;
+
+    private File directory;
+
+    // ----- Nested Types -----
+    /**
+     * The journal position and creation time of a snapshot.
+     */
+    public static class SnapshotHeader {
+        private final long replayFromSequence;
+        private final DateTime creationTime;
+
+        public SnapshotHeader(long replayFromSequence, DateTime creationTime) {
+            this.replayFromSequence = replayFromSequence;
+            this.creationTime = creationTime;
+        }
+
+        public long getReplayFromSequence() {
+            return replayFromSequence;
+        }
+
+        public DateTime getCreationTime() {
+            return creationTime;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.util;
+
+/**
+ * Waits between the attempts of an operation that may fail. The delay
+ * doubles after each failed attempt, starting at initialDelayMillis, up to
+ * maxDelayMillis. After maxAttempts failed attempts, the caller must give
+ * up or deal with the failure in some other way. A Backoff is used by one
+ * thread at a time.
+ *
+ * @author Naresh Bhatia
+ */
+public class Backoff {
+
+    public Backoff(long initialDelayMillis, long maxDelayMillis, int maxAttempts) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.nextDelayMillis = initialDelayMillis;
+    }
+
+    // ----- Commands -----
+    /**
+     * Records a failed attempt and waits before the next one.
+     *
+     * @return false, without waiting, if there are no attempts left
+     */
+    public boolean backOff() throws InterruptedException {
+        failedAttempts++;
+        if (failedAttempts >= maxAttempts) {
+            return false;
+        }
+        Thread.sleep(nextDelayMillis);
+        nextDelayMillis = Math.min(nextDelayMillis * 2, maxDelayMillis);
+        return true;
+    }
+
+    /**
+     * Starts afresh after a successful attempt.
+     */
+    public void reset() {
+        failedAttempts = 0;
+        nextDelayMillis = initialDelayMillis;
+    }
+
+    // ----- Queries -----
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    /**
+     * Returns the delay before the attempt after the next failure.
+     */
+    public long getNextDelayMillis() {
+        return nextDelayMillis;
+    }
+
+    // ----- Attributes -----
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxAttempts;
+    private int failedAttempts;
+    private long nextDelayMillis;
+}
\ No newline at end of file
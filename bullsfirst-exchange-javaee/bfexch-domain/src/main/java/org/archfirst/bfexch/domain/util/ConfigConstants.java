@@ -0,0 +1,66 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.util;
+
+/**
+ * Keys of the exchange configuration properties
+ *
+ * @author Naresh Bhatia
+ */
+public class ConfigConstants {
+
+    private ConfigConstants() {
+    }
+
+    // Matching threads
+    public static final String PROP_MATCHING_THREADS = "exchange.matching.threads";
+    public static final String PROP_MATCHING_QUEUE_CAPACITY = "exchange.matching.queueCapacity";
+
+    // Order journal
+    public static final String PROP_JOURNAL_DIRECTORY = "exchange.journal.directory";
+    public static final String PROP_JOURNAL_FSYNC_BATCH_SIZE = "exchange.journal.fsyncBatchSize";
+    public static final String PROP_JOURNAL_FSYNC_INTERVAL_MILLIS = "exchange.journal.fsyncIntervalMillis";
+    public static final String PROP_JOURNAL_SEGMENT_SIZE = "exchange.journal.segmentSize";
+
+    // Write-behind persistence
+    public static final String PROP_WRITE_BEHIND_ENABLED = "exchange.writeBehind.enabled";
+    public static final String PROP_WRITE_BEHIND_BATCH_SIZE = "exchange.writeBehind.batchSize";
+    public static final String PROP_WRITE_BEHIND_FLUSH_INTERVAL_MILLIS = "exchange.writeBehind.flushIntervalMillis";
+    public static final String PROP_WRITE_BEHIND_BUFFER_SIZE = "exchange.writeBehind.bufferSize";
+    public static final String PROP_WRITE_BEHIND_RETRY_DELAY_MILLIS = "exchange.writeBehind.retryDelayMillis";
+
+    // Snapshots
+    public static final String PROP_SNAPSHOT_DIRECTORY = "exchange.snapshot.directory";
+
+    // Market price publishing
+    public static final String PROP_MARKET_PRICE_PUBLISH_INTERVAL_MILLIS = "exchange.marketPrice.publishIntervalMillis";
+
+    // Market depth publishing
+    public static final String PROP_MARKET_DEPTH_LEVELS = "exchange.marketDepth.levels";
+
+    // Market depth and bar publishing
+    public static final String PROP_PUBLISHER_QUEUE_CAPACITY = "exchange.publisher.queueCapacity";
+
+    // Time and sales
+    public static final String PROP_TIME_AND_SALES_CAPACITY = "exchange.timeAndSales.capacity";
+
+    // OHLCV bars
+    public static final String PROP_BARS_HISTORY_SIZE = "exchange.bars.historySize";
+    public static final String PROP_BARS_CLOSE_INTERVAL_MILLIS = "exchange.bars.closeIntervalMillis";
+
+    // End of day processing
+    public static final String PROP_END_OF_DAY_CHUNK_SIZE = "exchange.endOfDay.chunkSize";
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes values behind the threads that produce them, conflated by key. A
+ * value only replaces the pending value with the same key, so producers
+ * never wait for the write. A writer thread of its own takes all pending
+ * values, writes them in one batch (see {@link #write(List)}), then waits
+ * for the interval before taking the next batch. Values that are
+ * superseded in the meantime are never written. With an interval of 0, the
+ * next batch is taken as soon as the previous write returns.
+ *
+ * A batch that fails is put back, unless its values have been superseded,
+ * and retried with a growing delay (see {@link Backoff}). After
+ * MAX_ATTEMPTS failed attempts the batch is dropped, so that a value that
+ * can never be written does not hold up the values that come after it.
+ *
+ * @author Naresh Bhatia
+ */
+public abstract class ConflatingWriter<K, V> {
+    private static final Logger logger =
+        LoggerFactory.getLogger(ConflatingWriter.class);
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+    public ConflatingWriter(String name, long intervalMillis) {
+        this.name = name;
+        this.intervalMillis = intervalMillis;
+    }
+
+    // ----- Lifecycle -----
+    public void start() {
+        thread = new Thread(new Worker(), name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer thread. Values that are still pending are not
+     * written, see {@link #flush()}.
+     */
+    public void stop() {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    // ----- Commands -----
+    /**
+     * Replaces the pending value of the key. The value must not be changed
+     * afterwards.
+     */
+    public void put(K key, V value) {
+        pendingValues.put(key, value);
+        valuesPending.offer(Boolean.TRUE);
+    }
+
+    /**
+     * Writes the pending values on the calling thread, once. Meant for the
+     * values left over after {@link #stop()}.
+     */
+    public void flush() {
+        Map<K, V> batch = takePendingValues();
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            write(new ArrayList<V>(batch.values()));
+        }
+        catch (Exception e) {
+            logger.error(name + ": failed to write " + batch.size() + " values", e);
+        }
+    }
+
+    /**
+     * Writes a batch of values. Throws an exception if the batch could not
+     * be written.
+     */
+    protected abstract void write(List<V> values) throws Exception;
+
+    private Map<K, V> takePendingValues() {
+        Map<K, V> batch = new LinkedHashMap<K, V>();
+        for (K key : pendingValues.keySet()) {
+            V value = pendingValues.remove(key);
+            if (value != null) {
+                batch.put(key, value);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Puts back values that could not be written, unless they have been
+     * superseded in the meantime.
+     */
+    private void restorePendingValues(Map<K, V> batch) {
+        for (Map.Entry<K, V> entry : batch.entrySet()) {
+            pendingValues.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        valuesPending.offer(Boolean.TRUE);
+    }
+
+    // ----- Attributes -----
+    private final String name;
+    private final long intervalMillis;
+    private Thread thread;
+
+    /** The latest unwritten value of each key */
+    private final ConcurrentMap<K, V> pendingValues =
+        new ConcurrentHashMap<K, V>();
+
+    /** Holds a token while there may be pending values */
+    private final BlockingQueue<Boolean> valuesPending =
+        new ArrayBlockingQueue<Boolean>(1);
+
+    // ----- Nested Types -----
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            Backoff backoff = new Backoff(
+                    INITIAL_RETRY_DELAY_MILLIS, MAX_RETRY_DELAY_MILLIS, MAX_ATTEMPTS);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    valuesPending.take();
+                    Map<K, V> batch = takePendingValues();
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        write(new ArrayList<V>(batch.values()));
+                    }
+                    catch (Exception e) {
+                        logger.warn(name + ": failed to write " + batch.size() + " values", e);
+                        if (backoff.backOff()) {
+                            restorePendingValues(batch);
+                        }
+                        else {
+                            logger.error("{}: giving up after {} attempts, dropping {}",
+                                    new Object[] {name, MAX_ATTEMPTS, batch.values()});
+                            backoff.reset();
+                        }
+                        continue;
+                    }
+                    backoff.reset();
+                    if (intervalMillis > 0) {
+                        Thread.sleep(intervalMillis);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // stop
+            }
+            logger.info("{} stopped", name);
+        }
+    }
+}
\ No newline at end of file
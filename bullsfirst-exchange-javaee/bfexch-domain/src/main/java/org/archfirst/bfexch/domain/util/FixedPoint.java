@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+
+/**
+ * Conversions between the fixed-point representation used on the matching
+ * hot path and the Money and DecimalQuantity types used everywhere else.
+ * Prices are represented as a long number of ticks at
+ * {@link Constants#PRICE_SCALE}, i.e. 162.50 is 1625000. Quantities are
+ * whole numbers (see {@link Constants#QUANTITY_SCALE}) and are represented
+ * as longs.
+ *
+ * @author Naresh Bhatia
+ */
+public class FixedPoint {
+
+    private FixedPoint() {
+    }
+
+    public static long toPriceTicks(Money price) {
+        return price.getAmount()
+            .setScale(Constants.PRICE_SCALE, RoundingMode.HALF_UP)
+            .unscaledValue().longValue();
+    }
+
+    public static Money toMoney(long priceTicks, Currency currency) {
+        return new Money(
+                BigDecimal.valueOf(priceTicks, Constants.PRICE_SCALE), currency);
+    }
+
+    /**
+     * Returns the price halfway between the two prices, rounded half up to
+     * the nearest tick.
+     */
+    public static long midpoint(long priceTicks1, long priceTicks2) {
+        long sum = priceTicks1 + priceTicks2;
+        return (sum >= 0) ? (sum + 1) / 2 : (sum - 1) / 2;
+    }
+
+    public static long toQuantityUnits(DecimalQuantity quantity) {
+        return quantity.longValue();
+    }
+
+    public static DecimalQuantity toDecimalQuantity(long quantityUnits) {
+        return new DecimalQuantity(quantityUnits);
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata.test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archfirst.bfexch.domain.marketdata.Bar;
+import org.archfirst.bfexch.domain.marketdata.BarCompleted;
+import org.archfirst.bfexch.domain.marketdata.BarInterval;
+import org.archfirst.bfexch.domain.marketdata.BarService;
+import org.archfirst.bfexch.domain.marketdata.MarketDataEventPublisher;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthChanged;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * BarServiceTest
+ *
+ * @author Naresh Bhatia
+ */
+public class BarServiceTest {
+
+    private static final String SYMBOL = "AAPL";
+
+    private BarService barService;
+    private List<Bar> completedBars;
+    private long time;
+
+    @BeforeMethod
+    public void setUp() {
+        completedBars = new ArrayList<Bar>();
+        barService = new BarService();
+        inject(barService, "marketDataEventPublisher", new MarketDataEventPublisher() {
+            @Override
+            public void publish(MarketPriceChanged event) {
+            }
+            @Override
+            public void publish(MarketDepthChanged event) {
+            }
+            @Override
+            public void publish(BarCompleted event) {
+                completedBars.add(event.getBar());
+            }
+        });
+        inject(barService, "configurationService", new ConfigurationService() {
+            @Override
+            public String getString(String key) {
+                return ConfigConstants.PROP_BARS_HISTORY_SIZE.equals(key) ?
+                    "3" : null;
+            }
+        });
+        barService.open();
+        time = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    }
+
+    @Test
+    public void testBarCompletedByNextInterval() {
+        recordTrade(0, "10.00", 100);
+        recordTrade(200, "10.50", 200);
+        recordTrade(500, "9.75", 100);
+        recordTrade(900, "10.25", 100);
+        Assert.assertTrue(completedBars.isEmpty());
+
+        recordTrade(1000, "10.00", 100);
+
+        List<Bar> bars = getCompletedBars(BarInterval.OneSecond);
+        Assert.assertEquals(bars.size(), 1);
+        Bar bar = bars.get(0);
+        Assert.assertEquals(bar.getSymbol(), SYMBOL);
+        Assert.assertEquals(bar.getStart().getMillis(), time);
+        assertPrice(bar.getOpen(), "10.00");
+        assertPrice(bar.getHigh(), "10.50");
+        assertPrice(bar.getLow(), "9.75");
+        assertPrice(bar.getClose(), "10.25");
+        Assert.assertTrue(bar.getVolume().eq(new DecimalQuantity(500)));
+        assertPrice(bar.getVwap(), "10.20");
+        Assert.assertEquals(bar.getTradeCount(), 4);
+
+        // The minute and day bars are still open
+        Assert.assertTrue(getCompletedBars(BarInterval.OneMinute).isEmpty());
+        Assert.assertTrue(getCompletedBars(BarInterval.OneDay).isEmpty());
+    }
+
+    @Test
+    public void testTradeAtIntervalBoundary() {
+        recordTrade(999, "10.00", 100);
+        recordTrade(1000, "11.00", 200);
+        recordTrade(1999, "12.00", 300);
+        recordTrade(2000, "13.00", 400);
+
+        // Each bar includes its start and excludes its end
+        List<Bar> bars = getCompletedBars(BarInterval.OneSecond);
+        Assert.assertEquals(bars.size(), 2);
+        Assert.assertEquals(bars.get(0).getStart().getMillis(), time);
+        assertPrice(bars.get(0).getOpen(), "10.00");
+        assertPrice(bars.get(0).getClose(), "10.00");
+        Assert.assertTrue(bars.get(0).getVolume().eq(new DecimalQuantity(100)));
+        Assert.assertEquals(bars.get(1).getStart().getMillis(), time + 1000);
+        assertPrice(bars.get(1).getOpen(), "11.00");
+        assertPrice(bars.get(1).getClose(), "12.00");
+        Assert.assertTrue(bars.get(1).getVolume().eq(new DecimalQuantity(500)));
+        Assert.assertEquals(bars.get(1).getTradeCount(), 2);
+    }
+
+    @Test
+    public void testEmptyIntervalsHaveNoBars() {
+        recordTrade(0, "10.00", 100);
+        recordTrade(5500, "10.50", 100);
+        recordTrade(6000, "11.00", 100);
+
+        // No bars for the seconds without trades
+        List<Bar> bars = getCompletedBars(BarInterval.OneSecond);
+        Assert.assertEquals(bars.size(), 2);
+        Assert.assertEquals(bars.get(0).getStart().getMillis(), time);
+        Assert.assertEquals(bars.get(1).getStart().getMillis(), time + 5000);
+        assertPrice(bars.get(1).getOpen(), "10.50");
+        Assert.assertEquals(bars.get(1).getTradeCount(), 1);
+        Assert.assertEquals(barService.getBars(
+                SYMBOL, BarInterval.OneSecond, 10).size(), 2);
+    }
+
+    @Test
+    public void testCloseBarsWithoutTrade() {
+        recordTrade(0, "10.00", 100);
+
+        barService.closeBars(SYMBOL, time + 999);
+        Assert.assertTrue(completedBars.isEmpty());
+
+        barService.closeBars(SYMBOL, time + 60 * 1000);
+        Assert.assertEquals(getCompletedBars(BarInterval.OneSecond).size(), 1);
+        Assert.assertEquals(getCompletedBars(BarInterval.OneMinute).size(), 1);
+        Assert.assertTrue(getCompletedBars(BarInterval.OneDay).isEmpty());
+
+        // Already completed bars are not completed again
+        barService.closeBars(SYMBOL, time + 2 * 60 * 1000);
+        Assert.assertEquals(completedBars.size(), 2);
+        barService.closeBars("IBM", time + 60 * 1000);
+        Assert.assertEquals(completedBars.size(), 2);
+    }
+
+    @Test
+    public void testMinuteAndDayRollover() {
+        recordTrade(0, "10.00", 100);
+        recordTrade(59 * 1000, "10.50", 100);
+        recordTrade(60 * 1000, "11.00", 100);
+
+        List<Bar> bars = getCompletedBars(BarInterval.OneMinute);
+        Assert.assertEquals(bars.size(), 1);
+        Assert.assertEquals(bars.get(0).getStart().getMillis(), time);
+        assertPrice(bars.get(0).getClose(), "10.50");
+        Assert.assertTrue(bars.get(0).getVolume().eq(new DecimalQuantity(200)));
+        Assert.assertTrue(getCompletedBars(BarInterval.OneDay).isEmpty());
+
+        DateTime nextDay = new DateTime(time).plusDays(1);
+        barService.recordTrade(SYMBOL, nextDay,
+                new Money("12.00"), new DecimalQuantity(100));
+        bars = getCompletedBars(BarInterval.OneDay);
+        Assert.assertEquals(bars.size(), 1);
+        Assert.assertEquals(bars.get(0).getStart(),
+                new DateTime(time).withMillisOfDay(0));
+        assertPrice(bars.get(0).getOpen(), "10.00");
+        assertPrice(bars.get(0).getHigh(), "11.00");
+        assertPrice(bars.get(0).getClose(), "11.00");
+        Assert.assertEquals(bars.get(0).getTradeCount(), 3);
+    }
+
+    @Test
+    public void testHistoryKeepsLastBars() {
+        for (int i = 0; i < 6; i++) {
+            recordTrade(i * 1000, "10.0" + i, 100);
+        }
+
+        // 5 bars completed, only the last 3 are kept
+        List<Bar> bars = barService.getBars(SYMBOL, BarInterval.OneSecond, 10);
+        Assert.assertEquals(bars.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(bars.get(i).getStart().getMillis(),
+                    time + (i + 2) * 1000);
+        }
+        Assert.assertEquals(barService.getBars(
+                SYMBOL, BarInterval.OneSecond, 2).get(0).getStart().getMillis(),
+                time + 3000);
+        Assert.assertTrue(barService.getBars(
+                "IBM", BarInterval.OneSecond, 10).isEmpty());
+    }
+
+    private void recordTrade(long offsetMillis, String price, int quantity) {
+        barService.recordTrade(SYMBOL, new DateTime(time + offsetMillis),
+                new Money(price), new DecimalQuantity(quantity));
+    }
+
+    private List<Bar> getCompletedBars(BarInterval interval) {
+        List<Bar> bars = new ArrayList<Bar>();
+        for (Bar bar : completedBars) {
+            if (bar.getInterval() == interval) {
+                bars.add(bar);
+            }
+        }
+        return bars;
+    }
+
+    private static void assertPrice(Money price, String expected) {
+        Assert.assertTrue(price.eq(new Money(expected)),
+                "expected " + expected + " but was " + price);
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata.test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archfirst.bfexch.domain.marketdata.BarCompleted;
+import org.archfirst.bfexch.domain.marketdata.DepthLevel;
+import org.archfirst.bfexch.domain.marketdata.DepthUpdate;
+import org.archfirst.bfexch.domain.marketdata.DepthUpdateAction;
+import org.archfirst.bfexch.domain.marketdata.MarketDataEventPublisher;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthChanged;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthService;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
+import org.archfirst.bfexch.domain.trading.OrderBook;
+import org.archfirst.bfexch.domain.trading.order.Execution;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderRepository;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.domain.DomainEntity;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * MarketDepthServiceTest
+ *
+ * @author Naresh Bhatia
+ */
+public class MarketDepthServiceTest {
+
+    private static final String SYMBOL = "AAPL";
+
+    private MarketDepthService marketDepthService;
+    private List<MarketDepthChanged> events;
+    private TestOrderRepository orderRepository;
+    private OrderBook orderBook;
+    private long creationTime;
+
+    @BeforeMethod
+    public void setUp() {
+        events = new ArrayList<MarketDepthChanged>();
+        marketDepthService = new MarketDepthService();
+        inject(marketDepthService, "marketDataEventPublisher", new MarketDataEventPublisher() {
+            @Override
+            public void publish(MarketPriceChanged event) {
+            }
+            @Override
+            public void publish(MarketDepthChanged event) {
+                events.add(event);
+            }
+            @Override
+            public void publish(BarCompleted event) {
+            }
+        });
+        inject(marketDepthService, "configurationService", new ConfigurationService() {
+            @Override
+            public String getString(String key) {
+                return ConfigConstants.PROP_MARKET_DEPTH_LEVELS.equals(key) ?
+                    "2" : null;
+            }
+        });
+        marketDepthService.open();
+
+        orderRepository = new TestOrderRepository();
+        orderBook = new OrderBook();
+        creationTime = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    }
+
+    @Test
+    public void testOrdersAggregatedPerLevel() {
+        addOrder(OrderSide.Buy, 100, "10.00");
+        addOrder(OrderSide.Buy, 200, "10.00");
+        addOrder(OrderSide.Buy, 300, "9.90");
+        addOrder(OrderSide.Sell, 400, "10.10");
+        addOrder(OrderSide.Sell, 500, "10.10");
+        addOrder(OrderSide.Sell, 600, "10.10");
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+
+        Assert.assertEquals(events.size(), 1);
+        MarketDepthChanged event = events.get(0);
+        Assert.assertEquals(event.getSequence(), 1);
+        List<DepthUpdate> updates = event.getUpdates();
+        Assert.assertEquals(updates.size(), 3);
+        assertUpdate(updates.get(0), OrderSide.Buy, DepthUpdateAction.New, "10.00", 300, 2);
+        assertUpdate(updates.get(1), OrderSide.Buy, DepthUpdateAction.New, "9.90", 300, 1);
+        assertUpdate(updates.get(2), OrderSide.Sell, DepthUpdateAction.New, "10.10", 1500, 3);
+
+        List<DepthLevel> bids = event.getMarketDepth().getBids();
+        Assert.assertEquals(bids.size(), 2);
+        assertLevel(bids.get(0), "10.00", 300, 2);
+        assertLevel(bids.get(1), "9.90", 300, 1);
+        List<DepthLevel> asks = event.getMarketDepth().getAsks();
+        Assert.assertEquals(asks.size(), 1);
+        assertLevel(asks.get(0), "10.10", 1500, 3);
+        Assert.assertTrue(marketDepthService.getMarketDepth(SYMBOL) ==
+            event.getMarketDepth());
+    }
+
+    @Test
+    public void testChangedAndEmptiedLevels() {
+        addOrder(OrderSide.Buy, 100, "10.00");
+        Order order = addOrder(OrderSide.Buy, 300, "9.90");
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+
+        addOrder(OrderSide.Buy, 200, "10.00");
+        orderBook.remove(order);
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+
+        Assert.assertEquals(events.size(), 2);
+        MarketDepthChanged event = events.get(1);
+        Assert.assertEquals(event.getSequence(), 2);
+        List<DepthUpdate> updates = event.getUpdates();
+        Assert.assertEquals(updates.size(), 2);
+        assertUpdate(updates.get(0), OrderSide.Buy, DepthUpdateAction.Delete, "9.90", 0, 0);
+        assertUpdate(updates.get(1), OrderSide.Buy, DepthUpdateAction.Change, "10.00", 300, 2);
+
+        List<DepthLevel> bids = event.getMarketDepth().getBids();
+        Assert.assertEquals(bids.size(), 1);
+        assertLevel(bids.get(0), "10.00", 300, 2);
+    }
+
+    @Test
+    public void testLevelsBeyondPublishedDepth() {
+        Order bestOrder = addOrder(OrderSide.Sell, 100, "10.00");
+        addOrder(OrderSide.Sell, 200, "10.10");
+        addOrder(OrderSide.Sell, 300, "10.20");
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+
+        // Only the best 2 levels are published
+        List<DepthUpdate> updates = events.get(0).getUpdates();
+        Assert.assertEquals(updates.size(), 2);
+        assertUpdate(updates.get(0), OrderSide.Sell, DepthUpdateAction.New, "10.00", 100, 1);
+        assertUpdate(updates.get(1), OrderSide.Sell, DepthUpdateAction.New, "10.10", 200, 1);
+
+        // A change beyond the published depth is not published
+        addOrder(OrderSide.Sell, 400, "10.20");
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+        Assert.assertEquals(events.size(), 1);
+
+        // The third level enters the depth when the best level empties
+        orderBook.remove(bestOrder);
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+        Assert.assertEquals(events.size(), 2);
+        MarketDepthChanged event = events.get(1);
+        Assert.assertEquals(event.getSequence(), 2);
+        updates = event.getUpdates();
+        Assert.assertEquals(updates.size(), 2);
+        assertUpdate(updates.get(0), OrderSide.Sell, DepthUpdateAction.Delete, "10.00", 0, 0);
+        assertUpdate(updates.get(1), OrderSide.Sell, DepthUpdateAction.New, "10.20", 700, 2);
+
+        List<DepthLevel> asks = event.getMarketDepth().getAsks();
+        Assert.assertEquals(asks.size(), 2);
+        assertLevel(asks.get(0), "10.10", 200, 1);
+        assertLevel(asks.get(1), "10.20", 700, 2);
+    }
+
+    @Test
+    public void testNothingPublishedWithoutChanges() {
+        addOrder(OrderSide.Buy, 100, "10.00");
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+        Assert.assertEquals(events.size(), 1);
+
+        // Replacing an order with the same quantity leaves the level as it was
+        Order order = addOrder(OrderSide.Buy, 200, "10.00");
+        orderBook.remove(order);
+        marketDepthService.publishChanges(SYMBOL, orderBook);
+        Assert.assertEquals(events.size(), 1);
+        Assert.assertEquals(marketDepthService.getMarketDepth(SYMBOL).getSequence(), 1);
+    }
+
+    private Order addOrder(OrderSide side, int quantity, String limitPrice) {
+        Order order = new Order(
+                new DateTime(creationTime++),
+                "TEST-" + creationTime,
+                side,
+                SYMBOL,
+                new DecimalQuantity(quantity),
+                OrderType.Limit,
+                new Money(limitPrice),
+                OrderTerm.GoodTilCanceled,
+                false);
+        order.accept(orderRepository);
+        orderBook.add(order);
+        return order;
+    }
+
+    private static void assertUpdate(DepthUpdate update, OrderSide side,
+            DepthUpdateAction action, String price, int quantity, int orderCount) {
+        Assert.assertEquals(update.getSide(), side);
+        Assert.assertEquals(update.getAction(), action);
+        assertLevel(update.getLevel(), price, quantity, orderCount);
+    }
+
+    private static void assertLevel(
+            DepthLevel level, String price, int quantity, int orderCount) {
+        Assert.assertTrue(level.getPrice().eq(new Money(price)));
+        Assert.assertEquals(FixedPoint.toQuantityUnits(level.getQuantity()),
+                FixedPoint.toQuantityUnits(new DecimalQuantity(quantity)));
+        Assert.assertEquals(level.getOrderCount(), orderCount);
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An OrderRepository that only assigns ids.
+     */
+    private static class TestOrderRepository extends OrderRepository {
+        private long lastId;
+
+        @Override
+        public void persistOrder(Order order) {
+            setId(order, ++lastId);
+        }
+
+        @Override
+        public void persistExecution(Execution execution) {
+            setId(execution, ++lastId);
+        }
+
+        @Override
+        public void update(Order order) {
+        }
+
+        private void setId(DomainEntity entity, long id) {
+            try {
+                Field field = DomainEntity.class.getDeclaredField("id");
+                field.setAccessible(true);
+                field.set(entity, Long.valueOf(id));
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.marketdata.test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archfirst.bfexch.domain.marketdata.TimeAndSalesService;
+import org.archfirst.bfexch.domain.marketdata.Trade;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * TimeAndSalesServiceTest
+ *
+ * @author Naresh Bhatia
+ */
+public class TimeAndSalesServiceTest {
+
+    private static final String SYMBOL = "AAPL";
+
+    private TimeAndSalesService timeAndSalesService;
+    private long time;
+
+    @BeforeMethod
+    public void setUp() {
+        timeAndSalesService = new TimeAndSalesService();
+        inject(timeAndSalesService, "configurationService", new ConfigurationService() {
+            @Override
+            public String getString(String key) {
+                return ConfigConstants.PROP_TIME_AND_SALES_CAPACITY.equals(key) ?
+                    "4" : null;
+            }
+        });
+        timeAndSalesService.open();
+        time = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    }
+
+    @Test
+    public void testTapeBeforeWraparound() {
+        recordTrades(3);
+
+        List<Trade> trades = timeAndSalesService.getLastTrades(SYMBOL, 10);
+        Assert.assertEquals(getSequences(trades), sequences(1, 3));
+        Assert.assertEquals(getSequences(
+                timeAndSalesService.getLastTrades(SYMBOL, 2)), sequences(2, 3));
+        Trade trade = trades.get(0);
+        Assert.assertEquals(trade.getSymbol(), SYMBOL);
+        Assert.assertEquals(trade.getTime().getMillis(), time);
+        Assert.assertEquals(trade.getPrice(), getPrice(1));
+        Assert.assertEquals(trade.getQuantity(), new DecimalQuantity(100));
+    }
+
+    @Test
+    public void testTapeOverwritesOldestTrades() {
+        recordTrades(10);
+
+        // Only the last 4 trades are kept, oldest first
+        List<Trade> trades = timeAndSalesService.getLastTrades(SYMBOL, 10);
+        Assert.assertEquals(getSequences(trades), sequences(7, 10));
+        for (Trade trade : trades) {
+            Assert.assertEquals(trade.getPrice(), getPrice(trade.getSequence()));
+            Assert.assertEquals(trade.getQuantity(), getQuantity(trade.getSequence()));
+        }
+        Assert.assertEquals(getSequences(
+                timeAndSalesService.getLastTrades(SYMBOL, 3)), sequences(8, 10));
+    }
+
+    @Test
+    public void testTradesSinceSequence() {
+        recordTrades(6);
+
+        Assert.assertEquals(getSequences(
+                timeAndSalesService.getTradesSince(SYMBOL, 4)), sequences(5, 6));
+        Assert.assertTrue(
+                timeAndSalesService.getTradesSince(SYMBOL, 6).isEmpty());
+
+        // Trades 1 and 2 have been overwritten
+        Assert.assertEquals(getSequences(
+                timeAndSalesService.getTradesSince(SYMBOL, 0)), sequences(3, 6));
+        Assert.assertEquals(getSequences(
+                timeAndSalesService.getTradesSince(SYMBOL, 1)), sequences(3, 6));
+    }
+
+    @Test
+    public void testUnknownSymbolHasNoTrades() {
+        recordTrades(2);
+        Assert.assertTrue(timeAndSalesService.getLastTrades("IBM", 10).isEmpty());
+        Assert.assertTrue(timeAndSalesService.getTradesSince("IBM", 0).isEmpty());
+    }
+
+    /**
+     * Records trades 1 to count, one second apart.
+     */
+    private void recordTrades(int count) {
+        for (int i = 1; i <= count; i++) {
+            timeAndSalesService.recordTrade(SYMBOL,
+                    new DateTime(time + (i - 1) * 1000), getPrice(i), getQuantity(i));
+        }
+    }
+
+    private static Money getPrice(long sequence) {
+        return new Money((100 + sequence) + ".00");
+    }
+
+    private static DecimalQuantity getQuantity(long sequence) {
+        return new DecimalQuantity(100 * (int)sequence);
+    }
+
+    private static List<Long> getSequences(List<Trade> trades) {
+        List<Long> sequences = new ArrayList<Long>();
+        for (Trade trade : trades) {
+            sequences.add(trade.getSequence());
+        }
+        return sequences;
+    }
+
+    private static List<Long> sequences(long first, long last) {
+        List<Long> sequences = new ArrayList<Long>();
+        for (long sequence = first; sequence <= last; sequence++) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,289 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.journal.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.archfirst.bfexch.domain.trading.journal.JournalListener;
+import org.archfirst.bfexch.domain.trading.journal.OrderJournal;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * OrderJournalTest
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderJournalTest {
+
+    private File directory;
+    private Map<String, String> properties;
+    private OrderJournal journal;
+    private long creationTime;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        properties = new HashMap<String, String>();
+        properties.put(ConfigConstants.PROP_JOURNAL_DIRECTORY, directory.getPath());
+        creationTime = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReplayAfterRestart() {
+        journal = openJournal();
+        Order order = createOrder(1000, "159.50");
+        OrderCancelReplaceRequest request = new OrderCancelReplaceRequest(
+                order.getClientOrderId(), order.getSymbol(),
+                new DateTime(creationTime), new DecimalQuantity(600), null);
+        request.setReceivedTime(new DateTime(creationTime + 1));
+        Assert.assertEquals(journal.appendNewOrderSingle(order), 1);
+        Assert.assertEquals(journal.appendOrderCancelReplaceRequest(request), 2);
+        Assert.assertEquals(journal.appendOrderCancelRequest(
+                order.getClientOrderId(), order.getSymbol()), 3);
+        Assert.assertEquals(journal.appendEndOfDay(), 4);
+        journal.close();
+
+        journal = openJournal();
+        Assert.assertEquals(journal.getLastSequence(), 4);
+        RecordingListener listener = replay(1);
+        Assert.assertEquals(listener.records.size(), 4);
+
+        Order replayedOrder = (Order)listener.records.get(0);
+        Assert.assertEquals(replayedOrder.getCreationTime(), order.getCreationTime());
+        Assert.assertEquals(replayedOrder.getClientOrderId(), order.getClientOrderId());
+        Assert.assertEquals(replayedOrder.getSide(), order.getSide());
+        Assert.assertEquals(replayedOrder.getSymbol(), order.getSymbol());
+        Assert.assertEquals(replayedOrder.getQuantity(), order.getQuantity());
+        Assert.assertEquals(replayedOrder.getType(), order.getType());
+        Assert.assertEquals(replayedOrder.getLimitPriceTicks(), order.getLimitPriceTicks());
+        Assert.assertNull(replayedOrder.getStopPrice());
+        Assert.assertEquals(replayedOrder.getTerm(), order.getTerm());
+        Assert.assertEquals(replayedOrder.isAllOrNone(), order.isAllOrNone());
+
+        OrderCancelReplaceRequest replayedRequest =
+            (OrderCancelReplaceRequest)listener.records.get(1);
+        Assert.assertEquals(replayedRequest.getClientOrderId(), request.getClientOrderId());
+        Assert.assertEquals(replayedRequest.getSymbol(), request.getSymbol());
+        Assert.assertEquals(replayedRequest.getTransactTime(), request.getTransactTime());
+        Assert.assertEquals(replayedRequest.getReceivedTime(), request.getReceivedTime());
+        Assert.assertEquals(replayedRequest.getQuantity(), request.getQuantity());
+        Assert.assertNull(replayedRequest.getLimitPrice());
+
+        Assert.assertEquals(listener.records.get(2),
+                "cancel " + order.getClientOrderId() + " " + order.getSymbol());
+        Assert.assertEquals(listener.records.get(3), "eod");
+        Assert.assertEquals(listener.sequences, sequences(1, 4));
+    }
+
+    @Test
+    public void testReplayFromSequence() {
+        journal = openJournal();
+        for (int i = 0; i < 5; i++) {
+            journal.appendNewOrderSingle(createOrder(100, "160.00"));
+        }
+        journal.markProcessed(1);
+        journal.markProcessed(2);
+        Assert.assertEquals(journal.getReplayStartSequence(), 3);
+        journal.close();
+
+        journal = openJournal();
+        RecordingListener listener = replay(3);
+        Assert.assertEquals(listener.sequences, sequences(3, 5));
+        Assert.assertEquals(journal.getReplayStartSequence(), 3);
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        journal = openJournal();
+        journal.appendNewOrderSingle(createOrder(100, "160.00"));
+        journal.appendNewOrderSingle(createOrder(200, "160.00"));
+        journal.close();
+
+        // A record whose length was never written, as if the exchange went
+        // down while appending it
+        File segmentFile = getSegmentFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segmentFile, "rw");
+        try {
+            long end = 0;
+            for (int i = 0; i < 2; i++) {
+                raf.seek(end);
+                end += 4 + raf.readInt();
+            }
+            raf.seek(end + 4);
+            raf.writeLong(3);
+            raf.writeByte(1);
+            raf.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        }
+        finally {
+            raf.close();
+        }
+
+        journal = openJournal();
+        Assert.assertEquals(journal.getLastSequence(), 2);
+        RecordingListener listener = replay(1);
+        Assert.assertEquals(listener.sequences, sequences(1, 2));
+        Assert.assertEquals(journal.appendEndOfDay(), 3);
+    }
+
+    @Test
+    public void testRollsOverToNewSegment() {
+        properties.put(ConfigConstants.PROP_JOURNAL_SEGMENT_SIZE, "512");
+        journal = openJournal();
+        List<String> clientOrderIds = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            Order order = createOrder(100, "160.00");
+            journal.appendNewOrderSingle(order);
+            clientOrderIds.add(order.getClientOrderId());
+        }
+        journal.close();
+        Assert.assertTrue(getSegmentFiles().length > 2);
+
+        journal = openJournal();
+        Assert.assertEquals(journal.getLastSequence(), 20);
+        RecordingListener listener = replay(1);
+        Assert.assertEquals(listener.sequences, sequences(1, 20));
+        for (int i = 0; i < 20; i++) {
+            Order order = (Order)listener.records.get(i);
+            Assert.assertEquals(order.getClientOrderId(), clientOrderIds.get(i));
+        }
+    }
+
+    private OrderJournal openJournal() {
+        OrderJournal orderJournal = new OrderJournal();
+        inject(orderJournal, "configurationService", new ConfigurationService() {
+            @Override
+            public String getString(String key) {
+                return properties.get(key);
+            }
+        });
+        orderJournal.open();
+        return orderJournal;
+    }
+
+    private RecordingListener replay(long fromSequence) {
+        RecordingListener listener = new RecordingListener();
+        journal.replay(fromSequence, listener);
+        return listener;
+    }
+
+    private File[] getSegmentFiles() {
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    private Order createOrder(int quantity, String limitPrice) {
+        return new Order(
+                new DateTime(creationTime++),
+                "TEST-" + creationTime,
+                OrderSide.Buy,
+                "AAPL",
+                new DecimalQuantity(quantity),
+                OrderType.Limit,
+                new Money(limitPrice),
+                OrderTerm.GoodTilCanceled,
+                false);
+    }
+
+    private static List<Long> sequences(long first, long last) {
+        List<Long> sequences = new ArrayList<Long>();
+        for (long sequence = first; sequence <= last; sequence++) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records the replayed records and their sequence numbers.
+     */
+    private static class RecordingListener implements JournalListener {
+        private final List<Long> sequences = new ArrayList<Long>();
+        private final List<Object> records = new ArrayList<Object>();
+
+        @Override
+        public void onNewOrderSingle(long sequence, Order order) {
+            record(sequence, order);
+        }
+
+        @Override
+        public void onOrderCancelRequest(long sequence, String clOrdID, String symbol) {
+            record(sequence, "cancel " + clOrdID + " " + symbol);
+        }
+
+        @Override
+        public void onOrderCancelReplaceRequest(
+                long sequence, OrderCancelReplaceRequest request) {
+            record(sequence, request);
+        }
+
+        @Override
+        public void onEndOfDay(long sequence) {
+            record(sequence, "eod");
+        }
+
+        private void record(long sequence, Object record) {
+            sequences.add(sequence);
+            records.add(record);
+        }
+    }
+}
\ No newline at end of file
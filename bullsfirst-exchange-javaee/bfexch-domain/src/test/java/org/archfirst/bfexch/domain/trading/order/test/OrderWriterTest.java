@@ -0,0 +1,396 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.order.test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.archfirst.bfexch.domain.trading.TransactionRunner;
+import org.archfirst.bfexch.domain.trading.order.Execution;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderRepository;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.trading.order.OrderWriter;
+import org.archfirst.bfexch.domain.trading.order.OrderWriterStatus;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * OrderWriterTest. The writer runs against an in-memory database, reached
+ * through stubs of the EntityManager, Session, Connection and
+ * PreparedStatement, which rolls back a transaction that fails.
+ *
+ * @author Naresh Bhatia
+ */
+public class OrderWriterTest {
+
+    private static final Money PRICE = new Money("100.00");
+
+    private TestDatabase database;
+    private Map<String, String> properties;
+    private OrderWriter orderWriter;
+    private OrderRepository orderRepository;
+    private long creationTime;
+
+    @BeforeMethod
+    public void setUp() {
+        database = new TestDatabase();
+        properties = new HashMap<String, String>();
+        properties.put(ConfigConstants.PROP_WRITE_BEHIND_ENABLED, "true");
+        properties.put(ConfigConstants.PROP_WRITE_BEHIND_BATCH_SIZE, "10");
+        properties.put(ConfigConstants.PROP_WRITE_BEHIND_FLUSH_INTERVAL_MILLIS, "200");
+        properties.put(ConfigConstants.PROP_WRITE_BEHIND_RETRY_DELAY_MILLIS, "1");
+        creationTime = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (orderWriter != null) {
+            orderWriter.close();
+        }
+    }
+
+    @Test
+    public void testWritesChangesInStatementOrder() {
+        openWriter();
+        Order order = createOrder("TEST-1");
+        execute(order, 400);
+        orderWriter.awaitWritten();
+
+        Assert.assertEquals(database.batches, Arrays.asList(
+                "insert into Orders x 1",
+                "insert into Execution x 1",
+                "update Orders x 1"));
+        Assert.assertEquals(database.orderVersions.get(order.getId()),
+                Integer.valueOf(order.getVersion()));
+    }
+
+    @Test
+    public void testSplitsChangesIntoBatches() {
+        properties.put(ConfigConstants.PROP_WRITE_BEHIND_BATCH_SIZE, "3");
+        openWriter();
+        for (int i = 1; i <= 7; i++) {
+            createOrder("TEST-" + i);
+        }
+        orderWriter.awaitWritten();
+
+        Assert.assertEquals(database.batches, Arrays.asList(
+                "insert into Orders x 3",
+                "insert into Orders x 3",
+                "insert into Orders x 1"));
+        Assert.assertEquals(database.orderVersions.size(), 7);
+    }
+
+    @Test
+    public void testAssignsIdsAfterHighestIds() {
+        database.orderVersions.put(100L, 3);
+        database.executionOrderIds.put(250L, 100L);
+        openWriter();
+        Order order1 = createOrder("TEST-1");
+        Order order2 = createOrder("TEST-2");
+        Execution execution = execute(order2, 400);
+        orderWriter.awaitWritten();
+
+        Assert.assertEquals(order1.getId(), Long.valueOf(101));
+        Assert.assertEquals(order2.getId(), Long.valueOf(102));
+        Assert.assertEquals(execution.getId(), Long.valueOf(251));
+        Assert.assertTrue(database.orderVersions.containsKey(101L));
+        Assert.assertTrue(database.orderVersions.containsKey(102L));
+        Assert.assertEquals(database.executionOrderIds.get(251L), Long.valueOf(102));
+    }
+
+    @Test
+    public void testDropsUpdateOfChangedVersion() {
+        openWriter();
+        Order order = createOrder("TEST-1");
+        execute(order, 100);
+        execute(order, 100);
+        orderWriter.awaitWritten();
+        Assert.assertEquals(database.orderVersions.get(order.getId()), Integer.valueOf(2));
+        Assert.assertEquals(orderWriter.getStatus().getStaleUpdateCount(), 0);
+
+        // The order has been changed behind the writer's back
+        database.orderVersions.put(order.getId(), 7);
+        execute(order, 100);
+        orderWriter.awaitWritten();
+
+        OrderWriterStatus status = orderWriter.getStatus();
+        Assert.assertEquals(database.orderVersions.get(order.getId()), Integer.valueOf(7));
+        Assert.assertEquals(status.getStaleUpdateCount(), 1);
+        Assert.assertEquals(status.getDroppedWriteCount(), 1);
+        Assert.assertFalse(status.isHealthy());
+    }
+
+    @Test
+    public void testIsolatesAndDropsChangeAtFault() {
+        openWriter();
+        List<Order> goodOrders = new ArrayList<Order>();
+        for (int i = 1; i <= 3; i++) {
+            goodOrders.add(createOrder("TEST-" + i));
+        }
+        Order badOrder = createOrder("BAD-4");
+        execute(badOrder, 100);
+        for (int i = 5; i <= 7; i++) {
+            goodOrders.add(createOrder("TEST-" + i));
+        }
+        orderWriter.awaitWritten();
+
+        // The order at fault and its execution and update are dropped, the
+        // others are written once each
+        Assert.assertEquals(database.orderVersions.size(), goodOrders.size());
+        for (Order order : goodOrders) {
+            Assert.assertTrue(database.orderVersions.containsKey(order.getId()));
+        }
+        Assert.assertFalse(database.orderVersions.containsKey(badOrder.getId()));
+        Assert.assertTrue(database.executionOrderIds.isEmpty());
+        Assert.assertEquals(orderWriter.getStatus().getDroppedWriteCount(), 3);
+
+        // Later changes to the dropped order are not even tried
+        int attempts = database.attempts;
+        execute(badOrder, 100);
+        orderWriter.awaitWritten();
+        Assert.assertEquals(orderWriter.getStatus().getDroppedWriteCount(), 5);
+        Assert.assertEquals(database.attempts, attempts);
+        Assert.assertFalse(orderWriter.getStatus().isHealthy());
+    }
+
+    private void openWriter() {
+        orderWriter = new OrderWriter();
+        inject(orderWriter, "configurationService", new ConfigurationService() {
+            @Override
+            public String getString(String key) {
+                return properties.get(key);
+            }
+        });
+        inject(orderWriter, "transactionRunner", database);
+        inject(orderWriter, "entityManager", database.createEntityManager());
+        orderWriter.open();
+        orderRepository = new OrderRepository();
+        inject(orderRepository, "orderWriter", orderWriter);
+    }
+
+    private Order createOrder(String clientOrderId) {
+        Order order = new Order(
+                new DateTime(creationTime++),
+                clientOrderId,
+                OrderSide.Buy,
+                "AAPL",
+                new DecimalQuantity(1000),
+                OrderType.Limit,
+                PRICE,
+                OrderTerm.GoodTilCanceled,
+                false);
+        order.accept(orderRepository);
+        return order;
+    }
+
+    private Execution execute(Order order, int quantity) {
+        return order.execute(orderRepository, new DateTime(creationTime++),
+                new DecimalQuantity(quantity), PRICE);
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An in-memory database holding the ids and versions of orders and the
+     * ids of executions with their order ids. Orders whose clOrdID starts
+     * with BAD cannot be inserted, nor can executions of unknown orders.
+     * Accessed on the writer thread, and by the test once the writes it
+     * waits for are done.
+     */
+    private static class TestDatabase implements TransactionRunner {
+        private volatile Map<Long, Integer> orderVersions = new TreeMap<Long, Integer>();
+        private volatile Map<Long, Long> executionOrderIds = new TreeMap<Long, Long>();
+        private final List<String> batches = new ArrayList<String>();
+        private volatile int attempts;
+
+        /**
+         * Runs the task in a transaction, which is rolled back if the task
+         * fails.
+         */
+        @Override
+        public void run(Runnable task) {
+            Map<Long, Integer> savedOrderVersions =
+                new TreeMap<Long, Integer>(orderVersions);
+            Map<Long, Long> savedExecutionOrderIds =
+                new TreeMap<Long, Long>(executionOrderIds);
+            List<String> savedBatches = new ArrayList<String>(batches);
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                orderVersions = savedOrderVersions;
+                executionOrderIds = savedExecutionOrderIds;
+                batches.clear();
+                batches.addAll(savedBatches);
+                throw e;
+            }
+        }
+
+        public EntityManager createEntityManager() {
+            final Session session = createProxy(Session.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("doWork")) {
+                        try {
+                            ((Work)args[0]).execute(createConnection());
+                        }
+                        catch (SQLException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return null;
+                }
+            });
+            return createProxy(EntityManager.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getDelegate")) {
+                        return session;
+                    }
+                    if (method.getName().equals("createQuery")) {
+                        return createMaxIdQuery((String)args[0]);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private TypedQuery<?> createMaxIdQuery(final String query) {
+            return createProxy(TypedQuery.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getSingleResult")) {
+                        TreeMap<Long, ?> table = query.contains("from Order ") ?
+                            new TreeMap<Long, Integer>(orderVersions) :
+                            new TreeMap<Long, Long>(executionOrderIds);
+                        return table.isEmpty() ? null : table.lastKey();
+                    }
+                    return proxy;
+                }
+            });
+        }
+
+        private Connection createConnection() {
+            return createProxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("prepareStatement")) {
+                        return createStatement((String)args[0]);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private PreparedStatement createStatement(final String sql) {
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            final Object[][] parameters = {new Object[20]};
+            return createProxy(PreparedStatement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws SQLException {
+                    String name = method.getName();
+                    if (name.equals("setObject")) {
+                        parameters[0][(Integer)args[0] - 1] = args[1];
+                    }
+                    else if (name.equals("setNull")) {
+                        parameters[0][(Integer)args[0] - 1] = null;
+                    }
+                    else if (name.equals("addBatch")) {
+                        rows.add(parameters[0]);
+                        parameters[0] = new Object[20];
+                    }
+                    else if (name.equals("executeBatch")) {
+                        return executeBatch(sql, rows);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private int[] executeBatch(String sql, List<Object[]> rows) throws SQLException {
+            attempts++;
+            int[] counts = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] row = rows.get(i);
+                if (sql.startsWith("insert into Orders")) {
+                    if (((String)row[3]).startsWith("BAD") ||
+                        orderVersions.containsKey(row[0])) {
+                        throw new SQLException("Cannot insert order " + row[0]);
+                    }
+                    orderVersions.put((Long)row[0], (Integer)row[1]);
+                    counts[i] = 1;
+                }
+                else if (sql.startsWith("insert into Execution")) {
+                    if (!orderVersions.containsKey(row[6]) ||
+                        executionOrderIds.containsKey(row[0])) {
+                        throw new SQLException("Cannot insert execution " + row[0]);
+                    }
+                    executionOrderIds.put((Long)row[0], (Long)row[6]);
+                    counts[i] = 1;
+                }
+                else if (row[13].equals(orderVersions.get(row[12]))) {
+                    orderVersions.put((Long)row[12], (Integer)row[0]);
+                    counts[i] = 1;
+                }
+            }
+            batches.add(sql.substring(0, sql.indexOf(sql.startsWith("update") ? " set" : " (")) +
+                    " x " + rows.size());
+            return counts;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+            return (T)Proxy.newProxyInstance(
+                    OrderWriterTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+        }
+    }
+}
\ No newline at end of file
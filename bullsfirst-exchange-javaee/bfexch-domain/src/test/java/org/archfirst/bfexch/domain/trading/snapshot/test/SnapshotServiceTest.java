@@ -0,0 +1,366 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.snapshot.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.archfirst.bfexch.domain.marketdata.BarCompleted;
+import org.archfirst.bfexch.domain.marketdata.MarketDataEventPublisher;
+import org.archfirst.bfexch.domain.marketdata.MarketDataRepository;
+import org.archfirst.bfexch.domain.marketdata.MarketDataService;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthChanged;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthService;
+import org.archfirst.bfexch.domain.marketdata.MarketPrice;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
+import org.archfirst.bfexch.domain.marketdata.MarketPriceStore;
+import org.archfirst.bfexch.domain.trading.MatchingDispatcher;
+import org.archfirst.bfexch.domain.trading.OrderBook;
+import org.archfirst.bfexch.domain.trading.OrderBookRegistry;
+import org.archfirst.bfexch.domain.trading.PriceLevel;
+import org.archfirst.bfexch.domain.trading.TransactionRunner;
+import org.archfirst.bfexch.domain.trading.journal.OrderJournal;
+import org.archfirst.bfexch.domain.trading.order.Execution;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderRepository;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.trading.order.OrderWriter;
+import org.archfirst.bfexch.domain.trading.snapshot.SnapshotService;
+import org.archfirst.bfexch.domain.trading.snapshot.SnapshotService.SnapshotHeader;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.domain.DomainEntity;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * SnapshotServiceTest
+ *
+ * @author Naresh Bhatia
+ */
+public class SnapshotServiceTest {
+
+    private static final String SYMBOL = "AAPL";
+
+    private File directory;
+    private TestOrderRepository orderRepository;
+    private List<MatchingDispatcher> matchingDispatchers;
+    private long creationTime;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = File.createTempFile("snapshot", "");
+        directory.delete();
+        orderRepository = new TestOrderRepository();
+        matchingDispatchers = new ArrayList<MatchingDispatcher>();
+        creationTime = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        for (MatchingDispatcher matchingDispatcher : matchingDispatchers) {
+            matchingDispatcher.shutdown();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRestoreMatchesSnapshotBook() {
+        OrderBookRegistry registry = new OrderBookRegistry();
+        inject(registry, "orderRepository", orderRepository);
+        long priceTime = creationTime;
+        MarketDataService marketDataService =
+            createMarketDataService(new MarketPrice(SYMBOL,
+                    new Money("160.25"), new DateTime(priceTime)));
+
+        Order partiallyFilled = createOrder(OrderSide.Buy, 1000,
+                OrderType.Limit, "159.50", null, false);
+        execute(partiallyFilled, 400, "159.50");
+        registry.add(partiallyFilled);
+        registry.add(createOrder(OrderSide.Buy, 500,
+                OrderType.Limit, "159.50", null, false));
+        registry.add(createOrder(OrderSide.Buy, 300,
+                OrderType.Limit, "159.00", null, false));
+        registry.add(createOrder(OrderSide.Buy, 200,
+                OrderType.Market, null, null, false));
+        registry.add(createOrder(OrderSide.Buy, 100,
+                OrderType.Stop, null, "161.00", false));
+        registry.add(createOrder(OrderSide.Sell, 800,
+                OrderType.Limit, "160.50", null, true));
+        registry.add(createOrder(OrderSide.Sell, 600,
+                OrderType.Limit, "160.50", null, false));
+        registry.add(createOrder(OrderSide.Sell, 300,
+                OrderType.StopLimit, "158.50", "159.00", false));
+
+        createSnapshotService(registry, marketDataService).takeSnapshot();
+
+        // Restore into an empty registry whose market price is older than
+        // the one in the snapshot
+        OrderBookRegistry restoredRegistry = new OrderBookRegistry();
+        inject(restoredRegistry, "orderRepository", orderRepository);
+        MarketDataService restoredMarketDataService =
+            createMarketDataService(new MarketPrice(SYMBOL,
+                    new Money("150.00"), new DateTime(priceTime - 1000)));
+        SnapshotHeader header = createSnapshotService(
+                restoredRegistry, restoredMarketDataService).restoreLatest();
+
+        Assert.assertNotNull(header);
+        Assert.assertEquals(header.getReplayFromSequence(), 1);
+        Assert.assertEquals(restoredRegistry.getSymbols(),
+                Collections.singleton(SYMBOL));
+        OrderBook orderBook = registry.getOrderBook(SYMBOL);
+        OrderBook restoredBook = restoredRegistry.getOrderBook(SYMBOL);
+        assertSameOrders(restoredBook.getBuyStack(), orderBook.getBuyStack());
+        assertSameOrders(restoredBook.getSellStack(), orderBook.getSellStack());
+        assertSameLevels(restoredBook.getBuySide().getLimitLevels(),
+                orderBook.getBuySide().getLimitLevels());
+        assertSameLevels(restoredBook.getSellSide().getLimitLevels(),
+                orderBook.getSellSide().getLimitLevels());
+        Assert.assertTrue(restoredRegistry.findOrder(
+                partiallyFilled.getClientOrderId()) != null);
+
+        MarketPrice restoredPrice = restoredMarketDataService.getMarketPrice(SYMBOL);
+        Assert.assertEquals(FixedPoint.toPriceTicks(restoredPrice.getPrice()),
+                FixedPoint.toPriceTicks(new Money("160.25")));
+        Assert.assertEquals(restoredPrice.getEffective().getMillis(), priceTime);
+    }
+
+    @Test
+    public void testRestoreWithoutSnapshot() {
+        OrderBookRegistry registry = new OrderBookRegistry();
+        inject(registry, "orderRepository", orderRepository);
+        SnapshotService snapshotService = createSnapshotService(registry,
+                createMarketDataService(new MarketPrice(SYMBOL,
+                        new Money("160.00"), new DateTime(creationTime))));
+        Assert.assertNull(snapshotService.restoreLatest());
+    }
+
+    private void assertSameOrders(List<Order> actual, List<Order> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Order actualOrder = actual.get(i);
+            Order expectedOrder = expected.get(i);
+            Assert.assertEquals(actualOrder.getId(), expectedOrder.getId());
+            Assert.assertEquals(actualOrder.getVersion(), expectedOrder.getVersion());
+            Assert.assertEquals(actualOrder.getCreationTime().getMillis(),
+                    expectedOrder.getCreationTime().getMillis());
+            Assert.assertEquals(actualOrder.getClientOrderId(),
+                    expectedOrder.getClientOrderId());
+            Assert.assertEquals(actualOrder.getSide(), expectedOrder.getSide());
+            Assert.assertEquals(actualOrder.getType(), expectedOrder.getType());
+            Assert.assertEquals(actualOrder.getLimitPrice() == null,
+                    expectedOrder.getLimitPrice() == null);
+            if (expectedOrder.getLimitPrice() != null) {
+                Assert.assertEquals(actualOrder.getLimitPriceTicks(),
+                        expectedOrder.getLimitPriceTicks());
+            }
+            Assert.assertEquals(actualOrder.getStopPrice() == null,
+                    expectedOrder.getStopPrice() == null);
+            if (expectedOrder.getStopPrice() != null) {
+                Assert.assertEquals(actualOrder.getStopPriceTicks(),
+                        expectedOrder.getStopPriceTicks());
+            }
+            Assert.assertEquals(actualOrder.getTerm(), expectedOrder.getTerm());
+            Assert.assertEquals(actualOrder.isAllOrNone(), expectedOrder.isAllOrNone());
+            Assert.assertEquals(actualOrder.getStatus(), expectedOrder.getStatus());
+            Assert.assertEquals(actualOrder.getLeavesQtyUnits(),
+                    expectedOrder.getLeavesQtyUnits());
+            Assert.assertEquals(FixedPoint.toQuantityUnits(actualOrder.getCumQty()),
+                    FixedPoint.toQuantityUnits(expectedOrder.getCumQty()));
+        }
+    }
+
+    private void assertSameLevels(
+            Iterable<PriceLevel> actual, Iterable<PriceLevel> expected) {
+        List<PriceLevel> actualLevels = new ArrayList<PriceLevel>();
+        for (PriceLevel level : actual) {
+            actualLevels.add(level);
+        }
+        int i = 0;
+        for (PriceLevel level : expected) {
+            PriceLevel actualLevel = actualLevels.get(i++);
+            Assert.assertEquals(actualLevel.getPriceTicks(), level.getPriceTicks());
+            Assert.assertEquals(actualLevel.getQuantityUnits(), level.getQuantityUnits());
+            Assert.assertEquals(actualLevel.size(), level.size());
+        }
+        Assert.assertEquals(actualLevels.size(), i);
+    }
+
+    private SnapshotService createSnapshotService(
+            OrderBookRegistry registry, MarketDataService marketDataService) {
+        MarketDepthService marketDepthService = new MarketDepthService();
+        inject(marketDepthService, "marketDataEventPublisher",
+                new TestMarketDataEventPublisher());
+        MatchingDispatcher matchingDispatcher = new MatchingDispatcher();
+        inject(matchingDispatcher, "transactionRunner", new TransactionRunner() {
+            @Override
+            public void run(Runnable task) {
+                task.run();
+            }
+        });
+        inject(matchingDispatcher, "orderBookRegistry", registry);
+        inject(matchingDispatcher, "marketDepthService", marketDepthService);
+        matchingDispatchers.add(matchingDispatcher);
+
+        SnapshotService snapshotService = new SnapshotService();
+        inject(snapshotService, "configurationService", new ConfigurationService() {
+            @Override
+            public String getString(String key) {
+                return ConfigConstants.PROP_SNAPSHOT_DIRECTORY.equals(key) ?
+                    directory.getPath() : null;
+            }
+        });
+        inject(snapshotService, "orderBookRegistry", registry);
+        inject(snapshotService, "matchingDispatcher", matchingDispatcher);
+        inject(snapshotService, "orderJournal", new OrderJournal());
+        inject(snapshotService, "marketDataService", marketDataService);
+        inject(snapshotService, "orderWriter", new OrderWriter());
+        snapshotService.open();
+        return snapshotService;
+    }
+
+    private MarketDataService createMarketDataService(MarketPrice marketPrice) {
+        MarketPriceStore marketPriceStore = new MarketPriceStore();
+        inject(marketPriceStore, "marketDataRepository",
+                new TestMarketDataRepository(marketPrice));
+        MarketDataService marketDataService = new MarketDataService();
+        inject(marketDataService, "marketPriceStore", marketPriceStore);
+        return marketDataService;
+    }
+
+    private Order createOrder(OrderSide side, int quantity, OrderType type,
+            String limitPrice, String stopPrice, boolean allOrNone) {
+        Order order = new Order(
+                new DateTime(creationTime++),
+                "TEST-" + creationTime,
+                side,
+                SYMBOL,
+                new DecimalQuantity(quantity),
+                type,
+                (limitPrice == null) ? null : new Money(limitPrice),
+                (stopPrice == null) ? null : new Money(stopPrice),
+                OrderTerm.GoodTilCanceled,
+                allOrNone);
+        order.accept(orderRepository);
+        return order;
+    }
+
+    private void execute(Order order, int quantity, String price) {
+        order.execute(orderRepository, new DateTime(creationTime++),
+                new DecimalQuantity(quantity), new Money(price));
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An OrderRepository that only assigns ids and has no active orders.
+     */
+    private static class TestOrderRepository extends OrderRepository {
+        private long lastId;
+
+        @Override
+        public void persistOrder(Order order) {
+            setId(order, ++lastId);
+        }
+
+        @Override
+        public void persistExecution(Execution execution) {
+            setId(execution, ++lastId);
+        }
+
+        @Override
+        public void update(Order order) {
+        }
+
+        @Override
+        public List<Order> findActiveOrders() {
+            return new ArrayList<Order>();
+        }
+
+        private void setId(DomainEntity entity, long id) {
+            try {
+                Field field = DomainEntity.class.getDeclaredField("id");
+                field.setAccessible(true);
+                field.set(entity, Long.valueOf(id));
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * A MarketDataRepository holding a single market price.
+     */
+    private static class TestMarketDataRepository extends MarketDataRepository {
+        private final MarketPrice marketPrice;
+
+        public TestMarketDataRepository(MarketPrice marketPrice) {
+            this.marketPrice = marketPrice;
+        }
+
+        @Override
+        public List<MarketPrice> findAllMarketPrices() {
+            return Collections.singletonList(marketPrice);
+        }
+
+        @Override
+        public void updateMarketPrice(MarketPrice marketPrice) {
+        }
+    }
+
+    private static class TestMarketDataEventPublisher
+            implements MarketDataEventPublisher {
+        @Override
+        public void publish(MarketPriceChanged event) {
+        }
+
+        @Override
+        public void publish(MarketDepthChanged event) {
+        }
+
+        @Override
+        public void publish(BarCompleted event) {
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.trading.test;
+
+import java.lang.reflect.Field;
+
+import org.archfirst.bfexch.domain.trading.PriceLevel;
+import org.archfirst.bfexch.domain.trading.order.Execution;
+import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderRepository;
+import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderTerm;
+import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.util.FixedPoint;
+import org.archfirst.common.domain.DomainEntity;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * PriceLevelTest
+ *
+ * @author Naresh Bhatia
+ */
+public class PriceLevelTest {
+
+    private static final Money PRICE = new Money("100.00");
+
+    private TestOrderRepository orderRepository;
+    private PriceLevel level;
+    private long creationTime;
+
+    @BeforeMethod
+    public void setUp() {
+        orderRepository = new TestOrderRepository();
+        level = new PriceLevel(PRICE);
+        creationTime = new DateTime(2011, 1, 3, 9, 30, 0, 0).getMillis();
+    }
+
+    @Test
+    public void testRemoveAfterPartialFill() {
+        Order order1 = createOrder(1000);
+        Order order2 = createOrder(500);
+        level.add(order1);
+        level.add(order2);
+        execute(order1, 400);
+
+        Assert.assertTrue(level.remove(order1));
+        Assert.assertEquals(level.getQuantityUnits(), units(500));
+        Assert.assertEquals(level.size(), 1);
+    }
+
+    @Test
+    public void testRemoveWithStaleCopy() {
+        Order order1 = createOrder(1000);
+        Order order2 = createOrder(500);
+        level.add(order1);
+        level.add(order2);
+        execute(order1, 400);
+
+        // A copy loaded before the execution still has all 1000 leaves
+        Order staleCopy = createOrder(1000);
+        orderRepository.setId(staleCopy, order1.getId());
+
+        Assert.assertTrue(level.remove(staleCopy));
+        Assert.assertEquals(level.getQuantityUnits(), units(500));
+        Assert.assertEquals(level.size(), 1);
+        Assert.assertTrue(level.getFirst() == order2);
+    }
+
+    @Test
+    public void testRemoveOrderNotInLevel() {
+        Order order1 = createOrder(1000);
+        level.add(order1);
+
+        Assert.assertFalse(level.remove(createOrder(500)));
+        Assert.assertEquals(level.getQuantityUnits(), units(1000));
+        Assert.assertEquals(level.size(), 1);
+    }
+
+    private Order createOrder(int quantity) {
+        Order order = new Order(
+                new DateTime(creationTime++),
+                "TEST-" + creationTime,
+                OrderSide.Buy,
+                "AAPL",
+                new DecimalQuantity(quantity),
+                OrderType.Limit,
+                PRICE,
+                OrderTerm.GoodTilCanceled,
+                false);
+        order.accept(orderRepository);
+        return order;
+    }
+
+    /**
+     * Executes a queued order the way the matching engine does.
+     */
+    private void execute(Order order, int quantity) {
+        long leavesQtyUnits = order.getLeavesQtyUnits();
+        order.execute(orderRepository, new DateTime(),
+                new DecimalQuantity(quantity), PRICE);
+        level.reduceQuantity(leavesQtyUnits - order.getLeavesQtyUnits());
+    }
+
+    private static long units(int quantity) {
+        return FixedPoint.toQuantityUnits(new DecimalQuantity(quantity));
+    }
+
+    /**
+     * An OrderRepository that only assigns ids.
+     */
+    private static class TestOrderRepository extends OrderRepository {
+        private long lastId;
+
+        @Override
+        public void persistOrder(Order order) {
+            setId(order, ++lastId);
+        }
+
+        @Override
+        public void persistExecution(Execution execution) {
+            setId(execution, ++lastId);
+        }
+
+        @Override
+        public void update(Order order) {
+        }
+
+        public void setId(DomainEntity entity, long id) {
+            try {
+                Field field = DomainEntity.class.getDeclaredField("id");
+                field.setAccessible(true);
+                field.set(entity, Long.valueOf(id));
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
\ No newline at end of file
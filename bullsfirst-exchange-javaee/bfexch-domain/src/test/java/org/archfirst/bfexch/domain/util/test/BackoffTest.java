@@ -0,0 +1,60 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.util.test;
+
+import org.archfirst.bfexch.domain.util.Backoff;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * BackoffTest
+ *
+ * @author Naresh Bhatia
+ */
+public class BackoffTest {
+
+    @Test
+    public void testDelayDoublesUpToMaximum() throws InterruptedException {
+        Backoff backoff = new Backoff(1, 3, 10);
+        Assert.assertEquals(backoff.getNextDelayMillis(), 1);
+        Assert.assertTrue(backoff.backOff());
+        Assert.assertEquals(backoff.getNextDelayMillis(), 2);
+        Assert.assertTrue(backoff.backOff());
+        Assert.assertEquals(backoff.getNextDelayMillis(), 3);
+        Assert.assertTrue(backoff.backOff());
+        Assert.assertEquals(backoff.getNextDelayMillis(), 3);
+    }
+
+    @Test
+    public void testAttemptsAreLimited() throws InterruptedException {
+        Backoff backoff = new Backoff(1, 1, 3);
+        Assert.assertTrue(backoff.backOff());
+        Assert.assertTrue(backoff.backOff());
+        Assert.assertFalse(backoff.backOff());
+        Assert.assertEquals(backoff.getFailedAttempts(), 3);
+    }
+
+    @Test
+    public void testReset() throws InterruptedException {
+        Backoff backoff = new Backoff(1, 4, 2);
+        Assert.assertTrue(backoff.backOff());
+        Assert.assertFalse(backoff.backOff());
+        backoff.reset();
+        Assert.assertEquals(backoff.getFailedAttempts(), 0);
+        Assert.assertEquals(backoff.getNextDelayMillis(), 1);
+        Assert.assertTrue(backoff.backOff());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.domain.util.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.archfirst.bfexch.domain.util.ConflatingWriter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * ConflatingWriterTest
+ *
+ * @author Naresh Bhatia
+ */
+public class ConflatingWriterTest {
+
+    @Test
+    public void testConflatesByKey() {
+        TestWriter writer = new TestWriter(0);
+        writer.put("A", "A1");
+        writer.put("A", "A2");
+        writer.put("B", "B1");
+        writer.flush();
+        Assert.assertEquals(writer.nextBatch(), Arrays.asList("A2", "B1"));
+    }
+
+    @Test
+    public void testRetriesFailedBatch() throws InterruptedException {
+        TestWriter writer = new TestWriter(2);
+        writer.start();
+        try {
+            writer.put("A", "A1");
+            Assert.assertEquals(writer.nextBatch(), Arrays.asList("A1"));
+            Assert.assertEquals(writer.nextBatch(), Arrays.asList("A1"));
+            Assert.assertEquals(writer.nextBatch(), Arrays.asList("A1"));
+            Assert.assertEquals(writer.getWrittenCount(), 1);
+        }
+        finally {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testDropsBatchAfterMaxAttempts() throws InterruptedException {
+        TestWriter writer = new TestWriter(5);
+        writer.start();
+        try {
+            writer.put("A", "A1");
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(writer.nextBatch(), Arrays.asList("A1"));
+            }
+            writer.put("B", "B1");
+            Assert.assertEquals(writer.nextBatch(), Arrays.asList("B1"));
+            Assert.assertEquals(writer.getWrittenCount(), 1);
+        }
+        finally {
+            writer.stop();
+        }
+    }
+
+    /**
+     * Fails the specified number of writes, then succeeds. Records the
+     * batches of every attempt.
+     */
+    private static class TestWriter extends ConflatingWriter<String, String> {
+        private final BlockingQueue<List<String>> batches =
+            new LinkedBlockingQueue<List<String>>();
+        private int failuresLeft;
+        private volatile int writtenCount;
+
+        public TestWriter(int failures) {
+            super("test-writer", 0);
+            this.failuresLeft = failures;
+        }
+
+        @Override
+        protected void write(List<String> values) {
+            List<String> batch = new ArrayList<String>(values);
+            Collections.sort(batch);
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                batches.add(batch);
+                throw new IllegalStateException("Write failed");
+            }
+            writtenCount++;
+            batches.add(batch);
+        }
+
+        public List<String> nextBatch() {
+            try {
+                List<String> batch = batches.poll(10, TimeUnit.SECONDS);
+                Assert.assertNotNull(batch, "No batch written");
+                return batch;
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public int getWrittenCount() {
+            return writtenCount;
+        }
+    }
+}
\ No newline at end of file
@@ -18,6 +18,7 @@ package org.archfirst.bfexch.infra.fixtrading;
 import org.archfirst.bfexch.domain.broker.BrokerMessageGenerator;
 import org.archfirst.bfexch.domain.trading.order.ExecutionReport;
 import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderStatus;
 import org.archfirst.bfexch.infra.fixtrading.converters.AvgPriceConverter;
 import org.archfirst.bfexch.infra.fixtrading.converters.CumQtyConverter;
 import org.archfirst.bfexch.infra.fixtrading.converters.ExecutionTypeConverter;
@@ -26,6 +27,7 @@ import org.archfirst.bfexch.infra.fixtrading.converters.InstrumentConverter;
 import org.archfirst.bfexch.infra.fixtrading.converters.LastPriceConverter;
 import org.archfirst.bfexch.infra.fixtrading.converters.LastQtyConverter;
 import org.archfirst.bfexch.infra.fixtrading.converters.LeavesQtyConverter;
+import org.archfirst.bfexch.infra.fixtrading.converters.MoneyConverter;
 import org.archfirst.bfexch.infra.fixtrading.converters.OrderSideConverter;
 import org.archfirst.bfexch.infra.fixtrading.converters.OrderStatusConverter;
 import org.archfirst.common.money.Money;
@@ -34,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import quickfix.field.ClOrdID;
+import quickfix.field.CxlRejReason;
 import quickfix.field.CxlRejResponseTo;
 import quickfix.field.ExecID;
 import quickfix.field.OrderID;
@@ -85,20 +88,43 @@ public class FixBrokerMessageGenerator implements BrokerMessageGenerator {
         fixMessage.set(InstrumentConverter.toFix(executionReport.getSymbol()));
         fixMessage.set(LastQtyConverter.toFix(lastQty));
         fixMessage.set(LastPriceConverter.toFix(lastPrice));
+        if (executionReport.getLimitPrice() != null) {
+            fixMessage.set(MoneyConverter.toFixPrice(executionReport.getLimitPrice()));
+            fixMessage.set(MoneyConverter.toFixCurrency(executionReport.getLimitPrice()));
+        }
 
         logger.debug("Sending message:\n{}", FixFormatter.format(fixMessage));
         return fixMessage.toString();
     }
 
     @Override
-    public String generateOrderCancelReject(Order order) {
+    public String generateOrderCancelReject(Order order, boolean replaceRequest) {
         quickfix.fix44.OrderCancelReject fixMessage =
             new quickfix.fix44.OrderCancelReject(
                     new OrderID(order.getId().toString()),
                     new ClOrdID(order.getClientOrderId()),
                     new OrigClOrdID(order.getClientOrderId()),
                     OrderStatusConverter.toFix(order.getStatus()),
-                    new CxlRejResponseTo(CxlRejResponseTo.ORDER_CANCEL_REQUEST));
+                    new CxlRejResponseTo(replaceRequest ?
+                            CxlRejResponseTo.ORDER_CANCEL_REPLACE_REQUEST :
+                            CxlRejResponseTo.ORDER_CANCEL_REQUEST));
+
+        logger.debug("Sending message:\n{}", FixFormatter.format(fixMessage));
+        return fixMessage.toString();
+    }
+
+    @Override
+    public String generateUnknownOrderCancelReject(String clOrdID, boolean replaceRequest) {
+        quickfix.fix44.OrderCancelReject fixMessage =
+            new quickfix.fix44.OrderCancelReject(
+                    new OrderID("NONE"),
+                    new ClOrdID(clOrdID),
+                    new OrigClOrdID(clOrdID),
+                    OrderStatusConverter.toFix(OrderStatus.PendingNew),
+                    new CxlRejResponseTo(replaceRequest ?
+                            CxlRejResponseTo.ORDER_CANCEL_REPLACE_REQUEST :
+                            CxlRejResponseTo.ORDER_CANCEL_REQUEST));
+        fixMessage.set(new CxlRejReason(CxlRejReason.UNKNOWN_ORDER));
 
         logger.debug("Sending message:\n{}", FixFormatter.format(fixMessage));
         return fixMessage.toString();
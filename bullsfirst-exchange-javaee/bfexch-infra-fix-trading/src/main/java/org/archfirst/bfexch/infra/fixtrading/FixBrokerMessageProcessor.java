@@ -46,7 +46,9 @@ import quickfix.UnsupportedMessageType;
 import quickfix.field.Currency;
 import quickfix.field.ExecInst;
 import quickfix.field.Price;
+import quickfix.field.StopPx;
 import quickfix.fix44.NewOrderSingle;
+import quickfix.fix44.OrderCancelReplaceRequest;
 import quickfix.fix44.OrderCancelRequest;
 
 /**
@@ -113,6 +115,12 @@ public class FixBrokerMessageProcessor extends MessageCracker
             limitPrice = MoneyConverter.toDomain(message.getPrice(), message.getCurrency());
         }
 
+        // Extract stop price
+        Money stopPrice = null;
+        if (message.isSetField(StopPx.FIELD) && message.isSetField(Currency.FIELD)) {
+            stopPrice = MoneyConverter.toDomain(message.getStopPx(), message.getCurrency());
+        }
+
         // Extract allOrNone
         boolean allOrNone = message.isSetField(ExecInst.FIELD) &&
             message.getExecInst().getValue().indexOf(ExecInst.ALL_OR_NONE) >= 0;
@@ -126,6 +134,7 @@ public class FixBrokerMessageProcessor extends MessageCracker
                 OrderQuantityConverter.toDomain(message.getOrderQtyData()),
                 OrderTypeConverter.toDomain(message.getOrdType()),
                 limitPrice,
+                stopPrice,
                 OrderTermConverter.toDomain(message.getTimeInForce()),
                 allOrNone);
 
@@ -138,7 +147,27 @@ public class FixBrokerMessageProcessor extends MessageCracker
             throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
         
         tradingService.processOrderCancelRequest(
-                message.getOrigClOrdID().getValue());
+                message.getOrigClOrdID().getValue(),
+                message.getInstrument().getSymbol().getValue());
+    }
+
+    @Override
+    public void onMessage(OrderCancelReplaceRequest message, SessionID sessionID)
+            throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
+
+        // Extract limit price
+        Money limitPrice = null;
+        if (message.isSetField(Price.FIELD) && message.isSetField(Currency.FIELD)) {
+            limitPrice = MoneyConverter.toDomain(message.getPrice(), message.getCurrency());
+        }
+
+        tradingService.processOrderCancelReplaceRequest(
+                new org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest(
+                        message.getOrigClOrdID().getValue(),
+                        message.getInstrument().getSymbol().getValue(),
+                        new DateTime(message.getTransactTime().getValue()),
+                        OrderQuantityConverter.toDomain(message.getOrderQtyData()),
+                        limitPrice));
     }
 
     @Override
@@ -34,6 +34,7 @@ public class ExecutionTypeConverter {
         fixConverter.put(ExecutionReportType.DoneForDay, new ExecType(ExecType.DONE_FOR_DAY));
         fixConverter.put(ExecutionReportType.New, new ExecType(ExecType.NEW));
         fixConverter.put(ExecutionReportType.PendingCancel, new ExecType(ExecType.PENDING_CANCEL));
+        fixConverter.put(ExecutionReportType.Replaced, new ExecType(ExecType.REPLACE));
         fixConverter.put(ExecutionReportType.Trade, new ExecType(ExecType.TRADE));
     }
 
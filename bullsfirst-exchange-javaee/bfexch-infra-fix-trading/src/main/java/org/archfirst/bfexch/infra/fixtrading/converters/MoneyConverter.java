@@ -21,6 +21,7 @@ import org.archfirst.common.money.Money;
 
 import quickfix.field.Currency;
 import quickfix.field.Price;
+import quickfix.field.StopPx;
 
 /**
  * MoneyConverter
@@ -42,4 +43,10 @@ public class MoneyConverter {
                 new BigDecimal(Double.toString(price.getValue())),
                 java.util.Currency.getInstance(currency.getValue()));
     }
+
+    public static Money toDomain(StopPx stopPx, Currency currency) {
+        return new Money(
+                new BigDecimal(Double.toString(stopPx.getValue())),
+                java.util.Currency.getInstance(currency.getValue()));
+    }
 }
\ No newline at end of file
@@ -32,6 +32,8 @@ public class OrderTermConverter {
     static {
         fixConverter.put(OrderTerm.GoodForTheDay, new TimeInForce(TimeInForce.DAY));
         fixConverter.put(OrderTerm.GoodTilCanceled, new TimeInForce(TimeInForce.GOOD_TILL_CANCEL));
+        fixConverter.put(OrderTerm.ImmediateOrCancel, new TimeInForce(TimeInForce.IMMEDIATE_OR_CANCEL));
+        fixConverter.put(OrderTerm.FillOrKill, new TimeInForce(TimeInForce.FILL_OR_KILL));
     }
 
     public static TimeInForce toFix(OrderTerm term) {
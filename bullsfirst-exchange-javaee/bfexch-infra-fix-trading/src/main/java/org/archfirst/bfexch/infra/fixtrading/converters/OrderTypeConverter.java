@@ -32,6 +32,8 @@ public class OrderTypeConverter {
     static {
         fixConverter.put(OrderType.Market, new OrdType(OrdType.MARKET));
         fixConverter.put(OrderType.Limit, new OrdType(OrdType.LIMIT));
+        fixConverter.put(OrderType.Stop, new OrdType(OrdType.STOP));
+        fixConverter.put(OrderType.StopLimit, new OrdType(OrdType.STOP_LIMIT));
     }
 
     public static OrdType toFix(OrderType side) {
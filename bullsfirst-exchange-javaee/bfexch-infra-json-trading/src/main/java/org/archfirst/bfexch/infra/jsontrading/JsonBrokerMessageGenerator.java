@@ -54,13 +54,15 @@ public class JsonBrokerMessageGenerator implements BrokerMessageGenerator {
                     QuantityConverter.toJson(executionReport.getCumQty()),
                     MoneyConverter.toJson(executionReport.getLastPrice()),
                     MoneyConverter.toJson(executionReport.getWeightedAvgPrice()));
+        jsonExecutionReport.setLimitPrice(
+                MoneyConverter.toJson(executionReport.getLimitPrice()));
 
         logger.debug("Sending message:\n{}", JsonMessageMapper.toFormattedString(jsonExecutionReport));
         return JsonMessageMapper.toString(jsonExecutionReport);
     }
 
     @Override
-    public String generateOrderCancelReject(Order order) {
+    public String generateOrderCancelReject(Order order, boolean replaceRequest) {
 
         OrderCancelReject orderCancelReject = new OrderCancelReject(
                 order.getClientOrderId(),
@@ -69,4 +71,14 @@ public class JsonBrokerMessageGenerator implements BrokerMessageGenerator {
         logger.debug("Sending message:\n{}", JsonMessageMapper.toFormattedString(orderCancelReject));
         return JsonMessageMapper.toString(orderCancelReject);
     }
+
+    @Override
+    public String generateUnknownOrderCancelReject(String clOrdID, boolean replaceRequest) {
+
+        OrderCancelReject orderCancelReject =
+            new OrderCancelReject(clOrdID, OrderStatus.PendingNew);
+
+        logger.debug("Sending message:\n{}", JsonMessageMapper.toFormattedString(orderCancelReject));
+        return JsonMessageMapper.toString(orderCancelReject);
+    }
 }
\ No newline at end of file
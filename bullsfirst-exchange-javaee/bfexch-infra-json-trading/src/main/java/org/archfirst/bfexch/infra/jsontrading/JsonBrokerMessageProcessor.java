@@ -20,6 +20,7 @@ import javax.inject.Inject;
 import org.archfirst.bfcommon.jsontrading.JsonMessage;
 import org.archfirst.bfcommon.jsontrading.JsonMessageMapper;
 import org.archfirst.bfcommon.jsontrading.NewOrderSingle;
+import org.archfirst.bfcommon.jsontrading.OrderCancelReplaceRequest;
 import org.archfirst.bfcommon.jsontrading.OrderCancelRequest;
 import org.archfirst.bfexch.domain.broker.BrokerMessageProcessor;
 import org.archfirst.bfexch.domain.trading.TradingService;
@@ -58,6 +59,9 @@ public class JsonBrokerMessageProcessor implements BrokerMessageProcessor {
         else if (jsonMessage.getClass().equals(OrderCancelRequest.class)) {
             this.onMessage((OrderCancelRequest)jsonMessage);
         }
+        else if (jsonMessage.getClass().equals(OrderCancelReplaceRequest.class)) {
+            this.onMessage((OrderCancelReplaceRequest)jsonMessage);
+        }
     }
     
     private void onMessage(NewOrderSingle newOrderSingle) {
@@ -72,6 +76,7 @@ public class JsonBrokerMessageProcessor implements BrokerMessageProcessor {
                 QuantityConverter.toDomain(jsonOrder.getQuantity()),
                 OrderType.valueOf(jsonOrder.getType().toString()),
                 MoneyConverter.toDomain(jsonOrder.getLimitPrice()),
+                MoneyConverter.toDomain(jsonOrder.getStopPrice()),
                 OrderTerm.valueOf(jsonOrder.getTerm().toString()),
                 jsonOrder.isAllOrNone());
 
@@ -81,6 +86,17 @@ public class JsonBrokerMessageProcessor implements BrokerMessageProcessor {
 
     private void onMessage(OrderCancelRequest orderCancelRequest) {
         tradingService.processOrderCancelRequest(
-                orderCancelRequest.getClientOrderId());
+                orderCancelRequest.getClientOrderId(),
+                orderCancelRequest.getSymbol());
+    }
+
+    private void onMessage(OrderCancelReplaceRequest orderCancelReplaceRequest) {
+        tradingService.processOrderCancelReplaceRequest(
+                new org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest(
+                        orderCancelReplaceRequest.getClientOrderId(),
+                        orderCancelReplaceRequest.getSymbol(),
+                        DateTimeUtil.parseISODateTime(orderCancelReplaceRequest.getTransactTime()),
+                        QuantityConverter.toDomain(orderCancelReplaceRequest.getQuantity()),
+                        MoneyConverter.toDomain(orderCancelReplaceRequest.getLimitPrice())));
     }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ import javax.jms.MessageListener;
 import javax.jms.TextMessage;
 
 import org.archfirst.bfexch.domain.broker.BrokerMessageProcessor;
+import org.archfirst.bfexch.domain.latency.LatencyMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +38,7 @@ public class BrokerMessageListener implements MessageListener {
         LoggerFactory.getLogger(BrokerMessageListener.class);
 
     @Inject private BrokerMessageProcessor brokerMessageProcessor;
+    @Inject private LatencyMonitor latencyMonitor;
 
     public BrokerMessageListener() {
         logger.debug("{}: BrokerMessageListener created",
@@ -48,12 +50,16 @@ public class BrokerMessageListener implements MessageListener {
         if (message instanceof TextMessage) {
             String messageText = null;
             try {
+                latencyMonitor.messageReceived(message.getJMSTimestamp());
                 messageText = ((TextMessage)message).getText();
                 brokerMessageProcessor.processMessage(messageText);
             }
             catch (JMSException e) {
                 throw new RuntimeException(e);
             }
+            finally {
+                latencyMonitor.messageProcessed();
+            }
         }
     }
 }
\ No newline at end of file
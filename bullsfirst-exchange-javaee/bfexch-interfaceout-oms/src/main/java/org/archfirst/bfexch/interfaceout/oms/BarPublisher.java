@@ -0,0 +1,122 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.interfaceout.oms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+
+import org.archfirst.bfexch.domain.marketdata.Bar;
+import org.archfirst.bfexch.domain.marketdata.BarCompleted;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.jms.JmsProducerPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes completed bars, one message per bar (see
+ * {@link Bar#toProperties()}). Bars are queued by the thread that completes
+ * them and sent by a publisher thread of its own, in batches of one JMS
+ * transaction each, so the matching thread never waits for JMS. A batch
+ * that cannot be sent is retried until it is.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class BarPublisher {
+    private static final Logger logger =
+        LoggerFactory.getLogger(BarPublisher.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    @Resource(mappedName="jms/ExchangeBarTopic")
+    private Destination destination;
+
+    @Inject private ConfigurationService configurationService;
+    @Inject private JmsProducerPool jmsProducerPool;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String capacity = configurationService.getString(
+                ConfigConstants.PROP_PUBLISHER_QUEUE_CAPACITY);
+        int queueCapacity = (capacity == null) ?
+                DEFAULT_QUEUE_CAPACITY : Integer.parseInt(capacity.trim());
+        pendingMessages = new ArrayBlockingQueue<String>(queueCapacity);
+
+        publisher = new Thread(new Publisher(), "bar-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    @PreDestroy
+    public void close() {
+        publisher.interrupt();
+    }
+
+    // ----- Commands -----
+    public void onBarCompleted(@Observes BarCompleted event) {
+        if (!pendingMessages.offer(event.getBar().toProperties())) {
+            logger.warn("Bar queue is full, dropping {}", event.getBar());
+        }
+    }
+
+    // ----- Attributes -----
+    private Thread publisher;
+
+    private BlockingQueue<String> pendingMessages;
+
+    // ----- Nested Types -----
+    private class Publisher implements Runnable {
+        @Override
+        public void run() {
+            List<String> texts = new ArrayList<String>(MAX_BATCH_SIZE);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (texts.isEmpty()) {
+                        texts.add(pendingMessages.take());
+                        pendingMessages.drainTo(texts, MAX_BATCH_SIZE - 1);
+                    }
+                    try {
+                        jmsProducerPool.sendTexts(destination, texts);
+                        texts.clear();
+                    }
+                    catch (JMSException e) {
+                        logger.error("Failed to publish bars, retrying", e);
+                        Thread.sleep(RETRY_DELAY_MILLIS);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // stop
+            }
+            logger.info("{} stopped", Thread.currentThread().getName());
+        }
+    }
+}
\ No newline at end of file
@@ -15,6 +15,11 @@
  */
 package org.archfirst.bfexch.interfaceout.oms;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.annotation.Resource;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
@@ -24,8 +29,13 @@ import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.archfirst.bfexch.domain.broker.BrokerMessageGenerator;
+import org.archfirst.bfexch.domain.latency.LatencyMonitor;
+import org.archfirst.bfexch.domain.latency.LatencyStage;
 import org.archfirst.bfexch.domain.trading.order.ClOrdIDParser;
 import org.archfirst.bfexch.domain.trading.order.ExecutionReport;
 import org.archfirst.bfexch.domain.trading.order.Order;
@@ -34,11 +44,20 @@ import org.archfirst.bfexch.domain.trading.order.OrderCancelRejected;
 import org.archfirst.bfexch.domain.trading.order.OrderCanceled;
 import org.archfirst.bfexch.domain.trading.order.OrderDoneForDay;
 import org.archfirst.bfexch.domain.trading.order.OrderExecuted;
+import org.archfirst.bfexch.domain.trading.order.OrderReplaced;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * BrokerAdapter
+ * BrokerAdapter. The messages generated in a transaction - normally one
+ * matching pass - are collected by broker and sent just before the
+ * transaction completes, through the container's connection factory, so
+ * that they are part of the transaction: they are delivered if and only if
+ * it commits. The reports of a fill therefore reach the OMS together, and
+ * the messages for an order arrive in the order they were generated. If
+ * the messages cannot be sent, the transaction is rolled back and the
+ * failure is reported to the caller. Messages generated outside a
+ * transaction are sent right away, over the same kind of connection.
  *
  * @author Naresh Bhatia
  */
@@ -46,65 +65,232 @@ public class BrokerAdapter {
     private static final Logger logger =
         LoggerFactory.getLogger(BrokerAdapter.class);
 
+    /** Key of the batch of the current transaction in the registry */
+    private static final String BATCH_KEY =
+        BrokerAdapter.class.getName() + ".batch";
+
     @Resource(mappedName="jms/ConnectionFactory")
     private ConnectionFactory connectionFactory;
 
     @Inject private DestinationDictionary destinationDictionary;
     @Inject BrokerMessageGenerator brokerMessageGenerator;
+    @Inject private LatencyMonitor latencyMonitor;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 
     public void onOrderAccepted(@Observes OrderAccepted event) {
-        sendExecutionReport(ExecutionReport.createNewType(event.getOrder()));
+        Order order = event.getOrder();
+        BrokerMessageBatch batch = getBatch();
+        batch.addExecutionReport(ExecutionReport.createNewType(order));
+        batch.addAcceptedOrder(order);
+        sendIfNotDeferred(batch);
     }
 
     public void onOrderExecuted(@Observes OrderExecuted event) {
-        sendExecutionReport(ExecutionReport.createTradeType(event.getExecution()));
+        BrokerMessageBatch batch = getBatch();
+        batch.addExecutionReport(
+                ExecutionReport.createTradeType(event.getExecution()));
+        sendIfNotDeferred(batch);
     }
 
     public void onOrderCanceled(@Observes OrderCanceled event) {
-        sendExecutionReport(ExecutionReport.createCanceledType(event.getOrder()));
+        BrokerMessageBatch batch = getBatch();
+        batch.addExecutionReport(
+                ExecutionReport.createCanceledType(event.getOrder()));
+        sendIfNotDeferred(batch);
     }
 
     public void onOrderCancelRejected(@Observes OrderCancelRejected event) {
-        sendOrderCancelRejected(event.getOrder());
+        BrokerMessageBatch batch = getBatch();
+        if (event.getOrder() == null) {
+            batch.addUnknownOrderCancelReject(
+                    event.getClientOrderId(), event.isReplaceRequest());
+        }
+        else {
+            batch.addOrderCancelReject(event.getOrder(), event.isReplaceRequest());
+        }
+        sendIfNotDeferred(batch);
     }
 
-    public void onOrderDoneForDay(@Observes OrderDoneForDay event) {
-        sendExecutionReport(ExecutionReport.createDoneForDayType(event.getOrder()));
+    public void onOrderReplaced(@Observes OrderReplaced event) {
+        BrokerMessageBatch batch = getBatch();
+        batch.addExecutionReport(
+                ExecutionReport.createReplacedType(event.getOrder()));
+        sendIfNotDeferred(batch);
     }
 
-    private void sendExecutionReport(ExecutionReport executionReport) {
-        sendJmsMessage(
-                ClOrdIDParser.getBrokerId(executionReport.getClientOrderId()),
-                brokerMessageGenerator.generateExecutionReport(executionReport));
+    public void onOrderDoneForDay(@Observes OrderDoneForDay event) {
+        BrokerMessageBatch batch = getBatch();
+        batch.addExecutionReport(
+                ExecutionReport.createDoneForDayType(event.getOrder()));
+        sendIfNotDeferred(batch);
     }
 
-    private void sendOrderCancelRejected(Order order) {
+    /**
+     * Returns the batch of the current transaction, creating it if needed.
+     * Outside a transaction a new batch is returned every time.
+     */
+    private BrokerMessageBatch getBatch() {
+        if (transactionSynchronizationRegistry.getTransactionKey() == null) {
+            return new BrokerMessageBatch(false);
+        }
 
-        sendJmsMessage(
-                ClOrdIDParser.getBrokerId(order.getClientOrderId()),
-                brokerMessageGenerator.generateOrderCancelReject(order));
+        BrokerMessageBatch batch = (BrokerMessageBatch)
+            transactionSynchronizationRegistry.getResource(BATCH_KEY);
+        if (batch == null) {
+            batch = new BrokerMessageBatch(true);
+            transactionSynchronizationRegistry.putResource(BATCH_KEY, batch);
+            transactionSynchronizationRegistry
+                .registerInterposedSynchronization(batch);
+        }
+        return batch;
     }
 
-    private void sendJmsMessage(final String brokerId, String messageText) {
-        
-        logger.debug("Sending message to {}", brokerId);
-        Destination destination =
-            destinationDictionary.getBrokerDestination(brokerId);
-
-        Connection connection = null;
-        try {
-            connection = connectionFactory.createConnection();
-            Session session = connection.createSession(
-                    false, Session.AUTO_ACKNOWLEDGE);
-            MessageProducer producer = session.createProducer(destination);
-            producer.send(session.createTextMessage(messageText));
-        }
-        catch (JMSException e) {
-            throw new RuntimeException("Failed to send message to broker", e);
-        }
-        finally {
-            if (connection != null)
-                try {connection.close();} catch (Exception e) {}
+    private void sendIfNotDeferred(BrokerMessageBatch batch) {
+        if (!batch.isDeferred()) {
+            batch.send();
+        }
+    }
+
+    // ----- Nested Types -----
+    /**
+     * The messages to be sent to brokers, in the order they were generated,
+     * grouped by broker.
+     */
+    private class BrokerMessageBatch implements Synchronization {
+        private final boolean deferred;
+        private final Map<String, List<String>> messages =
+            new LinkedHashMap<String, List<String>>();
+        private final List<Order> acceptedOrders = new ArrayList<Order>();
+
+        public BrokerMessageBatch(boolean deferred) {
+            this.deferred = deferred;
+        }
+
+        public void addExecutionReport(ExecutionReport executionReport) {
+            add(ClOrdIDParser.getBrokerId(executionReport.getClientOrderId()),
+                brokerMessageGenerator.generateExecutionReport(executionReport));
+        }
+
+        public void addOrderCancelReject(Order order, boolean replaceRequest) {
+            add(ClOrdIDParser.getBrokerId(order.getClientOrderId()),
+                brokerMessageGenerator.generateOrderCancelReject(order, replaceRequest));
+        }
+
+        public void addUnknownOrderCancelReject(String clOrdID, boolean replaceRequest) {
+            add(ClOrdIDParser.getBrokerId(clOrdID),
+                brokerMessageGenerator.generateUnknownOrderCancelReject(
+                        clOrdID, replaceRequest));
+        }
+
+        /**
+         * Records that the batch contains the acknowledgement of the order,
+         * so that its latency is recorded once the batch has been sent.
+         */
+        public void addAcceptedOrder(Order order) {
+            acceptedOrders.add(order);
+        }
+
+        private void add(String brokerId, String messageText) {
+            List<String> brokerMessages = messages.get(brokerId);
+            if (brokerMessages == null) {
+                brokerMessages = new ArrayList<String>();
+                messages.put(brokerId, brokerMessages);
+            }
+            brokerMessages.add(messageText);
+        }
+
+        /**
+         * Sends a batch that is not part of a transaction.
+         */
+        public void send() {
+            try {
+                sendMessages();
+            }
+            catch (JMSException e) {
+                throw new RuntimeException("Failed to send message to broker", e);
+            }
+            recordLatency();
+        }
+
+        /**
+         * Sends the batch over a connection of the container. Inside a
+         * transaction the container enlists the session in it and ignores
+         * the session arguments; outside one the messages are acknowledged
+         * as they are sent.
+         */
+        private void sendMessages() throws JMSException {
+            Connection connection = connectionFactory.createConnection();
+            try {
+                Session session = connection.createSession(
+                        false, Session.AUTO_ACKNOWLEDGE);
+                MessageProducer producer = session.createProducer(null);
+                for (Map.Entry<String, List<String>> entry : messages.entrySet()) {
+                    String brokerId = entry.getKey();
+                    logger.debug("Sending {} messages to {}",
+                            entry.getValue().size(), brokerId);
+                    Destination destination =
+                        destinationDictionary.getBrokerDestination(brokerId);
+                    for (String messageText : entry.getValue()) {
+                        producer.send(destination,
+                                session.createTextMessage(messageText));
+                    }
+                }
+            }
+            finally {
+                connection.close();
+            }
+        }
+
+        private void recordLatency() {
+            for (Order order : acceptedOrders) {
+                latencyMonitor.recordSince(LatencyStage.ExecutionReportSent,
+                        order.getSymbol(), order.getReceivedNanos());
+            }
+        }
+
+        public boolean isDeferred() {
+            return deferred;
+        }
+
+        /**
+         * Sends the batch as part of the transaction, unless it is already
+         * bound to roll back. An interposed synchronization is called in
+         * the context of the transaction, after the other synchronizations,
+         * so the connection is enlisted in it. If the batch cannot be sent,
+         * the transaction is rolled back.
+         */
+        @Override
+        public void beforeCompletion() {
+            if (transactionSynchronizationRegistry.getTransactionStatus() ==
+                    Status.STATUS_MARKED_ROLLBACK) {
+                return;
+            }
+            try {
+                sendMessages();
+            }
+            catch (JMSException e) {
+                transactionSynchronizationRegistry.setRollbackOnly();
+                throw new RuntimeException(
+                        "Failed to send messages to " + messages.keySet(), e);
+            }
+        }
+
+        /**
+         * The messages have been delivered if the transaction has
+         * committed. Otherwise they have been rolled back along with the
+         * changes they report.
+         */
+        @Override
+        public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+                recordLatency();
+            }
+            else {
+                logger.warn("Transaction rolled back, messages to {} were not sent",
+                        messages.keySet());
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.interfaceout.oms;
+
+import javax.annotation.Resource;
+import javax.enterprise.inject.Disposes;
+import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
+import javax.jms.ConnectionFactory;
+
+import org.archfirst.common.jms.JmsProducerPool;
+
+/**
+ * JmsProducerPoolFactory
+ *
+ * @author Naresh Bhatia
+ */
+public class JmsProducerPoolFactory {
+
+    @Resource(mappedName="jms/ConnectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Produces
+    @Singleton
+    public JmsProducerPool getJmsProducerPool() {
+        return new JmsProducerPool(connectionFactory);
+    }
+
+    public void closeJmsProducerPool(@Disposes JmsProducerPool jmsProducerPool) {
+        jmsProducerPool.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.interfaceout.oms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+
+import org.archfirst.bfexch.domain.marketdata.MarketDepth;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthChanged;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.jms.JmsProducerPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the depth of the order books. Each {@link MarketDepthChanged}
+ * event is sent as an update message (see
+ * {@link MarketDepthChanged#toProperties()}), and every
+ * SNAPSHOT_INTERVAL updates of a symbol a snapshot message follows (see
+ * {@link MarketDepth#toProperties()}). A client starts from a snapshot -
+ * the next one on the topic or one read from the REST service - and applies
+ * the updates with higher sequence numbers. On a gap in the sequence
+ * numbers it starts over from a snapshot.
+ *
+ * Messages are queued by the matching thread and sent by a publisher thread
+ * of its own, in batches of one JMS transaction each, so the matching
+ * thread never waits for JMS. Messages that do not fit in the queue or
+ * cannot be sent are dropped, which clients see as a gap.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+public class MarketDepthPublisher {
+    private static final Logger logger =
+        LoggerFactory.getLogger(MarketDepthPublisher.class);
+
+    private static final int SNAPSHOT_INTERVAL = 100;
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    @Resource(mappedName="jms/ExchangeMarketDepthTopic")
+    private Destination destination;
+
+    @Inject private ConfigurationService configurationService;
+    @Inject private JmsProducerPool jmsProducerPool;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String capacity = configurationService.getString(
+                ConfigConstants.PROP_PUBLISHER_QUEUE_CAPACITY);
+        int queueCapacity = (capacity == null) ?
+                DEFAULT_QUEUE_CAPACITY : Integer.parseInt(capacity.trim());
+        pendingMessages = new ArrayBlockingQueue<String>(queueCapacity);
+
+        publisher = new Thread(new Publisher(), "market-depth-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    @PreDestroy
+    public void close() {
+        publisher.interrupt();
+    }
+
+    // ----- Commands -----
+    public void onMarketDepthChanged(@Observes MarketDepthChanged event) {
+        queue(event.toProperties());
+        if (event.getSequence() % SNAPSHOT_INTERVAL == 0) {
+            queue(event.getMarketDepth().toProperties());
+        }
+    }
+
+    private void queue(String text) {
+        if (!pendingMessages.offer(text)) {
+            logger.warn("Market depth queue is full, dropping message");
+        }
+    }
+
+    // ----- Attributes -----
+    private Thread publisher;
+
+    private BlockingQueue<String> pendingMessages;
+
+    // ----- Nested Types -----
+    private class Publisher implements Runnable {
+        @Override
+        public void run() {
+            List<String> texts = new ArrayList<String>(MAX_BATCH_SIZE);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    texts.add(pendingMessages.take());
+                    pendingMessages.drainTo(texts, MAX_BATCH_SIZE - 1);
+                    try {
+                        jmsProducerPool.sendTexts(destination, texts);
+                    }
+                    catch (JMSException e) {
+                        logger.error("Failed to publish market depth, dropping " +
+                                texts.size() + " messages", e);
+                        Thread.sleep(RETRY_DELAY_MILLIS);
+                    }
+                    texts.clear();
+                }
+            }
+            catch (InterruptedException e) {
+                // stop
+            }
+            logger.info("{} stopped", Thread.currentThread().getName());
+        }
+    }
+}
\ No newline at end of file
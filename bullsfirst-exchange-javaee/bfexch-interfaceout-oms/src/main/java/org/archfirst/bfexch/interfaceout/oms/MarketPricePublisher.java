@@ -15,54 +15,102 @@
  */
 package org.archfirst.bfexch.interfaceout.oms;
 
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.enterprise.event.Observes;
-import javax.jms.Connection;
-import javax.jms.ConnectionFactory;
+import javax.inject.Inject;
+import javax.inject.Singleton;
 import javax.jms.Destination;
 import javax.jms.JMSException;
-import javax.jms.MessageProducer;
-import javax.jms.Session;
 
 import org.archfirst.bfexch.domain.marketdata.MarketPrice;
 import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
+import org.archfirst.bfexch.domain.util.ConfigConstants;
+import org.archfirst.bfexch.domain.util.ConflatingWriter;
+import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.jms.JmsProducerPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * MarketPricePublisher
+ * Publishes market prices, conflated. A price change only replaces the
+ * pending price of its symbol, so the matching thread never waits for JMS.
+ * A publisher thread of its own (see {@link ConflatingWriter}) sends all
+ * pending prices in one batch message (see
+ * {@link MarketPrice#toProperties(List)}), then waits for the publish
+ * interval before sending the next batch. Prices that are superseded in the
+ * meantime are never sent. With an interval of 0, the next batch is sent as
+ * soon as the previous send returns.
+ *
+ * Prices are sent through the {@link JmsProducerPool}, so the publisher
+ * thread keeps its JMS connection open.
  *
  * @author Naresh Bhatia
  */
+@Singleton
 public class MarketPricePublisher {
     private static final Logger logger =
         LoggerFactory.getLogger(MarketPricePublisher.class);
 
-    @Resource(mappedName="jms/ConnectionFactory")
-    private ConnectionFactory connectionFactory;
+    private static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 100;
 
     @Resource(mappedName="jms/ExchangeMarketPriceTopic")
     private Destination destination;
 
+    @Inject private ConfigurationService configurationService;
+    @Inject private JmsProducerPool jmsProducerPool;
+
+    // ----- Lifecycle -----
+    @PostConstruct
+    public void open() {
+        String interval = configurationService.getString(
+                ConfigConstants.PROP_MARKET_PRICE_PUBLISH_INTERVAL_MILLIS);
+        long publishIntervalMillis = (interval == null) ?
+                DEFAULT_PUBLISH_INTERVAL_MILLIS : Long.parseLong(interval.trim());
+
+        publisher = new Publisher(publishIntervalMillis);
+        publisher.start();
+        logger.info("Publishing market prices every {} ms", publishIntervalMillis);
+    }
+
+    @PreDestroy
+    public void close() {
+        publisher.stop();
+    }
+
+    // ----- Commands -----
     public void onMarketPriceChanged(@Observes MarketPriceChanged event) {
 
+        // The event is fired on the thread that changes the price, so it
+        // can be copied safely
         MarketPrice marketPrice = event.getMarketPrice();
-        logger.debug("Publishing market price:\n{}", marketPrice);
-
-        Connection connection = null;
-        try {
-            connection = connectionFactory.createConnection();
-            Session session = connection.createSession(
-                    false, Session.AUTO_ACKNOWLEDGE);
-            MessageProducer producer = session.createProducer(destination);
-            producer.send(session.createTextMessage(marketPrice.toProperties()));
-        }
-        catch (JMSException e) {
-            throw new RuntimeException("Failed to publish market price", e);
+        publisher.put(marketPrice.getSymbol(), new MarketPrice(
+                marketPrice.getSymbol(),
+                marketPrice.getPrice(),
+                marketPrice.getEffective()));
+    }
+
+    private void send(List<MarketPrice> marketPrices) throws JMSException {
+        logger.debug("Publishing {} market prices", marketPrices.size());
+        jmsProducerPool.sendText(
+                destination, MarketPrice.toProperties(marketPrices));
+    }
+
+    // ----- Attributes -----
+    private Publisher publisher;
+
+    // ----- Nested Types -----
+    private class Publisher extends ConflatingWriter<String, MarketPrice> {
+        public Publisher(long publishIntervalMillis) {
+            super("market-price-publisher", publishIntervalMillis);
         }
-        finally {
-            if (connection != null)
-                try {connection.close();} catch (Exception e) {}
+
+        @Override
+        protected void write(List<MarketPrice> marketPrices) throws JMSException {
+            send(marketPrices);
         }
     }
 }
\ No newline at end of file
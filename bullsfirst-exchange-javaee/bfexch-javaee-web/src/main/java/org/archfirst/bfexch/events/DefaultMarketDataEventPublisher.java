@@ -18,7 +18,9 @@ package org.archfirst.bfexch.events;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
+import org.archfirst.bfexch.domain.marketdata.BarCompleted;
 import org.archfirst.bfexch.domain.marketdata.MarketDataEventPublisher;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthChanged;
 import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
 
 /**
@@ -30,10 +32,22 @@ public class DefaultMarketDataEventPublisher implements MarketDataEventPublisher
 
     // ----- Events -----
     @Inject private Event<MarketPriceChanged> marketPriceChangedEvent;
+    @Inject private Event<MarketDepthChanged> marketDepthChangedEvent;
+    @Inject private Event<BarCompleted> barCompletedEvent;
 
     // ----- Publisher Implementation -----
     @Override
     public void publish(MarketPriceChanged event) {
         marketPriceChangedEvent.fire(event);
     }
+
+    @Override
+    public void publish(MarketDepthChanged event) {
+        marketDepthChangedEvent.fire(event);
+    }
+
+    @Override
+    public void publish(BarCompleted event) {
+        barCompletedEvent.fire(event);
+    }
 }
\ No newline at end of file
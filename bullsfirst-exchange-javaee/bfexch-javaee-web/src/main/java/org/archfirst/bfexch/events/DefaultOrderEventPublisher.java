@@ -24,6 +24,7 @@ import org.archfirst.bfexch.domain.trading.order.OrderCanceled;
 import org.archfirst.bfexch.domain.trading.order.OrderDoneForDay;
 import org.archfirst.bfexch.domain.trading.order.OrderEventPublisher;
 import org.archfirst.bfexch.domain.trading.order.OrderExecuted;
+import org.archfirst.bfexch.domain.trading.order.OrderReplaced;
 
 /**
  * DefaultOrderEventPublisher
@@ -37,6 +38,7 @@ public class DefaultOrderEventPublisher implements OrderEventPublisher {
     @Inject private Event<OrderExecuted> orderExecutedEvent;
     @Inject private Event<OrderCanceled> orderCanceledEvent;
     @Inject private Event<OrderCancelRejected> orderCancelRejectedEvent;
+    @Inject private Event<OrderReplaced> orderReplacedEvent;
     @Inject private Event<OrderDoneForDay> orderDoneForDayEvent;
 
     // ----- Publisher Implementation -----
@@ -60,6 +62,11 @@ public class DefaultOrderEventPublisher implements OrderEventPublisher {
         orderCancelRejectedEvent.fire(event);
     }
 
+    @Override
+    public void publish(OrderReplaced event) {
+        orderReplacedEvent.fire(event);
+    }
+
     @Override
     public void publish(OrderDoneForDay event) {
         orderDoneForDayEvent.fire(event);
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.restservice.bar;
+
+import java.util.List;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import org.archfirst.bfexch.domain.marketdata.Bar;
+import org.archfirst.bfexch.domain.marketdata.BarInterval;
+import org.archfirst.bfexch.domain.marketdata.BarService;
+
+/**
+ * BarResource. Returns the last completed bars of a symbol, oldest first,
+ * for an interval (OneSecond, OneMinute or OneDay, OneMinute by default).
+ * The number of bars is given by last, 100 by default.
+ *
+ * @author Naresh Bhatia
+ */
+@Stateless
+@Path("/bars")
+@Produces(MediaType.APPLICATION_JSON)
+public class BarResource {
+
+    private static final int DEFAULT_LAST = 100;
+
+    @GET
+    @Path("{symbol}")
+    public List<Bar> getBars(
+            @PathParam("symbol") String symbol,
+            @QueryParam("interval") String interval,
+            @QueryParam("last") Integer last) {
+        BarInterval barInterval = (interval == null) ?
+            BarInterval.OneMinute : BarInterval.valueOf(interval);
+        int count = (last == null) ? DEFAULT_LAST : Math.max(last, 0);
+        return barService.getBars(symbol, barInterval, count);
+    }
+    
+    // ----- Attributes -----
+    @Inject
+    private BarService barService;
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.restservice.latency;
+
+import java.util.List;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.archfirst.bfexch.domain.latency.LatencyMonitor;
+import org.archfirst.bfexch.domain.latency.LatencyStats;
+
+/**
+ * LatencyResource
+ *
+ * @author Naresh Bhatia
+ */
+@Stateless
+@Path("/latencies")
+@Produces(MediaType.APPLICATION_JSON)
+public class LatencyResource {
+
+    @GET
+    public List<LatencyStats> getLatencies() {
+        return latencyMonitor.getStats();
+    }
+
+    @GET
+    @Path("{symbol}")
+    public List<LatencyStats> getLatencies(
+            @PathParam("symbol") String symbol) {
+        return latencyMonitor.getStats(symbol);
+    }
+
+    @DELETE
+    public void resetLatencies() {
+        latencyMonitor.reset();
+    }
+
+    // ----- Attributes -----
+    @Inject
+    private LatencyMonitor latencyMonitor;
+}
\ No newline at end of file
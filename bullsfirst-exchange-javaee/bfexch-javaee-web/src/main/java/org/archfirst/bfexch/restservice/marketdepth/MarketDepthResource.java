@@ -0,0 +1,49 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.restservice.marketdepth;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.archfirst.bfexch.domain.marketdata.MarketDataService;
+import org.archfirst.bfexch.domain.marketdata.MarketDepth;
+
+/**
+ * MarketDepthResource
+ *
+ * @author Naresh Bhatia
+ */
+@Stateless
+@Path("/market_depths")
+@Produces(MediaType.APPLICATION_JSON)
+public class MarketDepthResource {
+
+    @GET
+    @Path("{symbol}")
+    public MarketDepth getMarketDepth(
+            @PathParam("symbol") String symbol) {
+        return marketDataService.getMarketDepth(symbol);
+    }
+    
+    // ----- Attributes -----
+    @Inject
+    private MarketDataService marketDataService;
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.restservice.trade;
+
+import java.util.List;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+import org.archfirst.bfexch.domain.marketdata.TimeAndSalesService;
+import org.archfirst.bfexch.domain.marketdata.Trade;
+
+/**
+ * TradeResource. Returns the recent trades of a symbol from its
+ * time-and-sales tape, oldest first: either the trades after a sequence
+ * number (since) or the last few trades (last, 100 by default).
+ *
+ * @author Naresh Bhatia
+ */
+@Stateless
+@Path("/trades")
+@Produces(MediaType.APPLICATION_JSON)
+public class TradeResource {
+
+    private static final int DEFAULT_LAST = 100;
+
+    @GET
+    @Path("{symbol}")
+    public List<Trade> getTrades(
+            @PathParam("symbol") String symbol,
+            @QueryParam("last") Integer last,
+            @QueryParam("since") Long since) {
+        if (since != null) {
+            return timeAndSalesService.getTradesSince(symbol, since);
+        }
+        int count = (last == null) ? DEFAULT_LAST : Math.max(last, 0);
+        return timeAndSalesService.getLastTrades(symbol, count);
+    }
+    
+    // ----- Attributes -----
+    @Inject
+    private TimeAndSalesService timeAndSalesService;
+}
\ No newline at end of file
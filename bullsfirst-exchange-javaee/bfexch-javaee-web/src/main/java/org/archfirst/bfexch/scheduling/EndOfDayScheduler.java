@@ -20,6 +20,7 @@ import javax.ejb.Stateless;
 import javax.inject.Inject;
 
 import org.archfirst.bfexch.domain.trading.TradingService;
+import org.archfirst.bfexch.domain.trading.snapshot.SnapshotService;
 
 /**
  * EndOfDayScheduler
@@ -30,9 +31,11 @@ import org.archfirst.bfexch.domain.trading.TradingService;
 public class EndOfDayScheduler {
 
     @Inject private TradingService tradingService;
+    @Inject private SnapshotService snapshotService;
 
     @Schedule(hour="16", minute="00", timezone="America/New_York")
     public void handleEndOfDay() {
         tradingService.handleEndOfDay();
+        snapshotService.takeSnapshot();
     }
 }
\ No newline at end of file
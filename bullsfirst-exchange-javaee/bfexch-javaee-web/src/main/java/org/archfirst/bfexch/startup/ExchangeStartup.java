@@ -0,0 +1,53 @@
+/**
+ * Copyright 2011 Archfirst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.archfirst.bfexch.startup;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+
+import org.archfirst.bfexch.domain.trading.MatchingDispatcher;
+import org.archfirst.bfexch.domain.trading.TradingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recovers the state of the exchange when the application is started and
+ * logs the time it took for the exchange to become ready. Recovery queues
+ * the replayed requests on the matching threads, so the exchange is ready
+ * only once those threads have worked through them.
+ *
+ * @author Naresh Bhatia
+ */
+@Singleton
+@Startup
+public class ExchangeStartup {
+    private static final Logger logger =
+        LoggerFactory.getLogger(ExchangeStartup.class);
+
+    @Inject private TradingService tradingService;
+    @Inject private MatchingDispatcher matchingDispatcher;
+
+    @PostConstruct
+    public void recover() {
+        long startTime = System.currentTimeMillis();
+        tradingService.recover();
+        matchingDispatcher.awaitQueuedTasks();
+        logger.info("Exchange ready, recovery took {} ms",
+                System.currentTimeMillis() - startTime);
+    }
+}
@@ -18,21 +18,28 @@ package org.archfirst.bfexch.spec.matchingengine;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.SortedSet;
 
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.apache.commons.lang.StringUtils;
 import org.archfirst.bfexch.domain.marketdata.MarketDataService;
 import org.archfirst.bfexch.domain.marketdata.MarketPrice;
 import org.archfirst.bfexch.domain.trading.MatchingEngine;
+import org.archfirst.bfexch.domain.trading.OrderBookRegistry;
+import org.archfirst.bfexch.domain.trading.OrderBookSide;
+import org.archfirst.bfexch.domain.trading.PriceLevel;
 import org.archfirst.bfexch.domain.trading.order.ExecutionReport;
 import org.archfirst.bfexch.domain.trading.order.ExecutionReportType;
 import org.archfirst.bfexch.domain.trading.order.Order;
+import org.archfirst.bfexch.domain.trading.order.OrderCancelReplaceRequest;
 import org.archfirst.bfexch.domain.trading.order.OrderSide;
+import org.archfirst.bfexch.domain.trading.order.OrderRepository;
 import org.archfirst.bfexch.domain.trading.order.OrderStatus;
 import org.archfirst.bfexch.domain.trading.order.OrderTerm;
 import org.archfirst.bfexch.domain.trading.order.OrderType;
+import org.archfirst.bfexch.domain.util.FixedPoint;
 import org.archfirst.bfexch.spec.mocks.OrderEventRecorder;
 import org.archfirst.common.datetime.DateTimeUtil;
 import org.archfirst.common.money.Money;
@@ -51,10 +58,15 @@ public abstract class MatchingEngineBaseTest extends AbstractTransactionalSpecTe
 
     @Inject private MarketDataService marketDataService;
     @Inject private MatchingEngine matchingEngine;
+    @Inject private OrderBookRegistry orderBookRegistry;
+    @Inject private OrderRepository orderRepository;
+    @PersistenceContext private EntityManager entityManager;
     @Inject protected OrderEventRecorder eventRecorder;
     
     @BeforeMethod
     public void setup() {
+        // Books outlive the transaction of the previous spec, start afresh
+        orderBookRegistry.reset();
         eventRecorder.clear();
     }
     
@@ -77,6 +89,29 @@ public abstract class MatchingEngineBaseTest extends AbstractTransactionalSpecTe
             String gtc,
             String allOrNone) {
         
+        placeOrder(creationTime, clientOrderId, side, symbol, quantity,
+                type, limitPrice, null,
+                (StringUtils.equalsIgnoreCase(gtc, "Y")) ?
+                        OrderTerm.GoodTilCanceled.name() : null,
+                allOrNone);
+    }
+
+    /**
+     * Places an order with a stop price and/or a term. An empty term means
+     * GoodForTheDay.
+     */
+    public void placeOrder(
+            String creationTime,
+            String clientOrderId,
+            String side,
+            String symbol,
+            BigDecimal quantity,
+            String type,
+            String limitPrice,
+            String stopPrice,
+            String term,
+            String allOrNone) {
+        
         Order order = new Order(
             DateTimeUtil.parseDateTimeSecond(creationTime),
             clientOrderId,
@@ -85,13 +120,55 @@ public abstract class MatchingEngineBaseTest extends AbstractTransactionalSpecTe
             new DecimalQuantity(quantity),
             OrderType.valueOf(type),
             (StringUtils.isEmpty(limitPrice)) ? null : new Money(limitPrice),
-            (StringUtils.equalsIgnoreCase(gtc, "Y")) ?
-                    OrderTerm.GoodTilCanceled : OrderTerm.GoodForTheDay,
+            (StringUtils.isEmpty(stopPrice)) ? null : new Money(stopPrice),
+            (StringUtils.isEmpty(term)) ?
+                    OrderTerm.GoodForTheDay : OrderTerm.valueOf(term),
             (StringUtils.equalsIgnoreCase(allOrNone, "Y")) ? true : false);
         
         matchingEngine.placeOrder(order);
     }
 
+    public void cancelOrder(String clientOrderId) {
+        matchingEngine.cancelOrder(orderBookRegistry.findOrder(clientOrderId));
+    }
+
+    /**
+     * Replaces an order in the book. The received time is the time at which
+     * the exchange stamps the request on receipt.
+     */
+    public void replaceOrder(
+            String transactTime,
+            String receivedTime,
+            String clientOrderId,
+            BigDecimal quantity,
+            String limitPrice) {
+
+        Order order = orderBookRegistry.findOrder(clientOrderId);
+        OrderCancelReplaceRequest request = new OrderCancelReplaceRequest(
+            clientOrderId,
+            order.getSymbol(),
+            DateTimeUtil.parseDateTimeSecond(transactTime),
+            new DecimalQuantity(quantity),
+            (StringUtils.isEmpty(limitPrice)) ? null : new Money(limitPrice));
+        request.setReceivedTime(DateTimeUtil.parseDateTimeSecond(receivedTime));
+
+        matchingEngine.replaceOrder(order, request);
+    }
+
+    /**
+     * Marks the active GFD orders of the symbol as DoneForDay the way the
+     * exchange does. The end of day runs in transactions of its own, so the
+     * orders it loads from the database are copies of those in the book.
+     */
+    public void endOfDay(String symbol) {
+        entityManager.flush();
+        entityManager.clear();
+        List<Order> orders = orderRepository.findActiveGfdOrdersForInstrument(
+                symbol, Integer.MAX_VALUE);
+        orderRepository.markDoneForDay(orders);
+        matchingEngine.markDoneForDay(orders);
+    }
+
     public void clearExecutionReports() {
         eventRecorder.clear();
     }
@@ -106,7 +183,25 @@ public abstract class MatchingEngineBaseTest extends AbstractTransactionalSpecTe
                 matchingEngine.getOrderBook(symbol).getSellStack());
     }
     
-    private List<OrderOut> convertOrders(SortedSet<Order> orders) {
+    public List<PriceLevelOut> getBuyLevels(String symbol) {
+        return convertLevels(
+                matchingEngine.getOrderBook(symbol).getBuySide());
+    }
+
+    public List<PriceLevelOut> getSellLevels(String symbol) {
+        return convertLevels(
+                matchingEngine.getOrderBook(symbol).getSellSide());
+    }
+
+    private List<PriceLevelOut> convertLevels(OrderBookSide side) {
+        List<PriceLevelOut> result = new ArrayList<PriceLevelOut>();
+        for (PriceLevel level : side.getLimitLevels()) {
+            result.add(new PriceLevelOut(level));
+        }
+        return result;
+    }
+
+    private List<OrderOut> convertOrders(List<Order> orders) {
         List<OrderOut> result = new ArrayList<OrderOut>();
         for (Order order : orders) {
             result.add(new OrderOut(order));
@@ -176,6 +271,10 @@ public abstract class MatchingEngineBaseTest extends AbstractTransactionalSpecTe
             return (order.getLimitPrice() == null) ?
                     "" : order.getLimitPrice().getAmount().toString();
         }
+        public String getStopPrice() {
+            return (order.getStopPrice() == null) ?
+                    "" : order.getStopPrice().getAmount().toString();
+        }
         public String getGtc() {
             return (order.getTerm() == OrderTerm.GoodTilCanceled) ? "Y" : "";
         }
@@ -187,6 +286,24 @@ public abstract class MatchingEngineBaseTest extends AbstractTransactionalSpecTe
         }
     }
 
+    public class PriceLevelOut {
+        private final PriceLevel level;
+
+        public PriceLevelOut(PriceLevel level) {
+            this.level = level;
+        }
+
+        public String getPrice() {
+            return level.getPrice().getAmount().toString();
+        }
+        public DecimalQuantity getQuantity() {
+            return FixedPoint.toDecimalQuantity(level.getQuantityUnits());
+        }
+        public int getNumberOfOrders() {
+            return level.size();
+        }
+    }
+
     public class ExecutionReportOut {
         private final ExecutionReport executionReport;
 
@@ -15,7 +15,9 @@
  */
 package org.archfirst.bfexch.spec.mocks;
 
+import org.archfirst.bfexch.domain.marketdata.BarCompleted;
 import org.archfirst.bfexch.domain.marketdata.MarketDataEventPublisher;
+import org.archfirst.bfexch.domain.marketdata.MarketDepthChanged;
 import org.archfirst.bfexch.domain.marketdata.MarketPriceChanged;
 
 /**
@@ -28,4 +30,12 @@ public class MockMarketDataEventPublisher implements MarketDataEventPublisher {
     @Override
     public void publish(MarketPriceChanged event) {
     }
+
+    @Override
+    public void publish(MarketDepthChanged event) {
+    }
+
+    @Override
+    public void publish(BarCompleted event) {
+    }
 }
\ No newline at end of file
@@ -25,6 +25,7 @@ import org.archfirst.bfexch.domain.trading.order.OrderCanceled;
 import org.archfirst.bfexch.domain.trading.order.OrderDoneForDay;
 import org.archfirst.bfexch.domain.trading.order.OrderEventPublisher;
 import org.archfirst.bfexch.domain.trading.order.OrderExecuted;
+import org.archfirst.bfexch.domain.trading.order.OrderReplaced;
 
 /**
  * MockBrokerAdapter
@@ -56,13 +57,20 @@ public class OrderEventRecorder implements OrderEventPublisher {
 
     @Override
     public void publish(OrderCanceled event) {
+        executionReports.add(ExecutionReport.createCanceledType(event.getOrder()));
     }
 
     @Override
     public void publish(OrderCancelRejected event) {
     }
 
+    @Override
+    public void publish(OrderReplaced event) {
+        executionReports.add(ExecutionReport.createReplacedType(event.getOrder()));
+    }
+
     @Override
     public void publish(OrderDoneForDay event) {
+        executionReports.add(ExecutionReport.createDoneForDayType(event.getOrder()));
     }
 }
\ No newline at end of file
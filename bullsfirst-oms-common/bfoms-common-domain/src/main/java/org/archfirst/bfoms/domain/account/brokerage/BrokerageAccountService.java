@@ -40,6 +40,7 @@ import org.archfirst.bfoms.domain.referencedata.ReferenceDataService;
 import org.archfirst.bfoms.domain.security.AuthorizationException;
 import org.archfirst.bfoms.domain.security.User;
 import org.archfirst.bfoms.domain.security.UserRepository;
+import org.archfirst.common.money.Money;
 import org.archfirst.common.quantity.DecimalQuantity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,6 +104,31 @@ public class BrokerageAccountService {
         exchangeTradingService.cancelOrder(order);
     }
 
+    /**
+     * Replaces the quantity and, if not null, the limit price of an order
+     * with a single request to the exchange. The order keeps its queue
+     * position at the exchange if its quantity is reduced.
+     */
+    public void replaceOrder(String username, Long orderId,
+            DecimalQuantity quantity, Money limitPrice) {
+
+        // Find the order
+        Order order = brokerageAccountRepository.findOrder(orderId);
+        if (order == null) {
+            throw new RuntimeException("Order " + orderId + " not found");
+        }
+        
+        // Check authorization on account
+        checkAccountAuthorization(
+                getUser(username),
+                order.getAccount().getId(),
+                BrokerageAccountPermission.Trade);
+        
+        // Replace order
+        order.checkReplace(quantity, limitPrice);
+        exchangeTradingService.replaceOrder(order, quantity, limitPrice);
+    }
+
     public void processExecutionReport(ExecutionReport executionReport) {
         // Send to account for processing
         BrokerageAccount account = brokerageAccountRepository.findAccountForOrder(
@@ -39,6 +39,29 @@ public class ExecutionReport {
             DecimalQuantity cumQty,
             Money lastPrice,
             Money weightedAvgPrice) {
+        this(type, exchangeOrderId, executionId, clientOrderId, orderStatus,
+                side, symbol, lastQty, leavesQty, cumQty, lastPrice,
+                weightedAvgPrice, null);
+    }
+
+    /**
+     * Constructs an ExecutionReport that also reports the limit price of the
+     * order, which is needed to process a report of type Replaced.
+     */
+    public ExecutionReport(
+            ExecutionReportType type,
+            String exchangeOrderId,
+            String executionId,
+            Long clientOrderId,
+            OrderStatus orderStatus,
+            OrderSide side,
+            String symbol,
+            DecimalQuantity lastQty,
+            DecimalQuantity leavesQty,
+            DecimalQuantity cumQty,
+            Money lastPrice,
+            Money weightedAvgPrice,
+            Money limitPrice) {
         this.type = type;
         this.exchangeOrderId = exchangeOrderId;
         this.executionId = executionId;
@@ -51,6 +74,7 @@ public class ExecutionReport {
         this.cumQty = cumQty;
         this.lastPrice = lastPrice;
         this.weightedAvgPrice = weightedAvgPrice;
+        this.limitPrice = limitPrice;
     }
 
     // ----- Factory Methods -----
@@ -107,6 +131,7 @@ public class ExecutionReport {
         builder.append(", cumQty=").append(cumQty);
         builder.append(", lastPrice=").append(lastPrice);
         builder.append(", weightedAvgPrice=").append(weightedAvgPrice);
+        builder.append(", limitPrice=").append(limitPrice);
         return builder.toString();
     }
 
@@ -123,6 +148,7 @@ public class ExecutionReport {
     private final DecimalQuantity cumQty;
     private final Money lastPrice;
     private final Money weightedAvgPrice;
+    private final Money limitPrice;
 
     // ----- Getters -----
     public ExecutionReportType getType() {
@@ -161,4 +187,7 @@ public class ExecutionReport {
     public Money getWeightedAvgPrice() {
         return weightedAvgPrice;
     }
+    public Money getLimitPrice() {
+        return limitPrice;
+    }
 }
\ No newline at end of file
@@ -112,6 +112,17 @@ public class Order extends DomainEntity implements Comparable<Order> {
             this.cumQty = executionReport.getCumQty();
         }
 
+        // If ExecutionReportType is Replaced, then record the new quantity
+        // and limit price
+        if (executionReport.getType() == ExecutionReportType.Replaced) {
+            this.quantity =
+                executionReport.getLeavesQty().plus(executionReport.getCumQty());
+            if (executionReport.getLimitPrice() != null) {
+                this.limitPrice = executionReport.getLimitPrice();
+            }
+            orderEventPublisher.publish(new OrderStatusChanged(this));
+        }
+
         // If ExecutionReportType is Trade, then add an execution to this order
         if (executionReport.getType() == ExecutionReportType.Trade) {
             this.addExecution(
@@ -152,6 +163,27 @@ public class Order extends DomainEntity implements Comparable<Order> {
         }
     }
 
+    /**
+     * Checks that the order can be replaced with the specified quantity and
+     * limit price. The order itself only changes once the exchange has
+     * confirmed the replacement (see {@link ExecutionReportType#Replaced}).
+     */
+    public void checkReplace(DecimalQuantity newQuantity, Money newLimitPrice) {
+        if (this.status != OrderStatus.New &&
+            this.status != OrderStatus.PartiallyFilled) {
+            throw new IllegalArgumentException(
+                    "Can't replace an order with status " + this.status);
+        }
+        if (!newQuantity.gt(this.cumQty)) {
+            throw new IllegalArgumentException(
+                    "Quantity must exceed the filled quantity " + this.cumQty);
+        }
+        if (newLimitPrice != null && this.type != OrderType.Limit) {
+            throw new IllegalArgumentException(
+                    "Can't specify a limit price for a " + this.type + " order");
+        }
+    }
+
     public void cancelRequestRejected(
             OrderStatus newStatus,
             OrderEventPublisher orderEventPublisher) {
@@ -16,6 +16,8 @@
 package org.archfirst.bfoms.domain.exchange;
 
 import org.archfirst.bfoms.domain.account.brokerage.order.Order;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
 
 /**
  * Interface to converts domain entities to exchange messages in text format.
@@ -27,4 +29,11 @@ public interface ExchangeMessageGenerator {
     String generateNewOrderSingleMessage(Order order);
     
     String generateOrderCancelRequest(Order order);
+
+    /**
+     * Generates a request to replace the quantity and, if not null, the
+     * limit price of the order. The order keeps its clOrdID.
+     */
+    String generateOrderCancelReplaceRequest(
+            Order order, DecimalQuantity quantity, Money limitPrice);
 }
\ No newline at end of file
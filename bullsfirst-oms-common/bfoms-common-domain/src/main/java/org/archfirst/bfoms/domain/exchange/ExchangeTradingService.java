@@ -16,6 +16,8 @@
 package org.archfirst.bfoms.domain.exchange;
 
 import org.archfirst.bfoms.domain.account.brokerage.order.Order;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
 
 /**
  * Allows placing and managing of trades at the exchange 
@@ -25,4 +27,5 @@ import org.archfirst.bfoms.domain.account.brokerage.order.Order;
 public interface ExchangeTradingService {
     void placeOrder(Order order);
     void cancelOrder(Order order);
+    void replaceOrder(Order order, DecimalQuantity quantity, Money limitPrice);
 }
\ No newline at end of file
@@ -17,6 +17,8 @@ package org.archfirst.bfoms.spec.mocks;
 
 import org.archfirst.bfoms.domain.account.brokerage.order.Order;
 import org.archfirst.bfoms.domain.exchange.ExchangeTradingService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
 
 /**
  * MockExchangeTradingService
@@ -32,4 +34,8 @@ public class MockExchangeTradingService implements ExchangeTradingService {
     @Override
     public void cancelOrder(Order order) {
     }
+
+    @Override
+    public void replaceOrder(Order order, DecimalQuantity quantity, Money limitPrice) {
+    }
 }
\ No newline at end of file
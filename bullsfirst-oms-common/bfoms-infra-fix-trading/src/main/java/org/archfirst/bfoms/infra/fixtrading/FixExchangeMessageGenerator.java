@@ -32,12 +32,15 @@ import org.archfirst.bfoms.infra.fixtrading.converters.OrderTermConverter;
 import org.archfirst.bfoms.infra.fixtrading.converters.OrderTypeConverter;
 import org.archfirst.bfoms.infra.fixtrading.converters.OrigClOrdIDConverter;
 import org.archfirst.common.config.ConfigurationService;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import quickfix.field.ExecInst;
 import quickfix.field.TransactTime;
 import quickfix.fix44.NewOrderSingle;
+import quickfix.fix44.OrderCancelReplaceRequest;
 import quickfix.fix44.OrderCancelRequest;
 
 /**
@@ -93,6 +96,28 @@ public class FixExchangeMessageGenerator implements ExchangeMessageGenerator {
         return fixMessage.toString();
     }
     
+    @Override
+    public String generateOrderCancelReplaceRequest(
+            Order order, DecimalQuantity quantity, Money limitPrice) {
+
+        OrderCancelReplaceRequest fixMessage = new OrderCancelReplaceRequest(
+                OrigClOrdIDConverter.toFix(getBrokerId(), order.getId()),
+                ClOrdIDConverter.toFix(getBrokerId(), order.getId()),
+                OrderSideConverter.toFix(order.getSide()),
+                new TransactTime(new Date()),
+                OrderTypeConverter.toFix(order.getType()));
+
+        fixMessage.set(InstrumentConverter.toFix(order.getSymbol()));
+        fixMessage.set(OrderQuantityConverter.toFix(quantity));
+        if (limitPrice != null) {
+            fixMessage.set(MoneyConverter.toFixPrice(limitPrice));
+            fixMessage.set(MoneyConverter.toFixCurrency(limitPrice));
+        }
+
+        logger.debug("Sending message:\n{}", FixFormatter.format(fixMessage));
+        return fixMessage.toString();
+    }
+    
     private String getBrokerId() {
         return configurationService.getString(ConfigConstants.PROP_BROKER_ID);
     }
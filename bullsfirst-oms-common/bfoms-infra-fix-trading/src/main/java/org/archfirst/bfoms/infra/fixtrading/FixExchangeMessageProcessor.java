@@ -28,9 +28,11 @@ import org.archfirst.bfoms.infra.fixtrading.converters.FixUtil;
 import org.archfirst.bfoms.infra.fixtrading.converters.LastPriceConverter;
 import org.archfirst.bfoms.infra.fixtrading.converters.LastQtyConverter;
 import org.archfirst.bfoms.infra.fixtrading.converters.LeavesQtyConverter;
+import org.archfirst.bfoms.infra.fixtrading.converters.MoneyConverter;
 import org.archfirst.bfoms.infra.fixtrading.converters.OrderSideConverter;
 import org.archfirst.bfoms.infra.fixtrading.converters.OrderStatusConverter;
 import org.archfirst.bfoms.infra.fixtrading.converters.OrigClOrdIDConverter;
+import org.archfirst.common.money.Money;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +47,8 @@ import quickfix.MessageUtils;
 import quickfix.RejectLogon;
 import quickfix.SessionID;
 import quickfix.UnsupportedMessageType;
+import quickfix.field.Currency;
+import quickfix.field.Price;
 import quickfix.fix44.ExecutionReport;
 import quickfix.fix44.OrderCancelReject;
 
@@ -106,6 +110,12 @@ public class FixExchangeMessageProcessor extends MessageCracker
         // Extract symbol
         String symbol = message.getInstrument().getSymbol().getValue();
 
+        // Extract limit price
+        Money limitPrice = null;
+        if (message.isSetField(Price.FIELD) && message.isSetField(Currency.FIELD)) {
+            limitPrice = MoneyConverter.toDomain(message.getPrice(), message.getCurrency());
+        }
+
         // Extract execution report
         org.archfirst.bfoms.domain.account.brokerage.order.ExecutionReport executionReport =
             new org.archfirst.bfoms.domain.account.brokerage.order.ExecutionReport(
@@ -120,7 +130,8 @@ public class FixExchangeMessageProcessor extends MessageCracker
                     LeavesQtyConverter.toDomain(message.getLeavesQty()),
                     CumQtyConverter.toDomain(message.getCumQty()),
                     LastPriceConverter.toDomain(message.getLastPx()),
-                    AvgPriceConverter.toDomain(message.getAvgPx()));
+                    AvgPriceConverter.toDomain(message.getAvgPx()),
+                    limitPrice);
 
         // Send to brokerageAccountService for processing
         brokerageAccountService.processExecutionReport(executionReport);
@@ -19,6 +19,7 @@ import javax.inject.Inject;
 
 import org.archfirst.bfcommon.jsontrading.JsonMessageMapper;
 import org.archfirst.bfcommon.jsontrading.NewOrderSingle;
+import org.archfirst.bfcommon.jsontrading.OrderCancelReplaceRequest;
 import org.archfirst.bfcommon.jsontrading.OrderCancelRequest;
 import org.archfirst.bfcommon.jsontrading.OrderSide;
 import org.archfirst.bfcommon.jsontrading.OrderStatus;
@@ -32,6 +33,9 @@ import org.archfirst.bfoms.infra.jsontrading.converters.MoneyConverter;
 import org.archfirst.bfoms.infra.jsontrading.converters.QuantityConverter;
 import org.archfirst.common.config.ConfigurationService;
 import org.archfirst.common.datetime.DateTimeUtil;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,12 +75,29 @@ public class JsonExchangeMessageGenerator implements ExchangeMessageGenerator {
     public String generateOrderCancelRequest(Order order) {
 
         OrderCancelRequest orderCancelRequest = new OrderCancelRequest(
-                ClOrdIDConverter.toJson(getBrokerId(), order.getId()));
+                ClOrdIDConverter.toJson(getBrokerId(), order.getId()),
+                order.getSymbol());
 
         logger.debug("Sending message:\n{}", JsonMessageMapper.toFormattedString(orderCancelRequest));
         return JsonMessageMapper.toString(orderCancelRequest);
     }
 
+    @Override
+    public String generateOrderCancelReplaceRequest(
+            Order order, DecimalQuantity quantity, Money limitPrice) {
+
+        OrderCancelReplaceRequest orderCancelReplaceRequest =
+            new OrderCancelReplaceRequest(
+                    ClOrdIDConverter.toJson(getBrokerId(), order.getId()),
+                    order.getSymbol(),
+                    DateTimeUtil.toStringISODateTime(new DateTime()),
+                    QuantityConverter.toJson(quantity),
+                    MoneyConverter.toJson(limitPrice));
+
+        logger.debug("Sending message:\n{}", JsonMessageMapper.toFormattedString(orderCancelReplaceRequest));
+        return JsonMessageMapper.toString(orderCancelReplaceRequest);
+    }
+
     private String getBrokerId() {
         return configurationService.getString(ConfigConstants.PROP_BROKER_ID);
     }
@@ -75,7 +75,8 @@ public class JsonExchangeMessageProcessor implements ExchangeMessageProcessor {
                     QuantityConverter.toDomain(jsonEr.getLeavesQty()),
                     QuantityConverter.toDomain(jsonEr.getCumQty()),
                     MoneyConverter.toDomain(jsonEr.getLastPrice()),
-                    MoneyConverter.toDomain(jsonEr.getWeightedAvgPrice()));
+                    MoneyConverter.toDomain(jsonEr.getWeightedAvgPrice()),
+                    MoneyConverter.toDomain(jsonEr.getLimitPrice()));
 
         // Send to brokerageAccountService for processing
         brokerageAccountService.processExecutionReport(er);
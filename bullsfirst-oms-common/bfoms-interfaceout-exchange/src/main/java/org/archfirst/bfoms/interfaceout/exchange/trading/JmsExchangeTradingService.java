@@ -17,16 +17,15 @@ package org.archfirst.bfoms.interfaceout.exchange.trading;
 
 import javax.annotation.Resource;
 import javax.inject.Inject;
-import javax.jms.Connection;
-import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
 import javax.jms.JMSException;
-import javax.jms.MessageProducer;
-import javax.jms.Session;
 
 import org.archfirst.bfoms.domain.account.brokerage.order.Order;
 import org.archfirst.bfoms.domain.exchange.ExchangeMessageGenerator;
 import org.archfirst.bfoms.domain.exchange.ExchangeTradingService;
+import org.archfirst.common.jms.JmsProducerPool;
+import org.archfirst.common.money.Money;
+import org.archfirst.common.quantity.DecimalQuantity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,12 +38,10 @@ public class JmsExchangeTradingService implements ExchangeTradingService {
     private static final Logger logger =
         LoggerFactory.getLogger(JmsExchangeTradingService.class);
     
-    @Resource(mappedName="jms/ConnectionFactory")
-    private ConnectionFactory connectionFactory;
-
     @Resource(mappedName="jms/OmsToExchangeQueue")
     private Destination destination;
 
+    @Inject private JmsProducerPool jmsProducerPool;
     @Inject private ExchangeMessageGenerator exchangeMessageGenerator;
 
     @Override
@@ -58,23 +55,20 @@ public class JmsExchangeTradingService implements ExchangeTradingService {
         sendJmsMessage(
                 exchangeMessageGenerator.generateOrderCancelRequest(order));
     }
+
+    @Override
+    public void replaceOrder(Order order, DecimalQuantity quantity, Money limitPrice) {
+        sendJmsMessage(
+                exchangeMessageGenerator.generateOrderCancelReplaceRequest(
+                        order, quantity, limitPrice));
+    }
     
     private void sendJmsMessage(String messageText) {
-        
-        Connection connection = null;
         try {
-            connection = connectionFactory.createConnection();
-            Session session = connection.createSession(
-                    false, Session.AUTO_ACKNOWLEDGE);
-            MessageProducer producer = session.createProducer(destination);
-            producer.send(session.createTextMessage(messageText));
+            jmsProducerPool.sendText(destination, messageText);
         }
         catch (JMSException e) {
             throw new RuntimeException("Failed to send message to exchange", e);
         }
-        finally {
-            if (connection != null)
-                try {connection.close();} catch (Exception e) {}
-        }
     }
 }
\ No newline at end of file
@@ -18,7 +18,9 @@ package org.archfirst.bfoms.interfacein.exchange;
 import java.io.IOException;
 import java.io.StringReader;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Currency;
+import java.util.List;
 import java.util.Properties;
 
 import javax.ejb.MessageDriven;
@@ -59,9 +61,10 @@ public class MarketPriceListener implements MessageListener {
         if (message instanceof TextMessage) {
             try {
                 String messageText = ((TextMessage)message).getText();
-                MarketPrice marketPrice = toMarketPrice(messageText);
-                logger.debug("Received market price:\n{}", marketPrice);
-                marketDataService.updateMarketPrice(marketPrice);
+                for (MarketPrice marketPrice : toMarketPrices(messageText)) {
+                    logger.debug("Received market price:\n{}", marketPrice);
+                    marketDataService.updateMarketPrice(marketPrice);
+                }
             }
             catch (JMSException e) {
                 throw new RuntimeException(e);
@@ -69,22 +72,41 @@ public class MarketPriceListener implements MessageListener {
         }
     }
 
-    private MarketPrice toMarketPrice(String marketPriceString) {
+    /**
+     * Parses a message carrying a single market price, or a batch of market
+     * prices whose properties are numbered (symbol.0, price.0, ...) and
+     * whose size is given by count.
+     */
+    private List<MarketPrice> toMarketPrices(String marketPricesString) {
         Properties properties = new Properties();
         try {
-            properties.load(new StringReader(marketPriceString));
+            properties.load(new StringReader(marketPricesString));
         }
         catch (IOException e) {
-            throw new IllegalArgumentException(marketPriceString, e);
+            throw new IllegalArgumentException(marketPricesString, e);
         }
 
+        List<MarketPrice> marketPrices = new ArrayList<MarketPrice>();
+        String count = properties.getProperty("count");
+        if (count == null) {
+            marketPrices.add(toMarketPrice(properties, ""));
+        }
+        else {
+            for (int i = 0; i < Integer.parseInt(count); i++) {
+                marketPrices.add(toMarketPrice(properties, "." + i));
+            }
+        }
+        return marketPrices;
+    }
+
+    private MarketPrice toMarketPrice(Properties properties, String suffix) {
         DateTime effective = ISODateTimeFormat.dateTimeParser().parseDateTime(
-                properties.getProperty("effective"));
-        String symbol = properties.getProperty("symbol");
+                properties.getProperty("effective" + suffix));
+        String symbol = properties.getProperty("symbol" + suffix);
         BigDecimal price = new BigDecimal(
-                properties.getProperty("price"));
+                properties.getProperty("price" + suffix));
         Currency currency = Currency.getInstance(
-                properties.getProperty("currency"));
+                properties.getProperty("currency" + suffix));
 
         return new MarketPrice(
                 symbol, new Money(price, currency), effective);